@@ -0,0 +1,92 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.benchmarks;
+
+import uk.ac.uea.cmp.spectre.core.ds.Sequences;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.distance.MetricDistanceGenerator;
+import uk.ac.uea.cmp.spectre.core.ds.distance.RandomDistanceGenerator;
+
+import java.util.Random;
+
+/**
+ * Creates the inputs for the benchmarks.  Everything is generated from a fixed seed, so each run of a benchmark works on
+ * exactly the same data and timings can be compared between builds.
+ */
+public class BenchmarkData {
+
+    public static final long SEED = 42;
+
+    /**
+     * Kinds of distance matrix that benchmarks can be parameterised by
+     */
+    public enum Distances {
+
+        /** Independent uniform distances, which need not satisfy the triangle inequality */
+        RANDOM {
+            @Override
+            public DistanceMatrix generate(int nbTaxa) {
+                return new RandomDistanceGenerator(SEED).generateDistances(nbTaxa);
+            }
+        },
+
+        /** Distances that satisfy the triangle inequality */
+        METRIC {
+            @Override
+            public DistanceMatrix generate(int nbTaxa) {
+                return new MetricDistanceGenerator(SEED).generateDistances(nbTaxa);
+            }
+        };
+
+        public abstract DistanceMatrix generate(int nbTaxa);
+    }
+
+    /**
+     * Creates a random DNA alignment.  Each sequence is a mutated copy of a common ancestor, so that pairs of sequences
+     * have realistic distances rather than all being close to saturation.
+     *
+     * @param nbTaxa Number of sequences
+     * @param length Number of sites in each sequence
+     * @param mutationRate Probability that a site differs from the ancestor
+     * @return The alignment
+     */
+    public static Sequences alignment(int nbTaxa, int length, double mutationRate) {
+
+        final String bases = "ACGT";
+        final Random random = new Random(SEED);
+
+        final char[] ancestor = new char[length];
+        for (int j = 0; j < length; j++) {
+            ancestor[j] = bases.charAt(random.nextInt(4));
+        }
+
+        final String[] names = new String[nbTaxa];
+        final String[] seqs = new String[nbTaxa];
+
+        for (int i = 0; i < nbTaxa; i++) {
+            final char[] seq = ancestor.clone();
+            for (int j = 0; j < length; j++) {
+                if (random.nextDouble() < mutationRate) {
+                    seq[j] = bases.charAt(random.nextInt(4));
+                }
+            }
+            names[i] = "t" + (i + 1);
+            seqs[i] = new String(seq);
+        }
+
+        return new Sequences(names, seqs);
+    }
+}
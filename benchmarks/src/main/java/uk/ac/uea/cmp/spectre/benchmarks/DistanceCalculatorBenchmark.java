@@ -0,0 +1,69 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.uea.cmp.spectre.core.ds.Sequences;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceCalculatorFactory;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times building a distance matrix from an alignment with each distance calculator
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DistanceCalculatorBenchmark {
+
+    /* Probability that a site differs from the common ancestor of the alignment */
+    private static final double MUTATION_RATE = 0.2;
+
+    @Param({"50", "200", "800"})
+    public int nbTaxa;
+
+    @Param({"1000", "10000"})
+    public int length;
+
+    @Param({"UNCORRECTED", "JUKES_CANTOR", "K80"})
+    public DistanceCalculatorFactory calculator;
+
+    private Sequences alignment;
+
+    @Setup
+    public void setup() {
+        this.alignment = BenchmarkData.alignment(this.nbTaxa, this.length, MUTATION_RATE);
+    }
+
+    @Benchmark
+    public DistanceMatrix createDistanceMatrix() {
+        return this.calculator.createDistanceMatrix(this.alignment);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.uea.cmp.spectre.core.ds.Sequences;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quadruple.QSFactoryAlignment;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quadruple.QuadrupleSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.flat.PermutationSequence;
+import uk.ac.uea.cmp.spectre.core.ds.split.flat.PermutationSequenceFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the FlatNJ pipeline from an alignment: estimating the quadruple system, then agglomerating it into a
+ * permutation sequence
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FlatSplitsBenchmark {
+
+    /* Number of sites in the alignment */
+    private static final int LENGTH = 500;
+
+    /* Probability that a site differs from the common ancestor of the alignment */
+    private static final double MUTATION_RATE = 0.2;
+
+    @Param({"10", "20", "40"})
+    public int nbTaxa;
+
+    private Sequences alignment;
+    private QuadrupleSystem quadrupleSystem;
+
+    @Setup
+    public void setup() {
+        this.alignment = BenchmarkData.alignment(this.nbTaxa, LENGTH, MUTATION_RATE);
+
+        // As in FlatNJ.  The permutation sequence factory deactivates taxa as it goes, but reactivates them all before
+        // it finishes, so the same system can be reused for every invocation.
+        this.quadrupleSystem = new QSFactoryAlignment(this.alignment, null).computeQS(false);
+        this.quadrupleSystem.subtractMin();
+    }
+
+    @Benchmark
+    public QuadrupleSystem computeQS() {
+        return new QSFactoryAlignment(this.alignment, null).computeQS(false);
+    }
+
+    @Benchmark
+    public PermutationSequence computePermutationSequence() {
+        return new PermutationSequenceFactory().computePermutationSequence(this.quadrupleSystem);
+    }
+}
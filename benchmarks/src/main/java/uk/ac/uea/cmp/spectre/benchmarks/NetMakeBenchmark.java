@@ -0,0 +1,77 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.NetMakeCircularOrderer;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting.Weighting;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting.Weightings;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the NetMake circular ordering with each weighting.  GreedyME can only be run as the first weighting of a
+ * hybrid, so it is paired with TSP as the second weighting.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NetMakeBenchmark {
+
+    /* Parameter used by the tree weighting */
+    private static final double TREE_PARAM = 0.5;
+
+    @Param({"50", "100", "200"})
+    public int nbTaxa;
+
+    @Param({"RANDOM", "METRIC"})
+    public BenchmarkData.Distances distances;
+
+    @Param({"TSP", "TREE", "EQUAL", "PARABOLA", "GREEDY_ME"})
+    public Weightings weighting;
+
+    private DistanceMatrix distanceMatrix;
+
+    @Setup
+    public void setup() {
+        this.distanceMatrix = this.distances.generate(this.nbTaxa);
+    }
+
+    @Benchmark
+    public IdentifierList netMake() {
+
+        // Weightings hold state for a single run, so are created fresh each time
+        final Weighting weighting1 = this.weighting.create(this.distanceMatrix, TREE_PARAM);
+        final Weighting weighting2 = this.weighting == Weightings.GREEDY_ME ? Weightings.TSP.create() : null;
+
+        return new NetMakeCircularOrderer(weighting1, weighting2).createCircularOrdering(this.distanceMatrix);
+    }
+}
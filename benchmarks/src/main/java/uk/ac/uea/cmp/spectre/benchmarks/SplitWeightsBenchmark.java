@@ -0,0 +1,80 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.network.Network;
+import uk.ac.uea.cmp.spectre.core.ds.network.draw.PermutationSequenceDraw;
+import uk.ac.uea.cmp.spectre.core.ds.split.SpectreSplitSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitWeights;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CircularNNLS;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nn.NeighborNetImpl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the steps that follow a circular ordering in NeighborNet and NetMake: fitting split weights by circular least
+ * squares, and drawing the resulting circular split system
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SplitWeightsBenchmark {
+
+    @Param({"50", "100", "200"})
+    public int nbTaxa;
+
+    @Param({"RANDOM", "METRIC"})
+    public BenchmarkData.Distances distances;
+
+    private DistanceMatrix distanceMatrix;
+    private IdentifierList circularOrdering;
+    private SplitSystem splits;
+
+    @Setup
+    public void setup() {
+        this.distanceMatrix = this.distances.generate(this.nbTaxa);
+        this.circularOrdering = new NeighborNetImpl().createCircularOrdering(this.distanceMatrix);
+        this.splits = new SpectreSplitSystem(this.distanceMatrix, this.circularOrdering,
+                SpectreSplitSystem.LeastSquaresCalculator.CIRCULAR).makeCanonical();
+    }
+
+    @Benchmark
+    public SplitWeights circularLeastSquares() {
+        return new CircularNNLS().circularLeastSquares(this.distanceMatrix, this.circularOrdering);
+    }
+
+    @Benchmark
+    public Network createOptimisedNetwork() {
+        return new PermutationSequenceDraw(this.splits.makeInducedOrdering()).createOptimisedNetwork();
+    }
+}
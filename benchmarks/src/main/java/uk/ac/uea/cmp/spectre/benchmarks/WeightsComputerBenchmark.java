@@ -0,0 +1,82 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.earlham.metaopt.OptimiserException;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.CanonicalWeightedQuartetMap;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.GroupedQuartetSystem;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetSystem;
+import uk.ac.uea.cmp.spectre.qtools.qnet.ComputedWeights;
+import uk.ac.uea.cmp.spectre.qtools.qnet.CyclicOrderer;
+import uk.ac.uea.cmp.spectre.qtools.qnet.QNetException;
+import uk.ac.uea.cmp.spectre.qtools.qnet.WeightsComputer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times QNet's split weight computation with the internal solver, on quartets derived from a distance matrix
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WeightsComputerBenchmark {
+
+    /* Negative tolerance makes the internal solver use its default, as QNet does when none is given */
+    private static final double TOLERANCE = -1.0;
+
+    @Param({"10", "20", "40"})
+    public int nbTaxa;
+
+    @Param({"RANDOM", "METRIC"})
+    public BenchmarkData.Distances distances;
+
+    private GroupedQuartetSystem quartetSystem;
+    private IdentifierList circularOrdering;
+
+    @Setup
+    public void setup() throws QNetException {
+
+        final DistanceMatrix distanceMatrix = this.distances.generate(this.nbTaxa);
+
+        this.quartetSystem = new GroupedQuartetSystem(new QuartetSystem(distanceMatrix.getTaxa(), 1.0,
+                new CanonicalWeightedQuartetMap(distanceMatrix)));
+        this.quartetSystem.normaliseQuartets(false);
+
+        this.circularOrdering = new CyclicOrderer().computeCircularOrdering(this.quartetSystem.getTaxa(),
+                this.quartetSystem.getQuartets());
+    }
+
+    @Benchmark
+    public ComputedWeights computeWeights() throws QNetException, OptimiserException {
+        return new WeightsComputer().computeWeights(this.quartetSystem, this.circularOrdering, TOLERANCE, null);
+    }
+}
@@ -15,8 +15,8 @@
 
 package uk.ac.uea.cmp.spectre.core.ds;
 
+import uk.ac.uea.cmp.spectre.core.ds.distance.DenseDistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
-import uk.ac.uea.cmp.spectre.core.ds.distance.FlexibleDistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ui.gui.geom.IndexedPoint;
 
 import java.util.ArrayList;
@@ -61,7 +61,7 @@ public class Locations extends ArrayList<IndexedPoint> {
             }
 
         }
-        return new FlexibleDistanceMatrix(taxa, matrix);
+        return new DenseDistanceMatrix(taxa, matrix);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,253 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Alignment with identical columns collapsed into a single site pattern, together with the number of columns sharing
+ * that pattern.  Anything that treats the columns of an alignment independently, and only depends on how many times
+ * each column occurs, can work on the patterns instead of the full alignment, cutting its work by the compression
+ * ratio.  Patterns are kept in the order in which they first appear.
+ */
+public class SitePatterns {
+
+    private final int nbSequences;
+    private final int length;
+
+    // Labels of the sequences, if known
+    private final String[] taxaLabels;
+
+    // Per sequence, the character at each pattern
+    private final char[][] patterns;
+
+    // Number of columns with each pattern
+    private final int[] counts;
+
+    /**
+     * Creates site patterns from an alignment, keeping its taxa labels
+     *
+     * @param sequences The alignment
+     */
+    public SitePatterns(Sequences sequences) {
+        this(getAlignment(sequences), sequences.getTaxaLabels());
+    }
+
+    /**
+     * Creates site patterns from an alignment given as one row of characters per sequence
+     *
+     * @param alignment The alignment.  All rows must be the same length.
+     */
+    public SitePatterns(char[][] alignment) {
+        this(alignment, null);
+    }
+
+    /**
+     * Creates site patterns from an alignment given as one row of characters per sequence
+     *
+     * @param alignment The alignment.  All rows must be the same length.
+     * @param taxaLabels Labels of the sequences, or null if not known
+     */
+    public SitePatterns(char[][] alignment, String[] taxaLabels) {
+
+        this.nbSequences = alignment.length;
+        this.length = this.nbSequences == 0 ? 0 : alignment[0].length;
+
+        for (int i = 0; i < this.nbSequences; i++) {
+            if (alignment[i].length != this.length) {
+                throw new IllegalArgumentException("Sequence " + i + " has length " + alignment[i].length + ", expected " + this.length);
+            }
+        }
+
+        if (taxaLabels != null && taxaLabels.length != this.nbSequences) {
+            throw new IllegalArgumentException("Expected " + this.nbSequences + " taxa labels, found " + taxaLabels.length);
+        }
+
+        this.taxaLabels = taxaLabels;
+
+        // Find the pattern of each column, in order of first appearance.  Columns are hashed into an open addressing
+        // table holding the first column with each pattern, and compared against the alignment itself, so no copies of
+        // the columns are made.
+        int tableSize = 16;
+        while (tableSize < this.length * 2L) {
+            tableSize <<= 1;
+        }
+        final int mask = tableSize - 1;
+        final int[] table = new int[tableSize];
+        Arrays.fill(table, -1);
+
+        final int[] firstColumn = new int[this.length];
+        final int[] patternOf = new int[this.length];
+        final int[] patternCounts = new int[this.length];
+
+        int nbPatterns = 0;
+        for (int k = 0; k < this.length; k++) {
+
+            int h = 0;
+            for (int i = 0; i < this.nbSequences; i++) {
+                h = 31 * h + alignment[i][k];
+            }
+
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (table[slot] != -1 && !sameColumn(alignment, table[slot], k)) {
+                slot = (slot + 1) & mask;
+            }
+
+            final int p;
+            if (table[slot] == -1) {
+                table[slot] = k;
+                p = nbPatterns++;
+                firstColumn[p] = k;
+                patternOf[k] = p;
+            } else {
+                p = patternOf[table[slot]];
+            }
+
+            patternCounts[p]++;
+        }
+
+        this.patterns = new char[this.nbSequences][nbPatterns];
+        for (int i = 0; i < this.nbSequences; i++) {
+            for (int p = 0; p < nbPatterns; p++) {
+                this.patterns[i][p] = alignment[i][firstColumn[p]];
+            }
+        }
+
+        this.counts = new int[nbPatterns];
+        System.arraycopy(patternCounts, 0, this.counts, 0, nbPatterns);
+    }
+
+    /**
+     * Creates site patterns sharing the patterns of another alignment, but with different column counts
+     */
+    private SitePatterns(SitePatterns other, int[] counts) {
+        this.nbSequences = other.nbSequences;
+        this.length = other.length;
+        this.taxaLabels = other.taxaLabels;
+        this.patterns = other.patterns;
+        this.counts = counts;
+    }
+
+    /**
+     * Creates a bootstrap replicate of the alignment, made by drawing as many columns as the alignment has, with
+     * replacement.  Only the number of columns drawn with each pattern is new, the patterns themselves are shared with
+     * this object, and patterns that are not drawn are kept with a count of 0.
+     *
+     * @param random Source of the columns drawn
+     * @return Site patterns for the resampled alignment
+     */
+    public SitePatterns resample(Random random) {
+
+        // Columns are numbered in blocks by pattern, so a column's pattern is found by searching the running totals
+        final int[] ends = new int[this.counts.length];
+        int total = 0;
+        for (int p = 0; p < this.counts.length; p++) {
+            total += this.counts[p];
+            ends[p] = total;
+        }
+
+        final int[] resampled = new int[this.counts.length];
+        for (int k = 0; k < this.length; k++) {
+
+            // Find the first pattern whose columns end after the column drawn
+            final int column = random.nextInt(this.length);
+            int lo = 0;
+            int hi = ends.length - 1;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (ends[mid] > column) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            resampled[lo]++;
+        }
+
+        return new SitePatterns(this, resampled);
+    }
+
+    private static char[][] getAlignment(Sequences sequences) {
+
+        if (sequences.getSequences() == null) {
+            throw new IllegalArgumentException("Sequences are not all the same length");
+        }
+
+        return sequences.size() == 0 ? new char[0][] : sequences.getSequencesAsCharArray();
+    }
+
+    private static boolean sameColumn(char[][] alignment, int k1, int k2) {
+
+        for (int i = 0; i < alignment.length; i++) {
+            if (alignment[i][k1] != alignment[i][k2]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of sequences in the alignment
+     */
+    public int getNbSequences() {
+        return nbSequences;
+    }
+
+    /**
+     * @return The number of columns in the alignment
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return The labels of the sequences, or null if they were not given.  Do not modify.
+     */
+    public String[] getTaxaLabels() {
+        return taxaLabels;
+    }
+
+    /**
+     * @return The number of distinct columns in the alignment
+     */
+    public int getNbPatterns() {
+        return counts.length;
+    }
+
+    /**
+     * @param pattern Index of the pattern
+     * @return The number of columns in the alignment with the given pattern
+     */
+    public int getCount(int pattern) {
+        return counts[pattern];
+    }
+
+    /**
+     * @return The number of columns with each pattern.  Do not modify.
+     */
+    public int[] getCounts() {
+        return counts;
+    }
+
+    /**
+     * @param sequence Index of the sequence
+     * @return The character of the given sequence at each pattern.  Do not modify.
+     */
+    public char[] getPatterns(int sequence) {
+        return patterns[sequence];
+    }
+}
@@ -2,28 +2,159 @@ package uk.ac.uea.cmp.spectre.core.ds.distance;
 
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
 import uk.ac.uea.cmp.spectre.core.ds.Sequences;
+import uk.ac.uea.cmp.spectre.core.ds.SitePatterns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Created by maplesod on 04/05/17.
+ *
+ * Distances are calculated from the number of mismatches and transitions between each pair of sequences.  When
+ * generating a whole matrix the alignment is collapsed into {@link SitePatterns}, which are bit-packed once into
+ * {@link PackedSequences}, and the pairs are split into square tiles, which are counted in parallel on a fork join pool,
+ * writing straight into a {@link DenseDistanceMatrix}.
  */
 public abstract class AbstractDistanceMatrixCalculator implements DistanceMatrixCalculator {
 
-    protected abstract double calculateDistance(final String s1, final String s2);
+    /**
+     * Number of sequences along each side of a tile of pairs.  Kept small enough that the packed sequences for a tile
+     * stay in cache for long alignments.
+     */
+    private static final int TILE_SIZE = 32;
+
+    /**
+     * Calculates a distance from summary counts for a pair of aligned sequences
+     *
+     * @param length Number of sites in each sequence
+     * @param mismatches Number of sites at which the sequences differ
+     * @param transitions Number of mismatching sites which are transitions.  Only counted if
+     *                    {@link #requiresTransitions()} returns true, otherwise 0.
+     * @return The distance between the sequences
+     */
+    protected abstract double calculateDistance(final int length, final int mismatches, final int transitions);
+
+    /**
+     * @return True if {@link #calculateDistance(int, int, int)} needs the number of transitions
+     */
+    protected boolean requiresTransitions() {
+        return false;
+    }
+
+    protected double calculateDistance(final String s1, final String s2) {
+
+        final int mismatches = HammingDistanceCalculator.hammingCount(s1, s2);
+        final int transitions = this.requiresTransitions() ? K80Calculator.calcTransitionSites(s1, s2) : 0;
+
+        return this.calculateDistance(s1.length(), mismatches, transitions);
+    }
 
     @Override
     public DistanceMatrix generateDistances(Sequences seqs) {
-        DistanceMatrix distanceMatrix = new FlexibleDistanceMatrix(new IdentifierList(seqs.getTaxaLabels()));
-
-        final int n = seqs.size();
-        for (int i = 0; i < n; i++) {
-            for (int j = i; j < n; j++) {
-                if (i != j) {
-                    // Require a +1 offset on taxa index to get the correct Identifiers
-                    distanceMatrix.setDistance(i+1, j+1, this.calculateDistance(seqs.getSeq(i), seqs.getSeq(j)));
-                }
+        return this.generateDistances(seqs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Generates a distance matrix from the sequences, using the given pool to count differences between pairs
+     *
+     * @param seqs A list of MSAs to calculate a distance matrix from
+     * @param pool The pool to use
+     * @return A new distance matrix calculated from seqs
+     */
+    public DistanceMatrix generateDistances(Sequences seqs, ForkJoinPool pool) {
+        return this.generateDistances(new SitePatterns(seqs), pool);
+    }
+
+    @Override
+    public DistanceMatrix generateDistances(SitePatterns patterns) {
+        return this.generateDistances(patterns, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Generates a distance matrix from the site patterns of an alignment, using the given pool to count differences
+     * between pairs
+     *
+     * @param patterns Site patterns of the MSA to calculate a distance matrix from
+     * @param pool The pool to use
+     * @return A new distance matrix calculated from the patterns
+     */
+    public DistanceMatrix generateDistances(SitePatterns patterns, ForkJoinPool pool) {
+
+        final PackedSequences packed = new PackedSequences(patterns);
+        final int n = packed.size();
+
+        final DenseDistanceMatrix distanceMatrix = new DenseDistanceMatrix(patterns.getTaxaLabels() != null ?
+                new IdentifierList(patterns.getTaxaLabels()) :
+                new IdentifierList(n));
+        final double[] distances = distanceMatrix.getPackedDistances();
+
+        final List<int[]> tiles = new ArrayList<>();
+        for (int j = 0; j < n; j += TILE_SIZE) {
+            for (int i = 0; i <= j; i += TILE_SIZE) {
+                tiles.add(new int[]{i, j});
             }
         }
 
+        pool.invoke(new TileTask(packed, tiles, 0, tiles.size(), distances));
+
         return distanceMatrix;
     }
+
+    /**
+     * Calculates distances for a range of tiles, splitting the range in half until only one tile is left
+     */
+    private class TileTask extends RecursiveAction {
+
+        private final PackedSequences packed;
+        private final List<int[]> tiles;
+        private final int start;
+        private final int end;
+        private final double[] distances;
+
+        private TileTask(PackedSequences packed, List<int[]> tiles, int start, int end, double[] distances) {
+            this.packed = packed;
+            this.tiles = tiles;
+            this.start = start;
+            this.end = end;
+            this.distances = distances;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (this.end - this.start > 1) {
+                final int mid = (this.start + this.end) >>> 1;
+                invokeAll(new TileTask(this.packed, this.tiles, this.start, mid, this.distances),
+                        new TileTask(this.packed, this.tiles, mid, this.end, this.distances));
+                return;
+            }
+
+            if (this.end == this.start) {
+                return;
+            }
+
+            final int[] tile = this.tiles.get(this.start);
+            final int n = this.packed.size();
+            final int length = this.packed.getLength();
+            final boolean transitions = requiresTransitions();
+            final int[] counts = new int[2];
+
+            final int jEnd = Math.min(tile[1] + TILE_SIZE, n);
+            final int iEnd = Math.min(tile[0] + TILE_SIZE, n);
+
+            for (int j = tile[1]; j < jEnd; j++) {
+                for (int i = tile[0]; i < iEnd && i < j; i++) {
+                    if (transitions) {
+                        this.packed.countDifferences(i, j, counts);
+                    } else {
+                        counts[0] = this.packed.mismatches(i, j);
+                        counts[1] = 0;
+                    }
+                    this.distances[DenseDistanceMatrix.index(i, j)] = calculateDistance(length, counts[0], counts[1]);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,529 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.distance;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import uk.ac.uea.cmp.spectre.core.ds.Identifier;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+
+import java.util.*;
+
+/**
+ * Distance matrix backed by a single packed triangle of primitive doubles.  Taxa are addressed by their position in
+ * the taxa list, so the distance between the taxa at index i and j (i &lt; j) is held at j(j-1)/2 + i, i.e. the upper
+ * triangle packed column by column.  This layout means that adding a new taxon simply appends a new column to the end
+ * of the array.  Lookups by identifier go through an id to index table, so no objects are created when getting or
+ * setting distances.
+ *
+ * This should be the default choice for any matrix where the taxa are known up front.  {@link FlexibleDistanceMatrix}
+ * is still useful for small matrices that are built up incrementally or sparsely.
+ *
+ * Note that identifiers are looked up by their id, so ids should not be changed once a taxon is in the matrix.  Taxa
+ * added to or removed from the list returned by {@link #getTaxa()} are picked up automatically, although it is much
+ * cheaper to go through {@link #addIdentifier(Identifier)} and {@link #removeTaxon(Identifier)}.
+ */
+public class DenseDistanceMatrix extends AbstractDistanceMatrix {
+
+    private static final int NOT_PRESENT = -1;
+
+    private IdentifierList taxa;
+    private double[] distances;
+    private int[] idToIndex;
+    private int n;
+
+    public DenseDistanceMatrix() {
+        this(0);
+    }
+
+    public DenseDistanceMatrix(final int size) {
+        this(new IdentifierList(size));
+    }
+
+    public DenseDistanceMatrix(final IdentifierList taxa) {
+
+        this.taxa = taxa;
+        this.n = 0;
+        this.distances = new double[0];
+        this.idToIndex = new int[0];
+        this.reindex();
+    }
+
+    public DenseDistanceMatrix(DistanceMatrix copy) {
+
+        this(new IdentifierList(copy.getTaxa()));
+
+        if (copy instanceof DenseDistanceMatrix) {
+            DenseDistanceMatrix dense = (DenseDistanceMatrix) copy;
+            System.arraycopy(dense.distances, 0, this.distances, 0, nbEntries(this.n));
+        } else {
+            for (int j = 1; j < this.n; j++) {
+                for (int i = 0; i < j; i++) {
+                    this.distances[index(i, j)] = copy.getDistanceByIndex(i, j);
+                }
+            }
+        }
+    }
+
+    public DenseDistanceMatrix(double[][] distances) {
+        this(new IdentifierList(distances.length), distances);
+    }
+
+    public DenseDistanceMatrix(IdentifierList taxa, double[][] distances) {
+
+        this(new IdentifierList(checkSize(taxa, distances)));
+
+        // Take the lower triangle, as the flexible matrix would if given an asymmetric matrix
+        for (int j = 1; j < this.n; j++) {
+            for (int i = 0; i < j; i++) {
+                this.distances[index(i, j)] = distances[j][i];
+            }
+        }
+    }
+
+    /**
+     * Creates a matrix around a triangle of distances that has already been packed as described by
+     * {@link #index(int, int)}, so that readers can fill in distances as they go without holding a second copy.  The
+     * array is taken over by this matrix rather than copied.
+     *
+     * @param taxa The taxa, in the order used to pack the distances
+     * @param distances The packed triangle, holding {@link #nbEntries(int)} entries for the number of taxa
+     */
+    public DenseDistanceMatrix(IdentifierList taxa, double[] distances) {
+
+        if (distances.length != nbEntries(taxa.size())) {
+            throw new IllegalArgumentException("Packed distances do not match the number of taxa.  Taxa size: " +
+                    taxa.size() + "; Expected entries: " + nbEntries(taxa.size()) + "; Actual entries: " + distances.length);
+        }
+
+        this.taxa = taxa;
+        this.n = taxa.size();
+        this.distances = distances;
+        this.indexIds();
+    }
+
+    /**
+     * Direct access to the packed triangle of distances, laid out as described by {@link #index(int, int)}, for bulk
+     * calculations within this package.  Only valid until the taxa are next changed.
+     */
+    double[] getPackedDistances() {
+        this.sync();
+        return this.distances;
+    }
+
+    private static IdentifierList checkSize(IdentifierList taxa, double[][] distances) {
+        if (taxa.size() != distances.length) {
+            throw new IllegalArgumentException("Taxa size is not the same as matrix size.  Taxa size: " +
+                    taxa.size() + "; Matrix size: " + distances.length);
+        }
+        return taxa;
+    }
+
+    /**
+     * Number of entries in the packed triangle required to hold the distances between n taxa
+     * @param n Number of taxa
+     * @return The number of off-diagonal entries in one triangle of the matrix
+     */
+    public static int nbEntries(final int n) {
+        final long entries = (long) n * (n - 1) / 2;
+        if (entries > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many taxa to hold in a dense distance matrix: " + n);
+        }
+        return (int) entries;
+    }
+
+    /**
+     * Position of the distance between the taxa at indices i and j in the packed triangle.  Entries are stored column
+     * by column, so adding a taxon only appends to the end.  The product is halved with an unsigned shift, which keeps
+     * it exact for every index allowed by {@link #nbEntries(int)} even though it no longer fits in a signed int.
+     */
+    public static int index(final int i, final int j) {
+        return i < j ?
+                ((j * (j - 1)) >>> 1) + i :
+                ((i * (i - 1)) >>> 1) + j;
+    }
+
+    /**
+     * Makes sure the id lookup table and the packed triangle are in step with the taxa list.  Cheap if they already are.
+     */
+    private void sync() {
+        if (this.taxa.size() != this.n) {
+            this.reindex();
+        }
+    }
+
+    /**
+     * Rebuilds the storage after the taxa list has been modified directly.  Distances between taxa that were already
+     * present are retained, anything new is initialised to 0.0.
+     */
+    private void reindex() {
+
+        final int newN = this.taxa.size();
+        final int[] oldIndex = new int[newN];
+
+        for (int k = 0; k < newN; k++) {
+            oldIndex[k] = this.indexOf(this.taxa.get(k));
+        }
+
+        double[] newDistances = new double[nbEntries(newN)];
+        for (int j = 1; j < newN; j++) {
+            if (oldIndex[j] == NOT_PRESENT)
+                continue;
+            for (int i = 0; i < j; i++) {
+                if (oldIndex[i] != NOT_PRESENT) {
+                    newDistances[index(i, j)] = this.distances[index(oldIndex[i], oldIndex[j])];
+                }
+            }
+        }
+
+        this.distances = newDistances;
+        this.n = newN;
+        this.indexIds();
+    }
+
+    /**
+     * Rebuilds the id to index table from the taxa list
+     */
+    private void indexIds() {
+
+        int maxId = 0;
+        for (Identifier t : this.taxa) {
+            maxId = Math.max(maxId, t.getId());
+        }
+
+        this.idToIndex = new int[maxId + 1];
+        Arrays.fill(this.idToIndex, NOT_PRESENT);
+        for (int k = 0; k < this.taxa.size(); k++) {
+            int id = this.taxa.get(k).getId();
+            if (id >= 0) {
+                this.idToIndex[id] = k;
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the given taxon in this matrix
+     * @param taxon The taxon to find
+     * @return The index of the taxon, or -1 if the taxon is not in this matrix
+     */
+    public int indexOf(final Identifier taxon) {
+        return this.indexOf(taxon.getId());
+    }
+
+    private int indexOf(final int id) {
+        return id >= 0 && id < this.idToIndex.length ? this.idToIndex[id] : NOT_PRESENT;
+    }
+
+    private int indexOfExisting(final int id) {
+        this.sync();
+        final int idx = this.indexOf(id);
+        if (idx == NOT_PRESENT) {
+            throw new IllegalArgumentException("Taxon with id " + id + " is not in this distance matrix");
+        }
+        return idx;
+    }
+
+
+    @Override
+    public double getDistanceByIndex(final int i, final int j) {
+        this.sync();
+        return i == j ? 0.0 : this.distances[index(i, j)];
+    }
+
+    @Override
+    public double setDistanceByIndex(final int i, final int j, final double value) {
+
+        this.sync();
+
+        if (i == j)
+            return 0.0;
+
+        final int idx = index(i, j);
+        final double oldVal = this.distances[idx];
+        this.distances[idx] = value;
+        return oldVal;
+    }
+
+    @Override
+    public double getDistance(final Identifier taxon1, final Identifier taxon2) {
+
+        if (taxon1 == null || taxon2 == null)
+            throw new IllegalArgumentException("Need two valid taxa to get a distance");
+
+        this.sync();
+
+        final int i = this.indexOf(taxon1);
+        final int j = this.indexOf(taxon2);
+
+        return i == NOT_PRESENT || j == NOT_PRESENT ? 0.0 : this.getDistanceByIndex(i, j);
+    }
+
+    @Override
+    public double getDistance(final int taxon1Id, final int taxon2Id) {
+        return this.getDistanceByIndex(this.indexOfExisting(taxon1Id), this.indexOfExisting(taxon2Id));
+    }
+
+    @Override
+    public double getDistance(String taxon1Name, String taxon2Name) {
+        return this.getDistance(this.taxa.getByName(taxon1Name), this.taxa.getByName(taxon2Name));
+    }
+
+    @Override
+    public void addIdentifier(Identifier id) {
+
+        this.sync();
+
+        if (this.indexOf(id) != NOT_PRESENT)
+            return;
+
+        // Adding to the list may set the id, so do this before registering the new index
+        this.taxa.add(id);
+
+        final int newIndex = this.n;
+        final int required = nbEntries(newIndex + 1);
+        if (this.distances.length < required) {
+            final long grown = Math.min((long) nbEntries(newIndex) * 3 / 2, Integer.MAX_VALUE - 8);
+            this.distances = Arrays.copyOf(this.distances, Math.max(required, (int) grown));
+        }
+        // Storage may have been used before by a removed taxon, so reset the new column
+        Arrays.fill(this.distances, nbEntries(newIndex), required, 0.0);
+
+        if (id.getId() >= this.idToIndex.length) {
+            final int oldLength = this.idToIndex.length;
+            this.idToIndex = Arrays.copyOf(this.idToIndex, Math.max(id.getId() + 1, oldLength * 3 / 2));
+            Arrays.fill(this.idToIndex, oldLength, this.idToIndex.length, NOT_PRESENT);
+        }
+        this.idToIndex[id.getId()] = newIndex;
+        this.n++;
+    }
+
+    @Override
+    public double setDistance(Identifier taxon1, Identifier taxon2, final double value) {
+
+        if (taxon1 == null || taxon2 == null)
+            throw new IllegalArgumentException("Need two valid taxa to set a distance");
+
+        this.sync();
+
+        int i = this.indexOf(taxon1);
+        if (i == NOT_PRESENT) {
+            this.addIdentifier(taxon1);
+            i = this.indexOf(taxon1);
+        }
+
+        int j = this.indexOf(taxon2);
+        if (j == NOT_PRESENT) {
+            this.addIdentifier(taxon2);
+            j = this.indexOf(taxon2);
+        }
+
+        return this.setDistanceByIndex(i, j, value);
+    }
+
+    @Override
+    public double setDistance(String taxonName1, String taxonName2, final double value) {
+        return this.setDistance(this.taxa.getByName(taxonName1), this.taxa.getByName(taxonName2), value);
+    }
+
+    @Override
+    public double setDistance(final int taxonId1, final int taxonId2, final double value) {
+        return this.setDistanceByIndex(this.indexOfExisting(taxonId1), this.indexOfExisting(taxonId2), value);
+    }
+
+    @Override
+    public double incrementDistance(final int taxonId1, final int taxonId2, final double increment) {
+
+        final int i = this.indexOfExisting(taxonId1);
+        final int j = this.indexOfExisting(taxonId2);
+
+        if (i == j)
+            return 0.0;
+
+        return this.distances[index(i, j)] += increment;
+    }
+
+    @Override
+    public double incrementDistance(String taxon1Name, String taxon2Name, double increment) {
+        return this.incrementDistance(this.taxa.getByName(taxon1Name), this.taxa.getByName(taxon2Name), increment);
+    }
+
+
+    @Override
+    public IdentifierList getTaxa() {
+        return this.taxa;
+    }
+
+    @Override
+    public IdentifierList getTaxa(Comparator<Identifier> comparator) {
+        return this.taxa.sortCopy(comparator);
+    }
+
+
+    @Override
+    public DistanceList getDistances(Identifier taxon, Comparator<Identifier> comparator) {
+
+        this.sync();
+
+        DistanceList dl = new FlexibleDistanceList(taxon);
+
+        IdentifierList sorted = comparator == null ? this.taxa : this.taxa.sortCopy(comparator);
+
+        final int i = this.indexOf(taxon);
+
+        for (Identifier t : sorted) {
+
+            if (t != taxon) {
+                final int j = this.indexOf(t);
+                dl.setDistance(t, i == NOT_PRESENT || j == NOT_PRESENT ? 0.0 : this.getDistanceByIndex(i, j));
+            }
+        }
+
+        return dl;
+    }
+
+    @Override
+    public DistanceList getDistances(int taxonId, Comparator<Identifier> comparator) {
+        return this.getDistances(this.taxa.getById(taxonId), comparator);
+    }
+
+    @Override
+    public DistanceList getDistances(String taxonName, Comparator<Identifier> comparator) {
+        return this.getDistances(this.taxa.getByName(taxonName), comparator);
+    }
+
+    @Override
+    public List<DistanceList> getAllDistances(Comparator<Identifier> comparator) {
+
+        IdentifierList sorted = comparator == null ? this.taxa : this.taxa.sortCopy(comparator);
+
+        List<DistanceList> allDistances = new ArrayList<>(this.size());
+
+        for (Identifier t : sorted) {
+            allDistances.add(this.getDistances(t, comparator));
+        }
+
+        return allDistances;
+    }
+
+    @Override
+    public double[][] getMatrix(Comparator<Identifier> comparator) {
+
+        this.sync();
+
+        final int size = this.n;
+        double[][] matrix = new double[size][size];
+
+        // Work out where each row in the output comes from
+        int[] order = new int[size];
+        if (comparator == null) {
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+        } else {
+            IdentifierList sorted = this.taxa.sortCopy(comparator);
+            for (int i = 0; i < size; i++) {
+                order[i] = this.indexOf(sorted.get(i));
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                final double d = this.getDistanceByIndex(order[i], order[j]);
+                matrix[i][j] = d;
+                matrix[j][i] = d;
+            }
+        }
+
+        return matrix;
+    }
+
+    @Override
+    public int size() {
+        return this.taxa.size();
+    }
+
+    @Override
+    public void removeTaxon(Identifier taxon) {
+
+        this.sync();
+
+        final int r = this.indexOf(taxon);
+
+        if (r == NOT_PRESENT) {
+            this.taxa.remove(taxon);
+            this.sync();
+            return;
+        }
+
+        // Compact the packed triangle in place, dropping the row and column of the removed taxon.  Entries only ever
+        // move towards the start of the array so we never overwrite anything we still need to read.
+        int k = 0;
+        for (int j = 0; j < this.n; j++) {
+            if (j == r)
+                continue;
+            final int offset = index(0, j);
+            for (int i = 0; i < j; i++) {
+                if (i != r) {
+                    this.distances[k++] = this.distances[offset + i];
+                }
+            }
+        }
+
+        Identifier removed = this.taxa.get(r);
+        this.taxa.remove(removed);
+        this.idToIndex[removed.getId()] = NOT_PRESENT;
+        this.n--;
+
+        for (int i = r; i < this.n; i++) {
+            this.idToIndex[this.taxa.get(i).getId()] = i;
+        }
+    }
+
+    @Override
+    public void removeTaxon(int taxonId) {
+        this.removeTaxon(this.taxa.getById(taxonId));
+    }
+
+    @Override
+    public void removeTaxon(String taxonName) {
+        this.removeTaxon(this.taxa.getByName(taxonName));
+    }
+
+    /**
+     * Creates a map of all distances in this matrix in non-redundant form.  The map is a snapshot, so changes made to
+     * the map are not reflected in this matrix.  Where possible use {@link #getDistanceByIndex(int, int)} instead.
+     * @return A map representing this distance matrix
+     */
+    @Override
+    public Map<Pair<Identifier, Identifier>, Double> getMap() {
+
+        this.sync();
+
+        Map<Pair<Identifier, Identifier>, Double> map = new HashMap<>();
+
+        for (int j = 1; j < this.n; j++) {
+            Identifier tj = this.taxa.get(j);
+            for (int i = 0; i < j; i++) {
+                Identifier ti = this.taxa.get(i);
+                map.put(ti.getId() < tj.getId() ? new ImmutablePair<>(ti, tj) : new ImmutablePair<>(tj, ti),
+                        this.getDistanceByIndex(i, j));
+            }
+        }
+
+        return map;
+    }
+
+}
@@ -2,9 +2,11 @@ package uk.ac.uea.cmp.spectre.core.ds.distance;
 
 import org.apache.commons.lang3.StringUtils;
 import uk.ac.uea.cmp.spectre.core.ds.Sequences;
+import uk.ac.uea.cmp.spectre.core.ds.SitePatterns;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by maplesod on 04/05/17.
@@ -16,6 +18,11 @@ public enum DistanceCalculatorFactory {
             return new HammingDistanceCalculator().generateDistances(seqs);
         }
 
+        @Override
+        public AbstractDistanceMatrixCalculator createCalculator() {
+            return new HammingDistanceCalculator();
+        }
+
         @Override
         public double calculateDistance(String s1, String s2) {
             return new HammingDistanceCalculator().calculateDistance(s1, s2);
@@ -27,6 +34,11 @@ public enum DistanceCalculatorFactory {
             return new JukesCantorCalculator().generateDistances(seqs);
         }
 
+        @Override
+        public AbstractDistanceMatrixCalculator createCalculator() {
+            return new JukesCantorCalculator();
+        }
+
         @Override
         public double calculateDistance(String s1, String s2) {
             return new JukesCantorCalculator().calculateDistance(s1, s2);
@@ -38,6 +50,11 @@ public enum DistanceCalculatorFactory {
             return new K80Calculator().generateDistances(seqs);
         }
 
+        @Override
+        public AbstractDistanceMatrixCalculator createCalculator() {
+            return new K80Calculator();
+        }
+
         @Override
         public double calculateDistance(String s1, String s2) {
             return new K80Calculator().calculateDistance(s1, s2);
@@ -46,6 +63,23 @@ public enum DistanceCalculatorFactory {
 
     public abstract DistanceMatrix createDistanceMatrix(Sequences seqs);
 
+    /**
+     * @return A new calculator for this kind of distance
+     */
+    public abstract AbstractDistanceMatrixCalculator createCalculator();
+
+    /**
+     * Creates a distance matrix from the site patterns of an alignment, counting differences between pairs on the
+     * given pool
+     *
+     * @param patterns Site patterns of the alignment
+     * @param pool The pool to use
+     * @return A new distance matrix
+     */
+    public DistanceMatrix createDistanceMatrix(SitePatterns patterns, ForkJoinPool pool) {
+        return this.createCalculator().generateDistances(patterns, pool);
+    }
+
     public abstract double calculateDistance(String s1, String s2);
 
     public static String toListString() {
@@ -53,6 +53,16 @@ public interface DistanceMatrix {
      */
     double getDistance(final int taxon1Id, final int taxon2Id);
 
+    /**
+     * Retrieves the distance between two taxa, using their positions in the list returned by {@link #getTaxa()}.  This
+     * is the fastest way to access a distance and should be preferred in loops over the whole matrix.
+     *
+     * @param i Index of first taxon
+     * @param j Index of second taxon
+     * @return The distance between the taxa at index i and index j
+     */
+    double getDistanceByIndex(final int i, final int j);
+
     /**
      * Retrieves the distance between two taxa
      *
@@ -92,6 +102,16 @@ public interface DistanceMatrix {
      */
     double setDistance(final int taxonId1, final int taxonId2, final double value);
 
+    /**
+     * Sets the specified distance between the taxa at the given positions in the list returned by {@link #getTaxa()}
+     *
+     * @param i Index of first taxon
+     * @param j Index of second taxon
+     * @param value Distance between first and second taxa
+     * @return The previous distance set between the two taxa, or 0.0 if the value has never been set before
+     */
+    double setDistanceByIndex(final int i, final int j, final double value);
+
     /**
      * Increments the distance between taxon1 and taxon2 by incValue.  Returns the new distance between taxon1 and taxon2
      *
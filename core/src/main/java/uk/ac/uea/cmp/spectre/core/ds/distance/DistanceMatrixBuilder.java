@@ -110,7 +110,7 @@ public class DistanceMatrixBuilder {
     public DistanceMatrix createDistanceMatrix() {
 
         this.removeEmptyLines(this.rows);
-        DistanceMatrix distanceMatrix = new FlexibleDistanceMatrix(this.taxa);
+        DistanceMatrix distanceMatrix = new DenseDistanceMatrix(this.taxa);
         this.fillDistanceMatrix(this.rows, distanceMatrix);
         return distanceMatrix;
     }
@@ -16,6 +16,7 @@
 package uk.ac.uea.cmp.spectre.core.ds.distance;
 
 import uk.ac.uea.cmp.spectre.core.ds.Sequences;
+import uk.ac.uea.cmp.spectre.core.ds.SitePatterns;
 
 /**
  * Distance matrix generator
@@ -29,4 +30,12 @@ public interface DistanceMatrixCalculator {
      * @return A new distance matrix calculated from seqs
      */
     DistanceMatrix generateDistances(final Sequences seqs);
+
+    /**
+     * Generates a distance matrix from an alignment that has already been collapsed into site patterns
+     *
+     * @param patterns Site patterns of the MSA to calculate a distance matrix from
+     * @return A new distance matrix calculated from the patterns
+     */
+    DistanceMatrix generateDistances(final SitePatterns patterns);
 }
@@ -23,6 +23,9 @@ import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
 import java.util.*;
 
 /**
+ * Distance matrix backed by a map of taxa pairs to distances.  Convenient when building up a matrix incrementally or
+ * sparsely, but every lookup allocates a new pair, so prefer {@link DenseDistanceMatrix} for anything large.
+ *
  * Created by dan on 27/02/14.
  */
 public class FlexibleDistanceMatrix extends AbstractDistanceMatrix {
@@ -111,6 +114,11 @@ public class FlexibleDistanceMatrix extends AbstractDistanceMatrix {
         return this.getDistance(this.taxa.getById(taxon1Id), this.taxa.getById(taxon2Id));
     }
 
+    @Override
+    public double getDistanceByIndex(final int i, final int j) {
+        return this.getDistance(this.taxa.get(i), this.taxa.get(j));
+    }
+
     @Override
     public double getDistance(String taxon1Name, String taxon2Name) {
         return this.getDistance(this.taxa.getByName(taxon1Name), this.taxa.getByName(taxon2Name));
@@ -161,6 +169,11 @@ public class FlexibleDistanceMatrix extends AbstractDistanceMatrix {
         return this.setDistance(this.taxa.getById(taxonId1), this.taxa.getById(taxonId2), value);
     }
 
+    @Override
+    public double setDistanceByIndex(final int i, final int j, final double value) {
+        return this.setDistance(this.taxa.get(i), this.taxa.get(j), value);
+    }
+
     @Override
     public double incrementDistance(final int taxonId1, final int taxonId2, final double increment) {
         return this.incrementDistance(this.taxa.getById(taxonId1), this.taxa.getById(taxonId2), increment);
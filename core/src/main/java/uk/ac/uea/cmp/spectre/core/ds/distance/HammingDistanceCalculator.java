@@ -40,8 +40,8 @@ public class HammingDistanceCalculator extends AbstractDistanceMatrixCalculator
     }
 
     @Override
-    protected double calculateDistance(String s1, String s2) {
+    protected double calculateDistance(int length, int mismatches, int transitions) {
 
-        return (double)hammingCount(s1, s2) / (double)s1.length();
+        return (double)mismatches / (double)length;
     }
 }
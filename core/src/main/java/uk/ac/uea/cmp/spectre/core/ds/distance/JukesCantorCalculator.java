@@ -25,9 +25,9 @@ package uk.ac.uea.cmp.spectre.core.ds.distance;
 public class JukesCantorCalculator extends AbstractDistanceMatrixCalculator {
 
     @Override
-    protected double calculateDistance(String s1, String s2) {
+    protected double calculateDistance(int length, int mismatches, int transitions) {
 
-        final double hdist = new HammingDistanceCalculator().calculateDistance(s1, s2);
+        final double hdist = new HammingDistanceCalculator().calculateDistance(length, mismatches, transitions);
 
         double jcdist = -0.75 * Math.log(1.0 - ((4.0 * hdist) / 3.0));
 
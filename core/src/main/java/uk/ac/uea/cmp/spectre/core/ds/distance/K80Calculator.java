@@ -50,15 +50,20 @@ public class K80Calculator extends AbstractDistanceMatrixCalculator {
     }
 
     @Override
-    protected double calculateDistance(String s1, String s2) {
+    protected boolean requiresTransitions() {
+        return true;
+    }
+
+    @Override
+    protected double calculateDistance(int length, int mismatches, int transitions) {
 
-        final int hcount = HammingDistanceCalculator.hammingCount(s1, s2);
+        final int hcount = mismatches;
 
-        final int transition_sites = calcTransitionSites(s1, s2);
+        final int transition_sites = transitions;
         final int transversion_sites = hcount - transition_sites;
 
-        final double dist_ts = (double)transition_sites / (double)s1.length();
-        final double dist_tv = (double)transversion_sites / (double)s1.length();
+        final double dist_ts = (double)transition_sites / (double)length;
+        final double dist_tv = (double)transversion_sites / (double)length;
 
         final double part1 = 0.5 * Math.log(1.0 / (1.0 - 2.0 * dist_ts - dist_tv));
         final double part2 = 0.25 * Math.log(1.0 / (1.0 - 2.0 * dist_tv));
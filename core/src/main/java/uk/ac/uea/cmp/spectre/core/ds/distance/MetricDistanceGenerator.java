@@ -15,6 +15,10 @@
 
 package uk.ac.uea.cmp.spectre.core.ds.distance;
 
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+
+import java.util.Random;
+
 /**
  * Created with IntelliJ IDEA.
  * User: Dan
@@ -24,10 +28,33 @@ package uk.ac.uea.cmp.spectre.core.ds.distance;
  */
 public class MetricDistanceGenerator implements DistanceMatrixGenerator {
 
+    private final Random random;
+
+    /**
+     * Creates a generator that produces different distances each time it is run
+     */
+    public MetricDistanceGenerator() {
+        this(new Random());
+    }
+
+    /**
+     * Creates a generator that produces the same sequence of distance matrices for the same seed, for reproducible
+     * tests and benchmarks
+     *
+     * @param seed The seed for the random number generator
+     */
+    public MetricDistanceGenerator(long seed) {
+        this(new Random(seed));
+    }
+
+    private MetricDistanceGenerator(Random random) {
+        this.random = random;
+    }
+
     @Override
     public DistanceMatrix generateDistances(final int n) {
 
-        DistanceMatrix distanceMatrix = new FlexibleDistanceMatrix();
+        DistanceMatrix distanceMatrix = new DenseDistanceMatrix(new IdentifierList(n));
 
         for (int i = 0; i < n; i++) {
             for (int j = i; j < n; j++) {
@@ -40,8 +67,8 @@ public class MetricDistanceGenerator implements DistanceMatrixGenerator {
                     for (int k = 0; k < n; k++) {
                         if (k != i && k != j) {
 
-                            double distIK = distanceMatrix.getDistance(i, k);
-                            double distKJ = distanceMatrix.getDistance(k, j);
+                            double distIK = distanceMatrix.getDistanceByIndex(i, k);
+                            double distKJ = distanceMatrix.getDistanceByIndex(k, j);
 
                             distIK = distIK == 0.0 ? 0.5 : distIK;
                             distKJ = distKJ == 0.0 ? 0.5 : distKJ;
@@ -56,10 +83,10 @@ public class MetricDistanceGenerator implements DistanceMatrixGenerator {
                     }
 
                     aDistance = Math.round(
-                            (Math.random() * (maxVal - minVal)
+                            (this.random.nextDouble() * (maxVal - minVal)
                                     + minVal) * 1.E5) / 1.E5;
 
-                    distanceMatrix.setDistance(i, j, aDistance);
+                    distanceMatrix.setDistanceByIndex(i, j, aDistance);
                 }
             }
         }
@@ -0,0 +1,265 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.distance;
+
+import uk.ac.uea.cmp.spectre.core.ds.Sequences;
+import uk.ac.uea.cmp.spectre.core.ds.SitePatterns;
+
+import java.util.Arrays;
+
+/**
+ * Bit-packed copy of an alignment, used to count differences between pairs of sequences a word at a time.
+ *
+ * Identical columns are first collapsed into {@link SitePatterns}, and only the distinct patterns are packed.  Each
+ * distinct character in the alignment is given a small code, and the codes are stored bit-sliced: bit b of the code
+ * for every pattern goes into plane b, 64 patterns to a word.  A plain nucleotide alignment therefore needs 2 bits per
+ * site, and one with ambiguity codes, gaps or mixed case up to 4.  Two patterns differ if any of their planes differ, so
+ * mismatches in 64 patterns are found with a few XORs and a popcount.  Purine and pyrimidine masks are stored alongside
+ * the codes so that transitions can be counted in the same pass.
+ *
+ * Patterns are packed in order of their number of columns, so that almost every word holds patterns with the same
+ * count, and its popcount is simply multiplied by that count.  The few words holding patterns with different counts
+ * are weighted using the binary digits of the counts, one mask per digit.
+ *
+ * Counts are identical to those from {@link HammingDistanceCalculator#hammingCount(String, String)} and
+ * {@link K80Calculator#calcTransitionSites(String, String)}.
+ */
+public class PackedSequences {
+
+    private final int nbSequences;
+    private final int length;
+    private final int nbPatterns;
+    private final int nbWords;
+    private final int nbPlanes;
+
+    // Per sequence, the planes for word w are held at [w * nbPlanes, (w + 1) * nbPlanes)
+    private final long[][] codes;
+    private final long[][] purines;
+    private final long[][] pyrimidines;
+
+    // Number of columns for each pattern in word w, or 0 if the patterns in the word have different counts
+    private final int[] wordCounts;
+
+    // For words with mixed counts, bit d of the count of each pattern, indexed by [d][w]
+    private final long[][] countDigits;
+
+    public PackedSequences(Sequences seqs) {
+        this(new SitePatterns(seqs));
+    }
+
+    public PackedSequences(SitePatterns patterns) {
+
+        this.nbSequences = patterns.getNbSequences();
+        this.length = patterns.getLength();
+        this.nbPatterns = patterns.getNbPatterns();
+        this.nbWords = (this.nbPatterns + 63) >>> 6;
+
+        final int[] counts = patterns.getCounts();
+
+        // Order the patterns by count
+        final long[] keys = new long[this.nbPatterns];
+        for (int p = 0; p < this.nbPatterns; p++) {
+            keys[p] = ((long) counts[p] << 32) | p;
+        }
+        Arrays.sort(keys);
+        final int[] order = new int[this.nbPatterns];
+        for (int k = 0; k < this.nbPatterns; k++) {
+            order[k] = (int) keys[k];
+        }
+
+        // Work out how to weight each word
+        int maxCount = 0;
+        for (int p = 0; p < this.nbPatterns; p++) {
+            maxCount = Math.max(maxCount, counts[p]);
+        }
+
+        this.wordCounts = new int[this.nbWords];
+        this.countDigits = new long[32 - Integer.numberOfLeadingZeros(maxCount)][this.nbWords];
+
+        for (int w = 0; w < this.nbWords; w++) {
+
+            final int first = w << 6;
+            final int last = Math.min(first + 64, this.nbPatterns) - 1;
+
+            if (counts[order[first]] == counts[order[last]]) {
+                this.wordCounts[w] = counts[order[first]];
+            } else {
+                for (int k = first; k <= last; k++) {
+                    final int count = counts[order[k]];
+                    for (int d = 0; d < this.countDigits.length; d++) {
+                        if ((count & (1 << d)) != 0) {
+                            this.countDigits[d][w] |= 1L << (k & 63);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Assign a code to each distinct character in order of appearance
+        final int[] charCodes = new int[Character.MAX_VALUE + 1];
+        int nbSymbols = 0;
+        for (int i = 0; i < this.nbSequences; i++) {
+            final char[] seq = patterns.getPatterns(i);
+            for (int k = 0; k < this.nbPatterns; k++) {
+                final char c = seq[k];
+                if (charCodes[c] == 0) {
+                    charCodes[c] = ++nbSymbols;
+                }
+            }
+        }
+
+        this.nbPlanes = Math.max(1, 32 - Integer.numberOfLeadingZeros(nbSymbols - 1));
+
+        this.codes = new long[this.nbSequences][];
+        this.purines = new long[this.nbSequences][];
+        this.pyrimidines = new long[this.nbSequences][];
+
+        for (int i = 0; i < this.nbSequences; i++) {
+
+            final char[] seq = patterns.getPatterns(i);
+            final long[] c = new long[this.nbWords * this.nbPlanes];
+            final long[] pur = new long[this.nbWords];
+            final long[] pyr = new long[this.nbWords];
+
+            for (int k = 0; k < this.nbPatterns; k++) {
+                final char ch = seq[order[k]];
+                final int code = charCodes[ch] - 1;
+                final int w = k >>> 6;
+                final long bit = 1L << (k & 63);
+
+                for (int p = 0; p < this.nbPlanes; p++) {
+                    if ((code & (1 << p)) != 0) {
+                        c[w * this.nbPlanes + p] |= bit;
+                    }
+                }
+
+                if (K80Calculator.isPurine(ch)) {
+                    pur[w] |= bit;
+                } else if (K80Calculator.isPyrimidine(ch)) {
+                    pyr[w] |= bit;
+                }
+            }
+
+            this.codes[i] = c;
+            this.purines[i] = pur;
+            this.pyrimidines[i] = pyr;
+        }
+    }
+
+    /**
+     * @return The number of sequences
+     */
+    public int size() {
+        return this.nbSequences;
+    }
+
+    /**
+     * @return The number of sites in each sequence
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * @return The number of distinct site patterns packed
+     */
+    public int getNbPatterns() {
+        return this.nbPatterns;
+    }
+
+    /**
+     * @return The number of bits used to encode each site
+     */
+    public int getBitsPerSite() {
+        return this.nbPlanes;
+    }
+
+    private long diff(final long[] a, final long[] b, final int w) {
+        final int offset = w * this.nbPlanes;
+        long diff = 0L;
+        for (int p = 0; p < this.nbPlanes; p++) {
+            diff |= a[offset + p] ^ b[offset + p];
+        }
+        return diff;
+    }
+
+    /**
+     * Counts the columns represented by the set bits of a word of patterns
+     */
+    private int weigh(final long bits, final int w) {
+
+        final int wordCount = this.wordCounts[w];
+        if (wordCount != 0) {
+            return Long.bitCount(bits) * wordCount;
+        }
+
+        int count = 0;
+        for (int d = 0; d < this.countDigits.length; d++) {
+            count += Long.bitCount(bits & this.countDigits[d][w]) << d;
+        }
+        return count;
+    }
+
+    /**
+     * Counts the sites at which sequences i and j differ
+     *
+     * @param i Index of first sequence
+     * @param j Index of second sequence
+     * @return The number of mismatching sites
+     */
+    public int mismatches(final int i, final int j) {
+
+        final long[] a = this.codes[i];
+        final long[] b = this.codes[j];
+
+        int count = 0;
+        for (int w = 0; w < this.nbWords; w++) {
+            count += this.weigh(this.diff(a, b, w), w);
+        }
+        return count;
+    }
+
+    /**
+     * Counts mismatches and transitions between sequences i and j in a single pass
+     *
+     * @param i Index of first sequence
+     * @param j Index of second sequence
+     * @param counts Array of at least 2 elements, which receives the number of mismatching sites at index 0 and the
+     *               number of those that are transitions at index 1
+     */
+    public void countDifferences(final int i, final int j, final int[] counts) {
+
+        final long[] a = this.codes[i];
+        final long[] b = this.codes[j];
+        final long[] purA = this.purines[i];
+        final long[] purB = this.purines[j];
+        final long[] pyrA = this.pyrimidines[i];
+        final long[] pyrB = this.pyrimidines[j];
+
+        int mismatches = 0;
+        int transitions = 0;
+        for (int w = 0; w < this.nbWords; w++) {
+            final long diff = this.diff(a, b, w);
+            if (diff != 0L) {
+                mismatches += this.weigh(diff, w);
+                transitions += this.weigh(diff & ((purA[w] & purB[w]) | (pyrA[w] & pyrB[w])), w);
+            }
+        }
+
+        counts[0] = mismatches;
+        counts[1] = transitions;
+    }
+}
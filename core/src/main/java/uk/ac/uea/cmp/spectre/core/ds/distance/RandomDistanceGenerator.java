@@ -17,6 +17,8 @@ package uk.ac.uea.cmp.spectre.core.ds.distance;
 
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
 
+import java.util.Random;
+
 /**
  * Created with IntelliJ IDEA.
  * User: Dan
@@ -26,18 +28,39 @@ import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
  */
 public class RandomDistanceGenerator implements DistanceMatrixGenerator {
 
+    private final Random random;
+
+    /**
+     * Creates a generator that produces different distances each time it is run
+     */
+    public RandomDistanceGenerator() {
+        this(new Random());
+    }
+
+    /**
+     * Creates a generator that produces the same sequence of distance matrices for the same seed, for reproducible
+     * tests and benchmarks
+     *
+     * @param seed The seed for the random number generator
+     */
+    public RandomDistanceGenerator(long seed) {
+        this(new Random(seed));
+    }
+
+    private RandomDistanceGenerator(Random random) {
+        this.random = random;
+    }
+
     @Override
     public DistanceMatrix generateDistances(final int n) {
 
-        DistanceMatrix distanceMatrix = new FlexibleDistanceMatrix();
-        IdentifierList taxa = new IdentifierList(n);
+        DistanceMatrix distanceMatrix = new DenseDistanceMatrix(new IdentifierList(n));
 
         for (int i = 0; i < n; i++) {
             for (int j = i; j < n; j++) {
                 if (i != j) {
-                    double aDistance = Math.round(Math.random() * 1.E5) / 1.E5;
-                    distanceMatrix.setDistance(taxa.get(i), taxa.get(j), aDistance);
-                    distanceMatrix.setDistance(taxa.get(j), taxa.get(i), aDistance);
+                    double aDistance = Math.round(this.random.nextDouble() * 1.E5) / 1.E5;
+                    distanceMatrix.setDistanceByIndex(i, j, aDistance);
                 }
             }
         }
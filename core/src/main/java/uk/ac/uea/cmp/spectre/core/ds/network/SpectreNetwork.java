@@ -223,24 +223,32 @@ public class SpectreNetwork implements Network {
 
         this.externalEdges = this.classifyExternalEdges(this.vertices);
 
+        // Edges are compared by identity, so hash sets can be used to look them up quickly
+        Set<Edge> external = new HashSet<>(this.externalEdges);
+        Set<Edge> trivial = new HashSet<>();
+
+        // Number of edges representing each split
+        Map<Integer, Integer> splitSizes = new HashMap<>();
+
         // Move some external edges to the trivial edge list
         // Classifies all other edges (i.e. non external or trivial edges) as internal
         for (Edge e : this.edges) {
             if (e.getBottom().getEdgeList().size() == 1 || e.getTop().getEdgeList().size() == 1) {
                 this.trivialEdges.add(e);
-                while (this.externalEdges.remove(e)) ;
+                trivial.add(e);
             } else {
-                if (!this.externalEdges.contains(e)) {
+                if (!external.contains(e)) {
                     this.internalEdges.add(e);
                 }
             }
+            Integer size = splitSizes.get(e.getSplitIndex());
+            splitSizes.put(e.getSplitIndex(), size == null ? 1 : size + 1);
         }
+        this.externalEdges.removeAll(trivial);
 
         // Set compatible property on those edges that are compatible
-        for (int i = 0; i < externalEdges.size(); i++) {
-            Edge e = externalEdges.get(i);
-            EdgeList split = collectEdgesForSplit(e.getSplitIndex(), this.edges);
-            if (split.size() == 1 && e.getBottom().getEdgeList().size() > 1 && e.getTop().getEdgeList().size() > 1) {
+        for (Edge e : this.externalEdges) {
+            if (splitSizes.get(e.getSplitIndex()) == 1 && e.getBottom().getEdgeList().size() > 1 && e.getTop().getEdgeList().size() > 1) {
                 e.setCompatible(true);
             }
         }
@@ -477,15 +477,10 @@ public class AngleCalculatorSimple implements AngleCalculator {
         for (int i = 0; i < vertices.size(); i++) {
             Vertex vertex = vertices.get(i);
             double dist = vertex.calcDistanceTo(v);
+            // Check the distance first, as casting a ray to see whether the vertex is inside the network is costly
             if (vertex != v && vertex != w &&
-                    ((!cc.pointInsideNetwork(vertex,
-                            network.getExternalEdges())
-                            && outside
-                            && dist <= r && dist >= 0.25 * r) ||
-                            (cc.pointInsideNetwork(vertex,
-                                    network.getExternalEdges())
-                                    && !outside
-                                    && dist <= 1.05 * r && dist > 0.95 * r))) {
+                    (outside ? dist <= r && dist >= 0.25 * r : dist <= 1.05 * r && dist > 0.95 * r) &&
+                    cc.pointInsideNetwork(vertex, network.getExternalEdges()) != outside) {
                 double[] p = new double[2];
                 p[0] = vertex.getX();
                 p[1] = vertex.getY();
@@ -514,8 +509,7 @@ public class AngleCalculatorSimple implements AngleCalculator {
 
                 Vertex c0 = new Vertex(x, y);
 
-                if ((!cc.pointInsideNetwork(c0, network.getExternalEdges()) && outside) ||
-                        (cc.pointInsideNetwork(c0, network.getExternalEdges()) && !outside)) {
+                if (cc.pointInsideNetwork(c0, network.getExternalEdges()) != outside) {
                     angles.add(Vertex.getClockwiseAngle(c0, v, w));
                     //window.markPoint(c0, 2);
                 }
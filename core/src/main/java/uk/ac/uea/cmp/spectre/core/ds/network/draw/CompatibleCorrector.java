@@ -228,13 +228,16 @@ public class CompatibleCorrector {
     }
 
     private int castRay(Vertex c, List<Edge> edges) {
-        Line ray = new Line(c, new Vertex(c.getX() + 1, c.getY() + 1));
+        // Called for many points while optimising the layout, so avoid creating a vertex for each intersection
+        Line ray = new Line(c.getX(), c.getY(), c.getX() + 1, c.getY() + 1);
         int crossings = 0;
         for(Edge e : edges) {
             if (!e.isCompatible()) {
-                Vertex intP = ray.intersection(new Line(e));
-                if (Math.signum(intP.getX() - e.getTop().getX()) != Math.signum(intP.getX() - e.getBottom().getX()) &&
-                        intP.getX() > c.getX() && intP.getY() > c.getY()) {
+                Line l = new Line(e);
+                double x = ray.intersectionX(l);
+                double y = ray.a * x + ray.b;
+                if (Math.signum(x - e.getTop().getX()) != Math.signum(x - e.getBottom().getX()) &&
+                        x > c.getX() && y > c.getY()) {
                     crossings++;
                 }
             }
@@ -820,9 +823,13 @@ public class CompatibleCorrector {
         }
 
         public Vertex intersection(Line l) {
-            double x = (l.b - this.b) / (this.a - l.a);
+            double x = intersectionX(l);
             double y = this.a * x + this.b;
             return new Vertex(x, y);
         }
+
+        public double intersectionX(Line l) {
+            return (l.b - this.b) / (this.a - l.a);
+        }
     }
 }
@@ -0,0 +1,1201 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.network.draw;
+
+import uk.ac.uea.cmp.spectre.core.ds.Identifier;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.network.Edge;
+import uk.ac.uea.cmp.spectre.core.ds.network.Vertex;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Computes the split network for a flat split system given as a permutation sequence.  This does the same as
+ * {@link PermutationSequenceDraw#computeSplitGraph(java.util.TreeSet[])} followed by
+ * {@link PermutationSequenceDraw#removeCompatibleBoxes(Vertex, boolean, java.util.TreeSet[])}, but vertices and edges
+ * are ids into primitive arrays rather than objects.  Coordinates, edge endpoints, split indices and timestamps are
+ * held in flat arrays, the edges around each vertex in a small list of edge ids, and the edges of each split in an
+ * array indexed by timestamp, which takes the place of the tree sets.  The network is converted into {@link Vertex}
+ * and {@link Edge} objects only once all the compatible boxes have been removed, and is identical to the one
+ * produced by the object based methods for the same permutation sequence.  Like those methods, it draws the sequence
+ * as it is, so the weights of the trivial splits should already have been restored, as
+ * {@link PermutationSequenceDraw#drawSplitSystem(double)} does.
+ */
+public class FastSplitGraph {
+
+    private static final int NONE = -1;
+
+    private final PermutationSequenceDraw psequ;
+    private final SplitSystemDraw ssyst;
+
+    // Vertices
+    private int nbVertices;
+    private double[] x;
+    private double[] y;
+    private IntList[] edgeLists;
+    private IdentifierList[] taxa;
+
+    // Edges
+    private int nbEdges;
+    private int[] top;
+    private int[] bottom;
+    private int[] splitIndex;
+    private int[] timestp;
+
+    // Edges representing each split, indexed by timestamp, along with the number of edges and bounds on the lowest
+    // and highest timestamps in use
+    private final int[][] splitEdges;
+    private final int[] splitSize;
+    private final int[] splitLow;
+    private final int[] splitHigh;
+
+    // The 1-side of each split as a bit set, used to check pairs of splits for compatibility a word at a time
+    private final long[][] splitBits;
+
+    // Scratch flags over split indices
+    private final boolean[] splitMarks;
+
+    /**
+     * Creates a new split graph for the active splits in the given permutation sequence
+     * @param psequ Permutation sequence representing a flat split system
+     */
+    public FastSplitGraph(PermutationSequenceDraw psequ) {
+
+        this.psequ = psequ;
+        this.ssyst = new SplitSystemDraw(psequ);
+
+        final int capacity = 4 * psequ.getnActive() + 16;
+
+        this.nbVertices = 0;
+        this.x = new double[capacity];
+        this.y = new double[capacity];
+        this.edgeLists = new IntList[capacity];
+        this.taxa = new IdentifierList[capacity];
+
+        this.nbEdges = 0;
+        this.top = new int[capacity];
+        this.bottom = new int[capacity];
+        this.splitIndex = new int[capacity];
+        this.timestp = new int[capacity];
+
+        final int nswaps = psequ.getNswaps();
+        this.splitEdges = new int[nswaps][];
+        this.splitSize = new int[nswaps];
+        this.splitLow = new int[nswaps];
+        this.splitHigh = new int[nswaps];
+        this.splitBits = new long[nswaps][];
+        this.splitMarks = new boolean[nswaps];
+    }
+
+    /**
+     * Computes the split graph for the permutation sequence and removes all boxes formed by pairs of compatible
+     * splits, so that the resulting split network is minimal.  As with the object based methods, the taxa classes in
+     * the permutation sequence are updated along the way.
+     * @return Split network represented by a single vertex.  The network can be traversed from this vertex.
+     */
+    public Vertex draw() {
+
+        int v = this.computeSplitGraph();
+
+        v = this.removeCompatibleBoxes(v);
+
+        return this.toVertex(v);
+    }
+
+
+    // ***********************
+    // *** Split graph ***
+    // ***********************
+
+    private int computeSplitGraph() {
+        //Compute the leftmost edges in the network.
+        //This also initializes the sets of edges
+        //associated to each split.
+        int[] chain = this.leftmostEdges();
+
+        //Complete the network and return it
+        return this.completeNetwork(chain);
+    }
+
+    private int[] leftmostEdges() {
+
+        final int nActive = this.psequ.getnActive();
+        final boolean[] active = this.psequ.getActive();
+        final double[] weights = this.psequ.getWeights();
+
+        int j = 0;
+        double xcoord = 0.0;
+        double ycoord = 0.0;
+
+        int[] chain = new int[nActive];
+
+        int u = this.newVertex(xcoord, ycoord);
+
+        for (int i = 0; i < this.psequ.getNswaps(); i++) {
+            if (active[i]) {
+                double dx = -Math.cos(((j + 1) * Math.PI) / (nActive + 1));
+                double dy = -Math.sin(((j + 1) * Math.PI) / (nActive + 1));
+
+                xcoord = xcoord + (weights[i] * dx);
+                ycoord = ycoord + (weights[i] * dy);
+
+                int v = u;
+                u = this.newVertex(xcoord, ycoord);
+                int e = this.newEdge(v, u, i, 1);
+                this.addToSplit(i, e);
+                chain[j] = e;
+                this.edgeLists[v].addFirst(e);
+                this.edgeLists[u].addLast(e);
+                j++;
+            }
+        }
+
+        return chain;
+    }
+
+    private int completeNetwork(int[] chain) {
+
+        final int[][] splits = this.ssyst.splits;
+        final String[] taxaname = this.psequ.getTaxaname();
+
+        // Side of the split for each edge in the chain that the current taxon lies on
+        final int[] side = new int[chain.length];
+
+        int v = NONE;
+        for (int i = 0; i < this.psequ.getNbTaxa(); i++) {
+
+            final int initSequI = this.psequ.getInitSequ()[i];
+
+            for (int j = 0; j < chain.length; j++) {
+                side[j] = splits[this.splitIndex[chain[j]]][initSequI];
+            }
+
+            // Invert neighbouring edges until all the splits with the taxon on their 1-side come first.  Nothing can
+            // be inverted before the first 0 or after the last 1, so each pass only needs to look between the two.
+            int first0 = 0;
+            int last1 = chain.length - 1;
+            while (true) {
+                while (first0 < chain.length && side[first0] == 1) {
+                    first0++;
+                }
+                while (last1 >= 0 && side[last1] == 0) {
+                    last1--;
+                }
+                if (first0 >= last1) {
+                    break;
+                }
+
+                for (int j = first0 + 1; j <= last1; j++) {
+                    if (side[j - 1] == 0 && side[j] == 1) {
+                        final int cp = chain[j - 1];
+                        final int cj = chain[j];
+
+                        double dx = this.x[this.bottom[cj]] - this.x[this.top[cj]];
+                        double dy = this.y[this.bottom[cj]] - this.y[this.top[cj]];
+
+                        v = this.newVertex(this.x[this.top[cp]] + dx, this.y[this.top[cp]] + dy);
+                        int e1 = this.newEdge(this.top[cp], v, this.splitIndex[cj], this.timestp[cj] + 1);
+                        this.addToSplit(this.splitIndex[e1], e1);
+                        int e2 = this.newEdge(v, this.bottom[cj], this.splitIndex[cp], this.timestp[cp] + 1);
+                        this.addToSplit(this.splitIndex[e2], e2);
+                        chain[j - 1] = e1;
+                        chain[j] = e2;
+                        side[j - 1] = 1;
+                        side[j] = 0;
+                        this.edgeLists[v].addFirst(e2);
+                        this.edgeLists[v].addLast(e1);
+                        this.edgeLists[this.top[e1]].addFirst(e1);
+                        this.edgeLists[this.bottom[e2]].addLast(e2);
+                    }
+                }
+            }
+
+            //Now it remains to find the vertex that should be
+            //labeled by taxon i
+
+            if (chain.length == 0) {
+                if (v == NONE) {
+                    v = this.newVertex(0.0, 0.0);
+                }
+                this.getTaxa(v).add(new Identifier(taxaname[initSequI], initSequI));
+                this.psequ.setRepresentedByAt(initSequI, 0);
+                if (initSequI != 0) {
+                    this.psequ.setActiveTaxaAt(initSequI, false);
+                }
+                this.psequ.setNClasses(1);
+            } else {
+                v = this.top[chain[0]];
+                for (int j = 0; j < chain.length; j++) {
+                    if (side[j] == 0) {
+                        this.addTaxon(this.top[chain[j]], initSequI, taxaname[initSequI]);
+                        break;
+                    } else if (j == (chain.length - 1)) {
+                        this.addTaxon(this.bottom[chain[j]], initSequI, taxaname[initSequI]);
+                    }
+                }
+            }
+        }
+        return v;
+    }
+
+    private void addTaxon(int v, int taxon, String name) {
+        IdentifierList vertexTaxa = this.getTaxa(v);
+        vertexTaxa.add(new Identifier(name, taxon));
+        if (vertexTaxa.size() > 1) {
+            this.psequ.setRepresentedByAt(taxon, vertexTaxa.getFirst().getId());
+            this.psequ.setActiveTaxaAt(taxon, false);
+            this.psequ.decrementNClasses();
+        }
+    }
+
+
+    // ***********************
+    // *** Box removal ***
+    // ***********************
+
+    private int removeCompatibleBoxes(int v) {
+
+        final boolean[] active = this.psequ.getActive();
+        final int nswaps = this.psequ.getNswaps();
+
+        int u = v;
+
+        //check all pairs of active splits
+        for (int i = 0; i < (nswaps - 1); i++) {
+            if (active[i]) {
+                for (int j = i + 1; j < nswaps; j++) {
+                    if (active[j]) {
+                        SplitSystemDraw.Compatible pattern = this.isCompatible(i, j);
+                        if (pattern.isCompatible()) {
+                            u = this.removeBox(u, i, j, pattern);
+                        }
+                    }
+                }
+            }
+        }
+
+        return u;
+    }
+
+    /**
+     * Checks whether two splits are compatible in the same way as {@link SplitSystemDraw#isCompatible(int, int)}, but
+     * a word of taxa at a time.
+     */
+    private SplitSystemDraw.Compatible isCompatible(int a, int b) {
+
+        final long[] sa = this.getSplitBits(a);
+        final long[] sb = this.getSplitBits(b);
+        final int ntaxa = this.ssyst.ntaxa;
+
+        boolean found11 = false;
+        boolean found10 = false;
+        boolean found01 = false;
+        boolean found00 = false;
+
+        for (int w = 0; w < sa.length; w++) {
+            final long mask = w == sa.length - 1 && (ntaxa & 63) != 0 ? (1L << (ntaxa & 63)) - 1 : -1L;
+            found11 |= (sa[w] & sb[w]) != 0;
+            found10 |= (sa[w] & ~sb[w]) != 0;
+            found01 |= (~sa[w] & sb[w]) != 0;
+            found00 |= (~sa[w] & ~sb[w] & mask) != 0;
+        }
+
+        if (!found11) {
+            return SplitSystemDraw.Compatible.YES_11;
+        } else if (!found10) {
+            return SplitSystemDraw.Compatible.YES_10;
+        } else if (!found01) {
+            return SplitSystemDraw.Compatible.YES_01;
+        } else if (!found00) {
+            return SplitSystemDraw.Compatible.YES_00;
+        } else {
+            return SplitSystemDraw.Compatible.NO;
+        }
+    }
+
+    private long[] getSplitBits(int s) {
+        if (this.splitBits[s] == null) {
+            final int[] split = this.ssyst.splits[s];
+            final long[] bits = new long[(split.length + 63) >>> 6];
+            for (int i = 0; i < split.length; i++) {
+                if (split[i] == 1) {
+                    bits[i >>> 6] |= 1L << (i & 63);
+                }
+            }
+            this.splitBits[s] = bits;
+        }
+        return this.splitBits[s];
+    }
+
+    private int removeBox(int net, int a, int b, SplitSystemDraw.Compatible pattern) {
+
+        //check if a and b form a box in the network
+        int[] netbox = this.formBox(a, b);
+        if (netbox != null) {
+
+            // Regenerate the network without the box
+            int v = this.removeBoxByFlipping(a, b, pattern, netbox);
+
+            if (v == NONE) {
+                throw new IllegalStateException("Got a null vertex back");
+            }
+
+            return v;
+        }
+
+        // Otherwise just return the same network that was passed in
+        return net;
+    }
+
+    /**
+     * Looks for a box formed by two splits, as {@link NetworkBox#formBox(int, int, java.util.TreeSet[])} does
+     * @return The edges e1, e2, f1 and f2 of the box, or null if there is no box
+     */
+    private int[] formBox(int a, int b) {
+
+        final int h = this.last(a);
+        final int[] edges = this.splitEdges[a];
+
+        for (int t = this.splitLow[a]; t <= this.splitHigh[a]; t++) {
+            final int e1 = edges[t];
+            if (e1 != NONE && e1 != h) {
+
+                final int f1 = this.previousEdge(this.top[e1], e1);
+                final int f2 = this.nextEdge(this.bottom[e1], e1);
+
+                if (this.splitIndex[f1] == b) {
+                    return new int[]{e1, this.higher(a, t), f1, f2};
+                }
+            }
+        }
+        return null;
+    }
+
+    private int removeBoxByFlipping(int a, int b, SplitSystemDraw.Compatible pattern, int[] netbox) {
+
+        //direction for splits a and b
+        PermutationSequenceDraw.Direction dira = null;
+        PermutationSequenceDraw.Direction dirb = null;
+        int parta = 0;
+        int partb = 0;
+
+        //determine direction in which we collect edges
+        if (this.timestp[netbox[2]] < this.timestp[netbox[3]]) {
+            if (pattern == SplitSystemDraw.Compatible.YES_11) {
+                dira = PermutationSequenceDraw.Direction.LEFT;
+                dirb = PermutationSequenceDraw.Direction.RIGHT;
+                parta = 1;
+                partb = 1;
+            } else if (pattern == SplitSystemDraw.Compatible.YES_10) {
+                dira = PermutationSequenceDraw.Direction.RIGHT;
+                dirb = PermutationSequenceDraw.Direction.RIGHT;
+                parta = 1;
+                partb = 0;
+            } else if (pattern == SplitSystemDraw.Compatible.YES_01) {
+                dira = PermutationSequenceDraw.Direction.LEFT;
+                dirb = PermutationSequenceDraw.Direction.LEFT;
+                parta = 0;
+                partb = 1;
+            } else if (pattern == SplitSystemDraw.Compatible.YES_00) {
+                dira = PermutationSequenceDraw.Direction.RIGHT;
+                dirb = PermutationSequenceDraw.Direction.LEFT;
+                parta = 0;
+                partb = 0;
+            }
+        } else {
+            if (pattern == SplitSystemDraw.Compatible.YES_11) {
+                dira = PermutationSequenceDraw.Direction.RIGHT;
+                dirb = PermutationSequenceDraw.Direction.LEFT;
+                parta = 1;
+                partb = 1;
+            } else if (pattern == SplitSystemDraw.Compatible.YES_10) {
+                dira = PermutationSequenceDraw.Direction.LEFT;
+                dirb = PermutationSequenceDraw.Direction.LEFT;
+                parta = 1;
+                partb = 0;
+            } else if (pattern == SplitSystemDraw.Compatible.YES_01) {
+                dira = PermutationSequenceDraw.Direction.RIGHT;
+                dirb = PermutationSequenceDraw.Direction.RIGHT;
+                parta = 0;
+                partb = 1;
+            } else if (pattern == SplitSystemDraw.Compatible.YES_00) {
+                dira = PermutationSequenceDraw.Direction.LEFT;
+                dirb = PermutationSequenceDraw.Direction.RIGHT;
+                parta = 0;
+                partb = 0;
+            }
+        }
+
+        //now collect edges
+        IntList elista = new IntList();
+        IntList crossa = new IntList();
+        this.collectEdgesFromBox(netbox[0], netbox[1], a, dira, parta, elista, crossa);
+        IntList elistb = new IntList();
+        IntList crossb = new IntList();
+        this.collectEdgesFromBox(netbox[2], netbox[3], b, dirb, partb, elistb, crossb);
+
+        //find splits that cross a and b
+        IntList crossboth = this.findCrossBoth(crossa, crossb, b);
+
+        //Temporary list used when clearing a triangle
+        IntList cleanlist = new IntList();
+
+        while (crossboth.size() > 1) {
+            //Need to get rid of the splits that cross a and b
+            //First find a triangle
+            int s = this.findTriangle(a, crossboth, cleanlist);
+            this.getRidOfTriangle(a, b, s, dira, parta, crossboth, cleanlist, elista, elistb);
+        }
+
+        //now simply cut off the unnecessary part of the network
+        return this.cutOffUnnecessaryPart(a, b, elista, elistb, dira, dirb, parta, partb);
+    }
+
+    private void collectEdgesFromBox(int h1, int h2, int s, PermutationSequenceDraw.Direction dirs, int parts,
+                                     IntList eList, IntList crossList) {
+
+        final int stopstp;
+        if (this.timestp[h1] < this.timestp[h2]) {
+            stopstp = dirs == PermutationSequenceDraw.Direction.LEFT ? this.timestp[h2] : this.timestp[h1];
+        } else {
+            stopstp = dirs == PermutationSequenceDraw.Direction.LEFT ? this.timestp[h1] : this.timestp[h2];
+        }
+
+        final int[] edges = this.splitEdges[s];
+
+        if (dirs == PermutationSequenceDraw.Direction.LEFT) {
+            // Collected in increasing order of timestamp, then reversed, as the edges are prepended to the lists
+            for (int t = this.splitLow[s]; t <= this.splitHigh[s] && t < stopstp; t++) {
+                final int g = edges[t];
+                if (g != NONE) {
+                    eList.addLast(g);
+                    if (parts == 1) {
+                        crossList.addLast(this.previousEdge(this.top[g], g));
+                    } else {
+                        crossList.addLast(this.nextEdge(this.bottom[g], g));
+                    }
+                }
+            }
+            eList.reverse();
+            crossList.reverse();
+        } else {
+            for (int t = Math.max(this.splitLow[s], stopstp + 1); t <= this.splitHigh[s]; t++) {
+                final int g = edges[t];
+                if (g != NONE) {
+                    eList.addLast(g);
+                    if (parts == 1) {
+                        crossList.addLast(this.nextEdge(this.top[g], g));
+                    } else {
+                        crossList.addLast(this.previousEdge(this.bottom[g], g));
+                    }
+                }
+            }
+        }
+    }
+
+    private IntList findCrossBoth(IntList crosslista, IntList crosslistb, int b) {
+
+        IntList crossboth = new IntList();
+
+        for (int i = 0; i < crosslistb.size(); i++) {
+            this.splitMarks[this.splitIndex[crosslistb.get(i)]] = true;
+        }
+
+        for (int i = 0; i < crosslista.size(); i++) {
+            final int e = crosslista.get(i);
+            if (this.splitIndex[e] == b || this.splitMarks[this.splitIndex[e]]) {
+                crossboth.addLast(e);
+            }
+        }
+
+        for (int i = 0; i < crosslistb.size(); i++) {
+            this.splitMarks[this.splitIndex[crosslistb.get(i)]] = false;
+        }
+
+        return crossboth;
+    }
+
+    private int findTriangle(int a, IntList crossboth, IntList cleanlist) {
+
+        cleanlist.clear();
+
+        for (int i = 0; i < crossboth.size(); i++) {
+            this.splitMarks[this.splitIndex[crossboth.get(i)]] = true;
+        }
+
+        IntList liste = new IntList();
+        IntList listf = new IntList();
+
+        int e = crossboth.getFirst();
+
+        for (int i = 1; i < crossboth.size(); i++) {
+            int f = crossboth.get(i);
+
+            liste.clear();
+            listf.clear();
+
+            int indexe = this.goToFirstCrossing(e, a, liste);
+            int indexf = this.goToFirstCrossing(f, a, listf);
+
+            //triangle found?
+            if ((indexe == this.splitIndex[f]) && (indexf == this.splitIndex[e])) {
+                cleanlist.addAll(listf);
+                break;
+            } else {
+                e = f;
+            }
+        }
+
+        for (int i = 0; i < crossboth.size(); i++) {
+            this.splitMarks[this.splitIndex[crossboth.get(i)]] = false;
+        }
+
+        return this.splitIndex[e];
+    }
+
+    /**
+     * Walks through the network to the first crossing with one of the splits currently marked
+     */
+    private int goToFirstCrossing(int e, int a, IntList liste) {
+
+        final int s = this.splitIndex[e];
+        final int[] edges = this.splitEdges[s];
+
+        //first check in which direction we need to go
+        final boolean right = this.tailSize(s, this.timestp[e]) != 1 &&
+                a == this.splitIndex[this.nextEdge(this.bottom[e], e)];
+
+        if (right) {
+            boolean first = true;
+            for (int t = Math.max(this.splitLow[s], this.timestp[e]); t <= this.splitHigh[s]; t++) {
+                final int f = edges[t];
+                if (f != NONE) {
+                    if (first) {
+                        first = false;
+                        continue;
+                    }
+                    final int sidx = this.splitIndex[this.nextEdge(this.top[f], f)];
+                    if (this.splitMarks[sidx]) {
+                        return sidx;
+                    } else {
+                        liste.addLast(f);
+                    }
+                }
+            }
+        } else {
+            for (int t = Math.min(this.splitHigh[s], this.timestp[e] - 1); t >= this.splitLow[s]; t--) {
+                final int f = edges[t];
+                if (f != NONE) {
+                    final int sidx = this.splitIndex[this.nextEdge(this.bottom[f], f)];
+                    if (this.splitMarks[sidx]) {
+                        return sidx;
+                    } else {
+                        liste.addLast(f);
+                    }
+                }
+            }
+        }
+
+        // Something's wrong! :(
+        throw new IllegalStateException("Did not find a first crossing");
+    }
+
+    private void getRidOfTriangle(int a, int b, int s, PermutationSequenceDraw.Direction dira, int parta,
+                                  IntList crossboth, IntList cleanlist, IntList elista, IntList elistb) {
+
+        final int e = cleanlist.getFirst();
+
+        //first check in which direction we need to go
+        final PermutationSequenceDraw.Direction dire;
+        if (this.tailSize(this.splitIndex[e], this.timestp[e]) == 1) {
+            dire = PermutationSequenceDraw.Direction.RIGHT;
+        } else if (a == this.splitIndex[this.nextEdge(this.bottom[e], e)]) {
+            dire = PermutationSequenceDraw.Direction.LEFT;
+        } else {
+            dire = PermutationSequenceDraw.Direction.RIGHT;
+        }
+
+        PermutationSequenceDraw.Flip flipDir = PermutationSequenceDraw.flipDirection(parta, dira, dire);
+
+        while (!cleanlist.isEmpty()) {
+            this.findFlippableCubeInTriangle(cleanlist, crossboth, flipDir, a, b, s, parta, dira, elista, elistb);
+        }
+    }
+
+    private void findFlippableCubeInTriangle(IntList elist, IntList crossboth, PermutationSequenceDraw.Flip flipdir,
+                                             int a, int b, int s, int parta, PermutationSequenceDraw.Direction dira,
+                                             IntList elista, IntList elistb) {
+        if (elist.isEmpty()) {
+            throw new IllegalArgumentException("List of flip edges is empty");
+        }
+
+        final boolean up = flipdir == PermutationSequenceDraw.Flip.UP;
+
+        int e = NONE;
+        int e1 = NONE;
+        int e2 = NONE;
+        int e3 = NONE;
+        int e4 = NONE;
+        int e5 = NONE;
+        int e6 = NONE;
+        int e7 = NONE;
+        int e8 = NONE;
+        int v = NONE;
+        int v1 = NONE;
+        int v2 = NONE;
+        int v3 = NONE;
+        int v5 = NONE;
+        int v6 = NONE;
+        int v8 = NONE;
+
+        //find a flippable cube
+        for (int i = 0; i < elist.size(); i++) {
+            e = elist.get(i);
+            v = up ? this.top[e] : this.bottom[e];
+            final IntList vEdges = this.edgeLists[v];
+            if (vEdges.size() == 3) {
+                e1 = vEdges.get((vEdges.indexOf(e) + 2) % 3);
+                e2 = vEdges.get((vEdges.indexOf(e) + 1) % 3);
+                v5 = up ? this.bottom[e] : this.top[e];
+                v1 = this.opposite(e2, v);
+                v3 = this.opposite(e1, v);
+                e3 = this.nextEdge(v3, e1);
+                e4 = this.previousEdge(v1, e2);
+                e5 = this.nextEdge(v1, e2);
+                e6 = this.previousEdge(v5, e);
+                e7 = this.nextEdge(v5, e);
+                e8 = this.previousEdge(v3, e1);
+                v2 = this.opposite(e4, v1);
+                final int v4 = this.opposite(e3, v3);
+                v6 = this.opposite(e8, v3);
+                final int v7 = this.opposite(e7, v5);
+                v8 = this.opposite(e6, v5);
+                final int v9 = this.opposite(e5, v1);
+                if ((v2 == v4)
+                        && (v6 == v7)
+                        && (v8 == v9)
+                        && (this.splitIndex[e] == this.splitIndex[e5])
+                        && (this.splitIndex[e] == this.splitIndex[e8])
+                        && (this.splitIndex[e2] == this.splitIndex[e3])
+                        && (this.splitIndex[e2] == this.splitIndex[e6])
+                        && (this.splitIndex[e1] == this.splitIndex[e4])
+                        && (this.splitIndex[e1] == this.splitIndex[e7])) {
+                    break;
+                }
+            }
+        }
+
+        //flip cube
+        this.edgeLists[v1].remove(e2);
+        this.edgeLists[v3].remove(e1);
+        this.edgeLists[v5].remove(e);
+        this.edgeLists[v].clear();
+        this.x[v] = this.x[v2] + (this.x[v5] - this.x[v]);
+        this.y[v] = this.y[v2] + (this.y[v5] - this.y[v]);
+        final int h1 = v8 == this.top[e6] ?
+                this.newEdge(v, v6, this.splitIndex[e6], this.timestp[e2]) :
+                this.newEdge(v6, v, this.splitIndex[e6], this.timestp[e2]);
+        this.edgeLists[v6].add(this.edgeLists[v6].indexOf(e7) + 1, h1);
+        this.edgeLists[v].addLast(h1);
+        final int h2 = v6 == this.top[e7] ?
+                this.newEdge(v, v8, this.splitIndex[e7], this.timestp[e1]) :
+                this.newEdge(v8, v, this.splitIndex[e7], this.timestp[e1]);
+        this.edgeLists[v8].add(this.edgeLists[v8].indexOf(e5) + 1, h2);
+        this.edgeLists[v].addLast(h2);
+        final int h3 = up ?
+                this.newEdge(v2, v, this.splitIndex[e], this.timestp[e]) :
+                this.newEdge(v, v2, this.splitIndex[e], this.timestp[e]);
+        this.edgeLists[v2].add(this.edgeLists[v2].indexOf(e3) + 1, h3);
+        this.edgeLists[v].addLast(h3);
+
+        //update lists of edges accordingly
+        this.removeFromSplit(this.splitIndex[e], e);
+        this.addToSplit(this.splitIndex[e], h3);
+        this.removeFromSplit(this.splitIndex[e2], e2);
+        this.addToSplit(this.splitIndex[e2], h1);
+        this.removeFromSplit(this.splitIndex[e1], e1);
+        this.addToSplit(this.splitIndex[e1], h2);
+
+        // The lists are updated in one of two mirror images of each other, depending on which side of split a the
+        // quadrant being cleared is on and which way we are going along it
+        final boolean mirrored = (parta == 1) != (dira == PermutationSequenceDraw.Direction.LEFT);
+        final int crossA = this.splitIndex[mirrored ? e7 : e6];
+        final int crossS = this.splitIndex[mirrored ? e6 : e7];
+        final int c1 = mirrored ? e8 : e5;
+        final int c2 = mirrored ? e3 : e4;
+        final int oldA = mirrored ? e1 : e2;
+        final int newA = mirrored ? h2 : h1;
+        final int oldB = mirrored ? e2 : e1;
+        final int newB = mirrored ? h1 : h2;
+
+        elist.add(elist.indexOf(e) + 1, h3);
+        elist.remove(e);
+
+        if ((crossA == a) && (crossS != s)) {
+            elist.removeFirst();
+            crossboth.add(crossboth.indexOf(c1) + 1, h3);
+            crossboth.remove(c1);
+            elista.add(elista.indexOf(oldA) + 1, newA);
+            elista.remove(oldA);
+        } else if ((crossA == a) && (s == b)) {
+            elist.removeFirst();
+            crossboth.remove(c1);
+            crossboth.add(crossboth.indexOf(c2) + 1, newB);
+            crossboth.remove(c2);
+            elista.remove(oldA);
+            elistb.remove(oldB);
+        } else if (crossA == a) {
+            elist.removeFirst();
+            crossboth.add(crossboth.indexOf(c2) + 1, h3);
+            crossboth.remove(c2);
+            crossboth.add(crossboth.indexOf(c1) + 1, newB);
+            crossboth.remove(c1);
+            elista.add(elista.indexOf(oldA) + 1, newA);
+            elista.remove(oldA);
+        } else if ((crossS == s) && (s == b)) {
+            elist.removeLast();
+            elistb.add(elistb.indexOf(oldB) + 1, newB);
+            elistb.remove(oldB);
+        } else if (crossS == s) {
+            elist.removeLast();
+        }
+    }
+
+    private int cutOffUnnecessaryPart(int a, int b, IntList elista, IntList elistb,
+                                      PermutationSequenceDraw.Direction dira, PermutationSequenceDraw.Direction dirb,
+                                      int parta, int partb) {
+        int u = NONE;
+
+        final int e = elista.getFirst();
+
+        //first eliminate the edges that correspond to splits that cross a
+        this.removeCrossingEdges(e, dira, parta);
+
+        final int f = elistb.getFirst();
+
+        //next eliminate edges that correspond to splits that cross b
+        this.removeCrossingEdges(f, dirb, partb);
+
+        //now it remains to update the lists of edges for splits a and b
+        if (dira == PermutationSequenceDraw.Direction.LEFT) {
+            while (true) {
+                final int g = this.first(a);
+                if (this.timestp[g] <= this.timestp[e]) {
+                    this.removeFromSplit(a, g);
+                    u = parta == 1 ? this.top[g] : this.bottom[g];
+                    this.edgeLists[u].remove(g);
+                } else {
+                    break;
+                }
+            }
+        } else {
+            while (true) {
+                final int g = this.last(a);
+                if (this.timestp[g] >= this.timestp[e]) {
+                    this.removeFromSplit(a, g);
+                    u = parta == 1 ? this.top[g] : this.bottom[g];
+                    this.edgeLists[u].remove(g);
+                } else {
+                    break;
+                }
+            }
+        }
+
+        if (dirb == PermutationSequenceDraw.Direction.LEFT) {
+            while (true) {
+                final int g = this.first(b);
+                if (this.timestp[g] <= this.timestp[f]) {
+                    this.removeFromSplit(b, g);
+                    this.edgeLists[partb == 1 ? this.top[g] : this.bottom[g]].remove(g);
+                } else {
+                    break;
+                }
+            }
+        } else {
+            while (true) {
+                final int g = this.last(b);
+                if (this.timestp[g] >= this.timestp[f]) {
+                    this.edgeLists[partb == 1 ? this.top[g] : this.bottom[g]].remove(g);
+                    this.removeFromSplit(b, g);
+                } else {
+                    break;
+                }
+            }
+        }
+
+        return u;
+    }
+
+    /**
+     * Removes the edges of the splits that cross the split of the given edge on the side being cut off
+     */
+    private void removeCrossingEdges(int e, PermutationSequenceDraw.Direction dir, int part) {
+
+        final int s = this.splitIndex[e];
+        final int[] edges = this.splitEdges[s];
+
+        if (dir == PermutationSequenceDraw.Direction.LEFT) {
+            for (int t = this.splitLow[s]; t <= this.splitHigh[s] && t < this.timestp[e]; t++) {
+                final int h = edges[t];
+                if (h != NONE) {
+                    this.trimSplit(this.previousEdge(this.top[h], h), this.nextEdge(this.bottom[h], h), part);
+                }
+            }
+        } else {
+            boolean first = true;
+            for (int t = Math.max(this.splitLow[s], this.timestp[e]); t <= this.splitHigh[s]; t++) {
+                final int h = edges[t];
+                if (h != NONE) {
+                    if (first) {
+                        first = false;
+                        continue;
+                    }
+                    this.trimSplit(this.nextEdge(this.top[h], h), this.previousEdge(this.bottom[h], h), part);
+                }
+            }
+        }
+    }
+
+    private void trimSplit(int g1, int g2, int part) {
+
+        if ((part == 1) && (this.timestp[g1] < this.timestp[g2])) {
+            final int s = this.splitIndex[g1];
+            while (this.timestp[this.last(s)] > this.timestp[g1]) {
+                this.removeFromSplit(s, this.last(s));
+            }
+        } else if ((part == 1) && (this.timestp[g1] > this.timestp[g2])) {
+            final int s = this.splitIndex[g1];
+            while (this.timestp[this.first(s)] < this.timestp[g1]) {
+                this.removeFromSplit(s, this.first(s));
+            }
+        } else if ((part == 0) && (this.timestp[g1] < this.timestp[g2])) {
+            final int s = this.splitIndex[g2];
+            while (this.timestp[this.first(s)] < this.timestp[g2]) {
+                this.removeFromSplit(s, this.first(s));
+            }
+        } else if ((part == 0) && (this.timestp[g1] > this.timestp[g2])) {
+            final int s = this.splitIndex[g2];
+            while (this.timestp[this.last(s)] > this.timestp[g2]) {
+                this.removeFromSplit(s, this.last(s));
+            }
+        }
+    }
+
+
+    // ***********************
+    // *** Conversion ***
+    // ***********************
+
+    /**
+     * Creates vertex and edge objects for the part of the network that can be reached from the given vertex
+     */
+    private Vertex toVertex(int start) {
+
+        final Vertex[] vertices = new Vertex[this.nbVertices];
+        final Edge[] edges = new Edge[this.nbEdges];
+
+        final IntList toBeExplored = new IntList();
+        vertices[start] = this.createVertex(start);
+        toBeExplored.addLast(start);
+
+        for (int i = 0; i < toBeExplored.size(); i++) {
+            final int v = toBeExplored.get(i);
+            final IntList vEdges = this.edgeLists[v];
+            for (int j = 0; j < vEdges.size(); j++) {
+                final int e = vEdges.get(j);
+                if (edges[e] == null) {
+                    for (int w : new int[]{this.top[e], this.bottom[e]}) {
+                        if (vertices[w] == null) {
+                            vertices[w] = this.createVertex(w);
+                            toBeExplored.addLast(w);
+                        }
+                    }
+                    edges[e] = new Edge(vertices[this.top[e]], vertices[this.bottom[e]], this.splitIndex[e], this.timestp[e]);
+                }
+                vertices[v].appendEdge(edges[e]);
+            }
+        }
+
+        return vertices[start];
+    }
+
+    private Vertex createVertex(int v) {
+        Vertex vertex = new Vertex(this.x[v], this.y[v]);
+        if (this.taxa[v] != null) {
+            vertex.setTaxa(this.taxa[v]);
+        }
+        return vertex;
+    }
+
+
+    // ***********************
+    // *** Storage ***
+    // ***********************
+
+    private int newVertex(double xcoord, double ycoord) {
+        if (this.nbVertices == this.x.length) {
+            final int capacity = this.x.length * 2;
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.edgeLists = Arrays.copyOf(this.edgeLists, capacity);
+            this.taxa = Arrays.copyOf(this.taxa, capacity);
+        }
+        final int v = this.nbVertices++;
+        this.x[v] = xcoord;
+        this.y[v] = ycoord;
+        this.edgeLists[v] = new IntList();
+        return v;
+    }
+
+    private IdentifierList getTaxa(int v) {
+        if (this.taxa[v] == null) {
+            this.taxa[v] = new IdentifierList();
+        }
+        return this.taxa[v];
+    }
+
+    private int newEdge(int t, int b, int idx, int time) {
+        if (this.nbEdges == this.top.length) {
+            final int capacity = this.top.length * 2;
+            this.top = Arrays.copyOf(this.top, capacity);
+            this.bottom = Arrays.copyOf(this.bottom, capacity);
+            this.splitIndex = Arrays.copyOf(this.splitIndex, capacity);
+            this.timestp = Arrays.copyOf(this.timestp, capacity);
+        }
+        final int e = this.nbEdges++;
+        this.top[e] = t;
+        this.bottom[e] = b;
+        this.splitIndex[e] = idx;
+        this.timestp[e] = time;
+        return e;
+    }
+
+    private int opposite(int e, int v) {
+        return v == this.bottom[e] ? this.top[e] : this.bottom[e];
+    }
+
+    private int nextEdge(int v, int e) {
+        final IntList vEdges = this.edgeLists[v];
+        return vEdges.get((vEdges.indexOf(e) + 1) % vEdges.size());
+    }
+
+    private int previousEdge(int v, int e) {
+        final IntList vEdges = this.edgeLists[v];
+        return vEdges.get((vEdges.indexOf(e) + vEdges.size() - 1) % vEdges.size());
+    }
+
+    /**
+     * Adds an edge to the edges of a split, unless the split already has an edge with the same timestamp, in the same
+     * way as adding it to a tree set ordered by timestamp
+     */
+    private void addToSplit(int s, int e) {
+
+        final int t = this.timestp[e];
+
+        int[] edges = this.splitEdges[s];
+        if (edges == null || t >= edges.length) {
+            final int length = edges == null ? 0 : edges.length;
+            edges = edges == null ? new int[Math.max(4, t + 1)] : Arrays.copyOf(edges, Math.max(length * 2, t + 1));
+            Arrays.fill(edges, length, edges.length, NONE);
+            this.splitEdges[s] = edges;
+        }
+
+        if (edges[t] == NONE) {
+            edges[t] = e;
+            if (this.splitSize[s]++ == 0) {
+                this.splitLow[s] = t;
+                this.splitHigh[s] = t;
+            } else {
+                this.splitLow[s] = Math.min(this.splitLow[s], t);
+                this.splitHigh[s] = Math.max(this.splitHigh[s], t);
+            }
+        }
+    }
+
+    /**
+     * Removes the edge with the same timestamp as the given edge from the edges of a split, if there is one
+     */
+    private void removeFromSplit(int s, int e) {
+
+        final int t = this.timestp[e];
+        final int[] edges = this.splitEdges[s];
+
+        if (edges != null && t < edges.length && edges[t] != NONE) {
+            edges[t] = NONE;
+            this.splitSize[s]--;
+        }
+    }
+
+    private int first(int s) {
+        if (this.splitSize[s] == 0) {
+            throw new NoSuchElementException();
+        }
+        final int[] edges = this.splitEdges[s];
+        while (edges[this.splitLow[s]] == NONE) {
+            this.splitLow[s]++;
+        }
+        return edges[this.splitLow[s]];
+    }
+
+    private int last(int s) {
+        if (this.splitSize[s] == 0) {
+            throw new NoSuchElementException();
+        }
+        final int[] edges = this.splitEdges[s];
+        while (edges[this.splitHigh[s]] == NONE) {
+            this.splitHigh[s]--;
+        }
+        return edges[this.splitHigh[s]];
+    }
+
+    /**
+     * @return The edge of split s with the lowest timestamp above t
+     */
+    private int higher(int s, int t) {
+        final int[] edges = this.splitEdges[s];
+        for (int i = t + 1; i <= this.splitHigh[s]; i++) {
+            if (edges[i] != NONE) {
+                return edges[i];
+            }
+        }
+        throw new NoSuchElementException();
+    }
+
+    /**
+     * @return The number of edges of split s with a timestamp of at least t, counting no further than 2
+     */
+    private int tailSize(int s, int t) {
+        final int[] edges = this.splitEdges[s];
+        int count = 0;
+        for (int i = Math.max(this.splitLow[s], t); i <= this.splitHigh[s] && count < 2; i++) {
+            if (edges[i] != NONE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * Growable list of ints, used for the edges around a vertex and the edge lists built when removing a box.  Behaves
+     * like the linked lists used by the object based methods, including when inserting after an element which is not
+     * in the list.
+     */
+    private static final class IntList {
+
+        private int[] values;
+        private int size;
+
+        private IntList() {
+            this.values = new int[4];
+            this.size = 0;
+        }
+
+        private int size() {
+            return this.size;
+        }
+
+        private boolean isEmpty() {
+            return this.size == 0;
+        }
+
+        private int get(int index) {
+            if (index < 0 || index >= this.size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+            }
+            return this.values[index];
+        }
+
+        private int getFirst() {
+            if (this.size == 0) {
+                throw new NoSuchElementException();
+            }
+            return this.values[0];
+        }
+
+        private int indexOf(int value) {
+            for (int i = 0; i < this.size; i++) {
+                if (this.values[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void add(int index, int value) {
+            if (index < 0 || index > this.size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+            }
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            System.arraycopy(this.values, index, this.values, index + 1, this.size - index);
+            this.values[index] = value;
+            this.size++;
+        }
+
+        private void addFirst(int value) {
+            this.add(0, value);
+        }
+
+        private void addLast(int value) {
+            this.add(this.size, value);
+        }
+
+        private void addAll(IntList other) {
+            for (int i = 0; i < other.size; i++) {
+                this.addLast(other.values[i]);
+            }
+        }
+
+        private boolean remove(int value) {
+            final int index = this.indexOf(value);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(this.values, index + 1, this.values, index, this.size - index - 1);
+            this.size--;
+            return true;
+        }
+
+        private int removeFirst() {
+            final int value = this.getFirst();
+            System.arraycopy(this.values, 1, this.values, 0, this.size - 1);
+            this.size--;
+            return value;
+        }
+
+        private int removeLast() {
+            if (this.size == 0) {
+                throw new NoSuchElementException();
+            }
+            return this.values[--this.size];
+        }
+
+        private void clear() {
+            this.size = 0;
+        }
+
+        private void reverse() {
+            for (int i = 0, j = this.size - 1; i < j; i++, j--) {
+                final int tmp = this.values[i];
+                this.values[i] = this.values[j];
+                this.values[j] = tmp;
+            }
+        }
+    }
+}
@@ -204,12 +204,30 @@ public class PermutationSequenceDraw {
             cursequ[i] = initSequ[i];
         }
 
+        //index the splits in the input split system by a hash of each of their sides, so that the split represented by
+        //each swap can be looked up directly, rather than by comparing it with every split in the input
+        Map<Long, List<Split>> splitsBySide = new HashMap<>();
+        for (Split s : ss) {
+            SplitBlock ssba = s.getASide();
+            ssba.sort();
+            SplitBlock ssbb = s.getBSide();
+            ssbb.sort();
+            long hasha = hashSide(ssba);
+            long hashb = hashSide(ssbb);
+            addSplitBySide(splitsBySide, hasha, s);
+            if (hashb != hasha) {
+                addSplitBySide(splitsBySide, hashb, s);
+            }
+        }
+
         int h = 0;
         int k = 0;
         int a = 0;
 
         //the generic structure of a circular split system
         for (int i = 0; i < ntaxa; i++) {
+            //hash of the first j + 1 elements of the current permutation, which is one side of the split for swap j
+            long hash = 0;
             for (int j = 0; j < ntaxa - i - 1; j++) {
                 swaps[k] = j;
                 compressed[k] = k;
@@ -221,21 +239,24 @@ public class PermutationSequenceDraw {
                 cursequ[j] = cursequ[j + 1];
                 cursequ[j + 1] = h;
 
-                //get the split represented by this swap
-                int[] sideA = new int[j+1]; //get one side of the split as an int-array, the elements must be the ids according to the identifier list
-                for(a=0;a<=j;a++) {sideA[a]=cursequ[a]+1;}
-                SplitBlock ssb = new SpectreSplitBlock(sideA);
-                ssb.sort();
-
-                //next check whether the input split system contains a split with one SplitBlock equal to the one we just created
-                for (Split s : ss) {
-                    SplitBlock ssba = s.getASide();
-                    ssba.sort();
-                    SplitBlock ssbb = s.getBSide();
-                    ssbb.sort();
-                    if(ssba.equals(ssb) || ssbb.equals(ssb)){
-                        weights[k] = s.getWeight();
-                        if(weights[k] > 0) {active[k] = true;}
+                //the swap only moves elements j and j + 1, so the first j elements are the same as for the previous swap
+                hash += hashId(cursequ[j] + 1);
+
+                //next check whether the input split system may contain a split with one SplitBlock equal to the one
+                //represented by this swap
+                List<Split> matches = splitsBySide.get(hash);
+                if (matches != null) {
+                    //get the split represented by this swap
+                    int[] sideA = new int[j+1]; //get one side of the split as an int-array, the elements must be the ids according to the identifier list
+                    for(a=0;a<=j;a++) {sideA[a]=cursequ[a]+1;}
+                    SplitBlock ssb = new SpectreSplitBlock(sideA);
+                    ssb.sort();
+
+                    for (Split s : matches) {
+                        if(s.getASide().equals(ssb) || s.getBSide().equals(ssb)){
+                            weights[k] = s.getWeight();
+                            if(weights[k] > 0) {active[k] = true;}
+                        }
                     }
                 }
                 k++;
@@ -246,6 +267,34 @@ public class PermutationSequenceDraw {
         nActive = CollectionUtils.nbTrueElements(active);
     }
 
+    private static void addSplitBySide(Map<Long, List<Split>> splitsBySide, long hash, Split s) {
+        List<Split> splits = splitsBySide.get(hash);
+        if (splits == null) {
+            splits = new ArrayList<>();
+            splitsBySide.put(hash, splits);
+        }
+        splits.add(s);
+    }
+
+    /**
+     * Hashes a side of a split so that the hash does not depend on the order of the taxa, and can be updated one taxon
+     * at a time.  Different sides may have the same hash, so any matches must still be checked.
+     */
+    private static long hashSide(SplitBlock side) {
+        long hash = 0;
+        for (int i = 0; i < side.size(); i++) {
+            hash += hashId(side.get(i));
+        }
+        return hash;
+    }
+
+    private static long hashId(int id) {
+        long z = (id + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
 
     //***********************************
     // Getters
@@ -438,7 +487,7 @@ public class PermutationSequenceDraw {
 
     /**
      * This method is the main public method that should be called for computing a plane split network for a flat split
-     * system given as a permutation sequence.
+     * system given as a permutation sequence.  The network is computed by {@link FastSplitGraph}.
      * @param thr Threshold, below which splits are ignored
      * @return Split graph represented by a single vertex.  The network can be traversed from this vertex.
      */
@@ -447,14 +496,29 @@ public class PermutationSequenceDraw {
 
         this.removeSplitsSmallerOrEqualThan(thr);
 
+        return new FastSplitGraph(this).draw();
+    }
+
+    /**
+     * Computes the same network as {@link #drawSplitSystem(double)}, including restoring the weights of the trivial
+     * splits and removing splits below the threshold, but using {@link #computeSplitGraph(TreeSet[])} and
+     * {@link #removeCompatibleBoxes(Vertex, boolean, TreeSet[])}.  This is slower, and is kept as a reference for
+     * checking the results of {@link FastSplitGraph}.  Skipping the preprocessing steps gives a different network,
+     * as the trivial splits then have other weights and may not be active.
+     * @param thr Threshold, below which splits are ignored
+     * @return Split graph represented by a single vertex.  The network can be traversed from this vertex.
+     */
+    Vertex drawSplitSystemWithObjects(double thr) {
+        this.restoreTrivialWeightsForExternalVertices();
+
+        this.removeSplitsSmallerOrEqualThan(thr);
+
         //Array of sets of edges, one for each split
         TreeSet<Edge>[] splitedges = new TreeSet[this.getNswaps()];
 
         Vertex v = this.computeSplitGraph(splitedges);
 
-        v = this.removeCompatibleBoxes(v, false, splitedges);
-
-        return v;
+        return this.removeCompatibleBoxes(v, false, splitedges);
     }
 
 
@@ -533,10 +597,14 @@ public class PermutationSequenceDraw {
         TreeSet<Edge>[] splitedges = new TreeSet[this.getNswaps()];
 
         for (int i = 0; i < this.getActive().length; i++) {
-            LinkedList<Edge> edges = v.collectEdgesForSplit(i);
             splitedges[i] = new TreeSet<>();
-            for (int k = 0; k < edges.size(); k++) {
-                splitedges[i].add(edges.get(k));
+        }
+
+        // Traverse the network once and sort the edges by split, rather than traversing it once for each split
+        for (Edge e : v.getFirstEdge().collectEdges()) {
+            final int i = e.getSplitIndex();
+            if (i >= 0 && i < this.getActive().length) {
+                splitedges[i].add(e);
             }
         }
         return splitedges;
@@ -1144,7 +1212,7 @@ public class PermutationSequenceDraw {
         DOWN
     }
 
-    private static Flip flipDirection(int partA, Direction d, Direction e) {
+    static Flip flipDirection(int partA, Direction d, Direction e) {
         if (partA == 1) {
             if (d == Direction.LEFT) {
                 return e == Direction.LEFT ? Flip.DOWN : Flip.UP;
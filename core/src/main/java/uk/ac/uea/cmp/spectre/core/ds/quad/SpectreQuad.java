@@ -207,7 +207,7 @@ public class SpectreQuad implements Quad {
      *
      * @return The index to use for this quartet.
      */
-    public int getIndex() {
+    public long getIndex() {
         return QuartetUtils.getIndex(a, b, c, d);
     }
 
@@ -15,11 +15,16 @@
 
 package uk.ac.uea.cmp.spectre.core.ds.quad.quadruple;
 
-import org.apache.commons.math3.util.CombinatoricsUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.uea.cmp.spectre.core.ds.Sequences;
+import uk.ac.uea.cmp.spectre.core.ds.SitePatterns;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetUtils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Quadruple system factory from multiple sequence alignment.
@@ -61,58 +66,128 @@ public class QSFactoryAlignment implements QSFactory {
 
     @Override
     public QuadrupleSystem computeQS(boolean notify) {
+        return computeQS(notify, ForkJoinPool.commonPool());
+    }
 
+    /**
+     * Computes the quadruple system, estimating the split weights of the quadruples in parallel on the given pool.  The
+     * alignment is first collapsed into site patterns, then the quadruple indices are split into ranges, each of which
+     * is estimated by one task and written straight into the quadruple system at its lexicographic index.
+     *
+     * @param notify Whether to log progress
+     * @param pool The pool to use
+     * @return The quadruple system
+     */
+    public QuadrupleSystem computeQS(boolean notify, ForkJoinPool pool) {
 
-        char[][] seq = a.getSequencesAsCharArray();
+        final int n = a.size();
+        final long total = QuartetUtils.over4(n);
 
         if (notify) {
-            log.info("Expecting " + CombinatoricsUtils.binomialCoefficient(seq.length, 4) + " quadruples.");
+            log.info("Expecting " + total + " quadruples.");
         }
 
+        final SitePatterns patterns = new SitePatterns(a);
+        final SplitsEstimator splitsEstimator = new SplitsEstimator(dm);
 
-        SplitsEstimator splitsEstimator = new SplitsEstimator(dm);
-        
-        /* 
+        /*
          * variable to store quadruple system for given alignment is
          * initialized
          */
-        QuadrupleSystem qs = new QuadrupleSystem(a.size());
-        
-        /* 
-         * inTaxa is an array to store indexes of sequences that ought to be
-         * included in the quadruple. inSequences -- stores sequences themselves
-         * in the same order as ids are stored in inTaxa.
-         */
+        final QuadrupleSystem qs = new QuadrupleSystem(n);
+
+        final EstimateTask task = new EstimateTask(qs, patterns, splitsEstimator, 0, total,
+                notify ? new AtomicLong() : null);
+
+        if (pool.getParallelism() < 2) {
+            task.estimate();
+        } else {
+            pool.invoke(task);
+        }
+
+        qs.setNbStoredQuadruples(total);
+
+        return qs;
+    }
+
+    /**
+     * Estimates the quadruples in a range of indices, splitting the range in half until it is small enough to do in
+     * one go
+     */
+    private static class EstimateTask extends RecursiveAction {
+
+        private static final long THRESHOLD = 4096;
+
+        private final QuadrupleSystem qs;
+        private final SitePatterns patterns;
+        private final SplitsEstimator splitsEstimator;
+        private final long start;
+        private final long end;
+        private final AtomicLong progress;
 
-        int[] inTaxa = new int[4];
-        char[][] inSequences = new char[4][seq[0].length];
-        int count = 0;
-        for (int i1 = 0; i1 < seq.length; i1++) {
-            inTaxa[0] = i1;
-            inSequences[0] = seq[i1];
-            for (int i2 = i1 + 1; i2 < seq.length; i2++) {
-                inTaxa[1] = i2;
-                inSequences[1] = seq[i2];
-                for (int i3 = i2 + 1; i3 < seq.length; i3++) {
-                    inTaxa[2] = i3;
-                    inSequences[2] = seq[i3];
-                    for (int i4 = i3 + 1; i4 < seq.length; i4++) {
-                        inTaxa[3] = i4;
-                        inSequences[3] = seq[i4];
-                        /* New quadruple is formed */
-                        double[] inWeights = splitsEstimator.estimate(inSequences);
-                        Quadruple quadruple = new Quadruple(inTaxa, inWeights);
-                        /* and added to the current quadruple system */
-                        qs.add(quadruple);
-                        count++;
-                        if (notify && count % 10000 == 0 && count > 0) {
-                            log.info("Processed " + count + " quadruples. Current sequence: " + i1);
+        private EstimateTask(QuadrupleSystem qs, SitePatterns patterns, SplitsEstimator splitsEstimator,
+                             long start, long end, AtomicLong progress) {
+            this.qs = qs;
+            this.patterns = patterns;
+            this.splitsEstimator = splitsEstimator;
+            this.start = start;
+            this.end = end;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (this.end - this.start > THRESHOLD) {
+                final long mid = (this.start + this.end) >>> 1;
+                invokeAll(new EstimateTask(this.qs, this.patterns, this.splitsEstimator, this.start, mid, this.progress),
+                        new EstimateTask(this.qs, this.patterns, this.splitsEstimator, mid, this.end, this.progress));
+                return;
+            }
+
+            this.estimate();
+        }
+
+        private void estimate() {
+
+            if (this.end <= this.start) {
+                return;
+            }
+
+            final int n = this.patterns.getNbSequences();
+            final int[] taxa = new int[4];
+            final double[] weights = new double[Quadruple.NB_SPLITS];
+
+            this.qs.getQuadrupleTaxa(this.start, taxa);
+            int i1 = taxa[0], i2 = taxa[1], i3 = taxa[2], i4 = taxa[3];
+
+            for (long index = this.start; index < this.end; index++) {
+
+                /* New quadruple is formed and added to the current quadruple system */
+                this.splitsEstimator.estimate(this.patterns, i1, i2, i3, i4, weights);
+                this.qs.set(index, i1, i2, i3, i4, weights);
+
+                // Move on to the next quadruple in lexicographic order
+                if (++i4 == n) {
+                    if (++i3 == n - 1) {
+                        if (++i2 == n - 2) {
+                            i1++;
+                            i2 = i1 + 1;
                         }
+                        i3 = i2 + 1;
                     }
+                    i4 = i3 + 1;
                 }
             }
 
+            // Publish progress once for the whole range, so that the tasks don't contend on the counter
+            if (this.progress != null) {
+                final long done = this.end - this.start;
+                final long count = this.progress.addAndGet(done);
+                if (count / 10000 != (count - done) / 10000) {
+                    log.info("Processed " + count + " of " + this.qs.getnQuadruples() + " quadruples.");
+                }
+            }
         }
-        return qs;
     }
 }
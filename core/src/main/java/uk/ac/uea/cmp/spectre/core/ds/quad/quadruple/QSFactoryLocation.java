@@ -76,7 +76,7 @@ public class QSFactoryLocation implements QSFactory {
 
         int[] inLocations = new int[4];
         double[] weights;
-        int count = 0;
+        long count = 0;
         for (int i1 = 0; i1 < N; i1++) {
             inLocations[0] = i1;
             for (int i2 = i1 + 1; i2 < N; i2++) {
@@ -98,8 +98,7 @@ public class QSFactoryLocation implements QSFactory {
                         } else {
                             weights = computeWeightsFor4trivial(d);
                         }
-                        Quadruple q = new Quadruple(inLocations, weights);
-                        qs.add(q);
+                        qs.add(i1, i2, i3, i4, weights);
                         count++;
                         if (notify && count % 10000 == 0 && count > 0) {
                             log.info("Processed " + count + " quadruples. Current sequence: " + i1);
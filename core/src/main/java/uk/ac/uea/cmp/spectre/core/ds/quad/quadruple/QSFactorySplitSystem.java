@@ -74,17 +74,12 @@ public class QSFactorySplitSystem implements QSFactory {
 
         QuadrupleSystem qs = new QuadrupleSystem(nTaxa);
 
-        int[] inTaxa = new int[4];
         double[] inWeights = new double[7];
-        int count = 0;
+        long count = 0;
         for (int i1 = 0; i1 < nTaxa - 3; i1++) {
-            inTaxa[0] = i1;
             for (int i2 = i1 + 1; i2 < nTaxa - 2; i2++) {
-                inTaxa[1] = i2;
                 for (int i3 = i2 + 1; i3 < nTaxa - 1; i3++) {
-                    inTaxa[2] = i3;
                     for (int i4 = i3 + 1; i4 < nTaxa; i4++) {
-                        inTaxa[3] = i4;
 
                         //We now compute the induced weights for the quartet splits.
                         inWeights[0] = computeWeight(i2, i3, i3, i4, i2, i1);
@@ -95,7 +90,7 @@ public class QSFactorySplitSystem implements QSFactory {
                         inWeights[5] = computeWeight(i1, i3, i2, i4, i1, i2);
                         inWeights[6] = computeWeight(i1, i4, i2, i3, i1, i2);
 
-                        qs.add(new Quadruple(inTaxa, inWeights));
+                        qs.add(i1, i2, i3, i4, inWeights);
                         count++;
                         if (notify && count % 10000 == 0 && count > 0) {
                             log.info("Processed " + count + " quadruples. Current sequence: " + i1);
@@ -20,15 +20,24 @@ import uk.ac.uea.cmp.spectre.core.ds.quad.SpectreQuad;
 
 /**
  * This class implements methods that give us access to the split weights for every four element subset of the set of taxa.
+ *
+ * A quadruple either holds its own taxa and weights, or is a view onto the storage of a {@link QuadrupleSystem}, in
+ * which case setting its weights updates the system.
  */
 public class Quadruple {
 
     /**
-     * array containing the four taxa in increasing order
+     * Number of splits of four taxa, and so of weights held for each quadruple
+     */
+    public static final int NB_SPLITS = 7;
+
+    /**
+     * Array containing the four taxa in increasing order, starting at taxaOffset
      */
-    private Quad taxa;
+    private final int[] taxa;
+    private final int taxaOffset;
 
-    //array containing the weights of all splits of the 4 taxa
+    //array containing the weights of all splits of the 4 taxa, starting at weightsOffset
     //The splits are:
     //0 --> 1|234
     //1 --> 2|134
@@ -37,13 +46,14 @@ public class Quadruple {
     //4 --> 12|34
     //5 --> 13|24
     //6 --> 14|23
-    private double[] weights = null;
+    private final double[] weights;
+    private final int weightsOffset;
 
     //number of this quadrupe in the QuadrupleSystem
-    private int index;
+    private long index;
 
     public Quadruple(int[] inTaxa) {
-        this(inTaxa, new double[7]);
+        this(inTaxa, new double[NB_SPLITS]);
     }
 
     public Quadruple(int[] inTaxa, double[] inWeights) {
@@ -51,11 +61,30 @@ public class Quadruple {
     }
 
     public Quadruple(Quad inTaxa, double[] inWeights) {
-        taxa = inTaxa;
-        weights = new double[7];
+        taxa = new int[]{inTaxa.getA(), inTaxa.getB(), inTaxa.getC(), inTaxa.getD()};
+        taxaOffset = 0;
+        weights = new double[NB_SPLITS];
+        weightsOffset = 0;
         System.arraycopy(inWeights, 0, weights, 0, inWeights.length);
     }
 
+    /**
+     * Creates a view onto a quadruple held in the given arrays
+     *
+     * @param taxa          Array holding the taxa of the quadruple
+     * @param taxaOffset    Position of the first taxon in taxa
+     * @param weights       Array holding the weights of the quadruple
+     * @param weightsOffset Position of the first weight in weights
+     * @param index         Index of the quadruple in its system
+     */
+    Quadruple(int[] taxa, int taxaOffset, double[] weights, int weightsOffset, long index) {
+        this.taxa = taxa;
+        this.taxaOffset = taxaOffset;
+        this.weights = weights;
+        this.weightsOffset = weightsOffset;
+        this.index = index;
+    }
+
     public double getSplitWeightFor2Vs2(int a, int b) {
         if (a > b) {
             int c = a;
@@ -67,24 +96,24 @@ public class Quadruple {
 
 
         if (ia == 0) {
-            return weights[3 + (ia + ib)];
+            return weights[weightsOffset + 3 + (ia + ib)];
         } else {
-            return weights[9 - (ia + ib)];
+            return weights[weightsOffset + 9 - (ia + ib)];
         }
     }
 
     public double getSplitWeightFor1Vs3(int a) {
         int index = getTaxa(a, 0);
-        return weights[index];
+        return weights[weightsOffset + index];
     }
 
     @Override
     public String toString() {
         String message = "Quadruple : ";
-        message.concat(this.taxa.toString());
+        message.concat(this.getTaxa().toString());
         message = message.concat(":");
-        for (int i = 0; i < weights.length; i++) {
-            message = message.concat(" " + weights[i]);
+        for (int i = 0; i < NB_SPLITS; i++) {
+            message = message.concat(" " + weights[weightsOffset + i]);
         }
 
         return message;
@@ -92,34 +121,60 @@ public class Quadruple {
 
     public int getTaxa(int x, int iStart) {
         for (int i = iStart; i < 4; i++) {
-            if (this.taxa.toIntArray()[i] == x) {
+            if (this.taxa[taxaOffset + i] == x) {
                 return i;
             }
         }
         return 0;
     }
 
+    /**
+     * @param i Position of the taxon, from 0 to 3
+     * @return The i'th smallest taxon in this quadruple
+     */
+    public int getTaxon(int i) {
+        return this.taxa[taxaOffset + i];
+    }
+
+    /**
+     * @param i Index of the split (see above)
+     * @return The weight of the split
+     */
+    public double getWeight(int i) {
+        return this.weights[weightsOffset + i];
+    }
+
+    /**
+     * Returns a copy of the split weights.  Use {@link #setWeights(double[])} to change them.
+     *
+     * @return The weights of all seven splits of this quadruple
+     */
     public double[] getWeights() {
-        return weights;
+        double[] w = new double[NB_SPLITS];
+        System.arraycopy(weights, weightsOffset, w, 0, NB_SPLITS);
+        return w;
     }
 
     public void setWeights(double[] inWeights) {
-        System.arraycopy(inWeights, 0, weights, 0, weights.length);
+        System.arraycopy(inWeights, 0, weights, weightsOffset, NB_SPLITS);
     }
 
-    public void setIndex(int index) {
+    public void setIndex(long index) {
         this.index = index;
     }
 
-    public int getIndex() {
+    public long getIndex() {
         return index;
     }
 
     public Quad getTaxa() {
-        return taxa;
+        return new SpectreQuad(taxa[taxaOffset], taxa[taxaOffset + 1], taxa[taxaOffset + 2], taxa[taxaOffset + 3]);
     }
 
     public void setTaxa(Quad taxa) {
-        this.taxa = taxa;
+        this.taxa[taxaOffset] = taxa.getA();
+        this.taxa[taxaOffset + 1] = taxa.getB();
+        this.taxa[taxaOffset + 2] = taxa.getC();
+        this.taxa[taxaOffset + 3] = taxa.getD();
     }
 }
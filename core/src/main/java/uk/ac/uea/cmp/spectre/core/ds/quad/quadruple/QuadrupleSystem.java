@@ -17,16 +17,35 @@ package uk.ac.uea.cmp.spectre.core.ds.quad.quadruple;
 
 import org.apache.commons.lang3.ArrayUtils;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetUtils;
 import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
 import uk.ac.uea.cmp.spectre.core.util.CollectionUtils;
 
-import java.util.Arrays;
-
 /**
  * This class implements methods to handle a quadruple system
+ *
+ * The taxa and weights of the quadruples are held in primitive arrays, four ints and seven doubles per quadruple, which
+ * are split into fixed size chunks so that the number of quadruples is not limited by the maximum size of a single
+ * array.  Before allocating, the system checks that the storage needed fits within a heap budget, which defaults to
+ * the maximum heap size and can be set with the {@value #HEAP_BUDGET_PROPERTY} system property (in bytes), or by
+ * passing it to the constructor.
  */
 public class QuadrupleSystem implements Cloneable {
 
+    /**
+     * System property giving the maximum number of bytes a quadruple system may use for its quadruples
+     */
+    public static final String HEAP_BUDGET_PROPERTY = "spectre.quadruples.heap";
+
+    /**
+     * Number of bytes needed to store the taxa and weights of each quadruple
+     */
+    public static final int BYTES_PER_QUADRUPLE = 4 * 4 + Quadruple.NB_SPLITS * 8;
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
     // Complete list of named taxa
     private IdentifierList taxa;
 
@@ -37,14 +56,19 @@ public class QuadrupleSystem implements Cloneable {
     private int nbActiveTaxa;
 
     // Number of active quadruples
-    private int nQuadruples = 0;
+    private long nQuadruples = 0;
+
+    //arrays containing the taxa and weights of the quadruples in the system,
+    //in chunks of CHUNK_SIZE quadruples.  The order of the quadruples is
+    //lexicographic on the four taxa inolved.
+    private int[][] quadrupleTaxa = null;
+    private double[][] quadrupleWeights = null;
 
-    //array containing the quadruples in the system
-    //The order of the quadruples is lexicographic
-    //on the four taxa inolved.
-    private Quadruple[] quadruples = null;
+    // Number of quadruples there is room for
+    private long capacity;
 
-    private static int lastAdded;
+    // Number of quadruples added so far
+    private long nbAdded;
 
     private double[] minimalTrivialWeights;
 
@@ -57,11 +81,23 @@ public class QuadrupleSystem implements Cloneable {
     }
 
     public QuadrupleSystem(IdentifierList originalTaxa, final int nbActiveTaxa, final boolean[] active) {
+        this(originalTaxa, nbActiveTaxa, active, getDefaultHeapBudget());
+    }
+
+    /**
+     * Creates a quadruple system with room for all quadruples over the active taxa
+     *
+     * @param originalTaxa Complete list of named taxa
+     * @param nbActiveTaxa Number of active taxa
+     * @param active       Which of the taxa are active
+     * @param heapBudget   The maximum number of bytes to use for storing quadruples
+     * @throws IllegalArgumentException if the quadruples would need more than heapBudget bytes
+     */
+    public QuadrupleSystem(IdentifierList originalTaxa, final int nbActiveTaxa, final boolean[] active, final long heapBudget) {
         this.nbActiveTaxa = nbActiveTaxa;
         this.taxa = originalTaxa;
         nQuadruples = calculateNbQuadruples(nbActiveTaxa);
-        quadruples = new Quadruple[nQuadruples];
-        lastAdded = 0;
+        this.allocate(nQuadruples, heapBudget);
         this.active = ArrayUtils.clone(active);
 
         // Assume we want all taxa active to start with
@@ -72,18 +108,131 @@ public class QuadrupleSystem implements Cloneable {
         }
     }
 
+    /**
+     * @return The heap budget given by the {@value #HEAP_BUDGET_PROPERTY} system property if set, otherwise the
+     * maximum heap size
+     */
+    public static long getDefaultHeapBudget() {
+
+        final String budget = System.getProperty(HEAP_BUDGET_PROPERTY);
+
+        if (budget == null) {
+            return Runtime.getRuntime().maxMemory();
+        }
+
+        try {
+            return Long.parseLong(budget.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + HEAP_BUDGET_PROPERTY + ": " + budget);
+        }
+    }
+
+    /**
+     * @param nbQuadruples Number of quadruples
+     * @return The number of bytes needed to store the given number of quadruples
+     */
+    public static long calculateBytesNeeded(long nbQuadruples) {
+        return nbQuadruples * BYTES_PER_QUADRUPLE;
+    }
+
+    private void allocate(long nbQuadruples, long heapBudget) {
+
+        final long bytesNeeded = calculateBytesNeeded(nbQuadruples);
+
+        if (bytesNeeded > heapBudget) {
+            throw new IllegalArgumentException("Storing " + nbQuadruples + " quadruples needs " + bytesNeeded +
+                    " bytes, which is more than the heap budget of " + heapBudget + " bytes.  Increase the heap size or set " +
+                    HEAP_BUDGET_PROPERTY + ".");
+        }
+
+        final int nbChunks = (int) ((nbQuadruples + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+
+        this.quadrupleTaxa = new int[nbChunks][];
+        this.quadrupleWeights = new double[nbChunks][];
+
+        for (int i = 0; i < nbChunks; i++) {
+            final int chunkSize = (int) Math.min(CHUNK_SIZE, nbQuadruples - ((long) i << CHUNK_BITS));
+            this.quadrupleTaxa[i] = new int[chunkSize * 4];
+            this.quadrupleWeights[i] = new double[chunkSize * Quadruple.NB_SPLITS];
+        }
+
+        this.capacity = nbQuadruples;
+        this.nbAdded = 0;
+    }
+
+    private static int chunk(long index) {
+        return (int) (index >>> CHUNK_BITS);
+    }
+
+    private static int offset(long index) {
+        return (int) (index & CHUNK_MASK);
+    }
+
     public IdentifierList getTaxa() {
         return taxa;
     }
 
-    public static int calculateNbQuadruples(int nbActiveTaxa) {
-        return (nbActiveTaxa * (nbActiveTaxa - 1) * (nbActiveTaxa - 2) * (nbActiveTaxa - 3)) / (2 * 3 * 4);
+    public static long calculateNbQuadruples(int nbActiveTaxa) {
+        return QuartetUtils.over4(nbActiveTaxa);
     }
 
     public void add(Quadruple quadruple) {
-        quadruples[lastAdded] = quadruple;
-        quadruple.setIndex(lastAdded);
-        lastAdded++;
+        final long index = this.add(quadruple.getTaxon(0), quadruple.getTaxon(1), quadruple.getTaxon(2),
+                quadruple.getTaxon(3), quadruple.getWeights());
+        quadruple.setIndex(index);
+    }
+
+    /**
+     * Adds the next quadruple to the system, copying its taxa and weights into the system's storage
+     *
+     * @param a       Smallest taxon
+     * @param b       Second smallest taxon
+     * @param c       Third smallest taxon
+     * @param d       Largest taxon
+     * @param weights The weights of the seven splits of the quadruple
+     * @return The index of the new quadruple
+     */
+    public long add(int a, int b, int c, int d, double[] weights) {
+
+        if (nbAdded >= capacity) {
+            throw new IllegalStateException("Quadruple system is full.  It has room for " + capacity + " quadruples.");
+        }
+
+        final long index = nbAdded++;
+        this.set(index, a, b, c, d, weights);
+        return index;
+    }
+
+    /**
+     * Sets the taxa and weights of the quadruple at the given index, copying them into the system's storage.  Different
+     * indices may be set from different threads at the same time.  The quadruple is only visible through
+     * {@link #getQuadruple(long)} once the number of stored quadruples has been raised past its index with
+     * {@link #setNbStoredQuadruples(long)}.
+     *
+     * @param index   Index of the quadruple
+     * @param a       Smallest taxon
+     * @param b       Second smallest taxon
+     * @param c       Third smallest taxon
+     * @param d       Largest taxon
+     * @param weights The weights of the seven splits of the quadruple
+     */
+    public void set(long index, int a, int b, int c, int d, double[] weights) {
+
+        if (index < 0 || index >= capacity) {
+            throw new IllegalArgumentException("Quadruple index " + index + " is out of range.  The system has room for " +
+                    capacity + " quadruples.");
+        }
+
+        final int chunk = chunk(index);
+        final int offset = offset(index);
+
+        final int[] t = quadrupleTaxa[chunk];
+        t[offset * 4] = a;
+        t[offset * 4 + 1] = b;
+        t[offset * 4 + 2] = c;
+        t[offset * 4 + 3] = d;
+
+        System.arraycopy(weights, 0, quadrupleWeights[chunk], offset * Quadruple.NB_SPLITS, weights.length);
     }
 
     /**
@@ -98,6 +247,62 @@ public class QuadrupleSystem implements Cloneable {
         return !(((a == b) || (b == c)) || (c == d));
     }
 
+    /**
+     * This method computes the index of the quartet defined by {a,b,c,d} in the quadruples array. The computation of
+     * this index is based on the assumption that the quartet set is 0,1,...,nTaxa-1 and quadruples are stored in
+     * lexicographic order.
+     * @param a taxon id a
+     * @param b taxon id b
+     * @param c taxon id c
+     * @param d taxon id d
+     * @return Index of the quadruple defined by taxa ids
+     */
+    public long getQuadrupleIndex(int a, int b, int c, int d) {
+        final int nTaxa = active.length;
+        return QuartetUtils.over4(nTaxa)
+                - QuartetUtils.over4(nTaxa - a)
+                + QuartetUtils.over3(nTaxa - a - 1)
+                - QuartetUtils.over3(nTaxa - b)
+                + QuartetUtils.over2(nTaxa - b - 1)
+                - QuartetUtils.over2(nTaxa - c)
+                + d - c - 1;
+    }
+
+    /**
+     * Gets the taxa of the quadruple at the given index, on the same assumptions as
+     * {@link #getQuadrupleIndex(int, int, int, int)}, of which this is the inverse.
+     * @param index Index of the quadruple
+     * @param taxa Array of at least 4 elements, which receives the taxa in ascending order
+     */
+    public void getQuadrupleTaxa(long index, int[] taxa) {
+        final int nTaxa = active.length;
+        final long total = QuartetUtils.over4(nTaxa);
+
+        // Skip past the quadruples starting with each smaller taxon in turn
+        int a = 0;
+        while (total - QuartetUtils.over4(nTaxa - a - 1) <= index) {
+            a++;
+        }
+        long r = index - (total - QuartetUtils.over4(nTaxa - a));
+
+        int b = a + 1;
+        while (r >= QuartetUtils.over2(nTaxa - b - 1)) {
+            r -= QuartetUtils.over2(nTaxa - b - 1);
+            b++;
+        }
+
+        int c = b + 1;
+        while (r >= nTaxa - c - 1) {
+            r -= nTaxa - c - 1;
+            c++;
+        }
+
+        taxa[0] = a;
+        taxa[1] = b;
+        taxa[2] = c;
+        taxa[3] = (int) (c + 1 + r);
+    }
+
     /**
      * This method computes the index of the quartet defined by {a,b,c,d} in the quadruples array and returns the
      * corresponding Quartet object. The computation of this index is based on the assumption that the quartet set is
@@ -109,20 +314,36 @@ public class QuadrupleSystem implements Cloneable {
      * @return Quadruple defined by taxa ids
      */
     public Quadruple getQuadruple(int a, int b, int c, int d) {
-        int i = 0;
-        int nTaxa = active.length;
-        i = i + ((nTaxa * (nTaxa - 1) * (nTaxa - 2) * (nTaxa - 3)) / (2 * 3 * 4));
-        i = i - (((nTaxa - a) * (nTaxa - a - 1) * (nTaxa - a - 2) * (nTaxa - a - 3)) / (2 * 3 * 4));
-        i = i + (((nTaxa - a - 1) * (nTaxa - a - 2) * (nTaxa - a - 3)) / (2 * 3));
-        i = i - (((nTaxa - b) * (nTaxa - b - 1) * (nTaxa - b - 2)) / (2 * 3));
-        i = i + (((nTaxa - b - 1) * (nTaxa - b - 2)) / 2);
-        i = i - (((nTaxa - c) * (nTaxa - c - 1)) / 2);
-        i = i + d - c - 1;
-
-        if (i < 0) {
+        return getQuadruple(getQuadrupleIndex(a, b, c, d));
+    }
+
+    /**
+     * Gets a view of the quadruple at the given index.  Setting the weights of the returned quadruple updates this
+     * system.
+     * @param index Index of the quadruple
+     * @return Quadruple at the given index, or null if there is no quadruple at that index
+     */
+    public Quadruple getQuadruple(long index) {
+
+        if (index < 0 || index >= nbAdded) {
             return null;
         }
-        return quadruples[i];
+
+        final int chunk = chunk(index);
+        final int offset = offset(index);
+
+        return new Quadruple(quadrupleTaxa[chunk], offset * 4, quadrupleWeights[chunk], offset * Quadruple.NB_SPLITS, index);
+    }
+
+    /**
+     * Gets a weight of the quadruple at the given index straight from the system's storage, without creating a view
+     * onto the quadruple.
+     * @param index Index of the quadruple
+     * @param split Index of the split, in the order used by {@link Quadruple}
+     * @return The weight of the split
+     */
+    public double getWeight(long index, int split) {
+        return quadrupleWeights[chunk(index)][offset(index) * Quadruple.NB_SPLITS + split];
     }
 
     //This method computes the total length of those quartet splits
@@ -133,11 +354,9 @@ public class QuadrupleSystem implements Cloneable {
         Quadruple q = getQuadrupleUnsorted(a, b, c, d);
 
         if (q != null) {
-            int[] taxa = q.getTaxa().toIntArray();
-            double[] weights = q.getWeights();
-            for (int i = 0; i < 7; i++) {
-                if (ss.restrictionExists(taxa[0], taxa[1], taxa[2], taxa[3], i)) {
-                    fit += weights[i];
+            for (int i = 0; i < Quadruple.NB_SPLITS; i++) {
+                if (ss.restrictionExists(q.getTaxon(0), q.getTaxon(1), q.getTaxon(2), q.getTaxon(3), i)) {
+                    fit += q.getWeight(i);
                 }
             }
         }
@@ -174,18 +393,18 @@ public class QuadrupleSystem implements Cloneable {
     }
 
     public Quadruple getQuadrupleUnsorted(int a, int b, int c, int d) {
-        int[] sortedTaxa = new int[4];
-
-        sortedTaxa[0] = a;
-        sortedTaxa[1] = b;
-        sortedTaxa[2] = c;
-        sortedTaxa[3] = d;
 
-        Arrays.sort(sortedTaxa);
+        // Sort the taxa with a five comparison network
+        int t;
+        if (a > b) { t = a; a = b; b = t; }
+        if (c > d) { t = c; c = d; d = t; }
+        if (a > c) { t = a; a = c; c = t; }
+        if (b > d) { t = b; b = d; d = t; }
+        if (b > c) { t = b; b = c; c = t; }
 
         Quadruple q = null;
-        if (areDistinct(sortedTaxa[0], sortedTaxa[1], sortedTaxa[2], sortedTaxa[3])) {
-            q = getQuadruple(sortedTaxa[0], sortedTaxa[1], sortedTaxa[2], sortedTaxa[3]);
+        if (areDistinct(a, b, c, d)) {
+            q = getQuadruple(a, b, c, d);
         }
 
         return q;
@@ -199,10 +418,32 @@ public class QuadrupleSystem implements Cloneable {
         return this.nbActiveTaxa;
     }
 
-    public int getnQuadruples() {
+    public long getnQuadruples() {
         return nQuadruples;
     }
 
+    /**
+     * @return The number of quadruples that have been added to this system
+     */
+    public long getNbStoredQuadruples() {
+        return nbAdded;
+    }
+
+    /**
+     * Sets the number of quadruples that have been stored, after filling them in with
+     * {@link #set(long, int, int, int, int, double[])}.  The next quadruple added goes after these.
+     *
+     * @param nbStored The number of quadruples stored
+     */
+    public void setNbStoredQuadruples(long nbStored) {
+
+        if (nbStored < 0 || nbStored > capacity) {
+            throw new IllegalArgumentException("Number of stored quadruples must be between 0 and " + capacity);
+        }
+
+        this.nbAdded = nbStored;
+    }
+
     //return number of active active
     public int[] getTaxaInt() {
         return CollectionUtils.getTrueElements(active);
@@ -212,42 +453,51 @@ public class QuadrupleSystem implements Cloneable {
     public void setInactive(int b) {
         active[b] = false;
         nbActiveTaxa--;
-        nQuadruples = (nbActiveTaxa * (nbActiveTaxa - 1) * (nbActiveTaxa - 2) * (nbActiveTaxa - 3)) / (2 * 3 * 4);
+        nQuadruples = calculateNbQuadruples(nbActiveTaxa);
     }
 
     //activates active b
     public void setActive(int b) {
         active[b] = true;
         nbActiveTaxa++;
-        nQuadruples = (nbActiveTaxa * (nbActiveTaxa - 1) * (nbActiveTaxa - 2) * (nbActiveTaxa - 3)) / (2 * 3 * 4);
+        nQuadruples = calculateNbQuadruples(nbActiveTaxa);
     }
 
-    //creates identical qs to this one (except we lose track of which taxa are inactive)
+    //creates identical qs to this one
     @Override
     protected QuadrupleSystem clone() {
-        QuadrupleSystem qs = new QuadrupleSystem(this.taxa, this.nbActiveTaxa, this.active);
-        qs.quadruples = new Quadruple[this.nQuadruples];
-        for (int i = 0; i < this.quadruples.length; i++) {
-            qs.quadruples[i] = new Quadruple(this.quadruples[i].getTaxa(), this.quadruples[i].getWeights());
-            qs.quadruples[i].setIndex(this.quadruples[i].getIndex());
+        return new QuadrupleSystem(this);
+    }
+
+    private QuadrupleSystem(QuadrupleSystem other) {
+        this.taxa = other.taxa;
+        this.nbActiveTaxa = other.nbActiveTaxa;
+        this.active = ArrayUtils.clone(other.active);
+        this.nQuadruples = other.nQuadruples;
+        this.quadrupleTaxa = new int[other.quadrupleTaxa.length][];
+        this.quadrupleWeights = new double[other.quadrupleWeights.length][];
+        for (int i = 0; i < other.quadrupleTaxa.length; i++) {
+            this.quadrupleTaxa[i] = other.quadrupleTaxa[i].clone();
+            this.quadrupleWeights[i] = other.quadrupleWeights[i].clone();
         }
-        return qs;
+        this.capacity = other.capacity;
+        this.nbAdded = other.nbAdded;
     }
 
     //subtracts minimal weights for each taxon from all quadruples
     public void subtractMin() {
         minimalTrivialWeights = getMinimalTrivialForAllTaxa();
-        int qn = 0;
+        long qn = 0;
         int[] i = new int[4];
         for (i[0] = 0; i[0] < nbActiveTaxa; i[0]++) {
             for (i[1] = i[0] + 1; i[1] < nbActiveTaxa; i[1]++) {
                 for (i[2] = i[1] + 1; i[2] < nbActiveTaxa; i[2]++) {
                     for (i[3] = i[2] + 1; i[3] < nbActiveTaxa; i[3]++) {
-                        double[] w = quadruples[qn].getWeights();
+                        double[] w = quadrupleWeights[chunk(qn)];
+                        int o = offset(qn) * Quadruple.NB_SPLITS;
                         for (int j = 0; j < 4; j++) {
-                            w[j] -= minimalTrivialWeights[i[j]];
+                            w[o + j] -= minimalTrivialWeights[i[j]];
                         }
-                        quadruples[qn].setWeights(w);
                         qn++;
                     }
                 }
@@ -267,7 +517,7 @@ public class QuadrupleSystem implements Cloneable {
         for (int i = 0; i < min.length; i++) {
             min[i] = -1.0;
         }
-        int qn = 0;
+        long qn = 0;
         int[] i = new int[4];
         boolean[] taxaToPreprocess = new boolean[nbActiveTaxa];
         for (int j = 0; j < taxaToPreprocess.length; j++) {
@@ -278,8 +528,9 @@ public class QuadrupleSystem implements Cloneable {
             for (i[1] = i[0] + 1; i[1] < nbActiveTaxa; i[1]++) {
                 for (i[2] = i[1] + 1; i[2] < nbActiveTaxa; i[2]++) {
                     for (i[3] = i[2] + 1; i[3] < nbActiveTaxa; i[3]++) {
-                        double[] w = quadruples[qn++].getWeights();
-                        if (allPositive(w)) {
+                        double[] w = quadrupleWeights[chunk(qn)];
+                        int o = offset(qn++) * Quadruple.NB_SPLITS;
+                        if (allPositive(w, o)) {
                             taxaToPreprocess[i[0]] = true;
                             taxaToPreprocess[i[1]] = true;
                             taxaToPreprocess[i[2]] = true;
@@ -295,11 +546,12 @@ public class QuadrupleSystem implements Cloneable {
             for (i[1] = i[0] + 1; i[1] < nbActiveTaxa; i[1]++) {
                 for (i[2] = i[1] + 1; i[2] < nbActiveTaxa; i[2]++) {
                     for (i[3] = i[2] + 1; i[3] < nbActiveTaxa; i[3]++) {
-                        double[] w = quadruples[qn++].getWeights();
+                        double[] w = quadrupleWeights[chunk(qn)];
+                        int o = offset(qn++) * Quadruple.NB_SPLITS;
 
                         for (int j = 0; j < 4; j++) {
-                            if (taxaToPreprocess[i[j]] && (min[i[j]] == -1 || min[i[j]] > w[j])) {
-                                min[i[j]] = w[j];
+                            if (taxaToPreprocess[i[j]] && (min[i[j]] == -1 || min[i[j]] > w[o + j])) {
+                                min[i[j]] = w[o + j];
                             }
                         }
                     }
@@ -319,9 +571,9 @@ public class QuadrupleSystem implements Cloneable {
         return minimalTrivialWeights;
     }
 
-    //checks if all numbers in the array have positive weights
-    private boolean allPositive(double[] w) {
-        for (int i = 0; i < w.length; i++) {
+    //checks if all seven weights starting at offset in the array are positive
+    private boolean allPositive(double[] w, int offset) {
+        for (int i = offset; i < offset + Quadruple.NB_SPLITS; i++) {
             if (w[i] <= 0) {
                 return false;
             }
@@ -332,17 +584,14 @@ public class QuadrupleSystem implements Cloneable {
     //computes quadruple split length matrix times its transpose
     public double computeWxWT() {
         double wwT = 0;
-        for (int i = 0; i < quadruples.length; i++) {
-            double[] w = quadruples[i].getWeights();
-            for (int j = 0; j < w.length; j++) {
+        for (long qn = 0; qn < nbAdded; qn++) {
+            double[] w = quadrupleWeights[chunk(qn)];
+            int o = offset(qn) * Quadruple.NB_SPLITS;
+            for (int j = o; j < o + Quadruple.NB_SPLITS; j++) {
                 wwT += w[j] * w[j];
             }
         }
         return wwT;
     }
 
-    public Quadruple[] getQuadruples() {
-        return quadruples;
-    }
-
-}
\ No newline at end of file
+}
@@ -15,45 +15,60 @@
 
 package uk.ac.uea.cmp.spectre.core.ds.quad.quadruple;
 
+import uk.ac.uea.cmp.spectre.core.ds.SitePatterns;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
 
+import java.util.Arrays;
+
 /**
  * Estimates split weights from multiple sequence alignment.
  *
+ * Without a distance matrix the weights for a column only depend on which of its four characters are equal, so they
+ * are looked up in a fixed table indexed by the equality pattern.  With a distance matrix they are computed once for
+ * each distinct combination of characters and cached, with a separate cache for each thread so that lookups need
+ * neither locking nor boxing.  Estimation from {@link SitePatterns} does not otherwise modify the estimator, so one
+ * estimator can be shared between threads.
+ *
  * @author balvociute
  */
 public class SplitsEstimator {
-    private int size = 75;
-    private int min = 48;
+
+    /**
+     * Weights for a column without a distance matrix, indexed by {@link #equalityPattern(char, char, char, char)}
+     */
+    private static final double[][] UNIT_WEIGHTS = createUnitWeights();
 
     private AlignmentFilter filter;
     private char[][] sequences;
 
-    private DistanceMatrix dm;
-    private D[][][][] D;
+    private final DistanceMatrix dm;
+    private final AlignmentFilter defaultFilter;
+    private final ThreadLocal<WeightCache> caches;
 
     /**
-     * Initializes splits estimator. Creates matrix for storing weights of
-     * possible character distributions.
+     * Initializes splits estimator, which treats all pairs of distinct characters as being at distance 1.
      */
     public SplitsEstimator() {
-        D = new D[size][size][size][size];
+        this(null);
     }
 
     public SplitsEstimator(DistanceMatrix dm) {
         this.dm = dm;
-        D = new D[size][size][size][size];
-    }
-
-    public double[] estimate(char[][] sequences) {
-        this.sequences = sequences;
         /* filter is set to be AlignmentFilterSimple what means that only
          columns containing gaps will be omited. */
-        filter = dm != null && dm.getTaxa() != null ?
+        this.defaultFilter = dm != null && dm.getTaxa() != null ?
                 new AlignmentFilterDistanceMatrix(dm) :
                 new AlignmentFilter();
+        this.caches = dm != null ? new ThreadLocal<WeightCache>() {
+            @Override
+            protected WeightCache initialValue() {
+                return new WeightCache();
+            }
+        } : null;
+    }
 
-        return doMatrixBasedEstimation();
+    public double[] estimate(char[][] sequences) {
+        return estimate(sequences, this.defaultFilter);
     }
 
     public double[] estimate(char[][] sequences, AlignmentFilter filter) {
@@ -62,31 +77,77 @@ public class SplitsEstimator {
         return doMatrixBasedEstimation();
     }
 
+    /**
+     * Estimates the split weights for the quadruple of sequences a, b, c and d, taking the columns from the given site
+     * patterns.  Each pattern contributes as many times as there are columns with that pattern.
+     *
+     * @param patterns Site patterns of the alignment
+     * @param a Index of the first sequence
+     * @param b Index of the second sequence
+     * @param c Index of the third sequence
+     * @param d Index of the fourth sequence
+     * @param weights Array of at least 7 elements, which receives the split weights
+     */
+    public void estimate(SitePatterns patterns, int a, int b, int c, int d, double[] weights) {
+
+        final char[] sa = patterns.getPatterns(a);
+        final char[] sb = patterns.getPatterns(b);
+        final char[] sc = patterns.getPatterns(c);
+        final char[] sd = patterns.getPatterns(d);
+        final int[] counts = patterns.getCounts();
+        final WeightCache cache = this.caches != null ? this.caches.get() : null;
+
+        Arrays.fill(weights, 0, 7, 0.0);
+        int columnsConsidered = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+
+            final char s0 = sa[i];
+            final char s1 = sb[i];
+            final char s2 = sc[i];
+            final char s3 = sd[i];
+
+            if (defaultFilter.isAllowed(s0) && defaultFilter.isAllowed(s1) &&
+                    defaultFilter.isAllowed(s2) && defaultFilter.isAllowed(s3)) {
+
+                final int count = counts[i];
+                final double[] w = getWeights(cache, s0, s1, s2, s3);
+
+                for (int j = 0; j < 7; j++) {
+                    weights[j] += count * w[j];
+                }
+
+                columnsConsidered += count;
+            }
+        }
+
+        for (int i = 0; i < 7; i++) {
+            weights[i] = weights[i] / columnsConsidered;
+        }
+    }
+
     private double[] doMatrixBasedEstimation() {
         double[] weights = new double[7];
         int columnsConsidered = 0;
         int columnsAtAll = sequences[0].length;
-
+        final WeightCache cache = this.caches != null ? this.caches.get() : null;
 
         for (int i = 0; i < columnsAtAll; i++) {
-            char[] s = new char[4];
-            boolean hasSpace = false;
 
-            for (int j = 0; j < 4; j++) {
-                if (filter.isAllowed(sequences[j][i])) {
-                    s[j] = sequences[j][i];
-                } else {
-                    hasSpace = true;
-                    break;
-                }
-            }
+            final char s0 = sequences[0][i];
+            final char s1 = sequences[1][i];
+            final char s2 = sequences[2][i];
+            final char s3 = sequences[3][i];
+
+            if (filter.isAllowed(s0) && filter.isAllowed(s1) && filter.isAllowed(s2) && filter.isAllowed(s3)) {
 
-            if (!hasSpace) {
                 columnsConsidered++;
 
-                D d = getD(s);
+                final double[] w = getWeights(cache, s0, s1, s2, s3);
 
-                updateWeights(weights, d);
+                for (int j = 0; j < weights.length; j++) {
+                    weights[j] += w[j];
+                }
             }
         }
 
@@ -96,91 +157,167 @@ public class SplitsEstimator {
         return weights;
     }
 
-    //TODO This needs double checking.  I modified the code for Distance Matrices so that we use Strings rather than chars
-    // to get the index of each row and column.   It seems like the original code used the ASCII value of the char to get
-    // the indices position.  Need to double check that we are ok with 1-based numbers, possibly this should be changed
-    // to 0-based seeing as we are working with array indices.
-    private D getD(char[] s) {
-        int id1 = this.dm != null ? this.dm.getTaxa().getByName(Character.toString(s[0])).getId() : (int) s[0] - min;
-        int id2 = this.dm != null ? this.dm.getTaxa().getByName(Character.toString(s[1])).getId() : (int) s[1] - min;
-        int id3 = this.dm != null ? this.dm.getTaxa().getByName(Character.toString(s[2])).getId() : (int) s[2] - min;
-        int id4 = this.dm != null ? this.dm.getTaxa().getByName(Character.toString(s[3])).getId() : (int) s[3] - min;
-
-        D d;
-        if (D[id1][id2][id3][id4] == null) {
-            d = new D(dm, s);
-            D[id1][id2][id3][id4] = d;
-        } else {
-            d = D[id1][id2][id3][id4];
+    private double[] getWeights(WeightCache cache, char s0, char s1, char s2, char s3) {
+
+        if (this.dm == null) {
+            return UNIT_WEIGHTS[equalityPattern(s0, s1, s2, s3)];
         }
-        return d;
+
+        final long key = ((long) s0 << 48) | ((long) s1 << 32) | ((long) s2 << 16) | (long) s3;
+        double[] w = cache.get(key);
+        if (w == null) {
+            w = computeWeights(this.dm, s0, s1, s2, s3);
+            cache.put(key, w);
+        }
+        return w;
     }
 
+    /**
+     * Open addressing hash map from the four characters of a column, packed into a long, to their split weights.  Not
+     * thread safe, each thread has its own.
+     */
+    private static class WeightCache {
 
-    private void updateWeights(double[] weights, D d) {
-        for (int j1 = 0; j1 < weights.length; j1++) {
-            weights[j1] += d.weights[j1];
+        private long[] keys;
+        private double[][] values;
+        private int size;
+
+        private WeightCache() {
+            this.keys = new long[64];
+            this.values = new double[64][];
+            this.size = 0;
         }
-    }
 
-    private class D {
-        double[][] d;
-        double[] sum;
-        double max;
-        double[] weights;
+        private int slot(long key) {
+            final long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & (this.keys.length - 1);
+        }
 
-        public D(DistanceMatrix dm, char[] s) {
-            d = new double[4][4];
-            sum = new double[3];
-            weights = new double[7];
+        private double[] get(long key) {
+            for (int i = this.slot(key); this.values[i] != null; i = (i + 1) & (this.keys.length - 1)) {
+                if (this.keys[i] == key) {
+                    return this.values[i];
+                }
+            }
+            return null;
+        }
 
-            for (int i1 = 0; i1 < s.length; i1++) {
-                if (dm != null) {
-                    d[i1][i1] = dm.getDistance(s[i1], s[i1]);
-                } else {
-                    d[i1][i1] = 0;
+        private void put(long key, double[] value) {
+
+            if (2 * (this.size + 1) > this.keys.length) {
+                final long[] oldKeys = this.keys;
+                final double[][] oldValues = this.values;
+                this.keys = new long[oldKeys.length * 2];
+                this.values = new double[oldKeys.length * 2][];
+                this.size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldValues[i] != null) {
+                        this.put(oldKeys[i], oldValues[i]);
+                    }
                 }
-                for (int i2 = i1 + 1; i2 < s.length; i2++) {
-                    if (dm != null) {
-                        d[i1][i2] = dm.getDistance(s[i1], s[i2]);
-                        d[i2][i1] = dm.getDistance(s[i2], s[i1]);
-                    } else {
-                        if (s[i1] != s[i2]) {
-                            d[i1][i2] = 1;
-                            d[i2][i1] = 1;
-                        } else {
-                            d[i1][i2] = 0;
-                            d[i2][i1] = 0;
+            }
+
+            int i = this.slot(key);
+            while (this.values[i] != null && this.keys[i] != key) {
+                i = (i + 1) & (this.keys.length - 1);
+            }
+            if (this.values[i] == null) {
+                this.size++;
+            }
+            this.keys[i] = key;
+            this.values[i] = value;
+        }
+    }
+
+    /**
+     * Encodes which of the four characters of a column are equal as a 6 bit number, one bit per pair
+     */
+    private static int equalityPattern(char s0, char s1, char s2, char s3) {
+        return (s0 == s1 ? 1 : 0) |
+                (s0 == s2 ? 2 : 0) |
+                (s0 == s3 ? 4 : 0) |
+                (s1 == s2 ? 8 : 0) |
+                (s1 == s3 ? 16 : 0) |
+                (s2 == s3 ? 32 : 0);
+    }
+
+    private static double[][] createUnitWeights() {
+
+        // Every equality pattern can be realised with the characters 0 to 3
+        final double[][] table = new double[64][];
+        for (char s0 = '0'; s0 <= '3'; s0++) {
+            for (char s1 = '0'; s1 <= '3'; s1++) {
+                for (char s2 = '0'; s2 <= '3'; s2++) {
+                    for (char s3 = '0'; s3 <= '3'; s3++) {
+                        final int pattern = equalityPattern(s0, s1, s2, s3);
+                        if (table[pattern] == null) {
+                            table[pattern] = computeWeights(null, s0, s1, s2, s3);
                         }
                     }
-                    if (i1 == 0) {
-                        sum[i2 - 1] = d[i1][i2];
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Computes the split weights contributed by a single column with the given characters
+     */
+    private static double[] computeWeights(DistanceMatrix dm, char s0, char s1, char s2, char s3) {
+
+        final char[] s = new char[]{s0, s1, s2, s3};
+        final double[][] d = new double[4][4];
+        final double[] sum = new double[3];
+        final double[] weights = new double[7];
+
+        for (int i1 = 0; i1 < s.length; i1++) {
+            if (dm != null) {
+                d[i1][i1] = dm.getDistance(s[i1], s[i1]);
+            } else {
+                d[i1][i1] = 0;
+            }
+            for (int i2 = i1 + 1; i2 < s.length; i2++) {
+                if (dm != null) {
+                    d[i1][i2] = dm.getDistance(s[i1], s[i2]);
+                    d[i2][i1] = dm.getDistance(s[i2], s[i1]);
+                } else {
+                    if (s[i1] != s[i2]) {
+                        d[i1][i2] = 1;
+                        d[i2][i1] = 1;
                     } else {
-                        sum[5 - (i1 + i2)] += d[i1][i2];
+                        d[i1][i2] = 0;
+                        d[i2][i1] = 0;
                     }
                 }
+                if (i1 == 0) {
+                    sum[i2 - 1] = d[i1][i2];
+                } else {
+                    sum[5 - (i1 + i2)] += d[i1][i2];
+                }
             }
-            max = (sum[0] > sum[1]) ? sum[0] : sum[1];
-            max = (max < sum[2]) ? sum[2] : max;
-
-            for (int j1 = 0; j1 < weights.length; j1++) {
-                double w = 0;
-                if (j1 < 4) {
-                    for (int j2 = 0; j2 < 4; j2++) {
-                        if (j1 != j2) {
-                            w += d[j1][j2];
-                        }
+        }
+        double max = (sum[0] > sum[1]) ? sum[0] : sum[1];
+        max = (max < sum[2]) ? sum[2] : max;
+
+        for (int j1 = 0; j1 < weights.length; j1++) {
+            double w = 0;
+            if (j1 < 4) {
+                for (int j2 = 0; j2 < 4; j2++) {
+                    if (j1 != j2) {
+                        w += d[j1][j2];
                     }
-                    w -= max;
-                    w /= 2;
-                } else {
-                    int j2 = j1 - 3;
-                    int j3 = (j2 == 1) ? 2 : 1;
-                    int j4 = (j2 == 3) ? 2 : 3;
-                    w = 0.5 * (max - d[0][j2] - d[j3][j4]);
                 }
-                weights[j1] = w;
+                w -= max;
+                w /= 2;
+            } else {
+                int j2 = j1 - 3;
+                int j3 = (j2 == 1) ? 2 : 1;
+                int j4 = (j2 == 3) ? 2 : 3;
+                w = 0.5 * (max - d[0][j2] - d[j3][j4]);
             }
+            weights[j1] = w;
         }
+
+        return weights;
     }
 }
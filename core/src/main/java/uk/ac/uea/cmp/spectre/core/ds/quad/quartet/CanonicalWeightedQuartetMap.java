@@ -17,19 +17,42 @@ package uk.ac.uea.cmp.spectre.core.ds.quad.quartet;
 
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.quad.Quad;
-import uk.ac.uea.cmp.spectre.core.ds.quad.SpectreQuad;
 import uk.ac.uea.cmp.spectre.core.ds.split.Split;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Created by dan on 04/01/14.
+ *
+ * Maps quartets in canonical form (ab|cd) to a single weight.  The weights are held in a {@link QuartetWeightStore},
+ * indexed by the rank of the quadruple and the topology of the quartet within it, so lookups don't need to create a
+ * {@link Quad} and weights aren't boxed.
  */
-public class CanonicalWeightedQuartetMap extends HashMap<Quad, Double> {
+public class CanonicalWeightedQuartetMap {
 
+    private final QuartetWeightStore store;
+
+    /**
+     * Creates an empty map backed by a sparse store, for when the taxa aren't known up front
+     */
     public CanonicalWeightedQuartetMap() {
-        super();
+        this(new SparseQuartetWeightStore());
+    }
+
+    /**
+     * Creates an empty map backed by a dense store, with room for all quartets over taxa 1 to nbTaxa
+     *
+     * @param nbTaxa The number of taxa
+     */
+    public CanonicalWeightedQuartetMap(int nbTaxa) {
+        this(new DenseQuartetWeightStore(nbTaxa));
+    }
+
+    /**
+     * Creates a map backed by the given store.  Changes to the map are written through to the store.
+     *
+     * @param store The store to use
+     */
+    public CanonicalWeightedQuartetMap(QuartetWeightStore store) {
+        this.store = store;
     }
 
     /**
@@ -39,6 +62,8 @@ public class CanonicalWeightedQuartetMap extends HashMap<Quad, Double> {
      */
     public CanonicalWeightedQuartetMap(DistanceMatrix distanceMatrix) {
 
+        this(distanceMatrix.size());
+
         final int N = distanceMatrix.size();
 
         double[][] D = distanceMatrix.getMatrix();
@@ -59,33 +84,88 @@ public class CanonicalWeightedQuartetMap extends HashMap<Quad, Double> {
 
                         double min = Math.min(w1, Math.min(w2, w3));
 
-                        this.put(new SpectreQuad(a + 1, b + 1, c + 1, d + 1), w1 - min);
-                        this.put(new SpectreQuad(a + 1, c + 1, b + 1, d + 1), w2 - min);
-                        this.put(new SpectreQuad(a + 1, d + 1, b + 1, c + 1), w3 - min);
+                        final long rank = QuartetUtils.getIndex(d + 1, c + 1, b + 1, a + 1);
+
+                        this.store.setWeight(rank, 0, w1 - min);
+                        this.store.setWeight(rank, 1, w2 - min);
+                        this.store.setWeight(rank, 2, w3 - min);
                     }
                 }
             }
         }
     }
 
+    /**
+     * Creates a canonical quartet map containing a copy of the weights in a grouped quartet map
+     *
+     * @param groupMap The grouped quartets to copy
+     */
     public CanonicalWeightedQuartetMap(WeightedQuartetGroupMap groupMap) {
-        super();
+        this(groupMap.getStore().copy());
+    }
 
-        for (Map.Entry<Quad, QuartetWeights> entry : groupMap.entrySet()) {
+    /**
+     * @return The store holding the weights in this map
+     */
+    public QuartetWeightStore getStore() {
+        return store;
+    }
 
-            Quad sorted = entry.getKey();
-            QuartetWeights weights = entry.getValue();
+    /**
+     * @return The number of quadruples for which at least one quartet is present
+     */
+    public long size() {
+        return this.store.size();
+    }
 
-            this.put(new SpectreQuad(sorted), weights.getA());
-            this.put(new SpectreQuad(sorted.getA(), sorted.getC(), sorted.getB(), sorted.getD()), weights.getB());
-            this.put(new SpectreQuad(sorted.getA(), sorted.getD(), sorted.getB(), sorted.getC()), weights.getC());
-        }
+    public boolean containsKey(Quad quad) {
+        return this.store.contains(QuartetUtils.getRank(quad.getA(), quad.getB(), quad.getC(), quad.getD()),
+                QuartetUtils.getTopology(quad.getA(), quad.getB(), quad.getC(), quad.getD()));
     }
 
+    /**
+     * Gets the weight of a quartet.  If the quartet is not present then 0.0 is returned.
+     *
+     * @param quad The quartet
+     * @return The weight of the quartet
+     */
+    public double getWeight(Quad quad) {
+        return this.getWeight(quad.getA(), quad.getB(), quad.getC(), quad.getD());
+    }
+
+    /**
+     * Gets the weight of the quartet ab|cd.  If the quartet is not present then 0.0 is returned.
+     *
+     * @param a Taxon index a
+     * @param b Taxon index b
+     * @param c Taxon index c
+     * @param d Taxon index d
+     * @return The weight of the quartet
+     */
+    public double getWeight(int a, int b, int c, int d) {
+        return this.store.getWeight(QuartetUtils.getRank(a, b, c, d), QuartetUtils.getTopology(a, b, c, d));
+    }
+
+    public void setWeight(Quad quad, double weight) {
+        this.store.setWeight(QuartetUtils.getRank(quad.getA(), quad.getB(), quad.getC(), quad.getD()),
+                QuartetUtils.getTopology(quad.getA(), quad.getB(), quad.getC(), quad.getD()), weight);
+    }
 
     public void incrementWeight(Quad quad, double weightIncrement) {
+        this.incrementWeight(quad.getA(), quad.getB(), quad.getC(), quad.getD(), weightIncrement);
+    }
 
-        this.put(quad, this.containsKey(quad) ? this.get(quad) + weightIncrement : weightIncrement);
+    /**
+     * Adds to the weight of the quartet ab|cd, adding the quartet if not already present
+     *
+     * @param a Taxon index a
+     * @param b Taxon index b
+     * @param c Taxon index c
+     * @param d Taxon index d
+     * @param weightIncrement The amount to add
+     */
+    public void incrementWeight(int a, int b, int c, int d, double weightIncrement) {
+        this.store.incrementWeight(QuartetUtils.getRank(a, b, c, d), QuartetUtils.getTopology(a, b, c, d), weightIncrement);
     }
 
     /**
@@ -96,21 +176,49 @@ public class CanonicalWeightedQuartetMap extends HashMap<Quad, Double> {
      */
     public void scaleWeight(Quad quad, double weight) {
 
-        this.put(quad, this.containsKey(quad) ? this.get(quad) * weight : weight);
+        final long rank = QuartetUtils.getRank(quad.getA(), quad.getB(), quad.getC(), quad.getD());
+        final int topology = QuartetUtils.getTopology(quad.getA(), quad.getB(), quad.getC(), quad.getD());
+
+        this.store.setWeight(rank, topology, this.store.contains(rank, topology) ?
+                this.store.getWeight(rank, topology) * weight :
+                weight);
+    }
+
+    /**
+     * Multiplies the weight of every quartet present in this map by the given factor
+     *
+     * @param factor The factor to apply
+     */
+    public void multiply(double factor) {
+
+        QuartetWeightStore.Cursor cursor = this.store.cursor();
+
+        while (cursor.next()) {
+            for (int t = 0; t < 3; t++) {
+                if (cursor.contains(t)) {
+                    cursor.setWeight(t, cursor.getWeight(t) * factor);
+                }
+            }
+        }
     }
 
     /**
-     * Divides quartet weights in this map with those in summer.  Summer must contain the same quartets or be a super set
-     * of this hash map otherwise a null pointer exception will be thrown
+     * Divides quartet weights in this map by those in other.  Quartets not present in other are left unchanged.
      *
      * @param other Other quartets to divide from those in this
      */
     public void divide(CanonicalWeightedQuartetMap other) {
 
-        for (Quad q : this.keySet()) {
+        QuartetWeightStore.Cursor cursor = this.store.cursor();
 
-            if (other.containsKey(q)) {
-                this.put(q, this.get(q) / other.get(q));
+        while (cursor.next()) {
+
+            final long rank = cursor.getRank();
+
+            for (int t = 0; t < 3; t++) {
+                if (cursor.contains(t) && other.store.contains(rank, t)) {
+                    cursor.setWeight(t, cursor.getWeight(t) / other.store.getWeight(rank, t));
+                }
             }
         }
     }
@@ -143,7 +251,7 @@ public class CanonicalWeightedQuartetMap extends HashMap<Quad, Double> {
                             int b1 = setB[iB1];
                             int b2 = setB[iB2];
 
-                            this.incrementWeight(new SpectreQuad(a1, a2, b1, b2), split.getWeight());
+                            this.incrementWeight(a1, a2, b1, b2, split.getWeight());
                         }
                     }
                 }
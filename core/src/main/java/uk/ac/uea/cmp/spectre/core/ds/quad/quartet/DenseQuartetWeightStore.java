@@ -0,0 +1,228 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.quad.quartet;
+
+/**
+ * Quartet weight store with a slot for every quadruple over a fixed number of taxa, for systems that cover all or most
+ * quadruples.  Weights are held three to a quadruple in flat double arrays, alongside a byte of presence flags.  The
+ * ranks are split into fixed size chunks, which are only allocated once something is written to them, so that the
+ * number of quadruples is not limited by the maximum size of a single array.
+ */
+public class DenseQuartetWeightStore implements QuartetWeightStore {
+
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final int nbTaxa;
+    private final long capacity;
+
+    private final double[][] weights;
+    private final byte[][] flags;
+
+    private long size;
+
+    /**
+     * Creates an empty store for quadruples over taxa 1 to nbTaxa
+     *
+     * @param nbTaxa The number of taxa
+     */
+    public DenseQuartetWeightStore(int nbTaxa) {
+
+        if (nbTaxa < 0) {
+            throw new IllegalArgumentException("Number of taxa must not be negative");
+        }
+
+        this.nbTaxa = nbTaxa;
+        this.capacity = QuartetUtils.over4(nbTaxa);
+
+        final int nbChunks = (int) ((this.capacity + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+        this.weights = new double[nbChunks][];
+        this.flags = new byte[nbChunks][];
+        this.size = 0;
+    }
+
+    /**
+     * Copy constructor
+     *
+     * @param other The store to copy
+     */
+    public DenseQuartetWeightStore(DenseQuartetWeightStore other) {
+
+        this.nbTaxa = other.nbTaxa;
+        this.capacity = other.capacity;
+        this.weights = new double[other.weights.length][];
+        this.flags = new byte[other.flags.length][];
+        this.size = other.size;
+
+        for (int i = 0; i < this.weights.length; i++) {
+            if (other.weights[i] != null) {
+                this.weights[i] = other.weights[i].clone();
+                this.flags[i] = other.flags[i].clone();
+            }
+        }
+    }
+
+    /**
+     * @return The number of taxa this store covers
+     */
+    public int getNbTaxa() {
+        return nbTaxa;
+    }
+
+    /**
+     * @return The number of quadruples this store has room for
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    private int chunkFor(long rank) {
+
+        if (rank < 0 || rank >= this.capacity) {
+            throw new IllegalArgumentException("Quadruple rank " + rank + " is out of range for " + this.nbTaxa + " taxa");
+        }
+
+        final int chunk = (int) (rank >>> CHUNK_BITS);
+
+        if (this.weights[chunk] == null) {
+            final int chunkSize = (int) Math.min(CHUNK_SIZE, this.capacity - ((long) chunk << CHUNK_BITS));
+            this.weights[chunk] = new double[chunkSize * 3];
+            this.flags[chunk] = new byte[chunkSize];
+        }
+
+        return chunk;
+    }
+
+    private void mark(byte[] chunkFlags, int offset, int topology) {
+
+        if (chunkFlags[offset] == 0) {
+            this.size++;
+        }
+        chunkFlags[offset] |= 1 << topology;
+    }
+
+    @Override
+    public long size() {
+        return this.size;
+    }
+
+    private byte flagsAt(long rank) {
+
+        if (rank >= this.capacity) {
+            return 0;
+        }
+
+        final byte[] chunkFlags = this.flags[(int) (rank >>> CHUNK_BITS)];
+        return chunkFlags == null ? 0 : chunkFlags[(int) (rank & CHUNK_MASK)];
+    }
+
+    @Override
+    public boolean contains(long rank) {
+        return this.flagsAt(rank) != 0;
+    }
+
+    @Override
+    public boolean contains(long rank, int topology) {
+        return (this.flagsAt(rank) & (1 << topology)) != 0;
+    }
+
+    @Override
+    public double getWeight(long rank, int topology) {
+
+        if (rank >= this.capacity) {
+            return 0.0;
+        }
+
+        final double[] chunkWeights = this.weights[(int) (rank >>> CHUNK_BITS)];
+        return chunkWeights == null ? 0.0 : chunkWeights[(int) (rank & CHUNK_MASK) * 3 + topology];
+    }
+
+    @Override
+    public void setWeight(long rank, int topology, double weight) {
+        final int chunk = this.chunkFor(rank);
+        final int offset = (int) (rank & CHUNK_MASK);
+        this.weights[chunk][offset * 3 + topology] = weight;
+        this.mark(this.flags[chunk], offset, topology);
+    }
+
+    @Override
+    public void incrementWeight(long rank, int topology, double increment) {
+        final int chunk = this.chunkFor(rank);
+        final int offset = (int) (rank & CHUNK_MASK);
+        this.weights[chunk][offset * 3 + topology] += increment;
+        this.mark(this.flags[chunk], offset, topology);
+    }
+
+    @Override
+    public QuartetWeightStore copy() {
+        return new DenseQuartetWeightStore(this);
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new DenseCursor();
+    }
+
+    private class DenseCursor implements Cursor {
+
+        private int chunk = 0;
+        private int offset = -1;
+
+        @Override
+        public boolean next() {
+
+            while (chunk < flags.length) {
+
+                final byte[] chunkFlags = flags[chunk];
+
+                if (chunkFlags != null) {
+                    while (++offset < chunkFlags.length) {
+                        if (chunkFlags[offset] != 0) {
+                            return true;
+                        }
+                    }
+                }
+
+                chunk++;
+                offset = -1;
+            }
+
+            return false;
+        }
+
+        @Override
+        public long getRank() {
+            return ((long) chunk << CHUNK_BITS) + offset;
+        }
+
+        @Override
+        public boolean contains(int topology) {
+            return (flags[chunk][offset] & (1 << topology)) != 0;
+        }
+
+        @Override
+        public double getWeight(int topology) {
+            return weights[chunk][offset * 3 + topology];
+        }
+
+        @Override
+        public void setWeight(int topology, double weight) {
+            weights[chunk][offset * 3 + topology] = weight;
+            mark(flags[chunk], offset, topology);
+        }
+    }
+}
@@ -15,15 +15,12 @@
 
 package uk.ac.uea.cmp.spectre.core.ds.quad.quartet;
 
-import org.apache.commons.lang3.tuple.Pair;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
 import uk.ac.uea.cmp.spectre.core.ds.quad.Quad;
 import uk.ac.uea.cmp.spectre.core.ds.tree.newick.NewickTree;
 
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Created with IntelliJ IDEA.
@@ -60,7 +57,7 @@ public class GroupedQuartetSystem {
         this.sense = Sense.MAX;
         this.quartets = quartets;
 
-        final int expectedNbQuartets = QuartetUtils.over4(taxa.size());
+        final long expectedNbQuartets = QuartetUtils.over4(taxa.size());
 
         if (this.quartets.size() != expectedNbQuartets) {
             throw new IllegalArgumentException("Found unexpected number of quartets.  Something went wrong creating the " +
@@ -78,15 +75,7 @@ public class GroupedQuartetSystem {
         this.taxa = quartetSystem.getTaxa();
         this.weight = quartetSystem.getWeight();
         this.sense = Sense.valueOf(quartetSystem.getSense().toString().toUpperCase());
-        this.quartets = new WeightedQuartetGroupMap();
-
-        for (Map.Entry<Quad, Double> entry : quartetSystem.getQuartets().entrySet()) {
-
-            Pair<Quad, Integer> keys = entry.getKey().getGroupKeys();
-
-            this.quartets.put(keys.getLeft(), keys.getRight(), entry.getValue());
-        }
-
+        this.quartets = new WeightedQuartetGroupMap(quartetSystem.getQuartets());
     }
 
     public IdentifierList getTaxa() {
@@ -128,7 +117,7 @@ public class GroupedQuartetSystem {
 
     public List<Quad> sortedQuartets() {
 
-        List<Quad> keys = new LinkedList<>(this.quartets.keySet());
+        List<Quad> keys = this.quartets.keys();
         Collections.sort(keys);
 
         return keys;
@@ -72,7 +72,9 @@ public class QuartetSystem {
     }
 
     public QuartetSystem(GroupedQuartetSystem groupedQuartetSystem) {
-        throw new UnsupportedOperationException("Not implemented yet");
+        this(groupedQuartetSystem.getTaxa(), groupedQuartetSystem.getWeight(),
+                new CanonicalWeightedQuartetMap(groupedQuartetSystem.getQuartets()));
+        this.sense = Sense.valueOf(groupedQuartetSystem.getSense().name());
     }
 
 
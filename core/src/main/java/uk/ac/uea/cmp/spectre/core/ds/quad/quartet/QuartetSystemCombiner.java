@@ -17,8 +17,6 @@ package uk.ac.uea.cmp.spectre.core.ds.quad.quartet;
 
 import uk.ac.uea.cmp.spectre.core.ds.Identifier;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
-import uk.ac.uea.cmp.spectre.core.ds.quad.Quad;
-import uk.ac.uea.cmp.spectre.core.ds.quad.SpectreQuad;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -101,7 +99,7 @@ public class QuartetSystemCombiner {
 
                     for (int d = c + 1; d <= N; d++) {
 
-                        if (summer.get(new SpectreQuad(a, b, c, d)) > 0.0) {
+                        if (summer.getWeight(a, b, c, d) > 0.0) {
 
                             out.write("quartet: " + nF.format(a) + " " + nF.format(b) + " " + nF.format(c) + " " + nF.format(d)
                                     + " weights: "
@@ -152,22 +150,35 @@ public class QuartetSystemCombiner {
      */
     public void combine(CanonicalWeightedQuartetMap other, Map<Integer, Integer> translation, double scalingFactor) {
 
-        for (Quad q : other.keySet()) {
-            Quad translated = this.translateQuartet(q, translation);
+        final int[] taxa = new int[4];
+        final int[] translated = new int[4];
 
-            this.quartetWeights.incrementWeight(translated, other.get(q) * scalingFactor);
-            this.summer.incrementWeight(translated, scalingFactor);
-        }
-    }
+        QuartetWeightStore.Cursor cursor = other.getStore().cursor();
+
+        while (cursor.next()) {
+
+            QuartetUtils.getTaxa(cursor.getRank(), taxa);
+
+            for (int i = 0; i < 4; i++) {
+                translated[i] = translation.get(taxa[i]);
+            }
 
-    private Quad translateQuartet(Quad q, Map<Integer, Integer> lut) {
+            // Topology t pairs the first taxon with taxon t + 1
+            for (int t = 0; t < 3; t++) {
 
-        return new SpectreQuad(
-                lut.get(q.getA()),
-                lut.get(q.getB()),
-                lut.get(q.getC()),
-                lut.get(q.getD())
-        );
+                if (cursor.contains(t)) {
+
+                    final int partner = t + 1;
+                    final int other1 = partner == 1 ? 2 : 1;
+                    final int other2 = partner == 3 ? 2 : 3;
+
+                    this.quartetWeights.incrementWeight(translated[0], translated[partner], translated[other1], translated[other2],
+                            cursor.getWeight(t) * scalingFactor);
+                    this.summer.incrementWeight(translated[0], translated[partner], translated[other1], translated[other2],
+                            scalingFactor);
+                }
+            }
+        }
     }
 
     /**
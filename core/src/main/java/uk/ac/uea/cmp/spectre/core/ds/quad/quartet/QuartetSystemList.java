@@ -20,7 +20,6 @@ import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
-import uk.ac.uea.cmp.spectre.core.ds.quad.Quad;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.load.QLoaderFactory;
 import uk.ac.uea.cmp.spectre.core.ds.tree.newick.NewickTree;
 import uk.ac.uea.cmp.spectre.core.io.qweight.QWeightWriter;
@@ -29,7 +28,6 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Created with IntelliJ IDEA.
@@ -149,13 +147,7 @@ public class QuartetSystemList extends ArrayList<QuartetSystem> {
         // Loop through each quartet network and update it
         for (int i = 0; i < w.length; i++) {
 
-            QuartetSystem qs = this.get(i);
-
-            double weight = w[i];
-
-            for (Map.Entry<Quad, Double> entry : qs.getQuartets().entrySet()) {
-                entry.setValue(entry.getValue() * weight);
-            }
+            this.get(i).getQuartets().multiply(w[i]);
         }
     }
 
@@ -20,17 +20,30 @@ package uk.ac.uea.cmp.spectre.core.ds.quad.quartet;
  */
 public class QuartetUtils {
 
-    public static int over4(int n) {
+    /**
+     * Computes n choose 4.  This is done in 64 bit arithmetic, so is exact for any number of taxa whose quadruples could
+     * be enumerated.
+     *
+     * @param n The number of elements
+     * @return The number of 4 element subsets of n elements
+     */
+    public static long over4(int n) {
 
         return n > 4 ?
-                n * (n - 1) * (n - 2) * (n - 3) / 24 :
+                (long) n * (n - 1) * (n - 2) * (n - 3) / 24 :
                 n == 4 ? 1 : 0;
     }
 
-    public static int over3(int n) {
+    /**
+     * Computes n choose 3 in 64 bit arithmetic
+     *
+     * @param n The number of elements
+     * @return The number of 3 element subsets of n elements
+     */
+    public static long over3(int n) {
 
         return n > 3 ?
-                n * (n - 1) * (n - 2) / 6 :
+                (long) n * (n - 1) * (n - 2) / 6 :
                 n == 3 ? 1 : 0;
     }
 
@@ -46,7 +59,7 @@ public class QuartetUtils {
         return n > 0 ? n : 0;
     }
 
-    public static int sumOvers(int a, int b, int c, int d) {
+    public static long sumOvers(int a, int b, int c, int d) {
         return over1(a) + over2(b) + over3(c) + over4(d);
     }
 
@@ -58,7 +71,7 @@ public class QuartetUtils {
      * @param d Taxon index d
      * @return Quartet Index
      */
-    public static int getIndex(int a, int b, int c, int d) {
+    public static long getIndex(int a, int b, int c, int d) {
         return over4(a - 1) + over3(b - 1) + over2(c - 1) + over1(d - 1);
     }
 
@@ -74,4 +87,100 @@ public class QuartetUtils {
     public static boolean areDistinct(int a, int b, int c, int d) {
         return !(a == b || b == c || c == d || a == c || b == d || a == d);
     }
+
+    /**
+     * Gets the rank of the quadruple containing the given taxa, in any order, amongst all quadruples.  This is the value
+     * of {@link #getIndex(int, int, int, int)} with the taxa given in descending order, so quadruples over taxa 1 to n
+     * have ranks 0 to over4(n) - 1.
+     *
+     * @param a Taxon index a
+     * @param b Taxon index b
+     * @param c Taxon index c
+     * @param d Taxon index d
+     * @return The rank of the quadruple {a, b, c, d}
+     */
+    public static long getRank(int a, int b, int c, int d) {
+
+        if (!areDistinct(a, b, c, d)) {
+            throw new IllegalArgumentException("Each taxa id must be distinct");
+        }
+
+        // Sort the taxa with a five comparison network
+        int t;
+        if (a > b) { t = a; a = b; b = t; }
+        if (c > d) { t = c; c = d; d = t; }
+        if (a > c) { t = a; a = c; c = t; }
+        if (b > d) { t = b; b = d; d = t; }
+        if (b > c) { t = b; b = c; c = t; }
+
+        return getIndex(d, c, b, a);
+    }
+
+    /**
+     * Gets the topology of the quartet ab|cd within its quadruple.  If the taxa sorted ascending are s1 &lt; s2 &lt; s3
+     * &lt; s4, then topology 0 is s1s2|s3s4, topology 1 is s1s3|s2s4 and topology 2 is s1s4|s2s3, which correspond
+     * to the A, B and C weights of {@link QuartetWeights}.
+     *
+     * @param a Taxon index a
+     * @param b Taxon index b
+     * @param c Taxon index c
+     * @param d Taxon index d
+     * @return The topology index (0, 1 or 2) of ab|cd
+     */
+    public static int getTopology(int a, int b, int c, int d) {
+
+        // Find the taxon paired with the smallest one and the other pair
+        final int partner, x, y;
+        if (Math.min(a, b) < Math.min(c, d)) {
+            partner = Math.max(a, b);
+            x = c;
+            y = d;
+        } else {
+            partner = Math.max(c, d);
+            x = a;
+            y = b;
+        }
+
+        // The topology is given by how many of the other pair come before the partner
+        return (x < partner ? 1 : 0) + (y < partner ? 1 : 0);
+    }
+
+    /**
+     * Gets the taxa making up the quadruple with the given rank.  This is the inverse of
+     * {@link #getRank(int, int, int, int)}.
+     *
+     * @param rank The rank of the quadruple
+     * @param taxa Array of at least 4 elements, which receives the taxa in ascending order
+     */
+    public static void getTaxa(long rank, int[] taxa) {
+
+        long remaining = rank;
+        int upper = 4;
+        while (over4(upper) <= remaining) {
+            upper *= 2;
+        }
+
+        for (int k = 4; k >= 1; k--) {
+
+            // Binary search for the largest m with over(k, m) <= remaining, then m + 1 is the taxon
+            int lo = k - 1;
+            int hi = upper;
+            while (hi - lo > 1) {
+                final int mid = (lo + hi) >>> 1;
+                if (over(k, mid) <= remaining) {
+                    lo = mid;
+                } else {
+                    hi = mid;
+                }
+            }
+
+            taxa[k - 1] = lo + 1;
+            remaining -= over(k, lo);
+            upper = lo;
+        }
+    }
+
+    private static long over(int k, int n) {
+        return k == 4 ? over4(n) : k == 3 ? over3(n) : k == 2 ? over2(n) : over1(n);
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.quad.quartet;
+
+/**
+ * Holds the weights of the three quartet topologies on each quadruple of taxa, addressed by the rank of the quadruple
+ * (see {@link QuartetUtils#getRank(int, int, int, int)}) and the topology index (see
+ * {@link QuartetUtils#getTopology(int, int, int, int)}) rather than by {@link uk.ac.uea.cmp.spectre.core.ds.quad.Quad}
+ * keys.
+ *
+ * Each topology is marked as present once it has been set, so that a quartet with weight 0 can be told apart from one
+ * that was never seen.  Reading a weight that is not present returns 0.
+ */
+public interface QuartetWeightStore {
+
+    /**
+     * @return The number of quadruples with at least one topology present
+     */
+    long size();
+
+    /**
+     * @param rank Rank of the quadruple
+     * @return True if any topology of the quadruple is present
+     */
+    boolean contains(long rank);
+
+    /**
+     * @param rank     Rank of the quadruple
+     * @param topology Topology index (0, 1 or 2)
+     * @return True if the topology of the quadruple is present
+     */
+    boolean contains(long rank, int topology);
+
+    /**
+     * @param rank     Rank of the quadruple
+     * @param topology Topology index (0, 1 or 2)
+     * @return The weight of the topology, or 0.0 if it is not present
+     */
+    double getWeight(long rank, int topology);
+
+    /**
+     * Sets the weight of a topology and marks it as present
+     *
+     * @param rank     Rank of the quadruple
+     * @param topology Topology index (0, 1 or 2)
+     * @param weight   The new weight
+     */
+    void setWeight(long rank, int topology, double weight);
+
+    /**
+     * Adds to the weight of a topology, treating it as 0 if not present, and marks it as present
+     *
+     * @param rank      Rank of the quadruple
+     * @param topology  Topology index (0, 1 or 2)
+     * @param increment The amount to add
+     */
+    void incrementWeight(long rank, int topology, double increment);
+
+    /**
+     * @return A deep copy of this store
+     */
+    QuartetWeightStore copy();
+
+    /**
+     * @return A cursor over the quadruples present in this store.  Dense stores visit quadruples in rank order, sparse
+     * stores in no particular order.
+     */
+    Cursor cursor();
+
+    /**
+     * Iterates over the quadruples present in a store, allowing their weights to be read and updated in place
+     */
+    interface Cursor {
+
+        /**
+         * Moves to the next quadruple present in the store
+         *
+         * @return True if there was another quadruple, false if the end of the store has been reached
+         */
+        boolean next();
+
+        /**
+         * @return The rank of the current quadruple
+         */
+        long getRank();
+
+        /**
+         * @param topology Topology index (0, 1 or 2)
+         * @return True if the topology of the current quadruple is present
+         */
+        boolean contains(int topology);
+
+        /**
+         * @param topology Topology index (0, 1 or 2)
+         * @return The weight of the topology of the current quadruple, or 0.0 if it is not present
+         */
+        double getWeight(int topology);
+
+        /**
+         * Sets the weight of a topology of the current quadruple and marks it as present
+         *
+         * @param topology Topology index (0, 1 or 2)
+         * @param weight   The new weight
+         */
+        void setWeight(int topology, double weight);
+    }
+}
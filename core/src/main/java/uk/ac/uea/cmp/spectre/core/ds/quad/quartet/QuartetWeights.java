@@ -71,7 +71,7 @@ public class QuartetWeights extends Triplet<Double> {
         return this.getA() != 0 && this.getB() != 0 && this.getC() != 0;
     }
 
-    private double logNormValue(double value) {
+    private static double logNormValue(double value) {
         if (value < 0.0) {
             throw new IllegalStateException("Error: Quartet file contains negative length!");
         }
@@ -145,29 +145,48 @@ public class QuartetWeights extends Triplet<Double> {
 
     public void normalise(boolean log, boolean useMax) {
 
+        double[] weights = new double[]{this.getA(), this.getB(), this.getC()};
+
+        normalise(weights, 0, log, useMax);
+
+        this.setA(weights[0]);
+        this.setB(weights[1]);
+        this.setC(weights[2]);
+    }
+
+    /**
+     * Normalises three quartet weights held in an array, in the same way as {@link #normalise(boolean, boolean)}
+     *
+     * @param weights Array containing the weights
+     * @param offset  Index of the first of the three weights
+     * @param log     Normalise using natural log scale, or not
+     * @param useMax  Use max or min
+     */
+    public static void normalise(double[] weights, int offset, boolean log, boolean useMax) {
+
         // lowest length must be nonnegative
-        double newA = this.getA();
-        double newB = this.getB();
-        double newC = this.getC();
+        double newA = weights[offset];
+        double newB = weights[offset + 1];
+        double newC = weights[offset + 2];
 
         if (log) {
-            newA = logNormValue(this.getA());
-            newB = logNormValue(this.getB());
-            newC = logNormValue(this.getC());
+            newA = logNormValue(newA);
+            newB = logNormValue(newB);
+            newC = logNormValue(newC);
         }
 
         if (useMax) {
             double min = Math.min(Math.min(newA, newB), newC);
 
-            this.setA(newA - min);
-            this.setB(newB - min);
-            this.setC(newC - min);
+            weights[offset] = newA - min;
+            weights[offset + 1] = newB - min;
+            weights[offset + 2] = newC - min;
         } else {
             double max = Math.max(Math.max(newA, newB), newC);
 
-            this.setA(max - newA);
-            this.setB(max - newB);
-            this.setC(max - newC);
+            weights[offset] = max - newA;
+            weights[offset + 1] = max - newB;
+            weights[offset + 2] = max - newC;
         }
     }
 
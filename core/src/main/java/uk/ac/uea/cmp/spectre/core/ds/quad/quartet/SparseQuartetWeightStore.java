@@ -0,0 +1,231 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.quad.quartet;
+
+import java.util.Arrays;
+
+/**
+ * Quartet weight store for systems that only cover some of the quadruples, or whose taxa are not known up front.  Ranks
+ * are kept in an open addressing hash table with linear probing, with the three weights for the quadruple in slot i at
+ * 3i to 3i + 2 of a flat double array.  The table doubles in size whenever it becomes half full.
+ */
+public class SparseQuartetWeightStore implements QuartetWeightStore {
+
+    private static final long EMPTY = -1L;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] ranks;
+    private double[] weights;
+    private byte[] flags;
+
+    private int size;
+
+    /**
+     * Creates an empty store
+     */
+    public SparseQuartetWeightStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store with room for the given number of quadruples before it needs to grow
+     *
+     * @param expectedSize The number of quadruples expected
+     */
+    public SparseQuartetWeightStore(int expectedSize) {
+
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must not be negative");
+        }
+
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < expectedSize * 2L) {
+            capacity <<= 1;
+        }
+
+        this.allocate(capacity);
+        this.size = 0;
+    }
+
+    /**
+     * Copy constructor
+     *
+     * @param other The store to copy
+     */
+    public SparseQuartetWeightStore(SparseQuartetWeightStore other) {
+        this.ranks = other.ranks.clone();
+        this.weights = other.weights.clone();
+        this.flags = other.flags.clone();
+        this.size = other.size;
+    }
+
+    private void allocate(int capacity) {
+        this.ranks = new long[capacity];
+        this.weights = new double[capacity * 3];
+        this.flags = new byte[capacity];
+        Arrays.fill(this.ranks, EMPTY);
+    }
+
+    private static int hash(long rank) {
+        long h = rank * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Finds the slot holding the given rank, or the empty slot where it would go
+     */
+    private int slot(long rank) {
+
+        final int mask = this.ranks.length - 1;
+        int i = hash(rank) & mask;
+
+        while (this.ranks[i] != EMPTY && this.ranks[i] != rank) {
+            i = (i + 1) & mask;
+        }
+
+        return i;
+    }
+
+    /**
+     * Finds the slot holding the given rank, adding it to the table if not already there
+     */
+    private int insert(long rank) {
+
+        if (rank < 0) {
+            throw new IllegalArgumentException("Quadruple rank must not be negative: " + rank);
+        }
+
+        int i = this.slot(rank);
+
+        if (this.ranks[i] == EMPTY) {
+
+            if ((this.size + 1) * 2 > this.ranks.length) {
+                this.grow();
+                i = this.slot(rank);
+            }
+
+            this.ranks[i] = rank;
+            this.size++;
+        }
+
+        return i;
+    }
+
+    private void grow() {
+
+        final long[] oldRanks = this.ranks;
+        final double[] oldWeights = this.weights;
+        final byte[] oldFlags = this.flags;
+
+        if (oldRanks.length >= 1 << 30) {
+            throw new IllegalStateException("Sparse quartet weight store is full");
+        }
+
+        this.allocate(oldRanks.length * 2);
+
+        for (int j = 0; j < oldRanks.length; j++) {
+            if (oldRanks[j] != EMPTY) {
+                final int i = this.slot(oldRanks[j]);
+                this.ranks[i] = oldRanks[j];
+                this.flags[i] = oldFlags[j];
+                System.arraycopy(oldWeights, j * 3, this.weights, i * 3, 3);
+            }
+        }
+    }
+
+    @Override
+    public long size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean contains(long rank) {
+        return this.ranks[this.slot(rank)] != EMPTY;
+    }
+
+    @Override
+    public boolean contains(long rank, int topology) {
+        return (this.flags[this.slot(rank)] & (1 << topology)) != 0;
+    }
+
+    @Override
+    public double getWeight(long rank, int topology) {
+        final int i = this.slot(rank);
+        return this.ranks[i] == EMPTY ? 0.0 : this.weights[i * 3 + topology];
+    }
+
+    @Override
+    public void setWeight(long rank, int topology, double weight) {
+        final int i = this.insert(rank);
+        this.weights[i * 3 + topology] = weight;
+        this.flags[i] |= 1 << topology;
+    }
+
+    @Override
+    public void incrementWeight(long rank, int topology, double increment) {
+        final int i = this.insert(rank);
+        this.weights[i * 3 + topology] += increment;
+        this.flags[i] |= 1 << topology;
+    }
+
+    @Override
+    public QuartetWeightStore copy() {
+        return new SparseQuartetWeightStore(this);
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new SparseCursor();
+    }
+
+    private class SparseCursor implements Cursor {
+
+        private int slot = -1;
+
+        @Override
+        public boolean next() {
+
+            while (++slot < ranks.length) {
+                if (ranks[slot] != EMPTY) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public long getRank() {
+            return ranks[slot];
+        }
+
+        @Override
+        public boolean contains(int topology) {
+            return (flags[slot] & (1 << topology)) != 0;
+        }
+
+        @Override
+        public double getWeight(int topology) {
+            return weights[slot * 3 + topology];
+        }
+
+        @Override
+        public void setWeight(int topology, double weight) {
+            weights[slot * 3 + topology] = weight;
+            flags[slot] |= 1 << topology;
+        }
+    }
+}
@@ -15,22 +15,46 @@
 
 package uk.ac.uea.cmp.spectre.core.ds.quad.quartet;
 
-import org.apache.commons.lang3.tuple.Pair;
 import uk.ac.uea.cmp.spectre.core.ds.quad.Quad;
+import uk.ac.uea.cmp.spectre.core.ds.quad.SpectreQuad;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by dan on 04/12/13.
+ *
+ * Maps sorted quadruples to the weights of their three quartet topologies.  The weights are held in a
+ * {@link QuartetWeightStore}, indexed by the rank of the quadruple, so lookups don't need to create a {@link Quad} and
+ * weights aren't boxed.  A quadruple is either absent, or present with all three weights.
  */
-public class WeightedQuartetGroupMap extends HashMap<Quad, QuartetWeights> {
+public class WeightedQuartetGroupMap {
+
+    private final QuartetWeightStore store;
 
     /**
-     * Creates an empty weighted quartet map
+     * Creates an empty weighted quartet map backed by a sparse store, for when the taxa aren't known up front
      */
     public WeightedQuartetGroupMap() {
-        super();
+        this(new SparseQuartetWeightStore());
+    }
+
+    /**
+     * Creates an empty weighted quartet map backed by a dense store, with room for all quadruples over taxa 1 to nbTaxa
+     *
+     * @param nbTaxa The number of taxa
+     */
+    public WeightedQuartetGroupMap(int nbTaxa) {
+        this(new DenseQuartetWeightStore(nbTaxa));
+    }
+
+    /**
+     * Creates a weighted quartet map backed by the given store.  Changes to the map are written through to the store.
+     *
+     * @param store The store to use
+     */
+    public WeightedQuartetGroupMap(QuartetWeightStore store) {
+        this.store = store;
     }
 
     /**
@@ -40,102 +64,169 @@ public class WeightedQuartetGroupMap extends HashMap<Quad, QuartetWeights> {
      */
     public WeightedQuartetGroupMap(CanonicalWeightedQuartetMap qMap) {
 
-        for (Map.Entry<Quad, Double> entry : qMap.entrySet()) {
+        this(qMap.getStore().copy());
 
-            this.put(entry.getKey(), entry.getValue());
+        // Any quadruple present gets all three weights
+        QuartetWeightStore.Cursor cursor = this.store.cursor();
+        while (cursor.next()) {
+            for (int t = 0; t < 3; t++) {
+                if (!cursor.contains(t)) {
+                    cursor.setWeight(t, 0.0);
+                }
+            }
         }
+    }
 
+    /**
+     * @return The store holding the weights in this map
+     */
+    public QuartetWeightStore getStore() {
+        return store;
     }
 
     /**
-     * Adds a weighted quartet into the hash map.
+     * @return The number of quadruples in this map
+     */
+    public long size() {
+        return this.store.size();
+    }
+
+    public boolean containsKey(Quad quad) {
+        return this.store.contains(QuartetUtils.getRank(quad.getA(), quad.getB(), quad.getC(), quad.getD()));
+    }
+
+    /**
+     * Gets a copy of the weights for the quadruple containing the taxa in the given quartet
      *
-     * @param quad Quartet to put
-     * @param weight Weight of Quartet
-     * @return The previous value for this quartet (or null, if there wasn't anything)
+     * @param quad The quartet
+     * @return The weights of the quadruple, or null if it is not in the map
      */
-    public QuartetWeights put(Quad quad, double weight) {
+    public QuartetWeights get(Quad quad) {
 
-        Pair<Quad, Integer> keys = quad.getGroupKeys();
+        final long rank = QuartetUtils.getRank(quad.getA(), quad.getB(), quad.getC(), quad.getD());
 
-        return this.put(keys.getLeft(), keys.getRight(), weight);
+        return this.store.contains(rank) ?
+                new QuartetWeights(this.store.getWeight(rank, 0), this.store.getWeight(rank, 1), this.store.getWeight(rank, 2)) :
+                null;
     }
 
-    protected QuartetWeights put(Quad sorted, int index, double weight) {
+    /**
+     * Adds a weighted quartet into the map.
+     *
+     * @param quad Quartet to put
+     * @param weight Weight of Quartet
+     */
+    public void put(Quad quad, double weight) {
 
-        QuartetWeights weights = this.get(sorted);
+        this.put(QuartetUtils.getRank(quad.getA(), quad.getB(), quad.getC(), quad.getD()),
+                QuartetUtils.getTopology(quad.getA(), quad.getB(), quad.getC(), quad.getD()), weight);
+    }
 
-        if (weights != null) {
-            weights.set(index, weight);
-            return weights;
-        } else {
-            QuartetWeights qw = new QuartetWeights();
-            qw.set(index, weight);
+    protected void put(long rank, int index, double weight) {
 
-            return super.put(sorted, qw);
+        if (!this.store.contains(rank)) {
+            this.store.setWeight(rank, 0, 0.0);
+            this.store.setWeight(rank, 1, 0.0);
+            this.store.setWeight(rank, 2, 0.0);
         }
+
+        this.store.setWeight(rank, index, weight);
     }
 
 
     /**
-     * Already given the weights, so just dump these where they should be in the hash
+     * Already given the weights, so just dump these where they should be in the map
      *
      * @param quad Quartet to put
      * @param weights Weights for quartet
      */
-    @Override
-    public QuartetWeights put(Quad quad, QuartetWeights weights) {
+    public void put(Quad quad, QuartetWeights weights) {
 
-        Quad sorted = quad.createSortedCopy();
+        final long rank = QuartetUtils.getRank(quad.getA(), quad.getB(), quad.getC(), quad.getD());
 
-        super.put(sorted, weights);
-
-        return weights;
+        this.store.setWeight(rank, 0, weights.getA());
+        this.store.setWeight(rank, 1, weights.getB());
+        this.store.setWeight(rank, 2, weights.getC());
     }
 
 
     public void incrementWeight(Quad q, double increment) {
 
-        Pair<Quad, Integer> keys = q.getGroupKeys();
-        Quad sorted = keys.getLeft();
-        int index = keys.getRight();
+        final long rank = QuartetUtils.getRank(q.getA(), q.getB(), q.getC(), q.getD());
+        final int index = QuartetUtils.getTopology(q.getA(), q.getB(), q.getC(), q.getD());
 
-        if (this.containsKey(sorted)) {
-            this.put(sorted, this.getWeight(sorted, index) + increment);
-        } else {
-            this.put(sorted, index, increment);
-        }
+        this.put(rank, index, this.store.getWeight(rank, index) + increment);
     }
 
     /**
-     * Gets the length of a specific quartet.  If the quartet is not in the hash then simply return 0.0.
+     * Gets the length of a specific quartet.  If the quartet is not in the map then simply return 0.0.
      *
-     * @param q The quartet to find in the hash.
-     * @return The weight of the specified quartet if found in the hash, 0.0 otherwise.
+     * @param q The quartet to find in the map.
+     * @return The weight of the specified quartet if found in the map, 0.0 otherwise.
      */
     public double getWeight(Quad q) {
-
-        Pair<Quad, Integer> keys = q.getGroupKeys();
-
-        return this.getWeight(keys.getLeft(), keys.getRight());
+        return this.getWeight(q.getA(), q.getB(), q.getC(), q.getD());
     }
 
     public double getWeight(Quad sorted, int index) {
+        return this.store.getWeight(QuartetUtils.getRank(sorted.getA(), sorted.getB(), sorted.getC(), sorted.getD()), index);
+    }
 
-        return this.containsKey(sorted) ? this.get(sorted).get(index + 1) : 0.0;
+    /**
+     * Gets the length of the quartet ab|cd.  If the quartet is not in the map then simply return 0.0.
+     *
+     * @param a Taxon index a
+     * @param b Taxon index b
+     * @param c Taxon index c
+     * @param d Taxon index d
+     * @return The weight of the specified quartet if found in the map, 0.0 otherwise.
+     */
+    public double getWeight(int a, int b, int c, int d) {
+        return this.store.getWeight(QuartetUtils.getRank(a, b, c, d), QuartetUtils.getTopology(a, b, c, d));
     }
 
     /**
-     * Normalises all the quartet weights in this hash map
+     * Normalises all the quartet weights in this map
      *
      * @param logscale Normalise using natural log scale, or not
      * @param useMax   Use max or min
      */
     public void normalize(boolean logscale, boolean useMax) {
 
-        for (QuartetWeights quartetWeights : this.values()) {
-            quartetWeights.normalise(logscale, useMax);
+        final double[] weights = new double[3];
+
+        QuartetWeightStore.Cursor cursor = this.store.cursor();
+
+        while (cursor.next()) {
+
+            for (int t = 0; t < 3; t++) {
+                weights[t] = cursor.getWeight(t);
+            }
+
+            QuartetWeights.normalise(weights, 0, logscale, useMax);
+
+            for (int t = 0; t < 3; t++) {
+                cursor.setWeight(t, weights[t]);
+            }
         }
     }
 
+    /**
+     * @return The sorted quadruples in this map, in no particular order
+     */
+    public List<Quad> keys() {
+
+        final List<Quad> keys = new ArrayList<>();
+        final int[] taxa = new int[4];
+
+        QuartetWeightStore.Cursor cursor = this.store.cursor();
+
+        while (cursor.next()) {
+            QuartetUtils.getTaxa(cursor.getRank(), taxa);
+            keys.add(new SpectreQuad(taxa));
+        }
+
+        return keys;
+    }
+
 }
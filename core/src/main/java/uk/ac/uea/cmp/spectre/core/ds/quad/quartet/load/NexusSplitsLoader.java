@@ -39,7 +39,7 @@ public class NexusSplitsLoader extends AbstractNexusLoader {
         SplitSystem splitSystem = new NexusReader().readSplitSystem(file);
 
         // Initialise the quartet weights to the right size, which depends on the number of taxa present in the split system
-        CanonicalWeightedQuartetMap qW = new CanonicalWeightedQuartetMap();
+        CanonicalWeightedQuartetMap qW = new CanonicalWeightedQuartetMap(splitSystem.getNbTaxa());
 
         // Add each split to the quartet weights
         for (Split split : splitSystem) {
@@ -0,0 +1,549 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.split;
+
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+
+import java.util.Arrays;
+
+/**
+ * Split whose sides are held as bitsets indexed by taxon id, 64 taxa to a word.  Membership, compatibility and
+ * restriction queries are answered with a few word operations rather than by searching lists of boxed integers, which
+ * suits split systems where every pair of splits is compared.
+ *
+ * Sides are always reported in ascending order of taxon id, so {@link #getASide()} and {@link #getBSide()} return
+ * sorted copies, and changing those copies does not change the split.  Splits compare equal to, and hash the same as,
+ * {@link SpectreSplit}s with the same bipartition.
+ */
+public class BitSplit implements Split {
+
+    private long[] aSide;
+    private long[] bSide;
+    private int aSideSize;
+    private int bSideSize;
+    private double weight;
+    private boolean active;
+
+    /**
+     * Creates a split with the given A side, and all other taxa from 1 to nbTaxa on the B side
+     * @param aSide Taxa on the A side
+     * @param nbTaxa Number of taxa
+     */
+    public BitSplit(int[] aSide, int nbTaxa) {
+        this(aSide, nbTaxa, 1.0, false);
+    }
+
+    /**
+     * Creates a split with the given A side, and all other taxa on the B side
+     * @param aSide Taxa on the A side
+     * @param nbTaxa Number of taxa
+     * @param weight Weight of the split
+     * @param zerobased True if the taxa ids go from 0 to nbTaxa - 1, false if they go from 1 to nbTaxa
+     */
+    public BitSplit(int[] aSide, int nbTaxa, double weight, boolean zerobased) {
+        this(toBits(aSide, nbTaxa + 1), complement(toBits(aSide, nbTaxa + 1), zerobased ? 0 : 1, zerobased ? nbTaxa : nbTaxa + 1),
+                weight, true);
+    }
+
+    /**
+     * Creates a split with the given sides
+     * @param aSide Taxa on the A side
+     * @param bSide Taxa on the B side
+     * @param weight Weight of the split
+     * @param active Whether the split is active
+     */
+    public BitSplit(int[] aSide, int[] bSide, double weight, boolean active) {
+        this(toBits(aSide, 0), toBits(bSide, 0), weight, active);
+    }
+
+    /**
+     * Creates a copy of any split
+     * @param split The split to copy
+     */
+    public BitSplit(Split split) {
+        this(split.getASideAsIntArray(), split.getBSideAsIntArray(), split.getWeight(), split.isActive());
+    }
+
+    private BitSplit(long[] aSide, long[] bSide, double weight, boolean active) {
+
+        // Keep both sides the same length, so that they can be compared word by word
+        final int nbWords = Math.max(aSide.length, bSide.length);
+        this.aSide = aSide.length == nbWords ? aSide : Arrays.copyOf(aSide, nbWords);
+        this.bSide = bSide.length == nbWords ? bSide : Arrays.copyOf(bSide, nbWords);
+
+        for (int w = 0; w < nbWords; w++) {
+            if ((this.aSide[w] & this.bSide[w]) != 0L) {
+                throw new IllegalArgumentException("Split sides must not share any taxa");
+            }
+        }
+
+        if (cardinality(this.aSide) == 0) {
+            throw new IllegalArgumentException("SplitBlock must be of at least size 1");
+        }
+
+        this.weight = weight;
+        this.active = active;
+        this.updateSizes();
+    }
+
+    private static long[] toBits(int[] taxa, int minSize) {
+
+        int max = minSize - 1;
+        for (int t : taxa) {
+            if (t < 0) {
+                throw new IllegalArgumentException("Taxon ids must not be negative: " + t);
+            }
+            max = Math.max(max, t);
+        }
+
+        final long[] bits = new long[(max >>> 6) + 1];
+        for (int t : taxa) {
+            bits[t >>> 6] |= 1L << t;
+        }
+        return bits;
+    }
+
+    private static long[] complement(long[] bits, int from, int to) {
+
+        final long[] c = new long[bits.length];
+        for (int t = from; t < to; t++) {
+            if ((bits[t >>> 6] & (1L << t)) == 0L) {
+                c[t >>> 6] |= 1L << t;
+            }
+        }
+        return c;
+    }
+
+    private static int cardinality(long[] bits) {
+        int count = 0;
+        for (long w : bits) {
+            count += Long.bitCount(w);
+        }
+        return count;
+    }
+
+    private static boolean intersects(long[] a, long[] b) {
+        final int nbWords = Math.min(a.length, b.length);
+        for (int w = 0; w < nbWords; w++) {
+            if ((a[w] & b[w]) != 0L) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSet(long[] bits, int taxon) {
+        return taxon >= 0 && (taxon >>> 6) < bits.length && (bits[taxon >>> 6] & (1L << taxon)) != 0L;
+    }
+
+    private static int first(long[] bits) {
+        for (int w = 0; w < bits.length; w++) {
+            if (bits[w] != 0L) {
+                return (w << 6) + Long.numberOfTrailingZeros(bits[w]);
+            }
+        }
+        return -1;
+    }
+
+    private static int last(long[] bits) {
+        for (int w = bits.length - 1; w >= 0; w--) {
+            if (bits[w] != 0L) {
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(bits[w]);
+            }
+        }
+        return -1;
+    }
+
+    private static int[] toIntArray(long[] bits, int size) {
+        final int[] taxa = new int[size];
+        int i = 0;
+        for (int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            while (word != 0L) {
+                taxa[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return taxa;
+    }
+
+    /**
+     * Hash of a sorted split block, as given by {@link SpectreSplitBlock#hashCode()}
+     */
+    private static int blockHash(long[] bits) {
+        int hash = 17;
+        for (int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            while (word != 0L) {
+                hash = hash * 37 + (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return hash;
+    }
+
+    private void updateSizes() {
+        this.aSideSize = cardinality(this.aSide);
+        this.bSideSize = cardinality(this.bSide);
+    }
+
+    /**
+     * @return True if the A side is the side that {@link #makeCanonical()} would put first
+     */
+    private boolean isASideCanonical() {
+        return this.aSideSize < this.bSideSize ||
+                (this.aSideSize == this.bSideSize && first(this.aSide) < first(this.bSide));
+    }
+
+    private void checkSameNbTaxa(Split other) {
+        if (this.getNbTaxa() != other.getNbTaxa()) {
+            throw new IllegalArgumentException("Comparing splits that have different numbers of taxa!");
+        }
+    }
+
+    private static BitSplit asBitSplit(Split split) {
+        return split instanceof BitSplit ? (BitSplit) split : new BitSplit(split);
+    }
+
+    @Override
+    public int hashCode() {
+
+        final long[] first = this.isASideCanonical() ? this.aSide : this.bSide;
+        final long[] second = first == this.aSide ? this.bSide : this.aSide;
+
+        // Matches SpectreSplit, which hashes the sides of its canonical form in order
+        return (17 * 37 + blockHash(first)) * 37 + blockHash(second);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (o == null)
+            return false;
+
+        if (this == o)
+            return true;
+
+        if (!(o instanceof Split))
+            return false;
+
+        final BitSplit other = asBitSplit((Split) o);
+
+        return (sameBits(this.aSide, other.aSide) && sameBits(this.bSide, other.bSide)) ||
+                (sameBits(this.aSide, other.bSide) && sameBits(this.bSide, other.aSide));
+    }
+
+    private static boolean sameBits(long[] a, long[] b) {
+        final int nbWords = Math.max(a.length, b.length);
+        for (int w = 0; w < nbWords; w++) {
+            final long wa = w < a.length ? a[w] : 0L;
+            final long wb = w < b.length ? b[w] : 0L;
+            if (wa != wb) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Split copy() {
+        return new BitSplit(this.aSide.clone(), this.bSide.clone(), this.weight, this.active);
+    }
+
+    @Override
+    public double getWeight() {
+        return weight;
+    }
+
+    @Override
+    public void setWeight(double weight) {
+        this.weight = weight;
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    @Override
+    public int getNbTaxa() {
+        return this.aSideSize + this.bSideSize;
+    }
+
+    @Override
+    public int getASideFirst() {
+        return first(this.aSide);
+    }
+
+    @Override
+    public int getASideLast() {
+        return last(this.aSide);
+    }
+
+    @Override
+    public int getASideSize() {
+        return this.aSideSize;
+    }
+
+    @Override
+    public int getBSideSize() {
+        return this.bSideSize;
+    }
+
+    @Override
+    public SplitBlock getASide() {
+        return new SpectreSplitBlock(this.getASideAsIntArray());
+    }
+
+    @Override
+    public SplitBlock getBSide() {
+        return new SpectreSplitBlock(this.getBSideAsIntArray());
+    }
+
+    @Override
+    public SplitSide getSide(int taxonId) {
+        if (isSet(this.aSide, taxonId)) {
+            return SplitSide.A_SIDE;
+        }
+        else if (isSet(this.bSide, taxonId)) {
+            return SplitSide.B_SIDE;
+        }
+        else {
+            throw new IllegalArgumentException("Couldn't find taxon (" + taxonId + ") on either side of split.");
+        }
+    }
+
+    @Override
+    public int[] getASideAsIntArray() {
+        return toIntArray(this.aSide, this.aSideSize);
+    }
+
+    @Override
+    public int[] getBSideAsIntArray() {
+        return toIntArray(this.bSide, this.bSideSize);
+    }
+
+    @Override
+    public void mergeASides(Split split) {
+
+        final long[] other = asBitSplit(split).aSide;
+        final long[] all = new long[Math.max(this.aSide.length, other.length)];
+
+        final long[] newA = Arrays.copyOf(this.aSide, all.length);
+        for (int w = 0; w < all.length; w++) {
+            all[w] = (w < this.aSide.length ? this.aSide[w] | this.bSide[w] : 0L);
+            if (w < other.length) {
+                newA[w] |= other[w];
+                all[w] |= other[w];
+            }
+        }
+
+        final long[] newB = new long[all.length];
+        for (int w = 0; w < all.length; w++) {
+            newB[w] = all[w] & ~newA[w];
+        }
+
+        this.aSide = newA;
+        this.bSide = newB;
+        this.updateSizes();
+    }
+
+    @Override
+    public Split makeCanonical() {
+        return this.isASideCanonical() ?
+                new BitSplit(this.aSide.clone(), this.bSide.clone(), this.weight, this.active) :
+                new BitSplit(this.bSide.clone(), this.aSide.clone(), this.weight, this.active);
+    }
+
+    @Override
+    public boolean isTrivial() {
+        return this.aSideSize == 1 || this.bSideSize == 1;
+    }
+
+    @Override
+    public Integer getTrivial() {
+        if (this.aSideSize == 1) {
+            return Integer.valueOf(first(this.aSide));
+        }
+        else if (this.bSideSize == 1) {
+            return Integer.valueOf(first(this.bSide));
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Check to see if this split is consistent with the given ordering, hence is circular.  This is the case if going
+     * round the ordering crosses from one side of the split to the other no more than twice.
+     *
+     * @param ordering The ordering of taxa to test this split against
+     * @return True, if this split is circular, false if not.
+     */
+    @Override
+    public boolean isCircular(IdentifierList ordering) {
+
+        final int n = ordering.size();
+
+        if (n != this.getNbTaxa()) {
+            throw new IllegalArgumentException("This split represents a different number of taxa (" + this.getNbTaxa() + ") to the circular ordering provided (" + n + ")");
+        }
+
+        int changes = 0;
+        boolean previous = isSet(this.aSide, ordering.get(n - 1).getId());
+        for (int i = 0; i < n; i++) {
+            final boolean current = isSet(this.aSide, ordering.get(i).getId());
+            if (current != previous) {
+                changes++;
+            }
+            previous = current;
+        }
+
+        return changes <= 2;
+    }
+
+    @Override
+    public boolean isCompatible(Split other) {
+
+        this.checkSameNbTaxa(other);
+
+        final BitSplit o = asBitSplit(other);
+
+        return !intersects(this.aSide, o.aSide) || !intersects(this.aSide, o.bSide) ||
+                !intersects(this.bSide, o.aSide) || !intersects(this.bSide, o.bSide);
+    }
+
+    @Override
+    public Compatible getCompatible(Split other) {
+
+        this.checkSameNbTaxa(other);
+
+        final BitSplit o = asBitSplit(other);
+
+        if (!intersects(this.aSide, o.aSide)) {
+            return Compatible.YES_11;
+        } else if (!intersects(this.aSide, o.bSide)) {
+            return Compatible.YES_10;
+        } else if (!intersects(this.bSide, o.aSide)) {
+            return Compatible.YES_01;
+        } else if (!intersects(this.bSide, o.bSide)) {
+            return Compatible.YES_00;
+        } else {
+            return Compatible.NO;
+        }
+    }
+
+    @Override
+    public boolean restrictionExists(int a, int b, int c, int d, int nr) {
+
+        final boolean aa = isSet(this.aSide, a);
+        final boolean ab = isSet(this.aSide, b);
+        final boolean ac = isSet(this.aSide, c);
+        final boolean ad = isSet(this.aSide, d);
+
+        // Just check user provided taxa that exist in this split otherwise error
+        if (!aa && !isSet(this.bSide, a)) {
+            throw new IllegalArgumentException("Index A (" + a + ") does not exist in split.");
+        }
+        if (!ab && !isSet(this.bSide, b)) {
+            throw new IllegalArgumentException("Index B (" + b + ") does not exist in split.");
+        }
+        if (!ac && !isSet(this.bSide, c)) {
+            throw new IllegalArgumentException("Index C (" + c + ") does not exist in split.");
+        }
+        if (!ad && !isSet(this.bSide, d)) {
+            throw new IllegalArgumentException("Index D (" + d + ") does not exist in split.");
+        }
+
+        switch (nr) {
+            case 0:
+                return ab == ac && ac == ad && aa != ab;
+            case 1:
+                return aa == ac && ac == ad && aa != ab;
+            case 2:
+                return aa == ab && ab == ad && aa != ac;
+            case 3:
+                return aa == ab && ab == ac && aa != ad;
+            case 4:
+                return aa == ab && ac == ad && aa != ac;
+            case 5:
+                return aa == ac && ab == ad && aa != ab;
+            case 6:
+                return aa == ad && ab == ac && aa != ab;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public void incTaxId() {
+        this.aSide = shiftUp(this.aSide);
+        this.bSide = shiftUp(this.bSide);
+    }
+
+    private static long[] shiftUp(long[] bits) {
+        final long[] shifted = new long[bits.length + ((bits[bits.length - 1] >>> 63) != 0L ? 1 : 0)];
+        for (int w = 0; w < shifted.length; w++) {
+            final long word = w < bits.length ? bits[w] << 1 : 0L;
+            final long carry = w > 0 ? bits[w - 1] >>> 63 : 0L;
+            shifted[w] = word | carry;
+        }
+        return shifted;
+    }
+
+    @Override
+    public int compareTo(Split o) {
+
+        if (o == null)
+            throw new NullPointerException("The split to compare is null");
+
+        if (o == this)
+            return 0;
+
+        int difNbTaxa = this.getNbTaxa() - o.getNbTaxa();
+
+        if (difNbTaxa != 0) {
+            return difNbTaxa;
+        }
+
+        // Same ordering as SpectreSplitBlock: smaller sides first, then by taxa
+        int difASide = this.aSideSize - o.getASideSize();
+        if (difASide == 0) {
+            final int[] mine = this.getASideAsIntArray();
+            final int[] theirs = o.getASideAsIntArray();
+            for (int i = 0; i < mine.length && difASide == 0; i++) {
+                difASide = mine[i] - theirs[i];
+            }
+        }
+
+        if (difASide != 0) {
+            return difASide < 0 ? -1 : 1;
+        }
+
+        double diffWeight = this.weight - o.getWeight();
+        return diffWeight == 0.0 ? 0 : diffWeight < 0.0 ? -1 : 1;
+    }
+
+    @Override
+    public String toString() {
+        return (this.active ? "ON " : "OFF") + " : {" + this.getASide().toString() + " | " + this.getBSide().toString() + "} : " + this.weight;
+    }
+}
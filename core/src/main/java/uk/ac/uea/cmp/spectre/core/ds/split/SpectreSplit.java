@@ -114,7 +114,10 @@ public class SpectreSplit implements Split {
         if (this == o)
             return true;
 
-        Split other = ((SpectreSplit) o).makeCanonical();
+        if (!(o instanceof Split))
+            return false;
+
+        Split other = ((Split) o).makeCanonical();
         Split s = this.makeCanonical();
 
         return new EqualsBuilder()
@@ -348,20 +351,19 @@ public class SpectreSplit implements Split {
     @Override
     public boolean isCompatible(Split other) {
 
-        if (!(other instanceof SpectreSplit)) {
-            throw new IllegalArgumentException("Can't check compatibility of splits of different types.");
+        // Compatibility is symmetric, so let a bitset split do the work if given one
+        if (other instanceof BitSplit) {
+            return other.isCompatible(this);
         }
 
-        SpectreSplit o = (SpectreSplit)other;
-
-        if (this.getNbTaxa() != o.getNbTaxa()) {
+        if (this.getNbTaxa() != other.getNbTaxa()) {
             throw new IllegalArgumentException("Comparing splits that have different numbers of taxa!");
         }
 
         SplitBlock thisASide = this.getASide();
         SplitBlock thisBSide = this.getBSide();
-        SplitBlock otherASide = o.getASide();
-        SplitBlock otherBSide = o.getBSide();
+        SplitBlock otherASide = other.getASide();
+        SplitBlock otherBSide = other.getBSide();
 
         // Check to see that at least one pair of split block doesn't contain any taxa found in the other.  If that's
         // the case then these two splits are compatible
@@ -371,23 +373,17 @@ public class SpectreSplit implements Split {
 
     public Compatible getCompatible(Split other) {
 
-        if (!(other instanceof SpectreSplit)) {
-            throw new IllegalArgumentException("Can't check compatibility of splits of different types.");
-        }
-
-        SpectreSplit o = (SpectreSplit)other;
-
-        if (this.getNbTaxa() != o.getNbTaxa()) {
+        if (this.getNbTaxa() != other.getNbTaxa()) {
             throw new IllegalArgumentException("Comparing splits that have different numbers of taxa!");
         }
 
-        if (!this.aSideContainsAny(o.getASide())) {
+        if (!this.aSideContainsAny(other.getASide())) {
             return Compatible.YES_11;
-        } else if (!this.aSideContainsAny(o.getBSide())) {
+        } else if (!this.aSideContainsAny(other.getBSide())) {
             return Compatible.YES_10;
-        } else if (!this.bSideContainsAny(o.getASide())) {
+        } else if (!this.bSideContainsAny(other.getASide())) {
             return Compatible.YES_01;
-        } else if (!this.bSideContainsAny(o.getBSide())) {
+        } else if (!this.bSideContainsAny(other.getBSide())) {
             return Compatible.YES_00;
         } else {
             return Compatible.NO;
@@ -27,7 +27,9 @@ import uk.ac.uea.cmp.spectre.core.ds.split.flat.PermutationSequence;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class SpectreSplitSystem extends ArrayList<Split> implements SplitSystem {
 
@@ -137,6 +139,21 @@ public class SpectreSplitSystem extends ArrayList<Split> implements SplitSystem
         this(new IdentifierList(splitSystem.getOrderedTaxa()), new ArrayList<>(splitSystem));
     }
 
+    /**
+     * Creates a copy of this split system in which every split is held as a {@link BitSplit}, for when many
+     * compatibility, side or restriction queries will be made on it.
+     * @return A new split system with the same taxa and splits
+     */
+    public SpectreSplitSystem makeBitSplits() {
+
+        List<Split> splits = new ArrayList<>(this.size());
+        for (Split s : this) {
+            splits.add(new BitSplit(s));
+        }
+
+        return new SpectreSplitSystem(new IdentifierList(this.orderedTaxa), splits);
+    }
+
 
     public SpectreSplitSystem(SplitSystem unweightedSplitSystem, TreeSplitWeights treeWeights) {
 
@@ -553,9 +570,16 @@ public class SpectreSplitSystem extends ArrayList<Split> implements SplitSystem
     @Override
     public boolean isCompatible() {
 
-        for(Split a : this) {
-            for(Split b : this) {
-                if (a != b && !a.isCompatible(b)) {
+        // Compatibility is symmetric, so only check each pair once, using bitset copies of the splits
+        final BitSplit[] splits = new BitSplit[this.size()];
+        for (int i = 0; i < splits.length; i++) {
+            final Split s = this.get(i);
+            splits[i] = s instanceof BitSplit ? (BitSplit) s : new BitSplit(s);
+        }
+
+        for (int i = 0; i < splits.length; i++) {
+            for (int j = i + 1; j < splits.length; j++) {
+                if (!splits[i].isCompatible(splits[j])) {
                     return false;
                 }
             }
@@ -612,9 +636,10 @@ public class SpectreSplitSystem extends ArrayList<Split> implements SplitSystem
     public boolean[][] getAs2DBooleanArray() {
         boolean[][] splits = new boolean[this.size()][this.getNbTaxa()];
         for (int i = 0; i < this.size(); i++) {
+            Set<Integer> aSide = new HashSet<>(this.get(i).getASide());
             for (int j = 0; j < this.getNbTaxa(); j++) {
                 int id = this.orderedTaxa.getById(j).getId();
-                splits[i][j] = this.get(i).getASide().contains(id);
+                splits[i][j] = aSide.contains(id);
             }
         }
         return splits;
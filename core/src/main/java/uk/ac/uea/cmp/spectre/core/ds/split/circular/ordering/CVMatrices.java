@@ -19,8 +19,8 @@ import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import uk.ac.uea.cmp.spectre.core.ds.Identifier;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DenseDistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
-import uk.ac.uea.cmp.spectre.core.ds.distance.FlexibleDistanceMatrix;
 
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -46,6 +46,8 @@ public class CVMatrices {
     private Map<Identifier, IdentifierList> c2vs;
     private Map<Identifier, Identifier> v2c;
 
+    private int lastClusterId;
+
     public CVMatrices() {
 
         this.clusterIdMap = new HashMap<>();
@@ -55,11 +57,13 @@ public class CVMatrices {
         this.reverseVertexTranslation = new HashMap<>();
         this.clusterTranslation = new HashMap<>();
 
-        this.v2v = new FlexibleDistanceMatrix();
-        this.c2c = new FlexibleDistanceMatrix();
+        this.v2v = new DenseDistanceMatrix();
+        this.c2c = new DenseDistanceMatrix();
         this.c2v = new HashMap<>();
         this.c2vs = new HashMap<>();
         this.v2c = new HashMap<>();
+
+        this.lastClusterId = 0;
     }
 
     /**
@@ -108,13 +112,11 @@ public class CVMatrices {
      * @param userMatrix The user distance matrix
      */
     private final void setupV2V(DistanceMatrix userMatrix) {
+        IdentifierList vertices = new IdentifierList();
         for(Identifier x : userMatrix.getTaxa()) {
-            Identifier xCanonical = this.vertexTranslation.get(x);
-            for(Identifier y : userMatrix.getTaxa()) {
-                Identifier yCanonical = this.vertexTranslation.get(y);
-                this.v2v.setDistance(xCanonical, yCanonical, userMatrix.getDistance(x, y));
-            }
+            vertices.add(this.vertexTranslation.get(x));
         }
+        this.v2v = this.copyDistances(userMatrix, vertices);
     }
 
     /**
@@ -122,13 +124,29 @@ public class CVMatrices {
      * @param userMatrix The user distance matrix
      */
     private final void setupC2C(DistanceMatrix userMatrix) {
+        IdentifierList clusters = new IdentifierList();
         for(Identifier x : userMatrix.getTaxa()) {
-            Identifier xCanonical = clusterTranslation.get(x);
-            for(Identifier y : userMatrix.getTaxa()) {
-                Identifier yCanonical = clusterTranslation.get(y);
-                this.c2c.setDistance(xCanonical , yCanonical, userMatrix.getDistance(x, y));
+            clusters.add(this.clusterTranslation.get(x));
+        }
+        this.c2c = this.copyDistances(userMatrix, clusters);
+    }
+
+    /**
+     * Copies the distances from the user matrix into a new matrix using the given canonical taxa, which are expected
+     * to be in the same order as the user taxa
+     * @param userMatrix The user distance matrix
+     * @param canonical The canonical taxa
+     * @return A new distance matrix
+     */
+    private DistanceMatrix copyDistances(DistanceMatrix userMatrix, IdentifierList canonical) {
+        DistanceMatrix copy = new DenseDistanceMatrix(canonical);
+        final int n = canonical.size();
+        for(int i = 0; i < n; i++) {
+            for(int j = i + 1; j < n; j++) {
+                copy.setDistanceByIndex(i, j, userMatrix.getDistanceByIndex(i, j));
             }
         }
+        return copy;
     }
 
 
@@ -182,9 +200,15 @@ public class CVMatrices {
         return this.v2v.size();
     }
 
+    /**
+     * Creates a new cluster with an id that is not used by any cluster, past or present.  The cluster to cluster
+     * matrix is not always kept up to date with the merged clusters, e.g. in GreedyME mode, so the active clusters and
+     * the ids already handed out are also taken into account.
+     * @return New cluster
+     */
     public Identifier createNextCluster() {
 
-        int maxId = 0;
+        int maxId = this.lastClusterId;
 
         for (Identifier t : this.getClusters()) {
             if (maxId < t.getId()) {
@@ -192,7 +216,14 @@ public class CVMatrices {
             }
         }
 
+        for (Identifier t : this.c2vs.keySet()) {
+            if (maxId < t.getId()) {
+                maxId = t.getId();
+            }
+        }
+
         maxId++;
+        this.lastClusterId = maxId;
 
         return new Identifier("C" + Integer.toString(maxId), maxId);
     }
@@ -214,7 +245,7 @@ public class CVMatrices {
         maxId++;
 
         Identifier v = new Identifier("V" + Integer.toString(maxId), maxId);
-        this.v2v.getTaxa().add(v);
+        this.v2v.addIdentifier(v);
 
         return v;
     }
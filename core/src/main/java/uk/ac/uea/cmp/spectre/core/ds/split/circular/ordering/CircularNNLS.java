@@ -23,7 +23,11 @@ import uk.ac.uea.cmp.spectre.core.ds.split.SplitBlock;
 import uk.ac.uea.cmp.spectre.core.ds.split.SplitWeights;
 import uk.ac.uea.cmp.spectre.core.ds.split.TreeSplitWeights;
 
-import java.util.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Given a circular ordering and a distance matrix, computes the unconstrained or constrained least square weighted
@@ -40,14 +44,197 @@ import java.util.*;
  * Quasi-Newton) converges faster than the conjugate gradient method. Furthermore, I can imagine that an iterative
  * method combined with a positivity constraint would speed up the constrained optimization considerably - as yet I
  * haven't found how this may be done.
+ *
+ * All matrices are held as flat row major n x n arrays, of which only the lower triangle is used, in a workspace that is
+ * reused by subsequent calls on the same instance.  For larger numbers of taxa the O(n^2) sweeps that make up each
+ * conjugate gradient step are spread across a fork join pool.  The recurrences in calculateAtx and calculateAb are
+ * evaluated in square tiles, wavefront by wavefront, so every entry is computed from the same operands as a sequential
+ * sweep would use.  Inner products in parallel runs are summed row by row and the row totals added in order, so the
+ * result does not depend on the number of threads, although it can differ in the last few bits from a sequential run.
  */
 public class CircularNNLS {
 
     /* Epsilon constant for the conjugate gradient algorithm */
     private static final double logPiPlus2 = Math.log(Math.PI) + 2.0;
     private static final double CG_EPSILON = 0.0001;
+
+    /* Below this number of taxa, or if the pool only has one thread, everything runs on the calling thread */
+    private static final int PARALLEL_THRESHOLD = 128;
+
+    /* Number of rows in each block of work handed to the pool, and the side length of a tile in the recurrences */
+    private static final int BLOCK_SIZE = 64;
+
     private boolean minimizeAIC = false;
 
+    private final ForkJoinPool pool;
+    private final Workspace ws;
+
+    public CircularNNLS() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public CircularNNLS(ForkJoinPool pool) {
+        this.pool = pool;
+        this.ws = new Workspace();
+    }
+
+    /**
+     * Scratch space for the solver.  Arrays are only reallocated when a call needs more taxa than any previous call.
+     */
+    static class Workspace {
+
+        int ntax;
+
+        double[] d;
+        double[] W;
+        double[] x;
+        double[] oldX;
+        double[] r;
+        double[] w;
+        double[] p;
+        double[] y;
+        double[] AtWd;
+        double[] diagAtWA;
+        boolean[] active;
+        boolean[] flag;
+
+        /* Per row partial sums for inner products computed in parallel */
+        double[] rowSums;
+
+        /* Binary heap used to select the most negative split weights */
+        double[] heapKeys;
+        int[] heapIndices;
+
+        void setup(final int ntax, final boolean aic) {
+
+            this.ntax = ntax;
+            final int size = ntax * ntax;
+
+            if (this.d == null || this.d.length < size) {
+                this.d = new double[size];
+                this.W = new double[size];
+                this.x = new double[size];
+                this.oldX = new double[size];
+                this.r = new double[size];
+                this.w = new double[size];
+                this.p = new double[size];
+                this.y = new double[size];
+                this.AtWd = new double[size];
+                this.active = new boolean[size];
+                this.flag = new boolean[size];
+                this.rowSums = new double[ntax];
+                this.heapKeys = new double[size / 2];
+                this.heapIndices = new int[size / 2];
+                this.diagAtWA = null;
+            } else {
+                for (double[] a : new double[][]{this.d, this.W, this.x, this.oldX, this.r, this.w, this.p, this.y, this.AtWd}) {
+                    Arrays.fill(a, 0, size, 0.0);
+                }
+                Arrays.fill(this.active, 0, size, false);
+                Arrays.fill(this.flag, 0, size, false);
+            }
+
+            if (aic) {
+                if (this.diagAtWA == null || this.diagAtWA.length < size) {
+                    this.diagAtWA = new double[this.d.length];
+                } else {
+                    Arrays.fill(this.diagAtWA, 0, size, 0.0);
+                }
+            }
+        }
+    }
+
+    private interface IndexOp {
+        void apply(int index);
+    }
+
+    private interface RowSum {
+        /**
+         * Adds the terms for a row of the lower triangle onto sum, in column order
+         */
+        double apply(int row, double sum);
+    }
+
+    private static final class ForAction extends RecursiveAction {
+
+        private final int lo;
+        private final int hi;
+        private final int grain;
+        private final IndexOp op;
+
+        ForAction(int lo, int hi, int grain, IndexOp op) {
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+            this.op = op;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.hi - this.lo <= this.grain) {
+                for (int i = this.lo; i < this.hi; i++) {
+                    this.op.apply(i);
+                }
+            } else {
+                final int mid = (this.lo + this.hi) >>> 1;
+                invokeAll(new ForAction(this.lo, mid, this.grain, this.op), new ForAction(mid, this.hi, this.grain, this.op));
+            }
+        }
+    }
+
+    /**
+     * Applies op to every index in [lo, hi), using the pool if the problem is large enough to benefit
+     */
+    private void parallelFor(final int lo, final int hi, final int grain, final IndexOp op) {
+        if (!this.isParallel() || hi - lo <= grain) {
+            for (int i = lo; i < hi; i++) {
+                op.apply(i);
+            }
+        } else {
+            this.pool.invoke(new ForAction(lo, hi, grain, op));
+        }
+    }
+
+    private boolean isParallel() {
+        return this.ws.ntax >= PARALLEL_THRESHOLD && this.pool.getParallelism() > 1;
+    }
+
+    private void forEachRow(final IndexOp op) {
+        this.parallelFor(0, this.ws.ntax, BLOCK_SIZE / 4, op);
+    }
+
+    /**
+     * Sums the terms produced by op over every row.  On the calling thread this is one running total, so the result is
+     * the same as a plain loop over the lower triangle.  In parallel each row is summed separately and the row totals
+     * are then added in row order, so the result does not depend on the number of threads.
+     */
+    private double sumRows(final RowSum op) {
+
+        final int ntax = this.ws.ntax;
+
+        if (!this.isParallel()) {
+            double sum = 0.0;
+            for (int i = 0; i < ntax; i++) {
+                sum = op.apply(i, sum);
+            }
+            return sum;
+        }
+
+        final double[] rowSums = this.ws.rowSums;
+        this.forEachRow(new IndexOp() {
+            @Override
+            public void apply(int i) {
+                rowSums[i] = op.apply(i, 0.0);
+            }
+        });
+
+        double sum = 0.0;
+        for (int i = 0; i < ntax; i++) {
+            sum += rowSums[i];
+        }
+        return sum;
+    }
+
     /**
      * Compute the branch lengths for unconstrained least squares using
      * the formula of Chepoi and Fichet (this takes O(N^2) time only!).
@@ -56,21 +243,22 @@ public class CircularNNLS {
      * @param d    the distance matrix
      * @param x    the split weights
      */
-    static void runUnconstrainedLS(int ntax, double[][] d, double[][] x) {
+    static void runUnconstrainedLS(int ntax, double[] d, double[] x) {
+        final int n = ntax;
         for (int j = 0; j < ntax - 1; j++) {
             int i;
             for (i = 0; i < j - 1; i++) {
-                x[j][i] = (d[j][i] + d[j + 1][i + 1] - d[j + 1][i] - d[j][i + 1]) / 2.0;
+                x[j * n + i] = (d[j * n + i] + d[(j + 1) * n + i + 1] - d[(j + 1) * n + i] - d[j * n + i + 1]) / 2.0;
             }
             if (j > 0)
-                x[j][j - 1] = (d[j][i] + d[j + 1][i + 1] - d[j + 1][i]) / 2.0;
+                x[j * n + j - 1] = (d[j * n + i] + d[(j + 1) * n + i + 1] - d[(j + 1) * n + i]) / 2.0;
         }
 
-        x[ntax - 1][0] = (d[ntax - 1][0] + d[1][0] - d[ntax - 1][1]) / 2.0;
+        x[(ntax - 1) * n] = (d[(ntax - 1) * n] + d[n] - d[(ntax - 1) * n + 1]) / 2.0;
         for (int i = 1; i < ntax - 2; i++) {
-            x[ntax - 1][i] = (d[ntax - 1][i] + d[i + 1][0] - d[i][0] - d[ntax - 1][i + 1]) / 2.0;
+            x[(ntax - 1) * n + i] = (d[(ntax - 1) * n + i] + d[(i + 1) * n] - d[i * n] - d[(ntax - 1) * n + i + 1]) / 2.0;
         }
-        x[ntax - 1][ntax - 2] = (d[ntax - 1][ntax - 2] + d[ntax - 1][0] - d[ntax - 2][0]) / 2.0;
+        x[(ntax - 1) * n + ntax - 2] = (d[(ntax - 1) * n + ntax - 2] + d[(ntax - 1) * n] - d[(ntax - 2) * n]) / 2.0;
     }
 
     /**
@@ -81,13 +269,13 @@ public class CircularNNLS {
      * @param d     the distance matrix
      * @param power the power
      */
-    private static void fillW(int ntax, double[][] W, double[][] d, int power) {
+    private static void fillW(int ntax, double[] W, double[] d, int power) {
         double d_ij, w_ij;
 
         if (power != 0) {
             for (int j = 0; j < ntax; j++) {
                 for (int i = 0; i < j; i++) {
-                    d_ij = d[j][i];
+                    d_ij = d[j * ntax + i];
                     if (d_ij > 0.0) {
                         w_ij = 1.0 / d_ij;
                         if (power == 2)
@@ -95,7 +283,60 @@ public class CircularNNLS {
                     } else {
                         w_ij = 100000000;
                     }
-                    W[j][i] = w_ij;
+                    W[j * ntax + i] = w_ij;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills in the entries of out that lie two or more places below the diagonal, from the entries one place below the
+     * diagonal, using the recurrence shared by calculateAtx and calculateAb.  Entry (j, i) depends on (j - 1, i),
+     * (j, i + 1) and (j - 1, i + 1), so tiles are processed one wavefront at a time with the tiles in each wavefront run
+     * in parallel, and within a tile rows are taken in ascending and columns in descending order.
+     *
+     * @param ntax number of taxa
+     * @param out  the matrix being filled
+     * @param src  the input matrix
+     * @param atx  true to use the recurrence for A^Tx, false for Ab
+     */
+    private void fillRecurrence(final int ntax, final double[] out, final double[] src, final boolean atx) {
+
+        if (!this.isParallel()) {
+            fillTile(ntax, out, src, atx, 0, ntax, 0, ntax);
+            return;
+        }
+
+        final int nbTiles = (ntax + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        for (int t = 0; t < nbTiles; t++) {
+
+            final int wavefront = t;
+            this.parallelFor(0, nbTiles - t, 1, new IndexOp() {
+                @Override
+                public void apply(int tile) {
+                    final int rowStart = (tile + wavefront) * BLOCK_SIZE;
+                    final int colStart = tile * BLOCK_SIZE;
+                    fillTile(ntax, out, src, atx,
+                            rowStart, Math.min(rowStart + BLOCK_SIZE, ntax),
+                            colStart, Math.min(colStart + BLOCK_SIZE, ntax));
+                }
+            });
+        }
+    }
+
+    private static void fillTile(final int ntax, final double[] out, final double[] src, final boolean atx,
+                                 final int rowStart, final int rowEnd, final int colStart, final int colEnd) {
+
+        final int n = ntax;
+
+        for (int j = Math.max(rowStart, 2); j < rowEnd; j++) {
+            for (int i = Math.min(colEnd - 1, j - 2); i >= colStart; i--) {
+                final double s = atx ? src[j * n + i + 1] : src[(j - 1) * n + i];
+                if (j - i == 2) {
+                    out[j * n + i] = out[(j - 1) * n + i] + out[j * n + i + 1] - 2 * s;
+                } else {
+                    out[j * n + i] = out[(j - 1) * n + i] + out[j * n + i + 1] - out[(j - 1) * n + i + 1] - 2.0 * s;
                 }
             }
         }
@@ -109,26 +350,23 @@ public class CircularNNLS {
      * @param d    distance matrix
      * @param p    the result
      */
-    private static void calculateAtx(int ntax, double[][] d, double[][] p) {
-        double p_ij = 0;
-
-        for (int i = 0; i <= ntax - 2; i++) {
-            p_ij = 0.0;
-            for (int k = 0; k <= i; k++)
-                p_ij += d[i + 1][k];
-            for (int k = i + 2; k <= ntax - 1; k++)
-                p_ij += d[k][i + 1];
-            p[i + 1][i] = p_ij;
-        }
-        for (int i = 0; i <= ntax - 3; i++) {
-            p[i + 2][i] = p[i + 1][i] + p[i + 2][i + 1] - 2 * d[i + 2][i + 1];
-        }
-        for (int k = 3; k <= ntax - 1; k++) {
-            for (int i = 0; i <= ntax - k - 1; i++) {
-                int j = i + k;
-                p[j][i] = p[j - 1][i] + p[j][i + 1] - p[j - 1][i + 1] - 2.0 * d[j][i + 1];
+    private void calculateAtx(final int ntax, final double[] d, final double[] p) {
+
+        final int n = ntax;
+
+        this.parallelFor(0, ntax - 1, BLOCK_SIZE / 4, new IndexOp() {
+            @Override
+            public void apply(int i) {
+                double p_ij = 0.0;
+                for (int k = 0; k <= i; k++)
+                    p_ij += d[(i + 1) * n + k];
+                for (int k = i + 2; k <= ntax - 1; k++)
+                    p_ij += d[k * n + i + 1];
+                p[(i + 1) * n + i] = p_ij;
             }
-        }
+        });
+
+        this.fillRecurrence(ntax, p, d, true);
     }
 
     /**
@@ -139,111 +377,117 @@ public class CircularNNLS {
      * @param b    split weights
      * @param d    pairwise distances from split weights
      */
-    static void calculateAb(int ntax, double[][] b, double[][] d) {
-
-        double d_ij;
-
-        for (int i = 0; i <= ntax - 2; i++) {
-            d_ij = 0.0;
-            for (int k = 0; k <= i - 1; k++)
-                d_ij += b[i][k];
-            for (int k = i + 1; k <= ntax - 1; k++)
-                d_ij += b[k][i];
-            d[i + 1][i] = d_ij;
-        }
-        for (int i = 0; i <= ntax - 3; i++) {
-            d[i + 2][i] = d[i + 1][i] + d[i + 2][i + 1] - 2 * b[i + 1][i];
-        }
-        for (int k = 3; k <= ntax - 1; k++) {
-            for (int i = 0; i <= ntax - k - 1; i++) {
-                int j = i + k;
-                d[j][i] = d[j - 1][i] + d[j][i + 1] - d[j - 1][i + 1] - 2.0 * b[j - 1][i];
+    private void calculateAb(final int ntax, final double[] b, final double[] d) {
+
+        final int n = ntax;
+
+        this.parallelFor(0, ntax - 1, BLOCK_SIZE / 4, new IndexOp() {
+            @Override
+            public void apply(int i) {
+                double d_ij = 0.0;
+                for (int k = 0; k <= i - 1; k++)
+                    d_ij += b[i * n + k];
+                for (int k = i + 1; k <= ntax - 1; k++)
+                    d_ij += b[k * n + i];
+                d[(i + 1) * n + i] = d_ij;
             }
-        }
+        });
+
+        this.fillRecurrence(ntax, d, b, false);
     }
 
     /**
      * Conjugate gradient algorithm solving A^tWA x = b (where b = AtWd)
      * such that all x[i][j] for which active[i][j] = true are set to zero.
      * We assume that x[i][j] is zero for all active i,j, and use the given
-     * values for x as our starting vector.
+     * values for x as our starting vector.  Scratch matrices r, w, p and y
+     * come from the workspace.
      *
      * @param ntax   the number of taxa
-     * @param r      stratch matrix
-     * @param w      stratch matrix
-     * @param p      stratch matrix
-     * @param y      stratch matrix
-     * @param W      the W matrix
      * @param b      the b matrix
      * @param active the active constraints
      * @param x      the x matrix
      */
-    private static void runConjugateGrads(int ntax,
-                                          double[][] r, double[][] w, double[][] p, double[][] y,
-                                          double[][] W, double[][] b,
-                                          boolean[][] active, double[][] x) {
+    private void runConjugateGrads(final int ntax, final double[] b, final boolean[] active, final double[] x) {
+
+        final int n = ntax;
+        final double[] r = this.ws.r;
+        final double[] w = this.ws.w;
+        final double[] p = this.ws.p;
+        final double[] y = this.ws.y;
+
         int kmax = ntax * (ntax - 1) / 2;
         /* Maximum number of iterations of the cg algorithm (probably too many) */
-        calculateAb(ntax, x, y);
-        //for (int i = 0; i < ntax; i++)
-        //    for (int j = 0; j < i; j++)
-        //        y[i][j] = W[i][j] * y[i][j];
-        calculateAtx(ntax, y, r); /*r = AtWAx */
-        for (int i = 0; i < ntax; i++)
-            for (int j = 0; j < i; j++)
-                if (!active[i][j])
-                    r[i][j] = b[i][j] - r[i][j];
-                else
-                    r[i][j] = 0.0;
+        this.calculateAb(ntax, x, y);
+        this.calculateAtx(ntax, y, r); /*r = AtWAx */
 
-        double rho = norm(ntax, r);
+        double rho = this.sumRows(new RowSum() {
+            @Override
+            public double apply(int i, double ss) {
+                for (int j = 0; j < i; j++) {
+                    final int ij = i * n + j;
+                    if (!active[ij])
+                        r[ij] = b[ij] - r[ij];
+                    else
+                        r[ij] = 0.0;
+                    ss += r[ij] * r[ij];
+                }
+                return ss;
+            }
+        });
         double rho_old = 0;
 
-        double e_0 = CG_EPSILON * Math.sqrt(norm(ntax, b));
+        double e_0 = CG_EPSILON * Math.sqrt(this.norm(ntax, b));
         int k = 0;
 
         while ((rho > e_0 * e_0) && (k < kmax)) {
 
             k = k + 1;
 
-            if (k == 1) {
-
-                for (int i = 0; i < ntax; i++)
-                    for (int j = 0; j < i; j++)
-                        p[i][j] = r[i][j];
-
-            } else {
-                double beta = rho / rho_old;
-                for (int i = 0; i < ntax; i++)
-                    for (int j = 0; j < i; j++)
-                        p[i][j] = r[i][j] + beta * p[i][j];
+            final boolean first = k == 1;
+            final double beta = first ? 0.0 : rho / rho_old;
 
-            }
-
-            calculateAb(ntax, p, y);
-            //for (int i = 0; i < ntax; i++)
-            //    for (int j = 0; j < i; j++)
-            //        y[i][j] = W[i][j] * y[i][j];
-            calculateAtx(ntax, y, w); /*w = AtWAp */
-            zeroActive(ntax, w, active);
+            this.forEachRow(new IndexOp() {
+                @Override
+                public void apply(int i) {
+                    for (int j = 0; j < i; j++) {
+                        final int ij = i * n + j;
+                        p[ij] = first ? r[ij] : r[ij] + beta * p[ij];
+                    }
+                }
+            });
 
-            double alpha = 0.0;
-            for (int i = 0; i < ntax; i++)
-                for (int j = 0; j < i; j++)
-                    alpha += p[i][j] * w[i][j];
-            alpha = rho / alpha;
+            this.calculateAb(ntax, p, y);
+            this.calculateAtx(ntax, y, w); /*w = AtWAp */
 
-            /* Update x and the residual, r */
-            for (int i = 0; i < ntax; i++) {
-                for (int j = 0; j < i; j++) {
-                    x[i][j] = x[i][j] + alpha * p[i][j];
-                    r[i][j] = r[i][j] - alpha * w[i][j];
+            // Zero the active entries of w and take the inner product with p
+            final double alpha = rho / this.sumRows(new RowSum() {
+                @Override
+                public double apply(int i, double pw) {
+                    for (int j = 0; j < i; j++) {
+                        final int ij = i * n + j;
+                        if (active[ij])
+                            w[ij] = 0.0;
+                        pw += p[ij] * w[ij];
+                    }
+                    return pw;
                 }
-            }
+            });
 
+            /* Update x and the residual, r */
             rho_old = rho;
-            rho = norm(ntax, r);
-
+            rho = this.sumRows(new RowSum() {
+                @Override
+                public double apply(int i, double ss) {
+                    for (int j = 0; j < i; j++) {
+                        final int ij = i * n + j;
+                        x[ij] = x[ij] + alpha * p[ij];
+                        r[ij] = r[ij] - alpha * w[ij];
+                        ss += r[ij] * r[ij];
+                    }
+                    return ss;
+                }
+            });
         }
     }
 
@@ -253,29 +497,88 @@ public class CircularNNLS {
      * @param x the matrix
      * @return sum of squares of the lower triangle
      */
-    private static double norm(int ntax, double[][] x) {
-        double ss = 0.0;
+    private double norm(final int ntax, final double[] x) {
 
-        for (int i = 0; i < ntax; i++) {
-            for (int j = 0; j < i; j++) {
-                ss += x[i][j] * x[i][j];
+        return this.sumRows(new RowSum() {
+            @Override
+            public double apply(int i, double ss) {
+                for (int j = 0; j < i; j++) {
+                    ss += x[i * ntax + j] * x[i * ntax + j];
+                }
+                return ss;
             }
-        }
-        return ss;
+        });
     }
 
     /**
-     * Active is a boolean array.
-     * This routine sets x[i][j] to zero for all i,j such that active[i][j] != 0
+     * Fixes the most negative 60% of the negative split weights to zero, adding them to the active set.  The negative
+     * weights are selected using a binary heap ordered on weight, then position.
      *
-     * @param ntax   the number of taxa
-     * @param x      the x matrix
-     * @param active the active constraints
+     * @return True if any weights were fixed
      */
-    private static void zeroActive(int ntax, double[][] x, boolean[][] active) {
-        for (int i = 0; i < ntax; i++)
-            for (int j = 0; j < i; j++)
-                if (active[i][j]) x[i][j] = 0.0;
+    private boolean contractNegatives(final int ntax, final double[] x, final boolean[] active) {
+
+        final double[] keys = this.ws.heapKeys;
+        final int[] indices = this.ws.heapIndices;
+
+        int size = 0;
+        for (int i = 0; i < ntax; i++) {
+            for (int j = 0; j < i; j++) {
+                final int ij = i * ntax + j;
+                if (x[ij] < 0.0) {
+                    keys[size] = x[ij];
+                    indices[size] = ij;
+                    size++;
+                }
+            }
+        }
+
+        if (size == 0) {
+            return false;
+        }
+
+        for (int k = size / 2 - 1; k >= 0; k--) {
+            siftDown(keys, indices, k, size);
+        }
+
+        /* Contract the worse 60% */
+        final int top = Math.min((6 * size) / 10 + 1, size);
+        for (int count = 0; count < top; count++) {
+            final int ij = indices[0];
+            x[ij] = 0.0;
+            active[ij] = true;
+
+            size--;
+            keys[0] = keys[size];
+            indices[0] = indices[size];
+            siftDown(keys, indices, 0, size);
+        }
+
+        return true;
+    }
+
+    private static boolean heapLess(final double[] keys, final int[] indices, final int a, final int b) {
+        return keys[a] < keys[b] || (keys[a] == keys[b] && indices[a] < indices[b]);
+    }
+
+    private static void siftDown(final double[] keys, final int[] indices, int k, final int size) {
+        while (true) {
+            final int left = 2 * k + 1;
+            if (left >= size)
+                return;
+            int smallest = left;
+            if (left + 1 < size && heapLess(keys, indices, left + 1, left))
+                smallest = left + 1;
+            if (!heapLess(keys, indices, smallest, k))
+                return;
+            final double key = keys[k];
+            keys[k] = keys[smallest];
+            keys[smallest] = key;
+            final int index = indices[k];
+            indices[k] = indices[smallest];
+            indices[smallest] = index;
+            k = smallest;
+        }
     }
 
     public boolean getMinimizeAIC() {
@@ -288,23 +591,30 @@ public class CircularNNLS {
 
     /**
      * An implementation of the active set method where the conjugate gradient
-     * method is used for optimization.
+     * method is used for optimization.  Works on the distances, weights and
+     * split weights held in the workspace, which must have been set up for ntax taxa.
      *
-     * @param d the distance matrix
-     * @param W the length matrix
-     * @param x the split weights
+     * @param ntax the number of taxa
      */
-    void runActiveConjugate(int ntax, double[][] d, double[][] W, double[][] x) {
+    void runActiveConjugate(final int ntax) {
         final boolean collapse_many_negs = true;
+        final int n = ntax;
+        final double[] d = this.ws.d;
+        final double[] W = this.ws.W;
+        final double[] x = this.ws.x;
+        final double[] r = this.ws.r;
+        final double[] y = this.ws.y;
+        final double[] old_x = this.ws.oldX;
+        final boolean[] active = this.ws.active;
+        final double[] AtWd = this.ws.AtWd;
+        final double[] diagAtWA = this.ws.diagAtWA;
+
         int min_i = 0, min_j = 0;
         double xi = 0, min_xi = 0;
         double min_grad = 0, grad_ij = 0;
-        SortedSet<DoubleIntInt> neg_indices = new TreeSet<DoubleIntInt>(new DoubleIntInt());
         boolean all_positive = true, first_pass = true;
-        double[][] diagAtWA = null;
 
         if (getMinimizeAIC()) {
-            diagAtWA = new double[ntax][ntax];
             calculateAtx(ntax, W, diagAtWA); /* Use the identity that AtWA_ii = Atw, if w = diag(W) */
         }
 
@@ -313,7 +623,7 @@ public class CircularNNLS {
 
         for (int i = 0; i < ntax; i++) {
             for (int j = 0; j < i; j++) {
-                if (x[i][j] < 0.0) {
+                if (x[i * n + j] < 0.0) {
                     all_positive = false;
                     break;
                 }
@@ -329,89 +639,44 @@ public class CircularNNLS {
              * without the parameter b_i. The RHS is how much the AIC would increase because of the worse likelihood.
              */
             boolean allinformative = true;
-            for (int i = 0; i < ntax; i++) {
-                for (int j = 0; j < ntax; j++) {
-                    double x_ij = x[i][j];
-                    if (logPiPlus2 > x_ij * x_ij * diagAtWA[i][j])
-                        allinformative = false;
-                }
+            for (int ij = 0; ij < ntax * ntax; ij++) {
+                double x_ij = x[ij];
+                if (logPiPlus2 > x_ij * x_ij * diagAtWA[ij])
+                    allinformative = false;
             }
             if (allinformative)
                 return;
         }
-        /* Allocate memory for the "utility" vectors */
-
-        //ToDo: Put a memory overflow catch around this.
-        double[][] r = new double[ntax][ntax];
-        double[][] w = new double[ntax][ntax];
-        double[][] p = new double[ntax][ntax];
-        double[][] y = new double[ntax][ntax];
 
-        double[][] old_x = new double[ntax][ntax];
         for (int i = 0; i < ntax; i++)
             for (int j = i + 1; j < ntax; j++)
-                old_x[j][i] = 1;
-
-        /* Initialise active - originally no variables are active (held to 0.0) */
-        boolean[][] active = new boolean[ntax][ntax];
-        for (int i = 0; i < ntax; i++) {
-            for (int j = i + 1; j < ntax; j++)
-                active[j][i] = false;
-        }
-
-        /* Allocate and compute AtWd */
-        double[][] AtWd = new double[ntax][ntax];
+                old_x[j * n + i] = 1;
 
+        /* Compute AtWd */
         for (int i = 0; i < ntax; i++)
             for (int j = 0; j < i; j++)
-                //y[i][j] = W[i][j] * d[i][j];
-                y[i][j] = d[i][j];
+                y[i * n + j] = d[i * n + j];
         calculateAtx(ntax, y, AtWd);
 
         while (true) {
             while (true) /* Inner loop: find the next feasible optimum */ {
                 if (!first_pass) { /* The first time through we use the unconstrained branch lengths */
-                    runConjugateGrads(ntax, r, w, p, y, W, AtWd, active, x);
+                    runConjugateGrads(ntax, AtWd, active, x);
                 }
 
                 if (collapse_many_negs) { /* Typically, a large number of edges are negative, so on the first
                                                 pass of the algorithm we add the worst 60% to the active set */
-                    neg_indices.clear();
-                    for (int i = 0; i < ntax; i++) {
-                        for (int j = 0; j < i; j++) {
-                            if (x[i][j] < 0.0) {
-                                DoubleIntInt this_index = new DoubleIntInt();
-                                this_index.d = x[i][j];
-                                this_index.first = i;
-                                this_index.second = j;
-                                neg_indices.add(this_index);
-                            }
-                        }
-                    }
-                    int num_neg_indices = neg_indices.size();
-                    //   cout<<"Number negative = "<<num_neg_indices<<endl;
-                    if (num_neg_indices > 0) {
-                        /* Contract the worse 60% */
-                        int top = (6 * num_neg_indices) / 10 + 1;
-                        int count = 0;
-                        Iterator it = neg_indices.iterator();
-                        while (it.hasNext()) {
-                            if (count++ == top)
-                                break;
-                            DoubleIntInt this_index = (DoubleIntInt) (it.next());
-                            x[this_index.first][this_index.second] = 0.0;
-                            active[this_index.first][this_index.second] = true;
-                            //  cout<<"Fixing "<<this_index.first<<","<<this_index.second<<endl;
-                        }
-                        runConjugateGrads(ntax, r, w, p, y, W, AtWd, active, x); /* Re-uk.ac.uea.cmp.spectre.core.math.optimise, so that the current x is always optimal */
+                    if (contractNegatives(ntax, x, active)) {
+                        runConjugateGrads(ntax, AtWd, active, x); /* Re-optimise, so that the current x is always optimal */
                     }
                 }
 
                 min_i = -1;
                 for (int i = 0; i < ntax; i++) {
                     for (int j = 0; j < i; j++) {
-                        if (x[i][j] < 0.0) {
-                            xi = (old_x[i][j]) / (old_x[i][j] - x[i][j]);
+                        final int ij = i * n + j;
+                        if (x[ij] < 0.0) {
+                            xi = (old_x[ij]) / (old_x[ij] - x[ij]);
                             if ((min_i == -1) || (xi < min_xi)) {
                                 min_i = i;
                                 min_j = j;
@@ -424,58 +689,23 @@ public class CircularNNLS {
                 first_pass = false;
 
                 if (min_i == -1) {/* This is a feasible solution - go to the next stage to check if its also optimal */
-                    /* If we are minimizing AIC then go and check to see
-                     * if contracting an edge gives a reduction of AIC -
-                     * if it does, then add it to the active set and continue.
-                     */
-
                     break;
                 }
-                if (min_i != -1) {/* There are still negative edges. We move to the feasible point that is closest to
-                                            x on the line from x to old_x */
 
-                    for (int i = 0; i < ntax; i++) /* Move to the last feasible solution on the path from old_x to x */
-                        for (int j = 0; j < i; j++)
-                            if (!active[i][j]) {
-
-                                old_x[i][j] += min_xi * (x[i][j] - old_x[i][j]);
-                            }
-                    active[min_i][min_j] = true; /* Add the first constraint met to the active set */
-                    x[min_i][min_j] = 0.0; /* This fixes problems with round-off errors */
-                } else {
-                    if (!getMinimizeAIC())
-                        break;
-                    /* Check to see if all positive edges are informative. If not, we contract the least informative */
-                    double mininfo = 0.0;
-                    for (int i = 0; i < ntax; i++) {
-                        for (int j = 0; j < ntax; j++) {
-                            double x_ij = x[i][j];
-                            double info = x_ij * x_ij * diagAtWA[i][j] - logPiPlus2;
-                            if (info < mininfo) {
-                                min_i = i;
-                                min_j = j;
-                                mininfo = info;
-                            }
+                /* There are still negative edges. We move to the feasible point that is closest to x on the line from
+                 * x to old_x */
+                for (int i = 0; i < ntax; i++) /* Move to the last feasible solution on the path from old_x to x */
+                    for (int j = 0; j < i; j++)
+                        if (!active[i * n + j]) {
+                            old_x[i * n + j] += min_xi * (x[i * n + j] - old_x[i * n + j]);
                         }
-                    }
-                    if (mininfo == 0.0)
-                        break;
-                    else {
-                        x[min_i][min_j] = 0.0;
-                        old_x[min_i][min_j] = 0.0;
-                        active[min_i][min_j] = true;
-                    }
-
-                }
+                active[min_i * n + min_j] = true; /* Add the first constraint met to the active set */
+                x[min_i * n + min_j] = 0.0; /* This fixes problems with round-off errors */
             }
 
-
             /* Find i,j that minimizes the gradient over all i,j in the active set. Note that grad = 2(AtWAb-AtWd) */
             min_i = -1;
             calculateAb(ntax, x, y);
-            //for (int i = 0; i < ntax; i++)
-            //    for (int j = 0; j < i; j++)
-            //        y[i][j] *= W[i][j];
             calculateAtx(ntax, y, r); /* r = AtWAx */
 
             if (!getMinimizeAIC()) {
@@ -484,10 +714,11 @@ public class CircularNNLS {
                  */
                 for (int i = 0; i < ntax; i++) {
                     for (int j = 0; j < i; j++) {
-                        r[i][j] -= AtWd[i][j];
-                        r[i][j] *= 2.0;
-                        if (active[i][j]) {
-                            grad_ij = r[i][j];
+                        final int ij = i * n + j;
+                        r[ij] -= AtWd[ij];
+                        r[ij] *= 2.0;
+                        if (active[ij]) {
+                            grad_ij = r[ij];
                             if ((min_i == -1) || (grad_ij < min_grad)) {
                                 min_i = i;
                                 min_j = j;
@@ -499,20 +730,21 @@ public class CircularNNLS {
                 if ((min_i == -1) || (min_grad > -0.0001))
                     return; /* We have arrived at the constrained optimum */
                 else
-                    active[min_i][min_j] = false;
+                    active[min_i * n + min_j] = false;
             } else {
                 /* We check to see whether adding any edges back in gives a redued AIC. We use a heuristic calculation.
-                 * If we add b_i back in, and just uk.ac.uea.cmp.spectre.core.math.optimise that single variable, then the AIC decreases when
+                 * If we add b_i back in, and just optimise that single variable, then the AIC decreases when
                  * 		A'WA_ii * logPiPlus2 - grad^2 < 0.
                  */
                 double mininfo = 0.0;
                 for (int i = 0; i < ntax; i++) {
                     for (int j = 0; j < i; j++) {
-                        r[i][j] -= AtWd[i][j];
-                        r[i][j] *= 2.0;
-                        if (active[i][j]) {
-                            grad_ij = r[i][j];
-                            double info = diagAtWA[i][j] * logPiPlus2 - grad_ij * grad_ij;
+                        final int ij = i * n + j;
+                        r[ij] -= AtWd[ij];
+                        r[ij] *= 2.0;
+                        if (active[ij]) {
+                            grad_ij = r[ij];
+                            double info = diagAtWA[ij] * logPiPlus2 - grad_ij * grad_ij;
                             if (info < mininfo) {
                                 min_i = i;
                                 min_j = j;
@@ -524,7 +756,7 @@ public class CircularNNLS {
                 if (mininfo == 0.0)
                     return;
                 else
-                    active[min_i][min_j] = false;
+                    active[min_i * n + min_j] = false;
             }
         }
     }
@@ -532,100 +764,66 @@ public class CircularNNLS {
     //This method is a hack used to compute non-negative least
     //squares weights for a tree inside a circular split system.
     //Actually, it can be any subset of the circular split system.
-    //The array flag is used to indicate which splits are in the
-    //subset.
-    void runActiveConjugate(int ntax, double[][] d, double[][] W, boolean[][] flag, double[][] x) {
+    //The flag array in the workspace is used to indicate which splits
+    //are in the subset.
+    void runActiveConjugateWithFlags(final int ntax) {
         final boolean collapse_many_negs = true;
+        final int n = ntax;
+        final double[] d = this.ws.d;
+        final double[] W = this.ws.W;
+        final double[] x = this.ws.x;
+        final double[] r = this.ws.r;
+        final double[] y = this.ws.y;
+        final double[] old_x = this.ws.oldX;
+        final boolean[] active = this.ws.active;
+        final boolean[] flag = this.ws.flag;
+        final double[] AtWd = this.ws.AtWd;
+        final double[] diagAtWA = this.ws.diagAtWA;
+
         int min_i = 0, min_j = 0;
         double xi = 0, min_xi = 0;
         double min_grad = 0, grad_ij = 0;
-        SortedSet<DoubleIntInt> neg_indices = new TreeSet<DoubleIntInt>(new DoubleIntInt());
-        double[][] diagAtWA = null;
 
         if (getMinimizeAIC()) {
-            diagAtWA = new double[ntax][ntax];
             calculateAtx(ntax, W, diagAtWA); /* Use the identity that AtWA_ii = Atw, if w = diag(W) */
         }
 
-        //set all weights to 0
-        for (int i = 0; i < ntax; i++) {
-            for (int j = i + 1; j < ntax; j++) {
-                x[j][i] = 0.0;
-            }
-        }
-
-        /* Allocate memory for the "utility" vectors */
-
-        //ToDo: Put a memory overflow catch around this.
-        double[][] r = new double[ntax][ntax];
-        double[][] w = new double[ntax][ntax];
-        double[][] p = new double[ntax][ntax];
-        double[][] y = new double[ntax][ntax];
+        // All weights start at 0, as set up by the workspace
 
-        double[][] old_x = new double[ntax][ntax];
         for (int i = 0; i < ntax; i++)
             for (int j = i + 1; j < ntax; j++)
-                old_x[j][i] = 1;
+                old_x[j * n + i] = 1;
 
         /* Initialise active - originally only variables that correspond to
          splits not in the subset are active (held to 0.0) */
-        boolean[][] active = new boolean[ntax][ntax];
         for (int i = 0; i < ntax; i++) {
             for (int j = i + 1; j < ntax; j++)
-                active[j][i] = (!flag[j][i]);
+                active[j * n + i] = (!flag[j * n + i]);
         }
 
-        /* Allocate and compute AtWd */
-        double[][] AtWd = new double[ntax][ntax];
-
+        /* Compute AtWd */
         for (int i = 0; i < ntax; i++)
             for (int j = 0; j < i; j++)
-                //y[i][j] = W[i][j] * d[i][j];
-                y[i][j] = d[i][j];
+                y[i * n + j] = d[i * n + j];
         calculateAtx(ntax, y, AtWd);
 
         while (true) {
             while (true) /* Inner loop: find the next feasible optimum */ {
-                runConjugateGrads(ntax, r, w, p, y, W, AtWd, active, x);
+                runConjugateGrads(ntax, AtWd, active, x);
 
                 if (collapse_many_negs) { /* Typically, a large number of edges are negative, so on the first
                                                 pass of the algorithm we add the worst 60% to the active set */
-                    neg_indices.clear();
-                    for (int i = 0; i < ntax; i++) {
-                        for (int j = 0; j < i; j++) {
-                            if (x[i][j] < 0.0) {
-                                DoubleIntInt this_index = new DoubleIntInt();
-                                this_index.d = x[i][j];
-                                this_index.first = i;
-                                this_index.second = j;
-                                neg_indices.add(this_index);
-                            }
-                        }
-                    }
-                    int num_neg_indices = neg_indices.size();
-                    //   cout<<"Number negative = "<<num_neg_indices<<endl;
-                    if (num_neg_indices > 0) {
-                        /* Contract the worse 60% */
-                        int top = (6 * num_neg_indices) / 10 + 1;
-                        int count = 0;
-                        Iterator it = neg_indices.iterator();
-                        while (it.hasNext()) {
-                            if (count++ == top)
-                                break;
-                            DoubleIntInt this_index = (DoubleIntInt) (it.next());
-                            x[this_index.first][this_index.second] = 0.0;
-                            active[this_index.first][this_index.second] = true;
-                            //  cout<<"Fixing "<<this_index.first<<","<<this_index.second<<endl;
-                        }
-                        runConjugateGrads(ntax, r, w, p, y, W, AtWd, active, x); /* Re-uk.ac.uea.cmp.spectre.core.math.optimise, so that the current x is always optimal */
+                    if (contractNegatives(ntax, x, active)) {
+                        runConjugateGrads(ntax, AtWd, active, x); /* Re-optimise, so that the current x is always optimal */
                     }
                 }
 
                 min_i = -1;
                 for (int i = 0; i < ntax; i++) {
                     for (int j = 0; j < i; j++) {
-                        if (x[i][j] < 0.0) {
-                            xi = (old_x[i][j]) / (old_x[i][j] - x[i][j]);
+                        final int ij = i * n + j;
+                        if (x[ij] < 0.0) {
+                            xi = (old_x[ij]) / (old_x[ij] - x[ij]);
                             if ((min_i == -1) || (xi < min_xi)) {
                                 min_i = i;
                                 min_j = j;
@@ -635,60 +833,24 @@ public class CircularNNLS {
                     }
                 }
 
-                //first_pass = false;
-
                 if (min_i == -1) {/* This is a feasible solution - go to the next stage to check if its also optimal */
-                    /* If we are minimizing AIC then go and check to see
-                     * if contracting an edge gives a reduction of AIC -
-                     * if it does, then add it to the active set and continue.
-                     */
-
                     break;
                 }
-                if (min_i != -1) {/* There are still negative edges. We move to the feasible point that is closest to
-                                            x on the line from x to old_x */
 
-                    for (int i = 0; i < ntax; i++) /* Move to the last feasible solution on the path from old_x to x */
-                        for (int j = 0; j < i; j++)
-                            if (!active[i][j]) {
-
-                                old_x[i][j] += min_xi * (x[i][j] - old_x[i][j]);
-                            }
-                    active[min_i][min_j] = true; /* Add the first constraint met to the active set */
-                    x[min_i][min_j] = 0.0; /* This fixes problems with round-off errors */
-                } else {
-                    if (!getMinimizeAIC())
-                        break;
-                    /* Check to see if all positive edges are informative. If not, we contract the least informative */
-                    double mininfo = 0.0;
-                    for (int i = 0; i < ntax; i++) {
-                        for (int j = 0; j < ntax; j++) {
-                            double x_ij = x[i][j];
-                            double info = x_ij * x_ij * diagAtWA[i][j] - logPiPlus2;
-                            if (info < mininfo) {
-                                min_i = i;
-                                min_j = j;
-                                mininfo = info;
-                            }
+                /* There are still negative edges. We move to the feasible point that is closest to x on the line from
+                 * x to old_x */
+                for (int i = 0; i < ntax; i++) /* Move to the last feasible solution on the path from old_x to x */
+                    for (int j = 0; j < i; j++)
+                        if (!active[i * n + j]) {
+                            old_x[i * n + j] += min_xi * (x[i * n + j] - old_x[i * n + j]);
                         }
-                    }
-                    if (mininfo == 0.0)
-                        break;
-                    else {
-                        x[min_i][min_j] = 0.0;
-                        old_x[min_i][min_j] = 0.0;
-                        active[min_i][min_j] = true;
-                    }
-
-                }
+                active[min_i * n + min_j] = true; /* Add the first constraint met to the active set */
+                x[min_i * n + min_j] = 0.0; /* This fixes problems with round-off errors */
             }
 
             /* Find i,j that minimizes the gradient over all i,j in the active set. Note that grad = 2(AtWAb-AtWd) */
             min_i = -1;
             calculateAb(ntax, x, y);
-            //for (int i = 0; i < ntax; i++)
-            //    for (int j = 0; j < i; j++)
-            //        y[i][j] *= W[i][j];
             calculateAtx(ntax, y, r); /* r = AtWAx */
 
             if (!getMinimizeAIC()) {
@@ -697,10 +859,11 @@ public class CircularNNLS {
                  */
                 for (int i = 0; i < ntax; i++) {
                     for (int j = 0; j < i; j++) {
-                        r[i][j] -= AtWd[i][j];
-                        r[i][j] *= 2.0;
-                        if (active[i][j] && flag[i][j]) {
-                            grad_ij = r[i][j];
+                        final int ij = i * n + j;
+                        r[ij] -= AtWd[ij];
+                        r[ij] *= 2.0;
+                        if (active[ij] && flag[ij]) {
+                            grad_ij = r[ij];
                             if ((min_i == -1) || (grad_ij < min_grad)) {
                                 min_i = i;
                                 min_j = j;
@@ -712,20 +875,21 @@ public class CircularNNLS {
                 if ((min_i == -1) || (min_grad > -0.0001))
                     return; /* We have arrived at the constrained optimum */
                 else
-                    active[min_i][min_j] = false;
+                    active[min_i * n + min_j] = false;
             } else {
                 /* We check to see whether adding any edges back in gives a redued AIC. We use a heuristic calculation.
-                 * If we add b_i back in, and just uk.ac.uea.cmp.spectre.core.math.optimise that single variable, then the AIC decreases when
+                 * If we add b_i back in, and just optimise that single variable, then the AIC decreases when
                  * 		A'WA_ii * logPiPlus2 - grad^2 < 0.
                  */
                 double mininfo = 0.0;
                 for (int i = 0; i < ntax; i++) {
                     for (int j = 0; j < i; j++) {
-                        r[i][j] -= AtWd[i][j];
-                        r[i][j] *= 2.0;
-                        if (active[i][j] && flag[i][j]) {
-                            grad_ij = r[i][j];
-                            double info = diagAtWA[i][j] * logPiPlus2 - grad_ij * grad_ij;
+                        final int ij = i * n + j;
+                        r[ij] -= AtWd[ij];
+                        r[ij] *= 2.0;
+                        if (active[ij] && flag[ij]) {
+                            grad_ij = r[ij];
+                            double info = diagAtWA[ij] * logPiPlus2 - grad_ij * grad_ij;
                             if (info < mininfo) {
                                 min_i = i;
                                 min_j = j;
@@ -737,7 +901,7 @@ public class CircularNNLS {
                 if (mininfo == 0.0)
                     return;
                 else
-                    active[min_i][min_j] = false;
+                    active[min_i * n + min_j] = false;
             }
         }
     }
@@ -753,49 +917,71 @@ public class CircularNNLS {
     public SplitWeights circularLeastSquares(DistanceMatrix distanceMatrix, IdentifierList circularOrdering) {
 
         final int ntax = distanceMatrix.size();
-        double[][] dist = createPermutedDistancesMatrix(distanceMatrix, circularOrdering);
-        double[][] W = new double[ntax][ntax];
-        double[][] splitWeights = new double[ntax][ntax];
+        this.ws.setup(ntax, getMinimizeAIC());
 
-        fillW(ntax, W, dist, 1);
-        runActiveConjugate(ntax, dist, W, splitWeights);
+        fillPermutedDistances(distanceMatrix, circularOrdering, this.ws.d);
+        fillW(ntax, this.ws.W, this.ws.d, 1);
+        runActiveConjugate(ntax);
 
-        return new SplitWeights(splitWeights);
+        return copyWeights(ntax, this.ws.x, new SplitWeights(ntax));
     }
 
     public SplitWeights treeInCycleLeastSquares(DistanceMatrix distanceMatrix, IdentifierList circularOrdering, List<Split> splits) {
+
         final int ntax = distanceMatrix.size();
-        double[][] dist = createPermutedDistancesMatrix(distanceMatrix, circularOrdering);
-        boolean[][] flag = createFlags(circularOrdering, splits);
+        this.ws.setup(ntax, getMinimizeAIC());
 
-        double[][] W = new double[ntax][ntax];
-        double[][] treeSplitWeights = new double[ntax][ntax];
+        fillPermutedDistances(distanceMatrix, circularOrdering, this.ws.d);
+        fillFlags(circularOrdering, splits, this.ws.flag);
+        fillW(ntax, this.ws.W, this.ws.d, 1);
+        runActiveConjugateWithFlags(ntax);
 
-        fillW(ntax, W, dist, 1);
-        runActiveConjugate(ntax, dist, W, flag, treeSplitWeights);
+        return copyWeights(ntax, this.ws.x, new TreeSplitWeights(ntax));
+    }
 
-        return new TreeSplitWeights(treeSplitWeights);
+    private static SplitWeights copyWeights(final int ntax, final double[] x, final SplitWeights splitWeights) {
+        for (int i = 0; i < ntax; i++) {
+            for (int j = 0; j < ntax; j++) {
+                final double x_ij = x[i * ntax + j];
+                if (x_ij != 0.0) {
+                    splitWeights.setValAt(x_ij, i, j);
+                }
+            }
+        }
+        return splitWeights;
     }
 
-    private double[][] createPermutedDistancesMatrix(DistanceMatrix distanceMatrix, IdentifierList circularOrdering) {
+    private static void fillPermutedDistances(DistanceMatrix distanceMatrix, IdentifierList circularOrdering, double[] permutedDistances) {
 
         int n = distanceMatrix.size();
 
-        // Reorder the distance matrix
-        double[][] permutedDistances = new double[n][n];
+        // Work out where each taxon in the circular ordering lives in the distance matrix
+        Map<Identifier, Integer> lookup = distanceMatrix.getTaxa().createLookup();
+        int[] index = new int[n];
         for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                permutedDistances[i][j] = distanceMatrix.getDistance(circularOrdering.get(i), circularOrdering.get(j));
+            Integer idx = lookup.get(circularOrdering.get(i));
+            if (idx == null) {
+                idx = lookup.get(distanceMatrix.getTaxa().getById(circularOrdering.get(i).getId()));
             }
+            if (idx == null) {
+                throw new IllegalArgumentException("Taxon " + circularOrdering.get(i) + " in circular ordering is not in the distance matrix");
+            }
+            index[i] = idx;
         }
 
-        return permutedDistances;
+        // Reorder the distance matrix
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                final double d = distanceMatrix.getDistanceByIndex(index[i], index[j]);
+                permutedDistances[i * n + j] = d;
+                permutedDistances[j * n + i] = d;
+            }
+        }
     }
 
-    private boolean[][] createFlags(IdentifierList circularOrdering, List<Split> splits) {
+    private static void fillFlags(IdentifierList circularOrdering, List<Split> splits, boolean[] flag) {
 
         final int n = circularOrdering.size();
-        boolean[][] flag = new boolean[n][n];
 
         Map<Identifier, Integer> translation = circularOrdering.createLookup();
 
@@ -818,47 +1004,14 @@ public class CircularNNLS {
             int l = translation.get(b);
 
             if (k == 0) {
-                flag[n - 1][l] = true;
+                flag[(n - 1) * n + l] = true;
             } else {
                 if ((l < n - 1) && (k > l)) {
-                    flag[k - 1][l] = true;
+                    flag[(k - 1) * n + l] = true;
                 } else {
-                    flag[l][k - 1] = true;
+                    flag[l * n + k - 1] = true;
                 }
             }
         }
-
-        return flag;
-    }
-
-
-    class DoubleIntInt implements Comparator<DoubleIntInt> {
-        double d;
-        int first;
-        int second;
-
-        @Override
-        public int compare(DoubleIntInt o1, DoubleIntInt o2) {
-            DoubleIntInt dii1 = o1;
-            DoubleIntInt dii2 = o2;
-            if (dii1.d < dii2.d)
-                return -1;
-            else if (dii1.d > dii2.d)
-                return 1;
-            if (dii1.first < dii2.first)
-                return -1;
-            else if (dii1.first > dii2.first)
-                return 1;
-            if (dii1.second < dii2.second)
-                return -1;
-            else if (dii1.second > dii2.second)
-                return 1;
-            else
-                return 0;
-        }
-
-        public boolean equals(DoubleIntInt obj1) {
-            return compare(this, obj1) == 0;
-        }
     }
-}
\ No newline at end of file
+}
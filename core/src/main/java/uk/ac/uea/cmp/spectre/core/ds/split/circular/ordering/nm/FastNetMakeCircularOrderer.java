@@ -0,0 +1,572 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm;
+
+import uk.ac.uea.cmp.spectre.core.ds.Identifier;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.split.SpectreSplit;
+import uk.ac.uea.cmp.spectre.core.ds.split.SpectreSplitBlock;
+import uk.ac.uea.cmp.spectre.core.ds.split.SpectreSplitSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitUtils;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CircularOrderingCreator;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting.Weighting;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * NetMake implementation that performs the same agglomeration as {@link NetMakeCircularOrderer} in its normal and
+ * hybrid modes, but holds component membership, weighting parameters and the component to component and component to
+ * vertex tables in primitive arrays addressed by index rather than in maps keyed by identifiers.
+ *
+ * Each component occupies a slot, with the component created by a merge taking the lower slot of the two it replaces.
+ * The component to vertex table is held unweighted, as the sum of distances from each vertex to the vertices of a
+ * component, so after a merge only the row of the new component is needed, and that is the sum of the rows it replaces.
+ * Its weighted value is found by scaling by the weighting parameter of the vertex when read.  After a merge the
+ * component to component table is only recomputed for the new component and for components containing a vertex whose
+ * weighting parameter has changed since the table was last computed.  Those rows are computed in parallel if the pool
+ * has more than one thread.
+ *
+ * Components are numbered from 1 for the input taxa, with the component created by the k-th merge numbered n + k, as in
+ * {@link NetMakeCircularOrderer}.  Ties between equally good pairs of components are broken by slot order rather than
+ * by the iteration order of a hash map, so may be resolved differently.  The GreedyME mode is not supported.
+ */
+public class FastNetMakeCircularOrderer implements CircularOrderingCreator {
+
+    /* Below this number of taxa, or if the pool only has one thread, everything runs on the calling thread */
+    private static final int PARALLEL_THRESHOLD = 128;
+
+    private Weighting weighting1;
+    private Weighting weighting2;
+    private NetMakeCircularOrderer.RunMode runMode;
+    private ForkJoinPool pool;
+
+    private SplitSystem treeSplits;
+
+    // Vertices
+    private int n;
+    private double[][] distances;
+    private double[] distanceSums;
+    private IdentifierList vertices;
+    private int[] vertexSlot;
+
+    // Weighting parameters of each vertex for the component to component and component to vertex tables
+    private double[] c2cWeights;
+    private double[] c2vWeights;
+
+    // Components
+    private int[][] members;
+    private int[] componentIds;
+    private boolean[] active;
+    private int nbActive;
+    private int nextComponentId;
+
+    private double[][] c2c;
+    private double[][] c2v;
+
+    public FastNetMakeCircularOrderer(Weighting weighting1, Weighting weighting2) {
+        this(weighting1, weighting2, ForkJoinPool.commonPool());
+    }
+
+    public FastNetMakeCircularOrderer(Weighting weighting1, Weighting weighting2, ForkJoinPool pool) {
+
+        this.weighting1 = weighting1;
+        this.weighting2 = weighting2;
+        this.pool = pool;
+
+        this.runMode = NetMakeCircularOrderer.getRunMode(this.weighting1, this.weighting2);
+
+        if (this.runMode != NetMakeCircularOrderer.RunMode.NORMAL && this.runMode != NetMakeCircularOrderer.RunMode.HYBRID) {
+            throw new IllegalArgumentException("Unsupported weightings for fast NetMake, run mode would be: " + this.runMode);
+        }
+
+        this.treeSplits = null;
+    }
+
+    @Override
+    public IdentifierList createCircularOrdering(final DistanceMatrix distanceMatrix) {
+
+        this.setup(distanceMatrix);
+
+        final Weighting w = this.runMode.isHybrid() ? this.weighting2 : this.weighting1;
+
+        // Loop until components has at least two entries left.
+        while (this.nbActive > 2) {
+
+            // Choose the pair of components that minimise the Q criterion, lowest component id first
+            final long selectedComponents = this.selectionStep1();
+            final int s1 = (int) (selectedComponents >>> 32);
+            final int s2 = (int) selectedComponents;
+
+            // Choose the pair of vertices from those components that minimise the Q criterion
+            final long selectedVertices = this.selectionStep2(s1, s2);
+
+            // Merge of components
+            final int merged = this.merge(s1, s2, (int) (selectedVertices >>> 32), (int) selectedVertices);
+
+            // Add new component/split to Split list
+            this.treeSplits.add(new SpectreSplit(new SpectreSplitBlock(this.toIds(this.members[merged])), this.n));
+
+            // Update component to component distances using the current parameters of the first weighting
+            this.updateC2C(merged);
+
+            // Update the weightings for each vertex
+            w.updateWeightings(this.vertices);
+            this.readWeightings(w, this.c2vWeights);
+        }
+
+        // Remove last row (last row is the whole set and the last but one is not required)
+        this.treeSplits.removeLastSplit();
+
+        final IdentifierList circularOrdering = this.finalOrdering(distanceMatrix.getTaxa());
+
+        // Release working memory
+        this.distances = null;
+        this.c2c = null;
+        this.c2v = null;
+
+        return circularOrdering;
+    }
+
+    @Override
+    public boolean createsTreeSplits() {
+        return true;
+    }
+
+    @Override
+    public SplitSystem getTreeSplits() {
+        return this.treeSplits;
+    }
+
+    private static long pair(final int a, final int b) {
+        return ((long) a << 32) | (b & 0xFFFFFFFFL);
+    }
+
+    private int[] toIds(int[] vertexIndices) {
+        final int[] ids = new int[vertexIndices.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = vertexIndices[i] + 1;
+        }
+        return ids;
+    }
+
+    private void readWeightings(Weighting w, double[] params) {
+        for (int v = 0; v < this.n; v++) {
+            params[v] = w.getWeightingParam(this.vertices.get(v));
+        }
+    }
+
+    private void setup(final DistanceMatrix distanceMatrix) {
+
+        final int n = distanceMatrix.size();
+        this.n = n;
+
+        // Creates a simple split system with trivial splits from the given distance matrix
+        this.treeSplits = new SpectreSplitSystem(distanceMatrix.getTaxa(), SplitUtils.createTrivialSplits(distanceMatrix.getTaxa(), 1.0));
+
+        this.distances = new double[n][n];
+        this.distanceSums = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                final double d = distanceMatrix.getDistanceByIndex(i, j);
+                this.distances[i][j] = d;
+                this.distances[j][i] = d;
+                this.distanceSums[i] += d;
+                this.distanceSums[j] += d;
+            }
+        }
+
+        // Canonical vertices, with the same names and ids as in CVMatrices, for use as keys into the weightings
+        this.vertices = new IdentifierList();
+        for (int i = 1; i <= n; i++) {
+            this.vertices.add(new Identifier("V" + i, i));
+        }
+
+        this.weighting1.initialiseWeightings(this.vertices);
+        if (this.weighting2 != null) {
+            this.weighting2.initialiseWeightings(this.vertices);
+        }
+
+        this.c2cWeights = new double[n];
+        this.c2vWeights = new double[n];
+        this.readWeightings(this.weighting1, this.c2cWeights);
+        this.readWeightings(this.runMode.isHybrid() ? this.weighting2 : this.weighting1, this.c2vWeights);
+
+        this.vertexSlot = new int[n];
+        this.members = new int[n][];
+        this.componentIds = new int[n];
+        this.active = new boolean[n];
+        this.c2c = new double[n][];
+        this.c2v = new double[n][];
+
+        for (int i = 0; i < n; i++) {
+            this.vertexSlot[i] = i;
+            this.members[i] = new int[]{i};
+            this.componentIds[i] = i + 1;
+            this.active[i] = true;
+
+            // The initial component to component table is the distance matrix, weighted by the initial parameters
+            this.c2c[i] = new double[n];
+            for (int j = 0; j < n; j++) {
+                this.c2c[i][j] = this.c2cWeights[i] * this.c2cWeights[j] * this.distances[i][j];
+            }
+
+            // A component with one vertex has the distances from that vertex as its row.  Rows are never modified, only
+            // replaced, so can be shared.
+            this.c2v[i] = this.distances[i];
+        }
+
+        this.nbActive = n;
+        this.nextComponentId = n + 1;
+    }
+
+    /**
+     * Selects the two best components in the system.  Identical to NeighborNet selection step 1.
+     *
+     * @return The slots of the two best components packed into a long, lowest component id in the high word
+     */
+    private long selectionStep1() {
+
+        final int k = this.nbActive;
+
+        // Sum of distances from each component to all others
+        final double[] rowSums = new double[this.n];
+        for (int i = 0; i < this.n; i++) {
+            if (this.active[i]) {
+                final double[] row = this.c2c[i];
+                for (int j = i + 1; j < this.n; j++) {
+                    if (this.active[j]) {
+                        rowSums[i] += row[j];
+                        rowSums[j] += row[j];
+                    }
+                }
+            }
+        }
+
+        int best1 = -1;
+        int best2 = -1;
+        double minQ = Double.MAX_VALUE;
+
+        for (int i = 0; i < this.n; i++) {
+            if (this.active[i]) {
+                final double[] row = this.c2c[i];
+                for (int j = i + 1; j < this.n; j++) {
+                    if (this.active[j]) {
+
+                        final double q = (k - 2) * row[j] - (rowSums[i] - row[j]) - (rowSums[j] - row[j]);
+
+                        if (q < minQ) {
+                            minQ = q;
+                            best1 = i;
+                            best2 = j;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (best1 == -1) {
+            throw new IllegalStateException("Could not select a pair of components");
+        }
+
+        // Ensure we are in canonical form
+        return this.componentIds[best1] < this.componentIds[best2] ? pair(best1, best2) : pair(best2, best1);
+    }
+
+    /**
+     * Weighted component to vertex distance
+     */
+    private double c2v(final int slot, final int vertex) {
+        return this.c2vWeights[vertex] * this.c2v[slot][vertex];
+    }
+
+    /**
+     * Selects to two best vertices associated with the two best component groups.  Identical to NeighborNet selection
+     * step 2
+     *
+     * @param s1 Slot of the first selected component
+     * @param s2 Slot of the second selected component
+     * @return The two best vertices packed into a long, lowest vertex first
+     */
+    private long selectionStep2(final int s1, final int s2) {
+
+        final int[] vertices1 = this.members[s1];
+        final int[] vertices2 = this.members[s2];
+        final int unionSize = vertices1.length + vertices2.length;
+
+        int best1 = -1;
+        int best2 = -1;
+        double minQ = Double.MAX_VALUE;
+
+        for (int v1 : vertices1) {
+
+            final double[] row1 = this.distances[v1];
+
+            for (int v2 : vertices2) {
+
+                final double[] row2 = this.distances[v2];
+
+                // Subtract the distance between a given vertex in one of the selected components and the other component,
+                // from the sum of distances between the vertex and all components
+                final double sumV1 = this.c2vWeights[v1] * this.distanceSums[v1] - this.c2v(s2, v1);
+                final double sumV2 = this.c2vWeights[v2] * this.distanceSums[v2] - this.c2v(s1, v2);
+
+                double sumVId1 = 0.0;
+                double sumVId2 = 0.0;
+
+                for (int v : vertices1) {
+                    sumVId1 += row1[v];
+                    sumVId2 += row2[v];
+                }
+                for (int v : vertices2) {
+                    sumVId1 += row1[v];
+                    sumVId2 += row2[v];
+                }
+
+                final double q = ((unionSize - 4 + vertices1.length + vertices2.length) * row1[v2]) -
+                        sumV1 - sumV2 - sumVId1 - sumVId2;
+
+                if (q < minQ) {
+                    minQ = q;
+                    best1 = v1;
+                    best2 = v2;
+                }
+            }
+        }
+
+        // Ensure we are in canonical form
+        return best1 < best2 ? pair(best1, best2) : pair(best2, best1);
+    }
+
+    private static boolean contains(final int[] list, final int value) {
+        for (int x : list) {
+            if (x == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] reverse(final int[] list) {
+        final int[] reversed = new int[list.length];
+        for (int i = 0; i < list.length; i++) {
+            reversed[i] = list[list.length - 1 - i];
+        }
+        return reversed;
+    }
+
+    /**
+     * Joins the vertices of two components so that the selected vertices are adjacent
+     */
+    private static int[] mergeVertices(final int sv1, final int sv2, final int[] vl1, final int[] vl2) {
+
+        // Check which components the selected vertices belong
+        final boolean invert = !contains(vl1, sv1);
+
+        final int firstVertex = invert ? sv2 : sv1;
+        final int secondVertex = invert ? sv1 : sv2;
+
+        // Order vertices
+        final int[] mv1Vertices = vl1[0] == firstVertex ? reverse(vl1) : vl1;
+        final int[] mv2Vertices = vl2[0] != secondVertex ? reverse(vl2) : vl2;
+
+        // Merge vertices
+        final int[] mv = new int[mv1Vertices.length + mv2Vertices.length];
+        System.arraycopy(mv1Vertices, 0, mv, 0, mv1Vertices.length);
+        System.arraycopy(mv2Vertices, 0, mv, mv1Vertices.length, mv2Vertices.length);
+
+        return mv;
+    }
+
+    /**
+     * Merges two components into a new component, which takes the lower of their slots
+     *
+     * @return The slot of the new component
+     */
+    private int merge(final int s1, final int s2, final int sv1, final int sv2) {
+
+        final int[] mv = mergeVertices(sv1, sv2, this.members[s1], this.members[s2]);
+
+        final int slot = Math.min(s1, s2);
+        final int freed = Math.max(s1, s2);
+
+        // The unweighted component to vertex row of the new component is the sum of the rows it replaces
+        final double[] row1 = this.c2v[s1];
+        final double[] row2 = this.c2v[s2];
+        final double[] row = new double[this.n];
+        for (int v = 0; v < this.n; v++) {
+            row[v] = row1[v] + row2[v];
+        }
+
+        this.members[slot] = mv;
+        this.componentIds[slot] = this.nextComponentId++;
+        this.c2v[slot] = row;
+
+        this.members[freed] = null;
+        this.c2v[freed] = null;
+        this.c2c[freed] = null;
+        this.active[freed] = false;
+        this.nbActive--;
+
+        for (int v : mv) {
+            this.vertexSlot[v] = slot;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Recomputes the component to component distances for the new component, and for any component with a vertex
+     * whose first weighting parameter has changed since the distances were last computed
+     *
+     * @param merged Slot of the new component
+     */
+    private void updateC2C(final int merged) {
+
+        final double[] params = new double[this.n];
+        this.readWeightings(this.weighting1, params);
+
+        final boolean[] dirty = new boolean[this.n];
+        dirty[merged] = true;
+        for (int v = 0; v < this.n; v++) {
+            if (params[v] != this.c2cWeights[v]) {
+                dirty[this.vertexSlot[v]] = true;
+            }
+        }
+        this.c2cWeights = params;
+
+        int nbDirty = 0;
+        final int[] rows = new int[this.nbActive];
+        for (int i = 0; i < this.n; i++) {
+            if (dirty[i] && this.active[i]) {
+                rows[nbDirty++] = i;
+            }
+        }
+
+        final RowTask task = new RowTask(rows, 0, nbDirty);
+        if (this.n < PARALLEL_THRESHOLD || this.pool.getParallelism() < 2) {
+            task.computeRows();
+        } else {
+            this.pool.invoke(task);
+        }
+
+        // Each task only writes its own row, so copy the rows across to the columns.  If both components were
+        // recomputed then the row of the lower slot is used.
+        for (int r = 0; r < nbDirty; r++) {
+            final int i = rows[r];
+            final double[] row = this.c2c[i];
+            for (int j = 0; j < this.n; j++) {
+                if (this.active[j] && j != i && (!dirty[j] || i < j)) {
+                    this.c2c[j][i] = row[j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the component to component distances from the component in the given slot to all other components
+     */
+    private void computeRow(final int slot) {
+
+        final double[] sums = new double[this.n];
+
+        for (int x : this.members[slot]) {
+            final double wx = this.c2cWeights[x];
+            final double[] row = this.distances[x];
+            for (int v = 0; v < this.n; v++) {
+                sums[this.vertexSlot[v]] += wx * this.c2cWeights[v] * row[v];
+            }
+        }
+
+        sums[slot] = 0.0;
+        this.c2c[slot] = sums;
+    }
+
+    /**
+     * Computes a range of component to component rows, splitting the range in half until only one row is left
+     */
+    private class RowTask extends RecursiveAction {
+
+        private final int[] rows;
+        private final int start;
+        private final int end;
+
+        private RowTask(int[] rows, int start, int end) {
+            this.rows = rows;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (this.end - this.start > 1) {
+                final int mid = (this.start + this.end) >>> 1;
+                invokeAll(new RowTask(this.rows, this.start, mid), new RowTask(this.rows, mid, this.end));
+                return;
+            }
+
+            this.computeRows();
+        }
+
+        private void computeRows() {
+            for (int r = this.start; r < this.end; r++) {
+                computeRow(this.rows[r]);
+            }
+        }
+    }
+
+    private IdentifierList finalOrdering(final IdentifierList taxa) {
+
+        if (this.nbActive == 0) {
+            throw new IllegalStateException("Algorithm Error: 0 active components.  This should never happen.");
+        }
+        else if (this.nbActive > 2) {
+            throw new IllegalStateException("Algorithm Error: More than 2 active components.  This should never happen.");
+        }
+
+        int s1 = -1;
+        int s2 = -1;
+        for (int i = 0; i < this.n; i++) {
+            if (this.active[i]) {
+                if (s1 == -1) {
+                    s1 = i;
+                } else {
+                    s2 = i;
+                }
+            }
+        }
+
+        int[] ordering = this.members[s1];
+
+        if (s2 != -1) {
+
+            // Run second selection step again
+            final long selectedVertices = this.selectionStep2(s1, s2);
+            ordering = mergeVertices((int) (selectedVertices >>> 32), (int) selectedVertices, this.members[s1], this.members[s2]);
+        }
+
+        // Translate and return
+        final IdentifierList circularOrdering = new IdentifierList();
+        for (int v : ordering) {
+            circularOrdering.add(taxa.get(v));
+        }
+
+        return circularOrdering;
+    }
+}
@@ -19,8 +19,8 @@ import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import uk.ac.uea.cmp.spectre.core.ds.Identifier;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DenseDistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
-import uk.ac.uea.cmp.spectre.core.ds.distance.FlexibleDistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.split.*;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CVMatrices;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CircularOrderingCreator;
@@ -209,24 +209,35 @@ public class NetMakeCircularOrderer implements CircularOrderingCreator {
      */
     protected Pair<Identifier, Identifier> selectionStep1(final DistanceMatrix c2c) {
 
+        final int n = c2c.size();
+
+        // Sum of distances from each component to all others
+        final double[] rowSums = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                final double d = c2c.getDistanceByIndex(i, j);
+                rowSums[i] += d;
+                rowSums[j] += d;
+            }
+        }
+
         Pair<Identifier, Identifier> bestPair = null;
         double minQ = Double.MAX_VALUE;
 
-        for (Map.Entry<Pair<Identifier, Identifier>, Double> entry : c2c.getMap().entrySet()) {
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
 
-            Identifier id1 = entry.getKey().getLeft();
-            Identifier id2 = entry.getKey().getRight();
+                final double id1_2_id2 = c2c.getDistanceByIndex(i, j);
 
-            final double id1_2_id2 = entry.getValue();
+                final double sumId1 = rowSums[i] - id1_2_id2;
+                final double sumId2 = rowSums[j] - id1_2_id2;
 
-            final double sumId1 = c2c.getDistances(id1, null).sum() - id1_2_id2;
-            final double sumId2 = c2c.getDistances(id2, null).sum() - id1_2_id2;
+                final double q = (n - 2) * id1_2_id2 - sumId1 - sumId2;
 
-            final double q = (c2c.size() - 2) * c2c.getDistance(id1, id2) - sumId1 - sumId2;
-
-            if (q < minQ) {
-                minQ = q;
-                bestPair = entry.getKey();
+                if (q < minQ) {
+                    minQ = q;
+                    bestPair = new ImmutablePair<>(c2c.getTaxa().get(i), c2c.getTaxa().get(j));
+                }
             }
         }
 
@@ -369,7 +380,7 @@ public class NetMakeCircularOrderer implements CircularOrderingCreator {
 
     private void updateC2C(Weighting w) {
 
-        DistanceMatrix c2c = new FlexibleDistanceMatrix();
+        DistanceMatrix c2c = new DenseDistanceMatrix();
 
         for (Identifier componentR : this.mx.getC2Vs().keySet()) {
             for (Identifier componentS : this.mx.getC2Vs().keySet()) {
@@ -0,0 +1,474 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import uk.ac.uea.cmp.spectre.core.ds.Identifier;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.split.Split;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitBlock;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CVMatrices;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Chooses the GreedyME cherry by working out how much each candidate would change the tree length, rather than
+ * recalculating the length of the whole tree for every candidate.
+ *
+ * The tree built so far is a star of components, each of which is a rooted binary tree.  Joining components I and J
+ * adds an edge S = I u J, and only changes the weights of the edges leading to the components themselves, since
+ * those are the only edges whose adjacent subtrees change.  The OLS weight of an edge (D. Bryant thesis, algorithm 15)
+ * only depends on its adjacent subtrees through a handful of sums over them, so the sums over all components are held
+ * once per step, and the new weight of each component's edge is found in constant time by swapping the terms for I and
+ * J for the term for S.  Candidates are therefore scored in time linear in the number of components, and are scored in
+ * parallel.
+ */
+public class GreedyMEEngine {
+
+    private final int nbTaxa;
+
+    // Distances between taxa, indexed by id - 1
+    private final double[][] distances;
+
+    /**
+     * Creates an engine for the given distance matrix, whose taxa are expected to have ids 1 to n
+     *
+     * @param distanceMatrix The distance matrix
+     */
+    public GreedyMEEngine(DistanceMatrix distanceMatrix) {
+
+        this.nbTaxa = distanceMatrix.size();
+        this.distances = new double[this.nbTaxa][this.nbTaxa];
+
+        for (int i = 0; i < this.nbTaxa; i++) {
+            for (int j = i + 1; j < this.nbTaxa; j++) {
+                this.distances[i][j] = distanceMatrix.getDistance(i + 1, j + 1);
+                this.distances[j][i] = distanceMatrix.getDistance(j + 1, i + 1);
+            }
+        }
+    }
+
+    /**
+     * Picks the pair of components whose joining gives the shortest tree
+     *
+     * @param splits The splits of the tree built so far, with the A side of each split being a cluster of the tree
+     * @param c2v The components and their vertices
+     * @param pool The pool to score candidates on
+     * @return The pair of components to join
+     */
+    public Pair<Identifier, Identifier> makeMECherry(SplitSystem splits, CVMatrices c2v, ForkJoinPool pool) {
+
+        final Step step = new Step(splits, c2v);
+        final int k = step.nbComponents;
+
+        if (k < 2) {
+            throw new IllegalStateException("Too few components to process");
+        }
+
+        if (k == 2) {
+            return new ImmutablePair<>(step.components.get(0), step.components.get(1));
+        }
+
+        final double[][] deltas = new double[k][];
+        final ScoreTask task = new ScoreTask(step, deltas, 0, k);
+
+        if (pool.getParallelism() < 2) {
+            task.score();
+        } else {
+            pool.invoke(task);
+        }
+
+        // Keep the first best pair, in the same order as the candidates would be tried one by one
+        double best = Double.POSITIVE_INFINITY;
+        int bestI = -1;
+        int bestJ = -1;
+        for (int i = 0; i < k; i++) {
+            for (int j = i + 1; j < k; j++) {
+                if (deltas[i][j - i - 1] < best) {
+                    best = deltas[i][j - i - 1];
+                    bestI = i;
+                    bestJ = j;
+                }
+            }
+        }
+
+        return bestI == -1 ? new ImmutablePair<Identifier, Identifier>(null, null) :
+                new ImmutablePair<>(step.components.get(bestI), step.components.get(bestJ));
+    }
+
+    /**
+     * Works out the change in tree length from joining each pair of components
+     *
+     * @param splits The splits of the tree built so far
+     * @param c2v The components and their vertices
+     * @return For each pair of components i &lt; j, in the order given by c2v, the change in tree length is at [i][j - i - 1]
+     */
+    double[][] calculateDeltas(SplitSystem splits, CVMatrices c2v) {
+
+        final Step step = new Step(splits, c2v);
+        final double[][] deltas = new double[step.nbComponents][];
+        new ScoreTask(step, deltas, 0, step.nbComponents).score();
+        return deltas;
+    }
+
+    /**
+     * Scores the candidates whose first component is in a range, splitting the range in half until only one is left
+     */
+    private class ScoreTask extends RecursiveAction {
+
+        private final Step step;
+        private final double[][] deltas;
+        private final int start;
+        private final int end;
+
+        private ScoreTask(Step step, double[][] deltas, int start, int end) {
+            this.step = step;
+            this.deltas = deltas;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (this.end - this.start > 1) {
+                final int mid = (this.start + this.end) >>> 1;
+                invokeAll(new ScoreTask(this.step, this.deltas, this.start, mid),
+                        new ScoreTask(this.step, this.deltas, mid, this.end));
+                return;
+            }
+
+            this.score();
+        }
+
+        private void score() {
+            for (int i = this.start; i < this.end; i++) {
+                final double[] row = new double[this.step.nbComponents - i - 1];
+                for (int j = i + 1; j < this.step.nbComponents; j++) {
+                    row[j - i - 1] = this.step.delta(i, j);
+                }
+                this.deltas[i] = row;
+            }
+        }
+    }
+
+    /**
+     * Sums over a set of subtrees adjacent to an edge, from which the OLS weight of the edge is calculated
+     */
+    private final class Terms {
+
+        // Sum of C / (n - 2C) over the subtrees, where C is the number of leaves in a subtree
+        private double s;
+
+        // Sum of P / (n - 2C), where P is the sum of distances across the split given by a subtree
+        private double q;
+
+        // The subtree with exactly half the leaves, if there is one, which is handled separately
+        private boolean hasZero;
+        private int zeroC;
+        private double zeroP;
+
+        private Terms() {
+        }
+
+        private Terms(Terms other) {
+            this.s = other.s;
+            this.q = other.q;
+            this.hasZero = other.hasZero;
+            this.zeroC = other.zeroC;
+            this.zeroP = other.zeroP;
+        }
+
+        private boolean isZero(int c) {
+            return c == (double) nbTaxa / 2.0;
+        }
+
+        private Terms add(int c, double p) {
+            if (this.isZero(c)) {
+                this.hasZero = true;
+                this.zeroC = c;
+                this.zeroP = p;
+            } else {
+                final double sc = (double) c / ((double) nbTaxa - 2.0 * (double) c);
+                this.s += sc;
+                this.q += sc * p / (double) c;
+            }
+            return this;
+        }
+
+        private Terms remove(int c, double p) {
+            if (this.isZero(c)) {
+                this.hasZero = false;
+            } else {
+                final double sc = (double) c / ((double) nbTaxa - 2.0 * (double) c);
+                this.s -= sc;
+                this.q -= sc * p / (double) c;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Calculates the OLS weight of an edge from the sums over the subtrees on either side of it
+     *
+     * @param p0 Sum of distances across the edge
+     * @param alpha Subtrees on the A side
+     * @param nAlpha Number of leaves on the A side
+     * @param beta Subtrees on the B side
+     * @param nBeta Number of leaves on the B side
+     * @param external True if the edge leads to a leaf, in which case all subtrees are treated alike
+     * @return The weight of the edge
+     */
+    private double edgeWeight(double p0, Terms alpha, int nAlpha, Terms beta, int nBeta, boolean external) {
+
+        final double vAlpha = external ? 1.0 : nBeta;
+        final double vBeta = external ? 1.0 : nAlpha;
+        final double nn = external ? (double) (this.nbTaxa - 1) : (double) (nAlpha * nBeta);
+
+        final double gamma = vAlpha * alpha.s + vBeta * beta.s;
+        final double k = alpha.s + beta.s + 1.0;
+        final double qSum = alpha.q + beta.q;
+
+        final double sum1;
+        final double sum23;
+
+        if (alpha.hasZero || beta.hasZero) {
+            final double vz = alpha.hasZero ? vAlpha : vBeta;
+            final int cz = alpha.hasZero ? alpha.zeroC : beta.zeroC;
+            final double pz = alpha.hasZero ? alpha.zeroP : beta.zeroP;
+            final double wz = -gamma + k * vz;
+            sum1 = vAlpha * alpha.q + vBeta * beta.q - vz * qSum + wz * pz / (double) cz;
+            sum23 = vAlpha * vAlpha * alpha.s + vBeta * vBeta * beta.s - vz * gamma + vz * wz;
+        } else {
+            final double g = gamma / k;
+            sum1 = vAlpha * alpha.q + vBeta * beta.q - g * qSum;
+            sum23 = vAlpha * vAlpha * alpha.s + vBeta * vBeta * beta.s - g * gamma;
+        }
+
+        double edgeWeight = p0 - sum1;
+
+        if (edgeWeight != 0.0) {
+            edgeWeight = edgeWeight / (nn - sum23);
+        }
+
+        // Check for dodgy results... sometimes can happen due to div by 0
+        if (Double.isInfinite(edgeWeight)) {
+            throw new IllegalArgumentException("Edge Weight was infinite!");
+        }
+        if (Double.isNaN(edgeWeight)) {
+            throw new IllegalArgumentException("Edge Weight was not a number");
+        }
+
+        return edgeWeight;
+    }
+
+    /**
+     * Everything about the current tree needed to score the candidates
+     */
+    private final class Step {
+
+        private final List<Identifier> components;
+        private final int nbComponents;
+
+        // Per component: number of leaves, sum of distances across its edge, and the sums over its two children
+        private final int[] size;
+        private final double[] p;
+        private final Terms[] children;
+
+        // Sum of distances between each pair of components
+        private final double[][] between;
+
+        // Sums over all components, and the current weight of each component's edge
+        private final Terms all;
+        private final double[] oldWeight;
+
+        private Step(SplitSystem splits, CVMatrices c2v) {
+
+            this.components = new ArrayList<>(c2v.getC2Vs().keySet());
+            this.nbComponents = this.components.size();
+
+            final int k = this.nbComponents;
+
+            // Find the component of each taxon
+            final int[] componentOf = new int[nbTaxa];
+            this.size = new int[k];
+            for (int c = 0; c < k; c++) {
+                for (Identifier v : c2v.getVertices(this.components.get(c))) {
+                    componentOf[v.getId() - 1] = c;
+                    this.size[c]++;
+                }
+            }
+
+            this.p = new double[k];
+            this.between = new double[k][k];
+            for (int x = 0; x < nbTaxa; x++) {
+                final int cx = componentOf[x];
+                for (int y = 0; y < nbTaxa; y++) {
+                    final int cy = componentOf[y];
+                    if (cx != cy) {
+                        this.p[cx] += distances[x][y];
+                        this.between[cx][cy] += distances[x][y];
+                    }
+                }
+            }
+
+            this.children = this.findChildren(splits, componentOf);
+
+            this.all = new Terms();
+            for (int c = 0; c < k; c++) {
+                this.all.add(this.size[c], this.p[c]);
+            }
+
+            this.oldWeight = new double[k];
+            if (k > 2) {
+                for (int c = 0; c < k; c++) {
+                    this.oldWeight[c] = this.componentWeight(c,
+                            new Terms(this.all).remove(this.size[c], this.p[c]), nbTaxa - this.size[c]);
+                }
+            }
+        }
+
+        /**
+         * Finds the two subtrees making up each component with more than one leaf, as the largest cluster inside the
+         * component and the largest cluster inside the component but outside the first
+         */
+        private Terms[] findChildren(SplitSystem splits, int[] componentOf) {
+
+            final int k = this.nbComponents;
+            final SplitBlock[] first = new SplitBlock[k];
+            final SplitBlock[] second = new SplitBlock[k];
+
+            for (Split split : splits) {
+                final SplitBlock cluster = split.getASide();
+                final int c = componentOf[cluster.getFirst() - 1];
+                if (cluster.size() < this.size[c] && (first[c] == null || cluster.size() > first[c].size())) {
+                    first[c] = cluster;
+                }
+            }
+
+            final boolean[] inFirst = new boolean[nbTaxa];
+            for (int c = 0; c < k; c++) {
+                if (first[c] != null) {
+                    for (Integer x : first[c]) {
+                        inFirst[x - 1] = true;
+                    }
+                }
+            }
+
+            for (Split split : splits) {
+                final SplitBlock cluster = split.getASide();
+                final int c = componentOf[cluster.getFirst() - 1];
+                if (cluster.size() < this.size[c] && !inFirst[cluster.getFirst() - 1] &&
+                        (second[c] == null || cluster.size() > second[c].size())) {
+                    second[c] = cluster;
+                }
+            }
+
+            final Terms[] terms = new Terms[k];
+            for (int c = 0; c < k; c++) {
+                if (this.size[c] > 1) {
+                    if (first[c] == null || second[c] == null || first[c].size() + second[c].size() != this.size[c]) {
+                        throw new IllegalStateException("Component " + this.components.get(c) + " is not made up of two clusters in the split system");
+                    }
+                    terms[c] = new Terms()
+                            .add(first[c].size(), clusterP(first[c]))
+                            .add(second[c].size(), clusterP(second[c]));
+                }
+            }
+
+            return terms;
+        }
+
+        private double clusterP(SplitBlock cluster) {
+
+            final boolean[] in = new boolean[nbTaxa];
+            for (Integer x : cluster) {
+                in[x - 1] = true;
+            }
+
+            double sum = 0.0;
+            for (Integer x : cluster) {
+                final double[] row = distances[x - 1];
+                for (int y = 0; y < nbTaxa; y++) {
+                    if (!in[y]) {
+                        sum += row[y];
+                    }
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * Weight of the edge leading to a component, given the subtrees on the far side of it
+         */
+        private double componentWeight(int c, Terms beta, int nBeta) {
+            return this.size[c] == 1 ?
+                    edgeWeight(this.p[c], new Terms(), 1, beta, nBeta, true) :
+                    edgeWeight(this.p[c], this.children[c], this.size[c], beta, nBeta, false);
+        }
+
+        /**
+         * Change in tree length from joining components i and j
+         */
+        private double delta(int i, int j) {
+
+            final int k = this.nbComponents;
+            final int sizeS = this.size[i] + this.size[j];
+            final double pS = this.p[i] + this.p[j] - 2.0 * this.between[i][j];
+
+            final Terms ij = new Terms().add(this.size[i], this.p[i]).add(this.size[j], this.p[j]);
+
+            double delta = 0.0;
+
+            // New edge S, and the edges to i and j, which now hang off S
+            final Terms rest;
+            if (k == 3) {
+                // S and the remaining component meet at a vertex of degree 2, so S sees the subtrees of that component
+                final int t = 3 - i - j;
+                rest = this.size[t] == 1 ? new Terms().add(1, this.p[t]) : this.children[t];
+            } else {
+                rest = new Terms(this.all).remove(this.size[i], this.p[i]).remove(this.size[j], this.p[j]);
+            }
+            delta += edgeWeight(pS, ij, sizeS, rest, nbTaxa - sizeS, nbTaxa - sizeS == 1);
+
+            delta += this.componentWeight(i, new Terms().add(nbTaxa - sizeS, pS).add(this.size[j], this.p[j]),
+                    nbTaxa - this.size[i]) - this.oldWeight[i];
+            delta += this.componentWeight(j, new Terms().add(nbTaxa - sizeS, pS).add(this.size[i], this.p[i]),
+                    nbTaxa - this.size[j]) - this.oldWeight[j];
+
+            // Every other component's edge now sees S in place of i and j
+            for (int t = 0; t < k; t++) {
+                if (t != i && t != j) {
+                    final Terms beta = k == 3 ?
+                            new Terms(ij) :
+                            new Terms(this.all)
+                                    .remove(this.size[t], this.p[t])
+                                    .remove(this.size[i], this.p[i])
+                                    .remove(this.size[j], this.p[j])
+                                    .add(sizeS, pS);
+                    delta += this.componentWeight(t, beta, nbTaxa - this.size[t]) - this.oldWeight[t];
+                }
+            }
+
+            return delta;
+        }
+    }
+}
@@ -15,12 +15,10 @@
 
 package uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting;
 
-import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.uea.cmp.spectre.core.ds.Identifier;
-import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.split.*;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CVMatrices;
@@ -28,6 +26,7 @@ import uk.ac.uea.cmp.spectre.core.math.stats.Statistics;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * GreedyMEWeighting extends weighting, although it doesn't actually update a Weighting param.
@@ -41,6 +40,8 @@ public class GreedyMEWeighting extends Weighting {
 
     private DistanceMatrix distanceMatrix;
 
+    private GreedyMEEngine engine;
+
 
     /**
      * Initialises a GreedyMEWeighting with a distance matrix
@@ -55,72 +56,37 @@ public class GreedyMEWeighting extends Weighting {
     }
 
 
-    private SplitBlock convertTaxaToSplitBlock(IdentifierList taxa) {
-
-        List<Integer> ids = new ArrayList<>();
-
-        for(Identifier taxon : taxa) {
-            ids.add(taxon.getId());
-        }
-
-        return new SpectreSplitBlock(ids);
-    }
-
+    /**
+     * Picks the pair of components whose joining gives the tree with the shortest length, scoring the candidates on
+     * the common fork join pool
+     *
+     * @param splits The splits of the tree built so far
+     * @param c2v The components and their vertices
+     * @return The pair of components to join
+     */
     public Pair<Identifier, Identifier> makeMECherry(SplitSystem splits, final CVMatrices c2v) {
+        return this.makeMECherry(splits, c2v, ForkJoinPool.commonPool());
+    }
 
-        double oldTreeLength = Double.POSITIVE_INFINITY;
-
-        Identifier bestI = null;
-        Identifier bestJ = null;
-
-        List<Identifier> components = new ArrayList<>();
-        components.addAll(c2v.getC2Vs().keySet());
-        final int nbComponents = components.size();
-
-        if (components.size() < 2) {
-            throw new IllegalStateException("Too few components to process");
-        }
-
-        log.debug(nbComponents + " cherries to produce");
-
-        int i = 0;
-        for (Identifier componentI : components) {
-
-            int j = 0;
-            for (Identifier componentJ : components) {
-
-                if (j > i) {
-
-                    // Create a new merged split i and j from splits creation and add into ss
-                    IdentifierList vertices = new IdentifierList();
-                    vertices.addAll(c2v.getVertices(componentI));
-                    vertices.addAll(c2v.getVertices(componentJ));
-
-                    splits.add(new SpectreSplit(
-                            new SpectreSplit(this.convertTaxaToSplitBlock(c2v.getVertices(componentI)), c2v.getNbVertices()),
-                            new SpectreSplit(this.convertTaxaToSplitBlock(c2v.getVertices(componentJ)), c2v.getNbVertices())));
-
-                    double treeLength = this.calculateTreeLength(splits);
-
-                    if (treeLength < oldTreeLength) {
-                        oldTreeLength = treeLength;
-                        bestI = componentI;
-                        bestJ = componentJ;
-                    }
+    /**
+     * Picks the pair of components whose joining gives the tree with the shortest length.  Rather than working out the
+     * length of every candidate tree in full, only the change in length from each candidate is calculated, see
+     * {@link GreedyMEEngine}.
+     *
+     * @param splits The splits of the tree built so far
+     * @param c2v The components and their vertices
+     * @param pool The pool to score candidates on
+     * @return The pair of components to join
+     */
+    public Pair<Identifier, Identifier> makeMECherry(SplitSystem splits, final CVMatrices c2v, ForkJoinPool pool) {
 
-                    splits.removeLastSplit();
-                }
-                j++;
-            }
-            i++;
+        if (this.engine == null) {
+            this.engine = new GreedyMEEngine(this.distanceMatrix);
         }
 
-        return new ImmutablePair<>(bestI, bestJ);
-    }
-
-    private double calculateTreeLength(SplitSystem splits) {
+        log.debug(c2v.getC2Vs().size() + " cherries to produce");
 
-        return Statistics.sumDoubles(this.getEdgeWeights(splits));
+        return this.engine.makeMECherry(splits, c2v, pool);
     }
 
     /*
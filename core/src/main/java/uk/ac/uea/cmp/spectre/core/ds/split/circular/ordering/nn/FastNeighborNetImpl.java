@@ -0,0 +1,577 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nn;
+
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DenseDistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CircularOrderingCreator;
+
+/**
+ * NeighborNet implementation that performs the same agglomeration as {@link NeighborNetImpl}, but holds all cluster and
+ * vertex data in primitive arrays addressed by index rather than in maps keyed by identifiers.
+ *
+ * Clusters occupy a contiguous block of slots in a packed triangular cluster to cluster matrix, along with the sum of
+ * each row.  After a merge only the row of the new cluster is recomputed and the other row sums are adjusted
+ * accordingly, so the selection of the next pair of clusters is a single sequential scan over the triangle.  Vertex to
+ * vertex distances are kept in a packed triangle indexed by vertex slot, with new vertices reusing the slots of the
+ * vertices they replace.
+ *
+ * Vertices are numbered from 0 for the input taxa, with the two vertices created by the k-th reduction numbered
+ * n + 2k and n + 2k + 1.  Clusters are numbered from 0 for the input taxa, with the cluster created by the k-th merge
+ * numbered n + k.  Ties between equally good cluster pairs are broken in the same way as {@link NeighborNetImpl}.
+ */
+public class FastNeighborNetImpl implements CircularOrderingCreator {
+
+    private static final int NONE = -1;
+
+    private NeighborNetParams params;
+
+    // Vertices
+    private int n;
+    private double[] v2v;
+    private int[] vertexSlot;
+    private int[] slotVertex;
+    private int[] vertexCluster;
+    private int nbVertices;
+    private int nbReductions;
+
+    // The triplets of vertices replaced by each reduction
+    private int[] reducedFirst;
+    private int[] reducedSecond;
+    private int[] reducedThird;
+
+    // Clusters
+    private double[] c2c;
+    private double[] rowSums;
+    private int[] clusterSlot;
+    private int[] slotCluster;
+    private int[] clusterFirst;
+    private int[] clusterSecond;
+    private int nbClusters;
+    private int nbMerges;
+
+    // Scratch space
+    private double[] tmp1;
+    private double[] tmp2;
+
+    public FastNeighborNetImpl() {
+        this(new NeighborNetParams());
+    }
+
+    public FastNeighborNetImpl(NeighborNetParams params) {
+        this.params = params;
+    }
+
+    @Override
+    public IdentifierList createCircularOrdering(DistanceMatrix distanceMatrix) {
+
+        this.setup(distanceMatrix);
+
+        // Reduce down to a max of 3 vertices
+        while (this.nbVertices > 3) {
+
+            // Choose a pair of clusters that minimise the Q criterion, lowest cluster id first
+            long selectedClusters = this.selectionStep1();
+            final int c1 = (int) (selectedClusters >>> 32);
+            final int c2 = (int) selectedClusters;
+
+            // Choose a pair of vertices from those clusters that minimise the Q criterion
+            long selectedVertices = this.selectionStep2(c1, c2);
+
+            // Reduce the vertices in the selected clusters to a pair of vertices
+            long newVertices = this.reduce(c1, c2, (int) (selectedVertices >>> 32), (int) selectedVertices);
+
+            // Merge the selected clusters into a new cluster containing the new vertices
+            this.merge(c1, c2, (int) (newVertices >>> 32), (int) newVertices);
+        }
+
+        IdentifierList circularOrdering = this.expand(distanceMatrix.getTaxa());
+
+        // Release working memory
+        this.v2v = null;
+        this.c2c = null;
+
+        return circularOrdering;
+    }
+
+    @Override
+    public boolean createsTreeSplits() {
+        return false;
+    }
+
+    @Override
+    public SplitSystem getTreeSplits() {
+        return null;
+    }
+
+    private static long pair(final int a, final int b) {
+        return ((long) a << 32) | (b & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Same packed triangle layout as {@link DenseDistanceMatrix}
+     */
+    private static int index(final int i, final int j) {
+        return DenseDistanceMatrix.index(i, j);
+    }
+
+    private double dist(final int vertex1, final int vertex2) {
+        return vertex1 == vertex2 ? 0.0 : this.v2v[index(this.vertexSlot[vertex1], this.vertexSlot[vertex2])];
+    }
+
+    private int clusterSize(final int cluster) {
+        return this.clusterSecond[cluster] == NONE ? 1 : 2;
+    }
+
+    private void setup(DistanceMatrix distanceMatrix) {
+
+        final int n = distanceMatrix.size();
+        this.n = n;
+
+        final long nbEntries = (long) n * (n - 1) / 2;
+        if (nbEntries > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many taxa for NeighborNet: " + n);
+        }
+
+        final int maxVertices = 3 * n;
+        final int maxClusters = 2 * n;
+
+        this.v2v = new double[(int) nbEntries];
+        this.vertexSlot = new int[maxVertices];
+        this.slotVertex = new int[n];
+        this.vertexCluster = new int[maxVertices];
+        this.reducedFirst = new int[n];
+        this.reducedSecond = new int[n];
+        this.reducedThird = new int[n];
+
+        this.c2c = new double[this.v2v.length];
+        this.rowSums = new double[n];
+        this.clusterSlot = new int[maxClusters];
+        this.slotCluster = new int[n];
+        this.clusterFirst = new int[maxClusters];
+        this.clusterSecond = new int[maxClusters];
+
+        this.tmp1 = new double[n];
+        this.tmp2 = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            this.vertexSlot[i] = i;
+            this.slotVertex[i] = i;
+            this.vertexCluster[i] = i;
+            this.clusterSlot[i] = i;
+            this.slotCluster[i] = i;
+            this.clusterFirst[i] = i;
+            this.clusterSecond[i] = NONE;
+        }
+
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                final double d = distanceMatrix.getDistanceByIndex(i, j);
+                this.v2v[index(i, j)] = d;
+                this.c2c[index(i, j)] = d;
+                this.rowSums[i] += d;
+                this.rowSums[j] += d;
+            }
+        }
+
+        this.nbVertices = n;
+        this.nbClusters = n;
+        this.nbReductions = 0;
+        this.nbMerges = 0;
+    }
+
+    /**
+     * Choose the pair of clusters that minimise the Q criterion
+     *
+     * @return The selected clusters packed into a long, lowest id in the high word
+     */
+    private long selectionStep1() {
+
+        final int m = this.nbClusters;
+
+        int best1 = NONE;
+        int best2 = NONE;
+        double minQ = Double.MAX_VALUE;
+
+        // Walk the packed triangle column by column, so the distances are read sequentially
+        for (int j = 1; j < m; j++) {
+
+            final int offset = index(0, j);
+            final double sumJ = this.rowSums[j];
+
+            for (int i = 0; i < j; i++) {
+
+                final double d = this.c2c[offset + i];
+                final double q = (m - 2) * d - (this.rowSums[i] - d) - (sumJ - d);
+
+                if (q <= minQ) {
+
+                    int id1 = this.slotCluster[i];
+                    int id2 = this.slotCluster[j];
+                    if (id1 > id2) {
+                        int t = id1;
+                        id1 = id2;
+                        id2 = t;
+                    }
+
+                    // On a tie prefer the pair containing the most recently created cluster
+                    if (q < minQ || (id2 != best2 ? id2 > best2 : id1 > best1)) {
+                        minQ = q;
+                        best1 = id1;
+                        best2 = id2;
+                    }
+                }
+            }
+        }
+
+        return pair(best1, best2);
+    }
+
+    /**
+     * Sum of average distances from the given vertex to every other cluster
+     *
+     * @param v The vertex
+     * @return The sum of the cluster to vertex distances for v
+     */
+    private double sumVertex2Clusters(final int v) {
+
+        final int own = this.vertexCluster[v];
+
+        double sum = 0.0;
+        for (int s = 0; s < this.nbClusters; s++) {
+
+            final int c = this.slotCluster[s];
+            if (c == own)
+                continue;
+
+            final int second = this.clusterSecond[c];
+            if (second == NONE) {
+                sum += this.dist(this.clusterFirst[c], v);
+            } else {
+                sum += 1.0 / 2 * (this.dist(this.clusterFirst[c], v) + this.dist(second, v));
+            }
+        }
+
+        return sum;
+    }
+
+    /**
+     * Choose a pair of vertices, one from each selected cluster, that minimise the Q criterion
+     *
+     * @param c1 First cluster
+     * @param c2 Second cluster
+     * @return The selected vertices packed into a long, the vertex from c1 in the high word
+     */
+    private long selectionStep2(final int c1, final int c2) {
+
+        final int[] vertices1 = this.clusterSecond[c1] == NONE ?
+                new int[]{this.clusterFirst[c1]} :
+                new int[]{this.clusterFirst[c1], this.clusterSecond[c1]};
+
+        final int[] vertices2 = this.clusterSecond[c2] == NONE ?
+                new int[]{this.clusterFirst[c2]} :
+                new int[]{this.clusterFirst[c2], this.clusterSecond[c2]};
+
+        if (vertices1.length == 1 && vertices2.length == 1) {
+            return pair(vertices1[0], vertices2[0]);
+        }
+
+        final double mhat = this.nbClusters + vertices1.length + vertices2.length - 2;
+
+        long best = 0L;
+        double minQ = Double.MAX_VALUE;
+
+        for (int v1 : vertices1) {
+            final double sumV1 = this.sumVertex2Clusters(v1);
+            for (int v2 : vertices2) {
+                final double sumV2 = this.sumVertex2Clusters(v2);
+                final double q = ((mhat - 2) * this.dist(v1, v2)) - sumV1 - sumV2;
+
+                if (q < minQ) {
+                    minQ = q;
+                    best = pair(v1, v2);
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Reduces the vertices in the two selected clusters down to a pair, using the selected vertices to decide the order
+     * in which they are reduced.
+     *
+     * @return The two vertices to go into the merged cluster
+     */
+    private long reduce(final int c1, final int c2, final int sv1, final int sv2) {
+
+        final int c1Size = this.clusterSize(c1);
+        final int c2Size = this.clusterSize(c2);
+
+        final int c1v0 = this.clusterFirst[c1];
+        final int c1v1 = this.clusterSecond[c1];
+        final int c2v0 = this.clusterFirst[c2];
+        final int c2v1 = this.clusterSecond[c2];
+
+        final int nbVertices = c1Size + c2Size;
+
+        if (nbVertices == 2) {
+            return pair(c1v0, c2v0);
+        } else if (nbVertices == 3) {
+
+            final boolean c1v0Selected = c1v0 == sv1 || c1v0 == sv2;
+            final boolean c2v0Selected = c2v0 == sv1 || c2v0 == sv2;
+
+            final int first = c1Size != 1 && c1v0Selected ? c1v1 : c1v0;
+            final int second = c1Size == 1 ?
+                    (c2v0Selected ? c2v0 : c2v1) :
+                    (c1v0Selected ? c1v0 : c1v1);
+            final int third = c1Size == 1 && c2v0Selected ? c2v1 : c2v0;
+
+            return this.vertexTripletReduction(first, second, third);
+        } else {
+
+            final int first = c1v0 == sv1 ? c1v1 : c1v0;
+            final int fourth = c2v0 == sv2 ? c2v1 : c2v0;
+
+            final long newVertices1 = this.vertexTripletReduction(fourth, sv2, sv1);
+            return this.vertexTripletReduction((int) (newVertices1 >>> 32), (int) newVertices1, first);
+        }
+    }
+
+    /**
+     * Replaces three vertices with two new ones, updating the vertex to vertex distances.  The new vertices take over the
+     * slots of the first two vertices in the triplet.
+     */
+    private long vertexTripletReduction(final int vertex1, final int vertex2, final int vertex3) {
+
+        final double alpha = this.params.getAlpha();
+        final double beta = this.params.getBeta();
+        final double gamma = this.params.getGamma();
+
+        final int k = this.nbReductions++;
+        this.reducedFirst[k] = vertex1;
+        this.reducedSecond[k] = vertex2;
+        this.reducedThird[k] = vertex3;
+
+        final int newVertex1 = this.n + 2 * k;
+        final int newVertex2 = newVertex1 + 1;
+
+        final int s1 = this.vertexSlot[vertex1];
+        final int s2 = this.vertexSlot[vertex2];
+        final int s3 = this.vertexSlot[vertex3];
+
+        // Calculate distances from the new vertices to all others before overwriting anything
+        for (int s = 0; s < this.n; s++) {
+
+            if (s == s1 || s == s2 || s == s3 || this.slotVertex[s] == NONE)
+                continue;
+
+            final double d1 = this.v2v[index(s1, s)];
+            final double d2 = this.v2v[index(s2, s)];
+            final double d3 = this.v2v[index(s3, s)];
+
+            this.tmp1[s] = ((alpha + beta) * d1) + (gamma * d2);
+            this.tmp2[s] = (alpha * d2) + ((beta + gamma) * d3);
+        }
+
+        final double newDist = (alpha * this.v2v[index(s1, s2)]) +
+                (beta * this.v2v[index(s1, s3)]) +
+                (gamma * this.v2v[index(s2, s3)]);
+
+        for (int s = 0; s < this.n; s++) {
+
+            if (s == s1 || s == s2 || s == s3 || this.slotVertex[s] == NONE)
+                continue;
+
+            this.v2v[index(s1, s)] = this.tmp1[s];
+            this.v2v[index(s2, s)] = this.tmp2[s];
+        }
+        this.v2v[index(s1, s2)] = newDist;
+
+        this.slotVertex[s1] = newVertex1;
+        this.slotVertex[s2] = newVertex2;
+        this.slotVertex[s3] = NONE;
+        this.vertexSlot[newVertex1] = s1;
+        this.vertexSlot[newVertex2] = s2;
+        this.vertexSlot[vertex1] = NONE;
+        this.vertexSlot[vertex2] = NONE;
+        this.vertexSlot[vertex3] = NONE;
+
+        this.nbVertices--;
+
+        return pair(newVertex1, newVertex2);
+    }
+
+    /**
+     * Merges the two clusters into a new cluster containing the two given vertices.  Only the row and column for the
+     * new cluster are recalculated, all other cluster distances are unaffected.
+     */
+    private void merge(final int c1, final int c2, final int v1, final int v2) {
+
+        final int c = this.n + this.nbMerges++;
+        final int m = this.nbClusters;
+        final int sa = this.clusterSlot[c1];
+        final int sb = this.clusterSlot[c2];
+
+        this.clusterFirst[c] = v1;
+        this.clusterSecond[c] = v2;
+        this.vertexCluster[v1] = c;
+        this.vertexCluster[v2] = c;
+
+        // Distances from the new cluster to all others, adjusting the other row sums as we go
+        double newRowSum = 0.0;
+        for (int t = 0; t < m; t++) {
+
+            if (t == sa || t == sb)
+                continue;
+
+            final int other = this.slotCluster[t];
+            final int o1 = this.clusterFirst[other];
+            final int o2 = this.clusterSecond[other];
+
+            double sum = this.dist(v1, o1) + this.dist(v2, o1);
+            if (o2 != NONE) {
+                sum += this.dist(v1, o2) + this.dist(v2, o2);
+            }
+            final double d = 1.0 / (2 * (o2 == NONE ? 1 : 2)) * sum;
+
+            final int ia = index(sa, t);
+            this.rowSums[t] += d - this.c2c[ia] - this.c2c[index(sb, t)];
+            this.c2c[ia] = d;
+            newRowSum += d;
+        }
+
+        this.c2c[index(sa, sb)] = 0.0;
+        this.rowSums[sa] = newRowSum;
+        this.slotCluster[sa] = c;
+        this.clusterSlot[c] = sa;
+        this.clusterSlot[c1] = NONE;
+        this.clusterSlot[c2] = NONE;
+
+        // Fill the hole left by the second cluster with the cluster in the last slot
+        final int last = m - 1;
+        if (sb != last) {
+            for (int t = 0; t < last; t++) {
+                if (t != sb) {
+                    this.c2c[index(sb, t)] = this.c2c[index(last, t)];
+                }
+            }
+            this.rowSums[sb] = this.rowSums[last];
+
+            final int moved = this.slotCluster[last];
+            this.slotCluster[sb] = moved;
+            this.clusterSlot[moved] = sb;
+        }
+
+        this.nbClusters--;
+    }
+
+    /**
+     * Expands the remaining vertices back out to the original taxa by undoing the reductions in reverse order
+     *
+     * @param taxa The taxa from the input distance matrix
+     * @return The circular ordering, starting from the taxon with the lowest id
+     */
+    private IdentifierList expand(IdentifierList taxa) {
+
+        final int maxVertices = this.n + 2 * this.nbReductions;
+        final int[] next = new int[maxVertices];
+        final int[] prev = new int[maxVertices];
+
+        // Link the remaining vertices into a circle
+        int firstVertex = NONE;
+        int lastVertex = NONE;
+        for (int s = 0; s < this.nbClusters; s++) {
+            final int c = this.slotCluster[s];
+            final int[] vertices = this.clusterSecond[c] == NONE ?
+                    new int[]{this.clusterFirst[c]} :
+                    new int[]{this.clusterFirst[c], this.clusterSecond[c]};
+            for (int v : vertices) {
+                if (firstVertex == NONE) {
+                    firstVertex = v;
+                } else {
+                    next[lastVertex] = v;
+                    prev[v] = lastVertex;
+                }
+                lastVertex = v;
+            }
+        }
+
+        if (firstVertex == NONE) {
+            return new IdentifierList();
+        }
+
+        next[lastVertex] = firstVertex;
+        prev[firstVertex] = lastVertex;
+
+        // Replace each pair of new vertices with the triplet it was created from
+        for (int k = this.nbReductions - 1; k >= 0; k--) {
+
+            final int a = this.n + 2 * k;
+            final int b = a + 1;
+
+            final int u1 = this.reducedFirst[k];
+            final int u2 = this.reducedSecond[k];
+            final int u3 = this.reducedThird[k];
+
+            if (next[a] == b && next[b] == a) {
+                // Only the two new vertices are left, so the triplet forms the whole circle
+                link(u3, u1, u2, u3, u1, next, prev);
+            } else if (next[a] == b) {
+                link(prev[a], u1, u2, u3, next[b], next, prev);
+            } else if (next[b] == a) {
+                link(prev[b], u3, u2, u1, next[a], next, prev);
+            } else {
+                throw new IllegalStateException("Vertices created by the same reduction are not next to each other: " + a + ", " + b);
+            }
+        }
+
+        // Start from the taxon with the lowest id
+        int start = 0;
+        int minId = Integer.MAX_VALUE;
+        for (int i = 0; i < this.n; i++) {
+            final int id = taxa.get(i).getId();
+            if (id < minId) {
+                minId = id;
+                start = i;
+            }
+        }
+
+        IdentifierList ordering = new IdentifierList();
+        int v = start;
+        do {
+            ordering.add(taxa.get(v));
+            v = next[v];
+        } while (v != start);
+
+        return ordering;
+    }
+
+    private static void link(final int before, final int u1, final int u2, final int u3, final int after,
+                             final int[] next, final int[] prev) {
+        next[before] = u1;
+        prev[u1] = before;
+        next[u1] = u2;
+        prev[u2] = u1;
+        next[u2] = u3;
+        prev[u3] = u2;
+        next[u3] = after;
+        prev[after] = u3;
+    }
+}
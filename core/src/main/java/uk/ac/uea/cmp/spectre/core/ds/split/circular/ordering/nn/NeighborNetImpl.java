@@ -21,8 +21,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.uea.cmp.spectre.core.ds.Identifier;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DenseDistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
-import uk.ac.uea.cmp.spectre.core.ds.distance.FlexibleDistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CVMatrices;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CircularOrderingCreator;
@@ -107,31 +107,83 @@ public class NeighborNetImpl implements CircularOrderingCreator {
      */
     protected Pair<Identifier, Identifier> selectionStep1(final DistanceMatrix c2c) {
 
-        Pair<Identifier, Identifier> bestPair = null;
-        double minQ = Double.MAX_VALUE;
+        final int n = c2c.size();
+        final IdentifierList clusters = c2c.getTaxa();
+        final double[] rowSums = rowSums(c2c);
 
-        for (Map.Entry<Pair<Identifier, Identifier>, Double> entry : c2c.getMap().entrySet()) {
+        Identifier best1 = null;
+        Identifier best2 = null;
+        double minQ = Double.MAX_VALUE;
 
-            Identifier id1 = entry.getKey().getLeft();
-            Identifier id2 = entry.getKey().getRight();
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
 
+                final double id1_2_id2 = c2c.getDistanceByIndex(i, j);
 
-            final double id1_2_id2 = c2c.getDistance(id1, id2);
+                final double sumId1 = rowSums[i] - id1_2_id2;
+                final double sumId2 = rowSums[j] - id1_2_id2;
 
-            final double sumId1 = c2c.getDistances(id1, null).sum() - id1_2_id2;
-            final double sumId2 = c2c.getDistances(id2, null).sum() - id1_2_id2;
+                final double q = (n - 2) * id1_2_id2 - sumId1 - sumId2;
 
-            final double q = (c2c.size() - 2) * id1_2_id2 - sumId1 - sumId2;
+                // Keep pairs in canonical form, lowest id first
+                Identifier id1 = clusters.get(i);
+                Identifier id2 = clusters.get(j);
+                if (id1.getId() > id2.getId()) {
+                    Identifier tmp = id1;
+                    id1 = id2;
+                    id2 = tmp;
+                }
 
-            if (q < minQ) {
-                minQ = q;
-                bestPair = entry.getKey();
+                if (q < minQ || (q == minQ && preferOnTie(id1, id2, best1, best2))) {
+                    minQ = q;
+                    best1 = id1;
+                    best2 = id2;
+                }
             }
         }
 
-        return bestPair;
+        return best1 == null ? null : new ImmutablePair<>(best1, best2);
+    }
+
+
+    /**
+     * Decides between two pairs with an equal Q criterion.  We prefer the pair containing the most recently created
+     * cluster, so that the result does not depend on the order in which the clusters are stored.  Both pairs are
+     * expected to be in canonical form.
+     *
+     * @param a1 Lower id in the candidate pair
+     * @param a2 Higher id in the candidate pair
+     * @param b1 Lower id in the current best pair
+     * @param b2 Higher id in the current best pair
+     * @return True if the candidate pair should replace the current best pair
+     */
+    protected static boolean preferOnTie(Identifier a1, Identifier a2, Identifier b1, Identifier b2) {
+        return a2.getId() != b2.getId() ?
+                a2.getId() > b2.getId() :
+                a1.getId() > b1.getId();
     }
 
+    /**
+     * Sums each row of the distance matrix
+     *
+     * @param dm The distance matrix
+     * @return The sum of distances from each taxon to all other taxa, indexed in the same order as the matrix's taxa
+     */
+    protected static double[] rowSums(final DistanceMatrix dm) {
+
+        final int n = dm.size();
+        final double[] sums = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                final double d = dm.getDistanceByIndex(i, j);
+                sums[i] += d;
+                sums[j] += d;
+            }
+        }
+
+        return sums;
+    }
 
     protected Pair<Identifier, Identifier> selectionStep2(Pair<Identifier, Identifier> selectedClusters) {
 
@@ -410,7 +462,7 @@ public class NeighborNetImpl implements CircularOrderingCreator {
 
         // Simpler to clear the c2c matrix and start again... check to make sure this doesn't become a performance issue
         // when the number of taxa is large
-        DistanceMatrix c2c = new FlexibleDistanceMatrix();
+        DistanceMatrix c2c = new DenseDistanceMatrix();
 
         for (Map.Entry<Identifier, IdentifierList> clusterGroup1 : this.mx.getMapEntries()) {
 
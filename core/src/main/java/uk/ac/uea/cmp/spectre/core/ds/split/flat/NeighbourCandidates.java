@@ -0,0 +1,137 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package uk.ac.uea.cmp.spectre.core.ds.split.flat;
+
+import java.util.Arrays;
+
+/**
+ * Picks the next {@linkplain Neighbours} in a single pass over the pairs of taxa, rather than one pass to find the
+ * smallest first score and another to choose amongst the pairs within the threshold of it.
+ *
+ * The neighbours are the pair with the highest second score amongst those pairs whose first score is within a
+ * relative threshold of the smallest first score.  Pairs are offered in order, and only those that are within the
+ * threshold of the smallest first score seen so far are kept.  As the smallest score can only go down, a pair that is
+ * dropped could never have been chosen, so the result is the same as scanning every pair in the order they were
+ * offered, with ties going to the pair offered first.
+ */
+class NeighbourCandidates {
+
+    /**
+     * Pairs whose first score is no more than this fraction above the smallest first score are candidates
+     */
+    private static final double THRESHOLD = 0.001;
+
+    private int[] first;
+    private int[] second;
+    private double[] primaryScores;
+    private double[] secondaryScores;
+    private int size;
+    private double min;
+
+    public NeighbourCandidates() {
+        this.first = new int[16];
+        this.second = new int[16];
+        this.primaryScores = new double[16];
+        this.secondaryScores = new double[16];
+        this.size = 0;
+    }
+
+    /**
+     * Forgets all pairs offered so far.
+     */
+    public void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * Offers a pair of taxa as candidate neighbours.
+     *
+     * @param a              index of the first taxon.
+     * @param b              index of the second taxon.
+     * @param primaryScore   score that has to be close to the smallest one for the pair to be a candidate.
+     * @param secondaryScore score that picks the neighbours from amongst the candidates.
+     */
+    public void offer(int a, int b, double primaryScore, double secondaryScore) {
+
+        if (primaryScore < 0) {
+            throw new IllegalStateException("Score was less than 0.  Taxa: " + a + ", " + b + "; Score: " + primaryScore);
+        }
+
+        if (this.size == 0 || primaryScore < this.min) {
+            this.min = primaryScore;
+            this.prune();
+        }
+
+        if (primaryScore - this.min <= THRESHOLD * this.min) {
+
+            if (this.size == this.first.length) {
+                this.grow();
+            }
+
+            this.first[this.size] = a;
+            this.second[this.size] = b;
+            this.primaryScores[this.size] = primaryScore;
+            this.secondaryScores[this.size] = secondaryScore;
+            this.size++;
+        }
+    }
+
+    /**
+     * @return the candidate pair with the highest second score, or the first such pair offered if there is a tie.
+     */
+    public Neighbours best() {
+
+        if (this.size == 0) {
+            throw new IllegalStateException("No pairs of taxa have been offered as neighbours");
+        }
+
+        int best = 0;
+        for (int i = 1; i < this.size; i++) {
+            if (this.secondaryScores[i] > this.secondaryScores[best]) {
+                best = i;
+            }
+        }
+
+        return new Neighbours(this.first[best], this.second[best]);
+    }
+
+    /**
+     * Drops the pairs that are no longer within the threshold of the smallest score, keeping the rest in order.
+     */
+    private void prune() {
+
+        int kept = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (this.primaryScores[i] - this.min <= THRESHOLD * this.min) {
+                this.first[kept] = this.first[i];
+                this.second[kept] = this.second[i];
+                this.primaryScores[kept] = this.primaryScores[i];
+                this.secondaryScores[kept] = this.secondaryScores[i];
+                kept++;
+            }
+        }
+        this.size = kept;
+    }
+
+    private void grow() {
+        final int capacity = this.first.length * 2;
+        this.first = Arrays.copyOf(this.first, capacity);
+        this.second = Arrays.copyOf(this.second, capacity);
+        this.primaryScores = Arrays.copyOf(this.primaryScores, capacity);
+        this.secondaryScores = Arrays.copyOf(this.secondaryScores, capacity);
+    }
+}
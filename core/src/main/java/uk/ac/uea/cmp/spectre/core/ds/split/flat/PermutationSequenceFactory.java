@@ -19,6 +19,8 @@ import uk.ac.uea.cmp.spectre.core.ds.quad.quadruple.Quadruple;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quadruple.QuadrupleSystem;
 import uk.ac.uea.cmp.spectre.core.util.CollectionUtils;
 
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * Class for computing {@linkplain PermutationSequence} from {@linkplain QuadrupleSystem}.
  *
@@ -28,13 +30,25 @@ public class PermutationSequenceFactory {
 
     private NeighbourSeparator neighbourSeparator;
     private Scorer scorer;
+    private ForkJoinPool pool;
 
     /**
      * Constructor that sets default {@linkplain NeighbourSeparator}.
      */
     public PermutationSequenceFactory() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor that sets default {@linkplain NeighbourSeparator} and the
+     * pool to compute the initial scores on.
+     *
+     * @param pool pool to compute the initial scores on.
+     */
+    public PermutationSequenceFactory(ForkJoinPool pool) {
         this.neighbourSeparator = new NeighbourSeparatorMax();
         this.scorer = new Scorer();
+        this.pool = pool;
     }
 
     /**
@@ -150,7 +164,8 @@ public class PermutationSequenceFactory {
 
     /**
      * Finds {@linkplain Neighbours} and agglomerates {@linkplain QuadrupleSystem} by
-     * joining them.
+     * joining them.  The candidate neighbours are collected as the scores are
+     * written, so the scores table is not scanned again to choose them.
      *
      * @param neighbours array of {@linkplain Neighbours} to save current neighbors
      *                   to.
@@ -161,7 +176,8 @@ public class PermutationSequenceFactory {
         int i = -1;
         int n = qs.getNbActiveTaxa();
 
-        double[][][] scores = scorer.initializeScores(qs);
+        NeighbourCandidates candidates = new NeighbourCandidates();
+        double[][][] scores = scorer.initializeScores(qs, candidates, pool);
 
         Runtime rt = Runtime.getRuntime();
 
@@ -171,48 +187,37 @@ public class PermutationSequenceFactory {
                 rt.gc();
             }
 
-            neighbours[i] = findNeighbours(qs, scores);
+            neighbours[i] = candidates.best();
 
             scorer.updateScoresBeforeWeightChange(scores, neighbours[i], qs);
 
             quadrupleAgglomerate(qs, neighbours[i]);
 
-            scorer.updateScoresAfterWeightChange(scores, neighbours[i], qs);
+            scorer.updateScoresAfterWeightChange(scores, neighbours[i], qs, candidates);
 
         }
         return i;
     }
 
+    /**
+     * Finds {@linkplain Neighbours} by scanning the whole scores table.
+     *
+     * @param qs     {@linkplain QuadrupleSystem}
+     * @param scores scores table.
+     * @return the pair of active taxa to join next.
+     */
     protected Neighbours findNeighbours(QuadrupleSystem qs, double[][][] scores) {
-        Neighbours neighbours = new Neighbours();
-        Double maxSoFar = null;
-        Double minSoFar = null;
+        NeighbourCandidates candidates = new NeighbourCandidates();
 
         int[] taxa = CollectionUtils.getTrueElements(qs.getActive());
         int nTaxa = taxa.length;
 
         for (int i1 = 0; i1 < nTaxa - 1; i1++) {
             for (int i2 = i1 + 1; i2 < nTaxa; i2++) {
-                if (scores[taxa[i1]][taxa[i2]][0] < 0) {
-                    throw new IllegalStateException("Score was less than 0.  Taxa Length: " + taxa.length + "; Score: " + scores[taxa[i1]][taxa[i2]][0]);
-                }
-                minSoFar = (minSoFar == null || minSoFar > scores[taxa[i1]][taxa[i2]][0]) ? scores[taxa[i1]][taxa[i2]][0] : minSoFar;
-            }
-        }
-
-        double treshold = 0.001 * minSoFar;
-
-        for (int i1 = 0; i1 < nTaxa - 1; i1++) {
-            for (int i2 = i1 + 1; i2 < nTaxa; i2++) {
-                if (scores[taxa[i1]][taxa[i2]][0] - minSoFar <= treshold) {
-                    if (maxSoFar == null || scores[taxa[i1]][taxa[i2]][1] > maxSoFar) {
-                        neighbours.setAB(taxa[i1], taxa[i2]);
-                        maxSoFar = scores[taxa[i1]][taxa[i2]][1];
-                    }
-                }
+                candidates.offer(taxa[i1], taxa[i2], scores[taxa[i1]][taxa[i2]][0], scores[taxa[i1]][taxa[i2]][1]);
             }
         }
-        return neighbours;
+        return candidates.best();
     }
 
     protected void quadrupleAgglomerate(QuadrupleSystem qs, Neighbours neighbours) {
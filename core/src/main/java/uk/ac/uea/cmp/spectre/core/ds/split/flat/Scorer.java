@@ -15,54 +15,145 @@
 
 package uk.ac.uea.cmp.spectre.core.ds.split.flat;
 
-import uk.ac.uea.cmp.spectre.core.ds.quad.quadruple.Quadruple;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quadruple.QuadrupleSystem;
-import uk.ac.uea.cmp.spectre.core.util.CollectionUtils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Computes and updates scores of pairs of taxa that show their
  * neighborliness.
  *
+ * Quadruple weights are read straight from the {@linkplain QuadrupleSystem} by
+ * the index of the quadruple, rather than through {@linkplain
+ * uk.ac.uea.cmp.spectre.core.ds.quad.quadruple.Quadruple} views.  The initial
+ * scores are computed for blocks of pairs in parallel on a fork join pool.
+ *
  * @author balvociute
  */
 class Scorer {
+
+    /**
+     * Number of pairs of taxa scored by each task when initializing the scores
+     */
+    private static final int PAIRS_PER_TASK = 16;
+
     /**
      * Computes initial scores for full {@linkplain QuadrupleSystem}.
      *
      * @param qs {@linkplain QuadrupleSystem}.
-     * @return
+     * @return scores table.
      */
     public double[][][] initializeScores(QuadrupleSystem qs) {
+        return initializeScores(qs, null, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes initial scores for full {@linkplain QuadrupleSystem}, scoring
+     * pairs of taxa in parallel on the given pool.
+     *
+     * @param qs         {@linkplain QuadrupleSystem}.
+     * @param candidates if not null, cleared and then offered every pair of
+     *                   active taxa with its new scores.
+     * @param pool       pool to score the pairs on.
+     * @return scores table.
+     */
+    public double[][][] initializeScores(QuadrupleSystem qs, NeighbourCandidates candidates, ForkJoinPool pool) {
         int nTaxa = qs.getNbActiveTaxa();
         int[] taxa = qs.getTaxaInt();
 
         double[][][] scores = new double[nTaxa][nTaxa][3];
 
-        for (int i1 = 0; i1 < taxa.length; i1++) {
-            for (int i2 = i1 + 1; i2 < taxa.length; i2++) {
-                double score1 = 0.0;
-                double score2 = 0.0;
-                double distance = 0.0;
+        long nPairs = (long) taxa.length * (taxa.length - 1) / 2;
+        pool.invoke(new InitialScoreTask(qs, taxa, scores, 0, nPairs));
 
+        if (candidates != null) {
+            offerAll(scores, taxa, candidates);
+        }
+        return scores;
+    }
 
-                for (int j1 = 0; j1 < taxa.length; j1++) {
-                    for (int j2 = j1 + 1; j2 < taxa.length; j2++) {
-                        if (i1 != j1 && i1 != j2 && i2 != j1 && i2 != j2) {
-                            Quadruple q = qs.getQuadrupleUnsorted(taxa[i1], taxa[i2], taxa[j1], taxa[j2]);
+    /**
+     * Scores a range of pairs of taxa, splitting the range in half until it is
+     * small enough.  Pairs (i1, i2) with i1 &lt; i2 are numbered i2 * (i2 - 1) / 2
+     * + i1.
+     */
+    private class InitialScoreTask extends RecursiveAction {
 
-                            score1 += transformWeight(min(i1, i2, j1, j2, q));
-                            score2 += transformWeight(q.getSplitWeightFor2Vs2(taxa[i1], taxa[i2]));
-                            distance += transformWeight((q.getSplitWeightFor2Vs2(taxa[i1], taxa[j1]) + q.getSplitWeightFor2Vs2(taxa[i1], taxa[j2])));
+        private final QuadrupleSystem qs;
+        private final int[] taxa;
+        private final double[][][] scores;
+        private final long start;
+        private final long end;
 
-                        }
-                    }
+        private InitialScoreTask(QuadrupleSystem qs, int[] taxa, double[][][] scores, long start, long end) {
+            this.qs = qs;
+            this.taxa = taxa;
+            this.scores = scores;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (this.end - this.start > PAIRS_PER_TASK) {
+                final long mid = (this.start + this.end) >>> 1;
+                invokeAll(new InitialScoreTask(this.qs, this.taxa, this.scores, this.start, mid),
+                        new InitialScoreTask(this.qs, this.taxa, this.scores, mid, this.end));
+                return;
+            }
+
+            if (this.end == this.start) {
+                return;
+            }
+
+            // Find the first pair in the range
+            int i2 = (int) ((1.0 + Math.sqrt(1.0 + 8.0 * this.start)) / 2.0);
+            while ((long) i2 * (i2 - 1) / 2 > this.start) {
+                i2--;
+            }
+            while ((long) (i2 + 1) * i2 / 2 <= this.start) {
+                i2++;
+            }
+            int i1 = (int) (this.start - (long) i2 * (i2 - 1) / 2);
+
+            final QuadrupleWeights qw = new QuadrupleWeights(this.qs);
+            final double[] s = new double[3];
+
+            for (long p = this.start; p < this.end; p++) {
+                scorePair(this.qs, this.taxa, this.scores, i1, i2, qw, s);
+                if (++i1 == i2) {
+                    i1 = 0;
+                    i2++;
                 }
-                setValues(scores, taxa[i1], taxa[i2], 0, score1);
-                setValues(scores, taxa[i1], taxa[i2], 1, score2);
-                setValues(scores, taxa[i1], taxa[i2], 2, distance);
             }
         }
-        return scores;
+    }
+
+    /**
+     * Computes the initial scores of a single pair of taxa.
+     */
+    private void scorePair(QuadrupleSystem qs, int[] taxa, double[][][] scores, int i1, int i2, QuadrupleWeights qw,
+                           double[] s) {
+        double score1 = 0.0;
+        double score2 = 0.0;
+        double distance = 0.0;
+
+        for (int j1 = 0; j1 < taxa.length; j1++) {
+            for (int j2 = j1 + 1; j2 < taxa.length; j2++) {
+                if (i1 != j1 && i1 != j2 && i2 != j1 && i2 != j2) {
+                    score(qw, taxa[i1], taxa[i2], taxa[j1], taxa[j2], s);
+
+                    score1 += s[0];
+                    score2 += s[1];
+                    distance += s[2];
+                }
+            }
+        }
+        setValues(scores, taxa[i1], taxa[i2], 0, score1);
+        setValues(scores, taxa[i1], taxa[i2], 1, score2);
+        setValues(scores, taxa[i1], taxa[i2], 2, distance);
     }
 
     /**
@@ -77,6 +168,9 @@ class Scorer {
         int a = neighbours.getA();
         int b = neighbours.getB();
 
+        QuadrupleWeights qw = new QuadrupleWeights(qs);
+        double[] s = new double[3];
+
         for (int i1 = 0; i1 < taxa.length; i1++) {
             if (taxa[i1] != a && taxa[i1] != b) {
                 for (int i2 = i1 + 1; i2 < taxa.length; i2++) {
@@ -86,23 +180,23 @@ class Scorer {
                         double minusDist = scores[taxa[i1]][taxa[i2]][2];
                         for (int i3 = 0; i3 < taxa.length; i3++) {
                             if (i1 != i3 && i2 != i3 & a != taxa[i3] && b != taxa[i3]) {
-                                Quadruple qA = qs.getQuadrupleUnsorted(a, taxa[i1], taxa[i2], taxa[i3]);
+                                score(qw, taxa[i1], taxa[i2], taxa[i3], a, s);
 
-                                minus1 -= transformWeight(min(taxa[i1], taxa[i2], taxa[i3], a, qA));
-                                minus2 -= transformWeight(qA.getSplitWeightFor2Vs2(taxa[i1], taxa[i2]));
-                                minusDist -= transformWeight((qA.getSplitWeightFor2Vs2(taxa[i1], taxa[i3]) + qA.getSplitWeightFor2Vs2(taxa[i1], a)));
+                                minus1 -= s[0];
+                                minus2 -= s[1];
+                                minusDist -= s[2];
 
-                                Quadruple qB = qs.getQuadrupleUnsorted(b, taxa[i1], taxa[i2], taxa[i3]);
+                                score(qw, taxa[i1], taxa[i2], taxa[i3], b, s);
 
-                                minus1 -= transformWeight(min(taxa[i1], taxa[i2], taxa[i3], b, qB));
-                                minus2 -= transformWeight(qB.getSplitWeightFor2Vs2(taxa[i1], taxa[i2]));
-                                minusDist -= transformWeight((qB.getSplitWeightFor2Vs2(taxa[i1], taxa[i3]) + qB.getSplitWeightFor2Vs2(taxa[i1], b)));
+                                minus1 -= s[0];
+                                minus2 -= s[1];
+                                minusDist -= s[2];
                             }
                         }
-                        Quadruple qAB = qs.getQuadrupleUnsorted(a, b, taxa[i1], taxa[i2]);
-                        minus1 -= transformWeight(min(taxa[i1], taxa[i2], a, b, qAB));
-                        minus2 -= transformWeight(qAB.getSplitWeightFor2Vs2(taxa[i1], taxa[i2]));
-                        minusDist -= transformWeight((qAB.getSplitWeightFor2Vs2(taxa[i1], a) + qAB.getSplitWeightFor2Vs2(taxa[i1], b)));
+                        score(qw, taxa[i1], taxa[i2], a, b, s);
+                        minus1 -= s[0];
+                        minus2 -= s[1];
+                        minusDist -= s[2];
 
                         setValues(scores, taxa[i1], taxa[i2], 0, minus1);
                         setValues(scores, taxa[i1], taxa[i2], 1, minus2);
@@ -120,12 +214,18 @@ class Scorer {
      * @param scores     scores table.
      * @param neighbours current {@linkplain Neighbours}.
      * @param qs         {@linkplain QuadrupleSystem}
+     * @param candidates if not null, cleared and then offered every pair of
+     *                   active taxa with its new scores.
      */
-    public void updateScoresAfterWeightChange(double[][][] scores, Neighbours neighbours, QuadrupleSystem qs) {
-        int[] taxa = CollectionUtils.getTrueElements(qs.getActive());
+    public void updateScoresAfterWeightChange(double[][][] scores, Neighbours neighbours, QuadrupleSystem qs,
+                                              NeighbourCandidates candidates) {
+        int[] taxa = qs.getTaxaInt();
         int a = neighbours.getA();
         int b = neighbours.getB();
 
+        QuadrupleWeights qw = new QuadrupleWeights(qs);
+        double[] s = new double[3];
+
         for (int i = 0; i < taxa.length; i++) {
             if (taxa[i] != a) {
                 double score2 = 0.0;
@@ -136,11 +236,11 @@ class Scorer {
                     if (taxa[i1] != a && taxa[i] != taxa[i1]) {
                         for (int i2 = i1 + 1; i2 < taxa.length; i2++) {
                             if (taxa[i2] != a && taxa[i] != taxa[i2]) {
-                                Quadruple q = qs.getQuadrupleUnsorted(taxa[i1], taxa[i2], taxa[i], a);
+                                score(qw, a, taxa[i], taxa[i1], taxa[i2], s);
 
-                                score += transformWeight(min(a, taxa[i], taxa[i1], taxa[i2], q));
-                                score2 += transformWeight(q.getSplitWeightFor2Vs2(a, taxa[i]));
-                                distance += transformWeight((q.getSplitWeightFor2Vs2(a, taxa[i1]) + q.getSplitWeightFor2Vs2(a, taxa[i2])));
+                                score += s[0];
+                                score2 += s[1];
+                                distance += s[2];
                             }
                         }
                     }
@@ -160,11 +260,11 @@ class Scorer {
                         double plusDist = scores[taxa[i1]][taxa[i2]][2];
                         for (int i3 = 0; i3 < taxa.length; i3++) {
                             if (i1 != i3 && i2 != i3 & a != taxa[i3] && b != taxa[i3]) {
-                                Quadruple qA = qs.getQuadrupleUnsorted(taxa[i1], taxa[i2], taxa[i3], a);
+                                score(qw, taxa[i1], taxa[i2], taxa[i3], a, s);
 
-                                plus1 += transformWeight(min(taxa[i1], taxa[i2], taxa[i3], a, qA));
-                                plus2 += transformWeight(qA.getSplitWeightFor2Vs2(taxa[i1], taxa[i2]));
-                                plusDist += transformWeight((qA.getSplitWeightFor2Vs2(taxa[i1], taxa[i3]) + qA.getSplitWeightFor2Vs2(taxa[i1], a)));
+                                plus1 += s[0];
+                                plus2 += s[1];
+                                plusDist += s[2];
                             }
                         }
                         setValues(scores, taxa[i1], taxa[i2], 0, plus1);
@@ -175,15 +275,34 @@ class Scorer {
             }
         }
 
-        for (int i = 0; i < scores.length; i++) {
-            for (int j = 0; j < scores[i].length; j++) {
-                for (int k = 0; k < scores[i][j].length; k++) {
-                    if (scores[i][j][k] < 0) {
-                        scores[i][j][k] = 0;
+        // Only the scores of active pairs are read again, so only those need
+        // clamping
+        for (int i1 = 0; i1 < taxa.length; i1++) {
+            for (int i2 = i1 + 1; i2 < taxa.length; i2++) {
+                for (int k = 0; k < 3; k++) {
+                    if (scores[taxa[i1]][taxa[i2]][k] < 0) {
+                        setValues(scores, taxa[i1], taxa[i2], k, 0);
                     }
                 }
             }
         }
+
+        if (candidates != null) {
+            offerAll(scores, taxa, candidates);
+        }
+    }
+
+    /**
+     * Offers every pair of the given taxa to the candidate neighbours, in
+     * order.
+     */
+    private void offerAll(double[][][] scores, int[] taxa, NeighbourCandidates candidates) {
+        candidates.clear();
+        for (int i1 = 0; i1 < taxa.length - 1; i1++) {
+            for (int i2 = i1 + 1; i2 < taxa.length; i2++) {
+                candidates.offer(taxa[i1], taxa[i2], scores[taxa[i1]][taxa[i2]][0], scores[taxa[i1]][taxa[i2]][1]);
+            }
+        }
     }
 
     /**
@@ -201,26 +320,33 @@ class Scorer {
     }
 
     /**
-     * Computes min score for {@linkplain Quadruple}.
+     * Computes the contributions of the quadruple {i1, i2, j1, j2} to the
+     * scores of the pair (i1, i2): the min score, the weight of i1i2|j1j2 and
+     * the distance from i1 to j1 and j2, each transformed.
      *
-     * @param i1 index of the first taxa that is candidate to be a neighbor.
-     * @param i2 index of the second taxa that is candidate to be a neighbor.
-     * @param j1 index of the first taxa is not evaluated to be a neighbor.
-     * @param j2 index of the second taxa is not evaluated to be a neighbor.
-     * @param q  {@linkplain Quadruple}
-     * @return minimal score.
+     * @param qw weights of the quadruple system.
+     * @param i1 the first taxa that is candidate to be a neighbor.
+     * @param i2 the second taxa that is candidate to be a neighbor.
+     * @param j1 the first taxa is not evaluated to be a neighbor.
+     * @param j2 the second taxa is not evaluated to be a neighbor.
+     * @param s  array of three elements to write the contributions to.
      */
-    private double min(int i1, int i2, int j1, int j2, Quadruple q) {
-        double Wi1 = q.getSplitWeightFor1Vs3(i1);
-        double Wi2 = q.getSplitWeightFor1Vs3(i2);
-        double Wi1j1 = q.getSplitWeightFor2Vs2(i1, j1);
-        double Wi1j2 = q.getSplitWeightFor2Vs2(i1, j2);
+    private void score(QuadrupleWeights qw, int i1, int i2, int j1, int j2, double[] s) {
+        qw.select(i1, i2, j1, j2);
+
+        double Wi1 = qw.getSplitWeightFor1Vs3(0);
+        double Wi2 = qw.getSplitWeightFor1Vs3(1);
+        double Wi1i2 = qw.getSplitWeightFor2Vs2(0, 1);
+        double Wi1j1 = qw.getSplitWeightFor2Vs2(0, 2);
+        double Wi1j2 = qw.getSplitWeightFor2Vs2(0, 3);
 
         double min = Wi1 < Wi2 ? Wi1 : Wi2;
         min = min < Wi1j1 ? min : Wi1j1;
         min = min < Wi1j2 ? min : Wi1j2;
 
-        return min;
+        s[0] = transformWeight(min);
+        s[1] = transformWeight(Wi1i2);
+        s[2] = transformWeight(Wi1j1 + Wi1j2);
     }
 
     /**
@@ -234,4 +360,61 @@ class Scorer {
         return w;
     }
 
+    /**
+     * Reads the weights of the quadruple over four taxa given in any order,
+     * by working out where each taxon comes in the quadruple and looking the
+     * quadruple up by its index.
+     */
+    private static class QuadrupleWeights {
+
+        private final QuadrupleSystem qs;
+        private final int[] sorted = new int[4];
+        private final int[] position = new int[4];
+        private long index;
+
+        private QuadrupleWeights(QuadrupleSystem qs) {
+            this.qs = qs;
+        }
+
+        /**
+         * Selects the quadruple over four distinct taxa, which are then
+         * referred to by their position in the argument list.
+         */
+        private void select(int t0, int t1, int t2, int t3) {
+            position[0] = (t1 < t0 ? 1 : 0) + (t2 < t0 ? 1 : 0) + (t3 < t0 ? 1 : 0);
+            position[1] = (t0 < t1 ? 1 : 0) + (t2 < t1 ? 1 : 0) + (t3 < t1 ? 1 : 0);
+            position[2] = (t0 < t2 ? 1 : 0) + (t1 < t2 ? 1 : 0) + (t3 < t2 ? 1 : 0);
+            position[3] = (t0 < t3 ? 1 : 0) + (t1 < t3 ? 1 : 0) + (t2 < t3 ? 1 : 0);
+
+            sorted[position[0]] = t0;
+            sorted[position[1]] = t1;
+            sorted[position[2]] = t2;
+            sorted[position[3]] = t3;
+
+            index = qs.getQuadrupleIndex(sorted[0], sorted[1], sorted[2], sorted[3]);
+        }
+
+        /**
+         * @param x taxon, by its position in the last call to select.
+         * @return the weight of the split separating x from the other three.
+         */
+        private double getSplitWeightFor1Vs3(int x) {
+            return qs.getWeight(index, position[x]);
+        }
+
+        /**
+         * @param x taxon, by its position in the last call to select.
+         * @param y another taxon, by its position in the last call to select.
+         * @return the weight of the split separating x and y from the other two.
+         */
+        private double getSplitWeightFor2Vs2(int x, int y) {
+            int lo = Math.min(position[x], position[y]);
+            int hi = Math.max(position[x], position[y]);
+
+            // Splits 4, 5 and 6 pair the smallest taxon with the second,
+            // third and fourth
+            int partner = lo == 0 ? hi : 6 - lo - hi;
+            return qs.getWeight(index, 3 + partner);
+        }
+    }
 }
@@ -17,7 +17,6 @@ package uk.ac.uea.cmp.spectre.core.ds.tree.newick;
 
 import uk.ac.uea.cmp.spectre.core.ds.Identifier;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
-import uk.ac.uea.cmp.spectre.core.ds.quad.SpectreQuad;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.CanonicalWeightedQuartetMap;
 
 import java.util.ArrayList;
@@ -288,7 +287,7 @@ public abstract class NewickNode {
                                 int b1 = setB.get(iB1).getId();
                                 int b2 = setB.get(iB2).getId();
 
-                                qW.incrementWeight(new SpectreQuad(a1, a2, b1, b2), w);
+                                qW.incrementWeight(a1, a2, b1, b2, w);
                             }
                         }
                     }
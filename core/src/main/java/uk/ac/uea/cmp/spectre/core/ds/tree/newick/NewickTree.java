@@ -153,7 +153,7 @@ public class NewickTree extends NewickNode {
 
     public CanonicalWeightedQuartetMap createQuartets() {
 
-        CanonicalWeightedQuartetMap qW = new CanonicalWeightedQuartetMap();
+        CanonicalWeightedQuartetMap qW = new CanonicalWeightedQuartetMap(this.taxa.size());
 
         this.split(qW, new IdentifierList());
 
@@ -46,12 +46,25 @@ public class SpectreReaderFactory {
         return instance;
     }
 
-    public SpectreReader create(String name) throws IOException {
+    /**
+     * Creates a new reader for the given identifier.  The service loader caches the readers it finds, and some readers
+     * hold state while parsing, so each call returns a new instance of the matching reader rather than the cached one.
+     * This allows several tools to read files at the same time.
+     *
+     * @param name Identifier for the reader, usually a file extension
+     * @return A new reader, or null if no reader accepts the identifier
+     * @throws IOException If the reader could not be created
+     */
+    public synchronized SpectreReader create(String name) throws IOException {
 
         for (SpectreReader spectreReader : loader) {
 
             if (spectreReader.acceptsIdentifier(name)) {
-                return spectreReader;
+                try {
+                    return spectreReader.getClass().newInstance();
+                } catch (InstantiationException | IllegalAccessException e) {
+                    throw new IOException("Could not create reader for: " + name, e);
+                }
             }
         }
 
@@ -104,7 +117,7 @@ public class SpectreReaderFactory {
         return this.getSpectreReaders(spectreDataTypes);
     }
 
-    public List<SpectreReader> getSpectreReaders(List<SpectreDataType> spectreDataTypeList) {
+    public synchronized List<SpectreReader> getSpectreReaders(List<SpectreDataType> spectreDataTypeList) {
 
         Iterator<SpectreReader> it = loader.iterator();
 
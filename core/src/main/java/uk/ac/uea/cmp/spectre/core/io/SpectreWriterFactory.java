@@ -15,10 +15,16 @@
 
 package uk.ac.uea.cmp.spectre.core.io;
 
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
+import uk.ac.uea.cmp.spectre.core.io.binary.BinaryWriter;
+import uk.ac.uea.cmp.spectre.core.io.nexus.Nexus;
 import uk.ac.uea.cmp.spectre.core.io.nexus.NexusWriter;
 import uk.ac.uea.cmp.spectre.core.io.phylip.PhylipWriter;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -52,6 +58,17 @@ public enum SpectreWriterFactory {
         public String[] getValidExtensions() {
             return new String[]{"phy", "phylip"};
         }
+    },
+    BINARY {
+        @Override
+        public SpectreWriter create() {
+            return new BinaryWriter();
+        }
+
+        @Override
+        public String[] getValidExtensions() {
+            return new String[]{"spb"};
+        }
     };
 
     public abstract SpectreWriter create();
@@ -60,11 +77,23 @@ public enum SpectreWriterFactory {
 
     public static SpectreWriter create(String fileExtension) {
 
+        SpectreWriterFactory pwf = fromExtension(fileExtension);
+
+        return pwf != null ? pwf.create() : null;
+    }
+
+    /**
+     * Finds the type of writer associated with the given file extension
+     * @param fileExtension The file extension, without the leading dot
+     * @return The writer type, or null if the extension is not recognised
+     */
+    public static SpectreWriterFactory fromExtension(String fileExtension) {
+
         for (SpectreWriterFactory pwf : SpectreWriterFactory.values()) {
 
             for (String ext : pwf.getValidExtensions()) {
                 if (ext.equalsIgnoreCase(fileExtension)) {
-                    return pwf.create();
+                    return pwf;
                 }
             }
         }
@@ -72,6 +101,43 @@ public enum SpectreWriterFactory {
         return null;
     }
 
+    /**
+     * Finds the type of writer associated with the extension of the given output file
+     * @param file The output file
+     * @return The writer type, or null if the extension is not recognised
+     */
+    public static SpectreWriterFactory fromFile(File file) {
+        return fromExtension(FilenameUtils.getExtension(file.getName()));
+    }
+
+    /**
+     * Saves a split system in binary format if the output file's extension selects it, otherwise as nexus.  Phylip
+     * cannot hold split systems, so it is not considered here.
+     * @param file The output file
+     * @param splitSystem The split system to save
+     * @throws IOException Thrown if there was a problem writing the file
+     */
+    public static void writeSplitSystem(File file, SplitSystem splitSystem) throws IOException {
+        (fromFile(file) == BINARY ? BINARY : NEXUS).create().writeSplitSystem(file, splitSystem);
+    }
+
+    /**
+     * Saves a tool's nexus output.  The binary format holds a single data section, so if the output file's extension
+     * selects it then only the split system is saved.  Otherwise the whole nexus content is saved as nexus.
+     * @param file The output file
+     * @param nexus The content to save
+     * @throws IOException Thrown if there was a problem writing the file
+     */
+    public static void writeNexusData(File file, Nexus nexus) throws IOException {
+
+        if (fromFile(file) == BINARY) {
+            BINARY.create().writeSplitSystem(file, nexus.getSplitSystem());
+        }
+        else {
+            new NexusWriter().writeNexusData(file, nexus);
+        }
+    }
+
     public String getPrimaryExtension() {
         return this.getValidExtensions()[0];
     }
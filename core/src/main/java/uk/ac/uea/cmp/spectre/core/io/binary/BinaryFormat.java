@@ -0,0 +1,66 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.io.binary;
+
+import java.nio.ByteOrder;
+
+/**
+ * Constants describing the SPECTRE binary format, a compact alternative to nexus for passing large intermediate results
+ * between tools.
+ *
+ * All numbers are little endian.  A file starts with an 8 byte magic number, a 4 byte format version and a 4 byte count
+ * of sections.  Each section then has a 4 byte tag, 4 bytes of padding and an 8 byte body length, followed by the body,
+ * which is padded to a multiple of 8 bytes so that every body starts on an 8 byte boundary and can be viewed directly as
+ * longs or doubles once mapped.  Readers skip sections they do not recognise.
+ *
+ * <ul>
+ * <li>TAXA: int count, int padding, then for each taxon int id, int name length and the UTF-8 name</li>
+ * <li>DISTANCES: long entry count, then the distances between the taxa in the packed triangle order used by
+ * {@link uk.ac.uea.cmp.spectre.core.ds.distance.DenseDistanceMatrix#index(int, int)}</li>
+ * <li>SPLITS: int split count, int words per side, then the A sides as bitsets of taxon ids, the B sides, the weights
+ * and a byte per split that is 1 if the split is active</li>
+ * <li>QUARTETS: int sense (0 for min, 1 for max), int padding, double weight, long quadruple count, then the quadruple
+ * ranks, three weights per quadruple and a byte of presence flags per quadruple, as held in a
+ * {@link uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetWeightStore}</li>
+ * </ul>
+ */
+public final class BinaryFormat {
+
+    public static final long MAGIC = 0x1a45525443455053L; // "SPECTRE\032" as little endian bytes
+
+    public static final int VERSION = 1;
+
+    public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    public static final int TAXA = 1;
+    public static final int DISTANCES = 2;
+    public static final int SPLITS = 3;
+    public static final int QUARTETS = 4;
+
+    static final int HEADER_SIZE = 16;
+    static final int SECTION_HEADER_SIZE = 16;
+
+    private BinaryFormat() {
+    }
+
+    /**
+     * @param length A length in bytes
+     * @return The length rounded up to a multiple of 8
+     */
+    static long align(long length) {
+        return (length + 7) & ~7L;
+    }
+}
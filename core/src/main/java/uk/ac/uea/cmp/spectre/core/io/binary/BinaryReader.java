@@ -0,0 +1,73 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.io.binary;
+
+import org.kohsuke.MetaInfServices;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
+import uk.ac.uea.cmp.spectre.core.io.AbstractSpectreReader;
+import uk.ac.uea.cmp.spectre.core.io.SpectreDataType;
+import uk.ac.uea.cmp.spectre.core.io.SpectreReader;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads distance matrices, split systems and quartet systems from the binary format described in {@link BinaryFormat}.
+ * Use {@link MappedBinaryFile} directly to view the data in place without copying it.
+ */
+@MetaInfServices(SpectreReader.class)
+public class BinaryReader extends AbstractSpectreReader {
+
+    @Override
+    public DistanceMatrix readDistanceMatrix(File file) throws IOException {
+        try (MappedBinaryFile in = new MappedBinaryFile(file)) {
+            return in.getDistanceMatrix();
+        }
+    }
+
+    @Override
+    public SplitSystem readSplitSystem(File file) throws IOException {
+        try (MappedBinaryFile in = new MappedBinaryFile(file)) {
+            return in.getSplitSystem();
+        }
+    }
+
+    @Override
+    public QuartetSystem readQuartets(File file) throws IOException {
+        try (MappedBinaryFile in = new MappedBinaryFile(file)) {
+            return in.getQuartetSystem();
+        }
+    }
+
+    @Override
+    public String[] commonFileExtensions() {
+        return new String[]{"spb"};
+    }
+
+    @Override
+    public String getIdentifier() {
+        return "BINARY";
+    }
+
+    @Override
+    public boolean acceptsDataType(SpectreDataType spectreDataType) {
+        return spectreDataType == SpectreDataType.DISTANCE_MATRIX ||
+                spectreDataType == SpectreDataType.SPLITS ||
+                spectreDataType == SpectreDataType.QUARTETS;
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.io.binary;
+
+import uk.ac.uea.cmp.spectre.core.ds.Identifier;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.GroupedQuartetSystem;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetSystem;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetWeightStore;
+import uk.ac.uea.cmp.spectre.core.ds.split.Split;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
+import uk.ac.uea.cmp.spectre.core.io.AbstractSpectreWriter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes distance matrices, split systems and quartet systems in the binary format described in {@link BinaryFormat}.
+ * Each file holds the taxa followed by a single data section.
+ */
+public class BinaryWriter extends AbstractSpectreWriter {
+
+    /* Size of the buffer that values are gathered in before being written to the file */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    @Override
+    public void writeDistanceMatrix(File outFile, DistanceMatrix distanceMatrix) throws IOException {
+
+        final int n = distanceMatrix.size();
+        final long nbEntries = (long) n * (n - 1) / 2;
+
+        try (Output out = new Output(outFile, 2)) {
+
+            out.writeTaxa(distanceMatrix.getTaxa());
+
+            out.beginSection(BinaryFormat.DISTANCES, 8 + nbEntries * 8);
+            out.putLong(nbEntries);
+
+            // Column by column, to match the packed triangle of a dense distance matrix
+            for (int j = 1; j < n; j++) {
+                for (int i = 0; i < j; i++) {
+                    out.putDouble(distanceMatrix.getDistanceByIndex(i, j));
+                }
+            }
+
+            out.endSection();
+        }
+    }
+
+    @Override
+    public void writeSplitSystem(File outFile, SplitSystem splitSystem) throws IOException {
+
+        final int nbSplits = splitSystem.getNbSplits();
+        final int[][] aSides = new int[nbSplits][];
+        final int[][] bSides = new int[nbSplits][];
+
+        int maxId = 0;
+        for (int i = 0; i < nbSplits; i++) {
+            aSides[i] = splitSystem.get(i).getASideAsIntArray();
+            bSides[i] = splitSystem.get(i).getBSideAsIntArray();
+            maxId = Math.max(maxId, max(aSides[i]));
+            maxId = Math.max(maxId, max(bSides[i]));
+        }
+
+        final int nbWords = (maxId >>> 6) + 1;
+
+        try (Output out = new Output(outFile, 2)) {
+
+            out.writeTaxa(splitSystem.getOrderedTaxa());
+
+            out.beginSection(BinaryFormat.SPLITS, 8 + (long) nbSplits * (2L * nbWords * 8 + 8 + 1));
+            out.putInt(nbSplits);
+            out.putInt(nbWords);
+
+            for (int[] side : aSides) {
+                out.putBits(side, nbWords);
+            }
+
+            for (int[] side : bSides) {
+                out.putBits(side, nbWords);
+            }
+
+            for (Split split : splitSystem) {
+                out.putDouble(split.getWeight());
+            }
+
+            for (Split split : splitSystem) {
+                out.putByte(split.isActive() ? 1 : 0);
+            }
+
+            out.endSection();
+        }
+    }
+
+    @Override
+    public void writeQuartets(File outFile, QuartetSystem quartetSystem) throws IOException {
+        this.writeQuartets(outFile, quartetSystem.getTaxa(), quartetSystem.getSense() == QuartetSystem.Sense.MIN ? 0 : 1,
+                quartetSystem.getWeight(), quartetSystem.getQuartets().getStore());
+    }
+
+    @Override
+    public void writeQuartets(File outFile, GroupedQuartetSystem quartetSystem) throws IOException {
+        this.writeQuartets(outFile, quartetSystem.getTaxa(), quartetSystem.getSense() == GroupedQuartetSystem.Sense.MIN ? 0 : 1,
+                quartetSystem.getWeight(), quartetSystem.getQuartets().getStore());
+    }
+
+    private void writeQuartets(File outFile, IdentifierList taxa, int sense, double weight, QuartetWeightStore store)
+            throws IOException {
+
+        final long nbQuadruples = store.size();
+
+        try (Output out = new Output(outFile, 2)) {
+
+            out.writeTaxa(taxa);
+
+            out.beginSection(BinaryFormat.QUARTETS, 24 + nbQuadruples * (8 + 3 * 8 + 1));
+            out.putInt(sense);
+            out.putInt(0);
+            out.putDouble(weight);
+            out.putLong(nbQuadruples);
+
+            // The cursor is walked once for each array, so that each can be viewed as a whole when read back
+            QuartetWeightStore.Cursor cursor = store.cursor();
+            while (cursor.next()) {
+                out.putLong(cursor.getRank());
+            }
+
+            cursor = store.cursor();
+            while (cursor.next()) {
+                for (int t = 0; t < 3; t++) {
+                    out.putDouble(cursor.getWeight(t));
+                }
+            }
+
+            cursor = store.cursor();
+            while (cursor.next()) {
+                int flags = 0;
+                for (int t = 0; t < 3; t++) {
+                    if (cursor.contains(t)) {
+                        flags |= 1 << t;
+                    }
+                }
+                out.putByte(flags);
+            }
+
+            out.endSection();
+        }
+    }
+
+    private static int max(int[] values) {
+        int max = 0;
+        for (int v : values) {
+            if (v < 0) {
+                throw new IllegalArgumentException("Taxon ids must not be negative: " + v);
+            }
+            max = Math.max(max, v);
+        }
+        return max;
+    }
+
+    /**
+     * Buffered output to a file channel, which keeps track of the section being written so it can be padded out to the
+     * length given in its header
+     */
+    private static class Output implements Closeable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long position;
+        private long sectionEnd;
+
+        private Output(File file, int nbSections) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(BinaryFormat.ORDER);
+            this.position = 0;
+            this.sectionEnd = -1;
+
+            this.putLong(BinaryFormat.MAGIC);
+            this.putInt(BinaryFormat.VERSION);
+            this.putInt(nbSections);
+        }
+
+        private void writeTaxa(IdentifierList taxa) throws IOException {
+
+            final byte[][] names = new byte[taxa.size()][];
+            long length = 8;
+            for (int i = 0; i < names.length; i++) {
+                final String name = taxa.get(i).getName();
+                names[i] = (name == null ? "" : name).getBytes(StandardCharsets.UTF_8);
+                length += 8 + names[i].length;
+            }
+
+            this.beginSection(BinaryFormat.TAXA, length);
+            this.putInt(names.length);
+            this.putInt(0);
+
+            for (int i = 0; i < names.length; i++) {
+                final Identifier taxon = taxa.get(i);
+                this.putInt(taxon.getId());
+                this.putInt(names[i].length);
+                for (byte b : names[i]) {
+                    this.putByte(b);
+                }
+            }
+
+            this.endSection();
+        }
+
+        private void beginSection(int tag, long length) throws IOException {
+            this.putInt(tag);
+            this.putInt(0);
+            this.putLong(length);
+            this.sectionEnd = this.position + BinaryFormat.align(length);
+        }
+
+        private void endSection() throws IOException {
+
+            while (this.position < this.sectionEnd) {
+                this.putByte(0);
+            }
+
+            if (this.position != this.sectionEnd) {
+                throw new IllegalStateException("Section overran its declared length");
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (this.buffer.remaining() < bytes) {
+                this.flush();
+            }
+            this.position += bytes;
+        }
+
+        private void putByte(int value) throws IOException {
+            this.ensure(1);
+            this.buffer.put((byte) value);
+        }
+
+        private void putInt(int value) throws IOException {
+            this.ensure(4);
+            this.buffer.putInt(value);
+        }
+
+        private void putLong(long value) throws IOException {
+            this.ensure(8);
+            this.buffer.putLong(value);
+        }
+
+        private void putDouble(double value) throws IOException {
+            this.ensure(8);
+            this.buffer.putDouble(value);
+        }
+
+        private void putBits(int[] taxa, int nbWords) throws IOException {
+            final long[] bits = new long[nbWords];
+            for (int t : taxa) {
+                bits[t >>> 6] |= 1L << t;
+            }
+            for (long word : bits) {
+                this.putLong(word);
+            }
+        }
+
+        private void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+            this.buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.flush();
+            } finally {
+                this.channel.close();
+            }
+        }
+    }
+}
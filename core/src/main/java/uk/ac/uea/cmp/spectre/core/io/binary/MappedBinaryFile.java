@@ -0,0 +1,454 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.io.binary;
+
+import uk.ac.uea.cmp.spectre.core.ds.Identifier;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DenseDistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.CanonicalWeightedQuartetMap;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.DenseQuartetWeightStore;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetSystem;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetUtils;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetWeightStore;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.SparseQuartetWeightStore;
+import uk.ac.uea.cmp.spectre.core.ds.split.BitSplit;
+import uk.ac.uea.cmp.spectre.core.ds.split.SpectreSplitSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.Split;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A file in the binary format described in {@link BinaryFormat}, opened for reading.  Only the file and section headers
+ * are read up front.  Section bodies are memory mapped when asked for, and can either be viewed in place as buffers,
+ * without copying, or converted into the usual SPECTRE data structures.
+ */
+public class MappedBinaryFile implements Closeable {
+
+    /* Number of doubles copied out of each mapped region when a section is too large to map in one go */
+    private static final int COPY_CHUNK = 1 << 27;
+
+    /* Largest region mapped at once when reading a section piece by piece, a multiple of 8 so values never straddle */
+    private static final long MAP_CHUNK = COPY_CHUNK * 8L;
+
+    private final File file;
+    private final FileChannel channel;
+    private final int version;
+
+    /* Offset and length of the body of each section, by tag */
+    private final Map<Integer, long[]> sections;
+
+    /**
+     * Opens a binary file and reads its section headers
+     *
+     * @param file The file to open
+     * @throws IOException Thrown if the file cannot be read, is not in the binary format or was written by a newer
+     *                     version of the format
+     */
+    public MappedBinaryFile(File file) throws IOException {
+
+        if (file == null) {
+            throw new NullPointerException("Must specify a binary file to read");
+        }
+
+        if (!file.exists()) {
+            throw new IOException("Binary file does not exist: " + file.getAbsolutePath());
+        }
+
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.sections = new HashMap<>();
+
+        try {
+            final long size = this.channel.size();
+            final ByteBuffer header = this.readFully(0, BinaryFormat.HEADER_SIZE);
+
+            if (header.getLong() != BinaryFormat.MAGIC) {
+                throw new IOException("Not a SPECTRE binary file: " + file.getAbsolutePath());
+            }
+
+            this.version = header.getInt();
+            if (this.version < 1 || this.version > BinaryFormat.VERSION) {
+                throw new IOException("Unsupported SPECTRE binary format version " + this.version + " in " +
+                        file.getAbsolutePath() + ".  This version can read up to version " + BinaryFormat.VERSION);
+            }
+
+            final int nbSections = header.getInt();
+            long offset = BinaryFormat.HEADER_SIZE;
+
+            for (int i = 0; i < nbSections; i++) {
+
+                final ByteBuffer sectionHeader = this.readFully(offset, BinaryFormat.SECTION_HEADER_SIZE);
+                final int tag = sectionHeader.getInt();
+                sectionHeader.getInt();
+                final long length = sectionHeader.getLong();
+
+                offset += BinaryFormat.SECTION_HEADER_SIZE;
+
+                if (length < 0 || offset + length > size) {
+                    throw new IOException("Section " + tag + " runs past the end of " + file.getAbsolutePath());
+                }
+
+                this.sections.put(tag, new long[]{offset, length});
+                offset += BinaryFormat.align(length);
+            }
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    private ByteBuffer readFully(long offset, int length) throws IOException {
+
+        final ByteBuffer buffer = ByteBuffer.allocate(length).order(BinaryFormat.ORDER);
+
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of binary file: " + this.file.getAbsolutePath());
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return The version of the format the file was written in
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @param tag A section tag from {@link BinaryFormat}
+     * @return True if the file has a section with this tag
+     */
+    public boolean hasSection(int tag) {
+        return this.sections.containsKey(tag);
+    }
+
+    private long[] section(int tag) throws IOException {
+
+        final long[] section = this.sections.get(tag);
+
+        if (section == null) {
+            throw new IOException("Binary file " + this.file.getAbsolutePath() + " has no section " + tag);
+        }
+
+        return section;
+    }
+
+    private ByteBuffer map(long offset, long length) throws IOException {
+
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Region of " + length + " bytes is too large to map in one piece");
+        }
+
+        return this.channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(BinaryFormat.ORDER);
+    }
+
+    /**
+     * Maps the body of a section
+     *
+     * @param tag A section tag from {@link BinaryFormat}
+     * @return A read only buffer over the section body, in the byte order of the format
+     * @throws IOException Thrown if the section is missing or larger than 2GB
+     */
+    public ByteBuffer mapSection(int tag) throws IOException {
+        final long[] section = this.section(tag);
+        return this.map(section[0], section[1]);
+    }
+
+    /**
+     * @return The taxa stored in the file, with their ids
+     * @throws IOException Thrown if there is no taxa section
+     */
+    public IdentifierList getTaxa() throws IOException {
+
+        final ByteBuffer body = this.mapSection(BinaryFormat.TAXA);
+        final int n = body.getInt();
+        body.getInt();
+
+        final IdentifierList taxa = new IdentifierList();
+
+        for (int i = 0; i < n; i++) {
+            final int id = body.getInt();
+            final byte[] name = new byte[body.getInt()];
+            body.get(name);
+            taxa.add(new Identifier(new String(name, StandardCharsets.UTF_8), id));
+        }
+
+        return taxa;
+    }
+
+    /**
+     * Views the distances in place, without copying them.  The view is only valid for files of up to 2GB of distances.
+     *
+     * @return A read only view of the packed triangle of distances, laid out as in
+     * {@link DenseDistanceMatrix#index(int, int)}
+     * @throws IOException Thrown if there is no distances section, or it is too large to view
+     */
+    public DoubleBuffer getDistances() throws IOException {
+        final long[] section = this.section(BinaryFormat.DISTANCES);
+        return this.map(section[0] + 8, section[1] - 8).asDoubleBuffer();
+    }
+
+    /**
+     * @return A dense distance matrix holding a copy of the distances in the file
+     * @throws IOException Thrown if the taxa or distances are missing, or do not match each other
+     */
+    public DistanceMatrix getDistanceMatrix() throws IOException {
+
+        final IdentifierList taxa = this.getTaxa();
+        final long[] section = this.section(BinaryFormat.DISTANCES);
+        final long nbEntries = this.map(section[0], 8).getLong();
+
+        if (nbEntries != (long) taxa.size() * (taxa.size() - 1) / 2 || 8 + nbEntries * 8 != section[1]) {
+            throw new IOException("Distances in " + this.file.getAbsolutePath() + " do not match the " + taxa.size() +
+                    " taxa");
+        }
+
+        final double[] distances = new double[(int) nbEntries];
+
+        for (int start = 0; start < distances.length; start += COPY_CHUNK) {
+            final int length = Math.min(COPY_CHUNK, distances.length - start);
+            this.map(section[0] + 8 + start * 8L, length * 8L).asDoubleBuffer().get(distances, start, length);
+        }
+
+        return new DenseDistanceMatrix(taxa, distances);
+    }
+
+    /**
+     * @return A split system holding the splits in the file, with the taxa as its ordering
+     * @throws IOException Thrown if the taxa or splits are missing
+     */
+    public SplitSystem getSplitSystem() throws IOException {
+
+        final IdentifierList taxa = this.getTaxa();
+        final long[] section = this.section(BinaryFormat.SPLITS);
+        final ByteBuffer header = this.map(section[0], 8);
+
+        final int nbSplits = header.getInt();
+        final int nbWords = header.getInt();
+        final long bitsOffset = 8;
+        final long weightsOffset = bitsOffset + 2L * nbSplits * nbWords * 8;
+        final long activeOffset = weightsOffset + nbSplits * 8L;
+
+        if (activeOffset + nbSplits > section[1]) {
+            throw new IOException("Splits section of " + this.file.getAbsolutePath() + " is shorter than its header says");
+        }
+
+        // The a sides, b sides and weights are far apart, so read each through its own window onto the section
+        final Region aSides = new Region(section, bitsOffset);
+        final Region bSides = new Region(section, bitsOffset + (long) nbSplits * nbWords * 8);
+        final Region weights = new Region(section, weightsOffset);
+        final Region active = new Region(section, activeOffset);
+
+        final List<Split> splits = new ArrayList<>(nbSplits);
+        final long[] aSide = new long[nbWords];
+        final long[] bSide = new long[nbWords];
+
+        for (int i = 0; i < nbSplits; i++) {
+            for (int w = 0; w < nbWords; w++) {
+                aSide[w] = aSides.getLong(((long) i * nbWords + w) * 8);
+                bSide[w] = bSides.getLong(((long) i * nbWords + w) * 8);
+            }
+            splits.add(new BitSplit(toIds(aSide), toIds(bSide), weights.getDouble(i * 8L), active.get(i) != 0));
+        }
+
+        return new SpectreSplitSystem(taxa, splits);
+    }
+
+    /**
+     * Reads the number of quadruples in the quartets section
+     */
+    private int quartetCount(long[] section) throws IOException {
+
+        final long count = this.map(section[0] + 16, 8).getLong();
+
+        if (count < 0 || count > Integer.MAX_VALUE || 24 + count * 33 > section[1]) {
+            throw new IOException("Quartets section of " + this.file.getAbsolutePath() + " does not match its " +
+                    count + " quadruples");
+        }
+
+        return (int) count;
+    }
+
+    /**
+     * Views the quadruple ranks in place, without copying them.  The view is only valid for up to 2GB of ranks.
+     *
+     * @return A read only view of the rank of each quadruple in the file
+     * @throws IOException Thrown if there is no quartets section, or the ranks are too large to view
+     */
+    public LongBuffer getQuartetRanks() throws IOException {
+        final long[] section = this.section(BinaryFormat.QUARTETS);
+        final int count = this.quartetCount(section);
+        return this.map(section[0] + 24, count * 8L).asLongBuffer();
+    }
+
+    /**
+     * Views the quartet weights in place, without copying them.  The view is only valid for up to 2GB of weights.
+     *
+     * @return A read only view of the weights, three to a quadruple in the same order as {@link #getQuartetRanks()}
+     * @throws IOException Thrown if there is no quartets section, or the weights are too large to view
+     */
+    public DoubleBuffer getQuartetWeights() throws IOException {
+        final long[] section = this.section(BinaryFormat.QUARTETS);
+        final int count = this.quartetCount(section);
+        return this.map(section[0] + 24 + count * 8L, count * 24L).asDoubleBuffer();
+    }
+
+    /**
+     * @return A quartet system holding a copy of the quartets in the file.  The weights go in a dense store if they
+     * cover at least half of the quadruples over the taxa, otherwise in a sparse store.
+     * @throws IOException Thrown if the taxa or quartets are missing
+     */
+    public QuartetSystem getQuartetSystem() throws IOException {
+
+        final IdentifierList taxa = this.getTaxa();
+        final long[] section = this.section(BinaryFormat.QUARTETS);
+        final ByteBuffer header = this.map(section[0], 16);
+
+        final int sense = header.getInt();
+        header.getInt();
+        final double weight = header.getDouble();
+        final int count = this.quartetCount(section);
+
+        final Region ranks = new Region(section, 24);
+        final Region weights = new Region(section, 24 + count * 8L);
+        final Region flags = new Region(section, 24 + count * 32L);
+
+        long maxRank = -1;
+        for (int i = 0; i < count; i++) {
+            maxRank = Math.max(maxRank, ranks.getLong(i * 8L));
+        }
+
+        final long capacity = QuartetUtils.over4(taxa.size());
+        final QuartetWeightStore store = maxRank < capacity && count * 2L >= capacity ?
+                new DenseQuartetWeightStore(taxa.size()) :
+                new SparseQuartetWeightStore(count);
+
+        for (int i = 0; i < count; i++) {
+            final long rank = ranks.getLong(i * 8L);
+            final byte flag = flags.get(i);
+            for (int t = 0; t < 3; t++) {
+                if ((flag & (1 << t)) != 0) {
+                    store.setWeight(rank, t, weights.getDouble((i * 3L + t) * 8));
+                }
+            }
+        }
+
+        final QuartetSystem quartetSystem = new QuartetSystem(taxa, weight, new CanonicalWeightedQuartetMap(store));
+        quartetSystem.setSense(sense == 0 ? QuartetSystem.Sense.MIN : QuartetSystem.Sense.MAX);
+        return quartetSystem;
+    }
+
+    /**
+     * Reads values from part of a section body, mapping at most {@link #MAP_CHUNK} bytes of it at a time, so that
+     * sections larger than 2GB can be read.  Reading in order only maps each part of the file once.
+     */
+    private class Region {
+
+        private final long start;
+        private final long end;
+
+        private ByteBuffer chunk;
+        private long chunkStart;
+
+        /**
+         * @param section The offset and length of the section body
+         * @param offset Where the region starts, relative to the start of the section body
+         */
+        private Region(long[] section, long offset) {
+            this.start = section[0] + offset;
+            this.end = section[0] + section[1];
+            this.chunk = null;
+            this.chunkStart = 0;
+        }
+
+        /**
+         * Makes sure the given number of bytes from the given position are mapped, and returns the position of the
+         * first of them in the mapped chunk
+         */
+        private int at(long position, int size) throws IOException {
+
+            final long pos = this.start + position;
+
+            if (this.chunk == null || pos < this.chunkStart || pos + size > this.chunkStart + this.chunk.limit()) {
+                if (pos + size > this.end) {
+                    throw new IOException("Unexpected end of section in binary file: " + file.getAbsolutePath());
+                }
+                this.chunkStart = pos;
+                this.chunk = map(pos, Math.min(MAP_CHUNK, this.end - pos));
+            }
+
+            return (int) (pos - this.chunkStart);
+        }
+
+        private long getLong(long position) throws IOException {
+            final int index = this.at(position, 8);
+            return this.chunk.getLong(index);
+        }
+
+        private double getDouble(long position) throws IOException {
+            final int index = this.at(position, 8);
+            return this.chunk.getDouble(index);
+        }
+
+        private byte get(long position) throws IOException {
+            final int index = this.at(position, 1);
+            return this.chunk.get(index);
+        }
+    }
+
+    private static int[] toIds(long[] bits) {
+
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+
+        final int[] ids = new int[count];
+        int k = 0;
+        for (int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                ids[k++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+
+        return ids;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -17,8 +17,8 @@ package uk.ac.uea.cmp.spectre.core.io.emboss;
 
 import org.apache.commons.io.FileUtils;
 import org.kohsuke.MetaInfServices;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DenseDistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
-import uk.ac.uea.cmp.spectre.core.ds.distance.FlexibleDistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.io.AbstractSpectreReader;
 import uk.ac.uea.cmp.spectre.core.io.SpectreDataType;
 import uk.ac.uea.cmp.spectre.core.io.SpectreReader;
@@ -108,7 +108,7 @@ public class EmbossReader extends AbstractSpectreReader {
 
         int nbTaxa = line.split("\t").length;
 
-        DistanceMatrix distanceMatrix = new FlexibleDistanceMatrix(nbTaxa);
+        DistanceMatrix distanceMatrix = new DenseDistanceMatrix(nbTaxa);
 
         // First run through the lines to establish taxa in distance matrix
         for (int i = start; i < lines.size(); i++) {
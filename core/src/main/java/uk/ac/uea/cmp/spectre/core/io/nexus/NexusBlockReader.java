@@ -0,0 +1,398 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package uk.ac.uea.cmp.spectre.core.io.nexus;
+
+import uk.ac.uea.cmp.spectre.core.ds.Identifier;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DenseDistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrixBuilder;
+import uk.ac.uea.cmp.spectre.core.util.StringUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads a Nexus file one block at a time, straight from a character stream.  Each block can either be skipped, which
+ * only looks at one token at a time so costs no memory however big the block is, handed back as text for the full
+ * parser, or in the case of distances blocks, read directly into a packed {@link DenseDistanceMatrix}.
+ *
+ * Tokens are split the same way as the Nexus grammar: whitespace separates tokens, ';' and '=' are tokens in their own
+ * right, text in square brackets is a comment, and quoted strings may contain anything apart from an unescaped closing
+ * quote.
+ */
+class NexusBlockReader implements Closeable {
+
+    private static final int UNREAD = -2;
+
+    private final Reader in;
+
+    private int lookahead = UNREAD;
+    private String pendingToken = null;
+    private StringBuilder capture = null;
+
+    private String blockName = null;
+
+    /**
+     * @param in The characters of a Nexus file.  Should be buffered, as it is read a character at a time.
+     */
+    public NexusBlockReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the "#NEXUS" header that starts every Nexus file
+     *
+     * @throws IOException If the header is missing, or the stream could not be read
+     */
+    public void readHeader() throws IOException {
+        String token = this.nextToken();
+        if (token == null || !token.equalsIgnoreCase("#nexus")) {
+            throw new IOException("Not a Nexus file, expected #NEXUS but found: " + token);
+        }
+    }
+
+    /**
+     * Reads the start of the next block.  The caller must then call one of {@link #skipBlock()}, {@link #readBlock()}
+     * or {@link #readDistances(IdentifierList)} before moving on to the following block.
+     *
+     * @return The name of the block in lower case, or null if there are no more blocks
+     * @throws IOException If the next thing in the file is not the start of a block, or the stream could not be read
+     */
+    public String nextBlock() throws IOException {
+        String token = this.nextToken();
+        if (token == null) {
+            return null;
+        }
+        if (!token.equalsIgnoreCase("begin")) {
+            throw new IOException("Expected the start of a block but found: " + token);
+        }
+
+        this.blockName = this.nextToken();
+        if (this.blockName == null || this.blockName.equals(";")) {
+            throw new IOException("Block has no name");
+        }
+        this.expect(";");
+
+        return this.blockName.toLowerCase();
+    }
+
+    /**
+     * Moves past the rest of the current block without keeping any of it
+     */
+    public void skipBlock() throws IOException {
+        this.scanToEnd();
+    }
+
+    /**
+     * Reads the rest of the current block as text
+     *
+     * @return The whole block, from "begin" up to and including the final "end;", ready to be given to the full parser
+     */
+    public String readBlock() throws IOException {
+        this.capture = new StringBuilder("begin " + this.blockName + ";");
+        try {
+            this.scanToEnd();
+            return this.capture.toString();
+        } finally {
+            this.capture = null;
+        }
+    }
+
+    /**
+     * Reads the rest of the current block, which must be a distances block, putting the distances straight into a
+     * packed triangle as the matrix is read, rather than collecting the entries first.  Only the lower triangle of a
+     * full matrix is used, as in {@link DistanceMatrixBuilder}.
+     *
+     * @param taxa Taxa from the taxa block, which names in the matrix are resolved against.  If empty, new taxa are
+     *             created from the names in the matrix, or named A, B, C... if the matrix has no labels.
+     * @return The distance matrix, or null if the block has no matrix
+     * @throws IOException If the stream could not be read
+     */
+    public DistanceMatrix readDistances(IdentifierList taxa) throws IOException {
+
+        int nbTaxa = taxa == null ? 0 : taxa.size();
+        DistanceMatrixBuilder.Triangle triangle = DistanceMatrixBuilder.Triangle.LOWER;
+        DistanceMatrixBuilder.Labels labels = DistanceMatrixBuilder.Labels.NONE;
+        boolean diagonal = true;
+
+        DistanceMatrix distanceMatrix = null;
+
+        String token;
+        while ((token = this.nextToken()) != null) {
+
+            String command = token.toLowerCase();
+
+            if (command.equals("end") || command.equals("endblock")) {
+                this.expect(";");
+                return distanceMatrix;
+            } else if (command.equals("dimensions")) {
+                while (!(token = this.requireToken()).equals(";")) {
+                    if (token.equalsIgnoreCase("ntax")) {
+                        nbTaxa = Integer.parseInt(this.optionValue());
+                    } else {
+                        this.optionValue();
+                    }
+                }
+            } else if (command.equals("format")) {
+                while (!(token = this.requireToken()).equals(";")) {
+                    String option = token.toLowerCase();
+                    String value = this.optionValue();
+                    if (option.equals("triangle")) {
+                        if (value == null) {
+                            throw new IllegalArgumentException("Triangle option has no value");
+                        }
+                        triangle = DistanceMatrixBuilder.Triangle.valueOf(value.toUpperCase());
+                    } else if (option.equals("diagonal")) {
+                        diagonal = true;
+                    } else if (option.equals("nodiagonal")) {
+                        diagonal = false;
+                    } else if (option.equals("labels")) {
+                        labels = value == null ? DistanceMatrixBuilder.Labels.LEFT : parseLabels(value);
+                    } else if (option.equals("nolabels")) {
+                        labels = DistanceMatrixBuilder.Labels.NONE;
+                    } else if (option.equals("interleave")
+                            && (value == null || value.equalsIgnoreCase("yes") || value.equalsIgnoreCase("true"))) {
+                        throw new IllegalArgumentException("Interleaved distance matrices are not supported");
+                    }
+                }
+            } else if (command.equals("matrix")) {
+                distanceMatrix = this.readMatrix(taxa, nbTaxa, triangle, diagonal, labels);
+            } else {
+                // Includes taxlabels, which the full parser ignores in distances blocks too
+                this.skipStatement();
+            }
+        }
+
+        throw new IOException("Block " + this.blockName + " is not terminated");
+    }
+
+    private DistanceMatrix readMatrix(IdentifierList taxa, int nbTaxa, DistanceMatrixBuilder.Triangle triangle,
+                                      boolean diagonal, DistanceMatrixBuilder.Labels labels) throws IOException {
+
+        boolean populateTaxa = taxa == null || taxa.isEmpty();
+
+        if (!populateTaxa && nbTaxa != taxa.size()) {
+            throw new IllegalArgumentException("Distance matrix NTAX property and taxa block are inconsistent.");
+        }
+
+        double[] distances = new double[DenseDistanceMatrix.nbEntries(nbTaxa)];
+        IdentifierList found = new IdentifierList();
+        IdentifierList rowTaxa = new IdentifierList();
+
+        for (int i = 0; i < nbTaxa; i++) {
+
+            String taxonName = populateTaxa ? "" : taxa.get(i).getName();
+            if (labels == DistanceMatrixBuilder.Labels.LEFT) {
+                taxonName = StringUtils.stripQuotes(this.matrixEntry());
+            }
+
+            int first = triangle == DistanceMatrixBuilder.Triangle.UPPER ? (diagonal ? i : i + 1) : 0;
+            int last = triangle == DistanceMatrixBuilder.Triangle.LOWER ? (diagonal ? i : i - 1) : nbTaxa - 1;
+
+            for (int j = first; j <= last; j++) {
+                double distance = Double.parseDouble(this.matrixEntry());
+                if (j < i || (j > i && triangle == DistanceMatrixBuilder.Triangle.UPPER)) {
+                    distances[DenseDistanceMatrix.index(i, j)] = distance;
+                }
+            }
+
+            if (labels == DistanceMatrixBuilder.Labels.RIGHT) {
+                taxonName = StringUtils.stripQuotes(this.matrixEntry());
+            }
+
+            Identifier taxon;
+            if (populateTaxa && labels == DistanceMatrixBuilder.Labels.NONE) {
+                // No names anywhere, so number the taxa in the same way as IdentifierList(int)
+                taxon = new Identifier(i + 1);
+                found.add(taxon);
+            } else if (populateTaxa) {
+                taxon = new Identifier(taxonName);
+                found.add(taxon);
+            } else {
+                taxon = taxa.getByName(taxonName);
+                if (taxon == null) {
+                    throw new IllegalArgumentException("Could not find " + taxonName + " described in distance matrix in the taxa block.");
+                }
+            }
+            rowTaxa.add(taxon);
+        }
+
+        if (!this.requireToken().equals(";")) {
+            throw new IllegalArgumentException("Distance matrix is larger than expected for " + nbTaxa + " taxa");
+        }
+
+        return new DenseDistanceMatrix(rowTaxa, distances);
+    }
+
+    private static DistanceMatrixBuilder.Labels parseLabels(String value) {
+        if (value.equalsIgnoreCase("left") || value.equalsIgnoreCase("yes") || value.equalsIgnoreCase("true")) {
+            return DistanceMatrixBuilder.Labels.LEFT;
+        } else if (value.equalsIgnoreCase("right")) {
+            return DistanceMatrixBuilder.Labels.RIGHT;
+        } else if (value.equalsIgnoreCase("no") || value.equalsIgnoreCase("false")) {
+            return DistanceMatrixBuilder.Labels.NONE;
+        }
+        throw new IllegalArgumentException("Unknown labels option: " + value);
+    }
+
+    private String matrixEntry() throws IOException {
+        String token = this.requireToken();
+        if (token.equals(";")) {
+            throw new IllegalArgumentException("Distance matrix is smaller than expected");
+        }
+        return token;
+    }
+
+    /**
+     * Reads the value after an option, if it is followed by '='
+     *
+     * @return The value, or null if the option has no value
+     */
+    private String optionValue() throws IOException {
+        String token = this.requireToken();
+        if (token.equals("=")) {
+            return this.requireToken();
+        }
+        this.pendingToken = token;
+        return null;
+    }
+
+    private void skipStatement() throws IOException {
+        while (!this.requireToken().equals(";")) {
+            // Nothing to keep
+        }
+    }
+
+    /**
+     * Reads tokens up to and including the "end;" that closes the current block.  Only an "end" or "endblock" at the
+     * start of a statement counts, so a taxon called "end" in the middle of a matrix does not end the block early.
+     */
+    private void scanToEnd() throws IOException {
+        boolean statementStart = true;
+        String token;
+        while ((token = this.nextToken()) != null) {
+            if (statementStart && (token.equalsIgnoreCase("end") || token.equalsIgnoreCase("endblock"))) {
+                this.expect(";");
+                return;
+            }
+            statementStart = token.equals(";");
+        }
+        throw new IOException("Block " + this.blockName + " is not terminated");
+    }
+
+    private void expect(String expected) throws IOException {
+        String token = this.nextToken();
+        if (!expected.equals(token)) {
+            throw new IOException("Expected " + expected + " but found: " + token);
+        }
+    }
+
+    private String requireToken() throws IOException {
+        String token = this.nextToken();
+        if (token == null) {
+            throw new IOException("Unexpected end of file in block " + this.blockName);
+        }
+        return token;
+    }
+
+    /**
+     * @return The next token, or null at the end of the file
+     */
+    private String nextToken() throws IOException {
+
+        if (this.pendingToken != null) {
+            String token = this.pendingToken;
+            this.pendingToken = null;
+            return token;
+        }
+
+        // Skip whitespace and comments
+        int c;
+        while (true) {
+            c = this.peek();
+            if (c == -1) {
+                return null;
+            } else if (Character.isWhitespace(c)) {
+                this.next();
+            } else if (c == '[') {
+                while ((c = this.next()) != ']') {
+                    if (c == -1) {
+                        throw new IOException("Unterminated comment");
+                    }
+                }
+            } else {
+                break;
+            }
+        }
+
+        c = this.next();
+        if (c == ';' || c == '=') {
+            return String.valueOf((char) c);
+        }
+
+        StringBuilder token = new StringBuilder();
+        token.append((char) c);
+
+        if (c == '\'' || c == '"') {
+            int quote = c;
+            while ((c = this.next()) != quote) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted string: " + token);
+                }
+                token.append((char) c);
+                if (c == '\\') {
+                    c = this.next();
+                    if (c == -1) {
+                        throw new IOException("Unterminated quoted string: " + token);
+                    }
+                    token.append((char) c);
+                }
+            }
+            token.append((char) c);
+        } else {
+            while ((c = this.peek()) != -1 && !Character.isWhitespace(c)
+                    && c != ';' && c != '=' && c != '[' && c != '\'' && c != '"') {
+                token.append((char) this.next());
+            }
+        }
+
+        return token.toString();
+    }
+
+    private int peek() throws IOException {
+        if (this.lookahead == UNREAD) {
+            this.lookahead = this.in.read();
+        }
+        return this.lookahead;
+    }
+
+    private int next() throws IOException {
+        int c = this.peek();
+        this.lookahead = UNREAD;
+        if (c != -1 && this.capture != null) {
+            this.capture.append((char) c);
+        }
+        return c;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+}
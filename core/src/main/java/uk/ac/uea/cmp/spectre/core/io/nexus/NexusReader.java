@@ -36,7 +36,9 @@ import uk.ac.uea.cmp.spectre.core.util.DefaultParsingErrorStrategy;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Used to handle streaming of Nexus format files into memory, and convertion of
@@ -53,6 +55,65 @@ public class NexusReader extends AbstractSpectreReader {
         // Convert loader into a character stream
         CharStream in = new ANTLRInputStream(new FileInputStream(file));
 
+        // The results of parsing go in here
+        Nexus nexus = new Nexus();
+
+        // Do the parsing
+        try {
+            this.parse(in, new NexusFilePopulator(nexus, true));
+        } catch (RuntimeException e) {
+            throw new IOException("Error parsing: " + file.getAbsolutePath() + "; " + e.getMessage(), e);
+        }
+
+        // Return the populated Nexus object
+        return nexus;
+    }
+
+    /**
+     * Parses only the named blocks of a Nexus file, streaming through the file and skipping every other block without
+     * tokenising it, so memory use depends on the blocks requested rather than the size of the file.  Distances
+     * blocks are read straight into a packed distance matrix, other blocks are handed to the full parser one at a time.
+     * The taxa block is always parsed, as other blocks refer to it.
+     *
+     * @param file Nexus file
+     * @param blockNames Names of the blocks to parse, in any case, e.g. "distances" or "splits"
+     * @return An object holding the contents of the requested blocks
+     * @throws IOException Thrown if any disk related issues occur or the file could not be parsed
+     */
+    public Nexus parse(File file, String... blockNames) throws IOException {
+
+        Set<String> wanted = new HashSet<>();
+        wanted.add("taxa");
+        for (String blockName : blockNames) {
+            wanted.add(blockName.toLowerCase());
+        }
+
+        Nexus nexus = new Nexus();
+        NexusFilePopulator populator = new NexusFilePopulator(nexus, true);
+
+        try (NexusBlockReader reader = new NexusBlockReader(new BufferedReader(new FileReader(file)))) {
+
+            reader.readHeader();
+
+            String blockName;
+            while ((blockName = reader.nextBlock()) != null) {
+                if (!wanted.contains(blockName)) {
+                    reader.skipBlock();
+                } else if (blockName.equals("distances")) {
+                    nexus.setDistanceMatrix(reader.readDistances(nexus.getTaxa()));
+                } else {
+                    this.parse(new ANTLRInputStream("#NEXUS\n" + reader.readBlock()), populator);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Error parsing: " + file.getAbsolutePath() + "; " + e.getMessage(), e);
+        }
+
+        return nexus;
+    }
+
+    private void parse(CharStream in, NexusFilePopulator populator) {
+
         // Setup lexer
         NexusFileLexer lexer = new NexusFileLexer(in);
         lexer.removeErrorListeners();
@@ -61,26 +122,16 @@ public class NexusReader extends AbstractSpectreReader {
         // Do the lexing
         CommonTokenStream tokens = new CommonTokenStream(lexer);
 
-        // The results of parsing go in here
-        Nexus nexus = new Nexus();
-
         // Setup parser
         NexusFileParser parser = new NexusFileParser(tokens);
         parser.removeParseListeners();
         parser.removeErrorListeners();
-        parser.addParseListener(new NexusFilePopulator(nexus, true));
+        parser.addParseListener(populator);
         parser.addErrorListener(new DefaultParsingErrorListener());
         parser.setErrorHandler(new DefaultParsingErrorStrategy());
 
         // Do the parsing
-        try {
-            parser.parse();
-        } catch (RuntimeException e) {
-            throw new IOException("Error parsing: " + file.getAbsolutePath() + "; " + e.getMessage(), e);
-        }
-
-        // Return the populated Nexus object
-        return nexus;
+        parser.parse();
     }
 
     /**
@@ -92,17 +143,17 @@ public class NexusReader extends AbstractSpectreReader {
      */
     @Override
     public DistanceMatrix readDistanceMatrix(File file) throws IOException {
-        return this.parse(file).getDistanceMatrix();
+        return this.parse(file, "distances").getDistanceMatrix();
     }
 
     @Override
     public Sequences readAlignment(File file) throws IOException {
-        return this.parse(file).getAlignments();
+        return this.parse(file, "characters", "data").getAlignments();
     }
 
     @Override
     public Locations readLocations(File file) throws IOException {
-        return this.parse(file).getLocations();
+        return this.parse(file, "locations").getLocations();
     }
 
 
@@ -113,7 +164,7 @@ public class NexusReader extends AbstractSpectreReader {
 
     @Override
     public SplitSystem readSplitSystem(File file) throws IOException {
-        return this.parse(file).getSplitSystem();
+        return this.parse(file, "splits").getSplitSystem();
     }
 
     @Override
@@ -160,7 +211,7 @@ public class NexusReader extends AbstractSpectreReader {
      */
     public IdentifierList extractCircOrdering(File file) throws IOException {
 
-        SplitSystem splitSystem = this.parse(file).getSplitSystem();
+        SplitSystem splitSystem = this.parse(file, "splits").getSplitSystem();
 
         return splitSystem.isCircular() ?
                 splitSystem.getOrderedTaxa() :
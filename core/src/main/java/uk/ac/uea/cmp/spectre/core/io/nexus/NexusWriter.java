@@ -234,18 +234,17 @@ public class NexusWriter extends AbstractSpectreWriter implements Appendable {
         this.appendLine(" FORMAT labels=LEFT;");
         this.appendLine(" MATRIX");
 
-        Quadruple[] quadruples = qs.getQuadruples();
+        final long nbQuadruples = qs.getNbStoredQuadruples();
 
-        for (int i = 0; i < quadruples.length; i++) {
+        for (long i = 0; i < nbQuadruples; i++) {
             String line = ("  quadruple" + i + " :");
-            int[] taxa = quadruples[i].getTaxa().toIntArray();
-            double[] weights = quadruples[i].getWeights();
+            Quadruple quadruple = qs.getQuadruple(i);
             for (int j = 0; j < 4; j++) {
-                line = line.concat(" " + taxa[j]);
+                line = line.concat(" " + quadruple.getTaxon(j));
             }
             line = line.concat(" :");
-            for (int j = 0; j < 7; j++) {
-                line = line.concat(" " + weights[j]);
+            for (int j = 0; j < Quadruple.NB_SPLITS; j++) {
+                line = line.concat(" " + quadruple.getWeight(j));
             }
             line = line.concat(",");
             this.appendLine(line);
@@ -0,0 +1,333 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.io.phylip;
+
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DenseDistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses a square PHYLIP distance matrix straight out of a memory mapped file.  The file is scanned once to find where
+ * each row starts, which is any line that does not begin with whitespace, then the rows are split into ranges which are
+ * parsed in parallel, with numbers read directly from the mapped bytes into the packed triangle of a
+ * {@link DenseDistanceMatrix}.  Where the file is not symmetric the lower triangle wins.
+ */
+class MappedPhylipParser {
+
+    /* Size of each mapped region.  Files larger than this are mapped in several regions. */
+    private static final int REGION_BITS = 30;
+    private static final long REGION_SIZE = 1L << REGION_BITS;
+    private static final long REGION_MASK = REGION_SIZE - 1;
+
+    /* Number of rows below which a range of rows is parsed on the current thread */
+    private static final int ROWS_PER_TASK = 64;
+
+    /* Most significant digits that can be held exactly in the mantissa of a double */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    /* Powers of ten that are exactly representable as doubles */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final MappedByteBuffer[] regions;
+    private final long length;
+
+    MappedPhylipParser(FileChannel channel) throws IOException {
+
+        this.length = channel.size();
+        this.regions = new MappedByteBuffer[(int) ((this.length + REGION_SIZE - 1) >>> REGION_BITS)];
+
+        for (int r = 0; r < this.regions.length; r++) {
+            final long offset = (long) r << REGION_BITS;
+            this.regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(REGION_SIZE, this.length - offset));
+        }
+    }
+
+    /**
+     * Parses the mapped file
+     *
+     * @param pool The pool used to parse ranges of rows
+     * @return The distance matrix, or null if the file contains nothing but whitespace
+     */
+    DistanceMatrix parse(ForkJoinPool pool) {
+
+        long pos = this.skipWhitespace(0, this.length);
+        if (pos >= this.length) {
+            return null;
+        }
+
+        // The first line holds the number of taxa and nothing else
+        final long headerEnd = this.tokenEnd(pos, this.length);
+        final int nbTaxa;
+        try {
+            nbTaxa = Integer.parseInt(this.text(pos, headerEnd));
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("First line of phylip file should hold the number of taxa, found: " +
+                    this.text(pos, headerEnd));
+        }
+
+        if (nbTaxa < 0) {
+            throw new IllegalArgumentException("Number of taxa must not be negative: " + nbTaxa);
+        }
+
+        final long[] rowStarts = this.findRows(this.nextLine(headerEnd), nbTaxa);
+
+        final String[] names = new String[nbTaxa];
+        final double[] distances = new double[DenseDistanceMatrix.nbEntries(nbTaxa)];
+
+        pool.invoke(new RowTask(rowStarts, names, distances, 0, nbTaxa));
+
+        return new DenseDistanceMatrix(new IdentifierList(names), distances);
+    }
+
+    /**
+     * Finds the start of each row, with the end of the file appended as the end of the last row
+     */
+    private long[] findRows(long pos, int nbTaxa) {
+
+        final long[] rowStarts = new long[nbTaxa + 1];
+        int row = 0;
+
+        while (pos < this.length) {
+
+            if (!isWhitespace(this.at(pos))) {
+                if (row == nbTaxa) {
+                    throw new IllegalArgumentException("Phylip file has more rows than the " + nbTaxa + " taxa declared");
+                }
+                rowStarts[row++] = pos;
+            }
+
+            pos = this.nextLine(pos);
+        }
+
+        if (row != nbTaxa) {
+            throw new IllegalArgumentException("Phylip file declares " + nbTaxa + " taxa but only has " + row + " rows");
+        }
+
+        rowStarts[nbTaxa] = this.length;
+
+        return rowStarts;
+    }
+
+    private void parseRow(int row, long start, long end, String[] names, double[] distances) {
+
+        final int n = names.length;
+
+        long pos = start;
+        long tokenEnd = this.tokenEnd(pos, end);
+        names[row] = this.text(pos, tokenEnd);
+
+        for (int col = 0; col < n; col++) {
+
+            pos = this.skipWhitespace(tokenEnd, end);
+            if (pos >= end) {
+                throw new IllegalArgumentException("Row " + (row + 1) + " (" + names[row] + ") of phylip file has " +
+                        col + " distances, expected " + n);
+            }
+
+            tokenEnd = this.tokenEnd(pos, end);
+
+            // Only the lower triangle is kept, so there is no need to parse the rest
+            if (col < row) {
+                distances[DenseDistanceMatrix.index(row, col)] = this.parseDouble(pos, tokenEnd);
+            }
+        }
+
+        if (this.skipWhitespace(tokenEnd, end) < end) {
+            throw new IllegalArgumentException("Row " + (row + 1) + " (" + names[row] + ") of phylip file has more than " +
+                    n + " distances");
+        }
+    }
+
+    /**
+     * Parses a decimal number.  Numbers with up to 15 significant digits and a small exponent, which covers nearly all
+     * distances, are converted with a single correctly rounded multiplication or division by a power of ten.  Anything
+     * else, including malformed numbers, is left to {@link Double#parseDouble(String)}, so the result is always the same
+     * as that method would give.
+     */
+    private double parseDouble(long start, long end) {
+
+        long pos = start;
+        byte b = this.at(pos);
+
+        final boolean negative = b == '-';
+        if (negative || b == '+') {
+            pos++;
+        }
+
+        long mantissa = 0;
+        int significant = 0;
+        int exponent = 0;
+        int digits = 0;
+
+        while (pos < end && isDigit(b = this.at(pos))) {
+            mantissa = mantissa * 10 + (b - '0');
+            if (mantissa != 0) {
+                significant++;
+            }
+            digits++;
+            pos++;
+            if (significant > MAX_EXACT_DIGITS) {
+                return this.slowParseDouble(start, end);
+            }
+        }
+
+        if (pos < end && this.at(pos) == '.') {
+            pos++;
+            while (pos < end && isDigit(b = this.at(pos))) {
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0) {
+                    significant++;
+                }
+                exponent--;
+                digits++;
+                pos++;
+                if (significant > MAX_EXACT_DIGITS) {
+                    return this.slowParseDouble(start, end);
+                }
+            }
+        }
+
+        if (digits > 0 && pos < end && ((b = this.at(pos)) == 'e' || b == 'E')) {
+            pos++;
+            final boolean negativeExponent = pos < end && this.at(pos) == '-';
+            if (pos < end && (negativeExponent || this.at(pos) == '+')) {
+                pos++;
+            }
+            int value = 0;
+            int exponentDigits = 0;
+            while (pos < end && isDigit(b = this.at(pos)) && value < 10000) {
+                value = value * 10 + (b - '0');
+                exponentDigits++;
+                pos++;
+            }
+            if (exponentDigits == 0) {
+                return this.slowParseDouble(start, end);
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (digits == 0 || pos != end || exponent < -22 || exponent > 22) {
+            return this.slowParseDouble(start, end);
+        }
+
+        final double magnitude = exponent < 0 ?
+                mantissa / POWERS_OF_TEN[-exponent] :
+                mantissa * POWERS_OF_TEN[exponent];
+
+        return negative ? -magnitude : magnitude;
+    }
+
+    private double slowParseDouble(long start, long end) {
+        final String token = this.text(start, end);
+        try {
+            return Double.parseDouble(token);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("Invalid distance in phylip file: " + token);
+        }
+    }
+
+    private byte at(long pos) {
+        return this.regions[(int) (pos >>> REGION_BITS)].get((int) (pos & REGION_MASK));
+    }
+
+    private String text(long start, long end) {
+        final byte[] bytes = new byte[(int) (end - start)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = this.at(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private long skipWhitespace(long pos, long end) {
+        while (pos < end && isWhitespace(this.at(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private long tokenEnd(long pos, long end) {
+        while (pos < end && !isWhitespace(this.at(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Position just after the next line break, treating "\r\n" as a line break followed by an empty line
+     */
+    private long nextLine(long pos) {
+        while (pos < this.length) {
+            final byte b = this.at(pos++);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Parses a range of rows, splitting the range in half until it is small enough to do on one thread
+     */
+    private class RowTask extends RecursiveAction {
+
+        private final long[] rowStarts;
+        private final String[] names;
+        private final double[] distances;
+        private final int start;
+        private final int end;
+
+        private RowTask(long[] rowStarts, String[] names, double[] distances, int start, int end) {
+            this.rowStarts = rowStarts;
+            this.names = names;
+            this.distances = distances;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (this.end - this.start > ROWS_PER_TASK) {
+                final int mid = (this.start + this.end) >>> 1;
+                invokeAll(new RowTask(this.rowStarts, this.names, this.distances, this.start, mid),
+                        new RowTask(this.rowStarts, this.names, this.distances, mid, this.end));
+                return;
+            }
+
+            for (int row = this.start; row < this.end; row++) {
+                parseRow(row, this.rowStarts[row], this.rowStarts[row + 1], this.names, this.distances);
+            }
+        }
+    }
+}
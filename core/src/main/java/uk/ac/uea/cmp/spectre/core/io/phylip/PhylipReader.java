@@ -15,17 +15,17 @@
 
 package uk.ac.uea.cmp.spectre.core.io.phylip;
 
-import org.apache.commons.io.FileUtils;
 import org.kohsuke.MetaInfServices;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
-import uk.ac.uea.cmp.spectre.core.ds.distance.FlexibleDistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.io.AbstractSpectreReader;
 import uk.ac.uea.cmp.spectre.core.io.SpectreDataType;
 import uk.ac.uea.cmp.spectre.core.io.SpectreReader;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.List;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created with IntelliJ IDEA.
@@ -47,6 +47,20 @@ public class PhylipReader extends AbstractSpectreReader {
     @Override
     public DistanceMatrix readDistanceMatrix(File file) throws IOException {
 
+        return this.readDistanceMatrix(file, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads a distance matrix from a phylip file, which is memory mapped and parsed in parallel on the given pool.  Rows
+     * may be split over several lines, as long as the continuation lines start with whitespace.
+     *
+     * @param file The phylip file to read
+     * @param pool The pool used to parse ranges of rows
+     * @return The distance matrix, with associated taxa set, or null if the file is empty
+     * @throws IOException Thrown if there were any problems accessing or parsing the file.
+     */
+    public DistanceMatrix readDistanceMatrix(File file, ForkJoinPool pool) throws IOException {
+
         // Validation before reading
         if (file == null) {
             throw new NullPointerException("Must specify a phylip file to read");
@@ -60,11 +74,11 @@ public class PhylipReader extends AbstractSpectreReader {
             throw new IOException("Phylip file cannot be read: " + file.getAbsolutePath());
         }
 
-        // Load file into line collection
-        List<String> inLines = FileUtils.readLines(file, "UTF-8");
-
-        // Execute Parseing code.
-        return alternativeParser(inLines);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new MappedPhylipParser(channel).parse(pool);
+        } catch (IllegalArgumentException iae) {
+            throw new IOException("Error parsing phylip file: " + file.getAbsolutePath() + ": " + iae.getMessage(), iae);
+        }
     }
 
     @Override
@@ -85,59 +99,4 @@ public class PhylipReader extends AbstractSpectreReader {
 
         return false;
     }
-
-
-    /**
-     * Alternative Phylip parser which handles multi-line phylip files
-     *
-     * @param lines Data from input file split into lines
-     * @return DistanceMatrix
-     */
-    private DistanceMatrix alternativeParser(List<String> lines) {
-
-        if (lines == null || lines.isEmpty()) {
-            return null;
-        }
-
-        String firstLine = lines.get(0).trim();
-        int nbTaxa = Integer.parseInt(firstLine);
-
-        DistanceMatrix distanceMatrix = new FlexibleDistanceMatrix(nbTaxa);
-
-        int dmRow = 1;
-        int dmCol = 1;
-
-        // Process the rest of the lines
-        for (int i = 1; i < lines.size(); i++) {
-
-            String aLine = lines.get(i);
-
-            // Ignore empty lines
-            if (aLine.trim().isEmpty())
-                continue;
-
-            String[] parts = aLine.split(" ");
-
-            if (!parts[0].isEmpty()) {
-                distanceMatrix.getTaxa().getById(dmRow).setName(parts[0]);
-            }
-
-            // Run through the rest of the line
-            for (int j = 1; j < parts.length; j++) {
-
-                String trimmedPart = parts[j].trim();
-
-                if (!trimmedPart.isEmpty()) {
-                    distanceMatrix.setDistance(dmRow, dmCol++, Double.parseDouble(trimmedPart));
-                }
-            }
-
-            if (dmCol > nbTaxa) {
-                dmRow++;
-                dmCol = 1;
-            }
-        }
-
-        return distanceMatrix;
-    }
 }
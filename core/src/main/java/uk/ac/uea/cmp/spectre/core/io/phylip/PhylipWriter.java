@@ -15,15 +15,19 @@
 
 package uk.ac.uea.cmp.spectre.core.io.phylip;
 
-import org.apache.commons.io.FileUtils;
 import uk.ac.uea.cmp.spectre.core.ds.Identifier;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.io.AbstractSpectreWriter;
-import uk.ac.uea.cmp.spectre.core.util.CollectionUtils;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * Created with IntelliJ IDEA. User: Dan Date: 14/05/13 Time: 20:24 To change this template use File | Settings | File
@@ -31,28 +35,130 @@ import java.io.IOException;
  */
 public class PhylipWriter extends AbstractSpectreWriter {
 
+    /* Size of the byte buffer that rows are formatted into before being written out */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Writes the distance matrix with rows in name order.  Rows are formatted straight into a byte buffer one value at a
+     * time, so memory use does not grow with the size of the matrix.
+     */
     @Override
     public void writeDistanceMatrix(File outFile, DistanceMatrix distanceMatrix) throws IOException {
 
         final int n = distanceMatrix.size();
 
-        StringBuilder fileContent = new StringBuilder(10 * n * n);
+        final IdentifierList taxa = distanceMatrix.getTaxa();
+        final Comparator<Identifier> byName = new Identifier.NameComparator();
 
-        fileContent.append(n);
-        fileContent.append("\n");
+        // Row order by name, as indices into the matrix so distances can be looked up directly
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return byName.compare(taxa.get(o1), taxa.get(o2));
+            }
+        });
 
-        IdentifierList nameSortedTaxa = distanceMatrix.getTaxa(new Identifier.NameComparator());
-        double[][] matrix = distanceMatrix.getMatrix(new Identifier.NameComparator());
+        try (AsciiBuffer out = new AsciiBuffer(new FileOutputStream(outFile))) {
 
-        for (int i = 0; i < n; i++) {
+            out.append(n).newLine();
+
+            for (int i = 0; i < n; i++) {
+
+                out.append(String.valueOf(taxa.get(order[i]).getName()));
+
+                for (int j = 0; j < n; j++) {
+                    out.append(' ').append(i == j ? 0.0 : distanceMatrix.getDistanceByIndex(order[i], order[j]));
+                }
+
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Buffers output as bytes, formatting numbers through a reused builder rather than creating a string for each
+     */
+    private static class AsciiBuffer implements Closeable {
+
+        private final OutputStream out;
+        private final byte[] buffer;
+        private final StringBuilder number;
+        private int fill;
+
+        private AsciiBuffer(OutputStream out) {
+            this.out = out;
+            this.buffer = new byte[BUFFER_SIZE];
+            this.number = new StringBuilder(32);
+            this.fill = 0;
+        }
 
-            fileContent.append(nameSortedTaxa.get(i).getName());
-            fileContent.append(" ");
-            fileContent.append(CollectionUtils.doubleArrayToString(matrix[i], " "));
-            fileContent.append("\n");
+        private AsciiBuffer append(char c) throws IOException {
+            if (this.fill == this.buffer.length) {
+                this.flush();
+            }
+            this.buffer[this.fill++] = (byte) c;
+            return this;
         }
 
-        // Save
-        FileUtils.writeStringToFile(outFile, fileContent.toString(), "UTF-8");
+        private AsciiBuffer append(double value) throws IOException {
+            this.number.setLength(0);
+            this.number.append(value);
+            return this.appendNumber();
+        }
+
+        private AsciiBuffer append(int value) throws IOException {
+            this.number.setLength(0);
+            this.number.append(value);
+            return this.appendNumber();
+        }
+
+        private AsciiBuffer appendNumber() throws IOException {
+            if (this.fill + this.number.length() > this.buffer.length) {
+                this.flush();
+            }
+            for (int i = 0; i < this.number.length(); i++) {
+                this.buffer[this.fill++] = (byte) this.number.charAt(i);
+            }
+            return this;
+        }
+
+        /**
+         * Appends text which may not be plain ascii, such as taxon names, encoded as UTF-8
+         */
+        private AsciiBuffer append(String text) throws IOException {
+            final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            if (this.fill + bytes.length > this.buffer.length) {
+                this.flush();
+            }
+            if (bytes.length > this.buffer.length) {
+                this.out.write(bytes);
+            } else {
+                System.arraycopy(bytes, 0, this.buffer, this.fill, bytes.length);
+                this.fill += bytes.length;
+            }
+            return this;
+        }
+
+        private AsciiBuffer newLine() throws IOException {
+            return this.append('\n');
+        }
+
+        private void flush() throws IOException {
+            this.out.write(this.buffer, 0, this.fill);
+            this.fill = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.flush();
+            } finally {
+                this.out.close();
+            }
+        }
     }
 }
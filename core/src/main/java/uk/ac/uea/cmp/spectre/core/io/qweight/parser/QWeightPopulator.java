@@ -186,8 +186,8 @@ public class QWeightPopulator implements QWeightListener {
             log.warn("Found the unexpected number of taxa in file.  Was expecting: " + this.expectedTaxa + ";  found: " + actualTaxa);
         }
 
-        final int expectedQuartets = QuartetUtils.over4(this.expectedTaxa);
-        final int actualQuartets = this.groupedQuartetSystem.getQuartets().size();
+        final long expectedQuartets = QuartetUtils.over4(this.expectedTaxa);
+        final long actualQuartets = this.groupedQuartetSystem.getQuartets().size();
 
         if (actualQuartets != expectedQuartets) {
 
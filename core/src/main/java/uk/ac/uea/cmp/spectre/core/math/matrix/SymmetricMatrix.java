@@ -15,58 +15,86 @@
 
 package uk.ac.uea.cmp.spectre.core.math.matrix;
 
-import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetUtils;
-
 /**
  * Created by IntelliJ IDEA. User: Analysis Date: 2004-jul-11 Time: 19:08:50 To
  * change this template use Options | File Templates.
  */
 public class SymmetricMatrix {
 
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
     private int size;
     private double[] diagonal;
-    private double[] triangle;
+
+    /**
+     * The strict lower triangle, packed row by row and split into chunks, so that it can hold more than 2^31 entries.
+     * All chunks are allocated up front, so distinct entries can be set from different threads.
+     */
+    private double[][] triangle;
 
     public SymmetricMatrix(int size) {
 
         this.size = size;
 
         diagonal = new double[size];
-        triangle = new double[QuartetUtils.over2(size)];
 
-        for (int n = 0; n < size; n++) {
-            diagonal[n] = 0.0;
-        }
+        final long nbEntries = nbTriangleEntries(size);
+        final int nbChunks = (int) ((nbEntries + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+
+        triangle = new double[nbChunks][];
 
-        for (int n = 0; n < QuartetUtils.over2(size); n++) {
-            triangle[n] = 0.0;
+        for (int i = 0; i < nbChunks; i++) {
+            triangle[i] = new double[(int) Math.min(CHUNK_SIZE, nbEntries - ((long) i << CHUNK_BITS))];
         }
+    }
+
+    /**
+     * @param size The size of a matrix
+     * @return The number of entries below the diagonal
+     */
+    public static long nbTriangleEntries(int size) {
+        return size > 1 ? (long) size * (size - 1) / 2 : 0;
+    }
 
+    /**
+     * Index of entry (i, j), where i &gt; j, in the packed triangle
+     */
+    private static long index(int i, int j) {
+        return (long) i * (i - 1) / 2 + j;
     }
 
     public int getSize() {
         return size;
     }
 
+    /**
+     * Sets both (i, j) and (j, i).  Safe to call from different threads as long as they set different entries.
+     *
+     * @param i Row
+     * @param j Column
+     * @param newW The new value
+     */
     public void setElementAt(int i, int j, double newW) {
 
-        if (i > j) {
-            triangle[QuartetUtils.over2(i) + QuartetUtils.over1(j)] = newW;
-        } else if (j > i) {
-            triangle[QuartetUtils.over2(j) + QuartetUtils.over1(i)] = newW;
-        } else {
+        if (i == j) {
             diagonal[i] = newW;
+            return;
         }
+
+        final long k = i > j ? index(i, j) : index(j, i);
+        triangle[(int) (k >>> CHUNK_BITS)][(int) (k & CHUNK_MASK)] = newW;
     }
 
     public double getElementAt(int i, int j) {
 
-        return i > j ?
-                triangle[QuartetUtils.over2(i) + QuartetUtils.over1(j)] :
-                j > i ?
-                        triangle[QuartetUtils.over2(j) + QuartetUtils.over1(i)] :
-                        diagonal[i];
+        if (i == j) {
+            return diagonal[i];
+        }
 
+        final long k = i > j ? index(i, j) : index(j, i);
+        return triangle[(int) (k >>> CHUNK_BITS)][(int) (k & CHUNK_MASK)];
     }
 
 
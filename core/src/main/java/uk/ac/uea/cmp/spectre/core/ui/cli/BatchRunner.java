@@ -0,0 +1,551 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ui.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.uea.cmp.spectre.core.ui.gui.RunnableTool;
+import uk.ac.uea.cmp.spectre.core.util.LogConfig;
+import uk.ac.uea.cmp.spectre.core.util.SpiFactory;
+import uk.ac.uea.cmp.spectre.core.util.ToolMetrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a batch of jobs for any of the tools that provide a {@link RunnableToolFactory}, on a fixed size thread pool
+ * within a single JVM.  Jobs are described in a manifest file, one per line, as the name of the tool followed by the
+ * arguments that would be given to the tool's executable, e.g.:
+ *
+ * <pre>
+ * # tool    arguments
+ * netmake   -o out/sample1 sample1.fa
+ * netmake   -o out/sample2 -b 100 "my samples/sample2.fa"
+ * qnet      -o out/quartets.nex quartets.nex
+ * </pre>
+ *
+ * Arguments containing spaces can be wrapped in single or double quotes.  Blank lines and lines starting with '#' are
+ * ignored.  Every job gets its own tool and options objects, so jobs don't share any state, and a job that fails does
+ * not stop the others.  The time taken by each job and the reason for any failure are reported once all jobs have
+ * finished, along with the time and memory used by each phase of each job if requested.
+ */
+public class BatchRunner {
+
+    private static Logger log = LoggerFactory.getLogger(BatchRunner.class);
+
+    public static final String OPT_THREADS = "threads";
+    public static final String OPT_REPORT = "report";
+    public static final String OPT_METRICS = CommandLineHelper.OPT_METRICS;
+    public static final String OPT_VERBOSE = "verbose";
+
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Commons CLI's OptionBuilder keeps the option being built in static fields, so tools can't parse their arguments
+     * on several threads at once.  Parsing is cheap compared to running the tool, so it is just done one job at a time.
+     */
+    private static final Object PARSE_LOCK = new Object();
+
+    /**
+     * Outcome of a job
+     */
+    public enum Status {
+        SUCCEEDED,
+        FAILED
+    }
+
+    /**
+     * A single line from the manifest
+     */
+    public static class Job {
+
+        private final int lineNumber;
+        private final String tool;
+        private final String[] args;
+
+        public Job(int lineNumber, String tool, String[] args) {
+            this.lineNumber = lineNumber;
+            this.tool = tool;
+            this.args = args;
+        }
+
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        public String getTool() {
+            return tool;
+        }
+
+        public String[] getArgs() {
+            return args;
+        }
+
+        @Override
+        public String toString() {
+            return this.tool + " " + StringUtils.join(this.args, " ");
+        }
+    }
+
+    /**
+     * What happened when a job was run
+     */
+    public static class JobReport {
+
+        private final Job job;
+        private final long startTime;
+        private final long duration;
+        private final Throwable error;
+        private final ToolMetrics metrics;
+
+        public JobReport(Job job, long startTime, long duration, Throwable error, ToolMetrics metrics) {
+            this.job = job;
+            this.startTime = startTime;
+            this.duration = duration;
+            this.error = error;
+            this.metrics = metrics;
+        }
+
+        public Job getJob() {
+            return job;
+        }
+
+        /**
+         * @return The time the job started, in milliseconds since the epoch
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return The time the job took, in milliseconds
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * @return The time and memory used by each phase of the job, or null if the tool could not be created
+         */
+        public ToolMetrics getMetrics() {
+            return metrics;
+        }
+
+        public Status getStatus() {
+            return this.error == null ? Status.SUCCEEDED : Status.FAILED;
+        }
+
+        public static String header() {
+            return StringUtils.join(new String[]{"line", "tool", "status", "start", "duration_ms", "args", "error"}, "\t");
+        }
+
+        @Override
+        public String toString() {
+            return StringUtils.join(new String[]{
+                    Integer.toString(this.job.getLineNumber()),
+                    this.job.getTool(),
+                    this.getStatus().toString(),
+                    Long.toString(this.startTime),
+                    Long.toString(this.duration),
+                    StringUtils.join(this.job.getArgs(), " "),
+                    this.error == null ? "" : String.valueOf(this.error.getMessage()).replaceAll("\\s+", " ")
+            }, "\t");
+        }
+    }
+
+
+    private final Map<String, RunnableToolFactory> factories;
+    private final int nbThreads;
+
+    /**
+     * Creates a batch runner for all tools found on the classpath
+     *
+     * @param nbThreads Maximum number of jobs to run at once
+     */
+    public BatchRunner(int nbThreads) {
+        this(new SpiFactory<>(RunnableToolFactory.class).getServices(), nbThreads);
+    }
+
+    /**
+     * Creates a batch runner for the given tools
+     *
+     * @param factories Factories for the tools that jobs can use
+     * @param nbThreads Maximum number of jobs to run at once
+     */
+    public BatchRunner(List<RunnableToolFactory> factories, int nbThreads) {
+
+        if (nbThreads < 1) {
+            throw new IllegalArgumentException("Must have at least one thread to run jobs on");
+        }
+
+        this.factories = new LinkedHashMap<>();
+        for (RunnableToolFactory factory : factories) {
+            this.factories.put(factory.getName().toLowerCase(), factory);
+        }
+        this.nbThreads = nbThreads;
+    }
+
+    /**
+     * @return The names of the tools that jobs can use
+     */
+    public List<String> getToolNames() {
+        return new ArrayList<>(this.factories.keySet());
+    }
+
+    /**
+     * Reads the jobs from a manifest file
+     *
+     * @param manifest The manifest file
+     * @return The jobs, in the order they appear in the manifest
+     * @throws IOException If the manifest could not be read, or a line could not be split into arguments
+     */
+    public static List<Job> readManifest(File manifest) throws IOException {
+
+        List<Job> jobs = new ArrayList<>();
+
+        int lineNumber = 0;
+        for (String line : FileUtils.readLines(manifest)) {
+
+            lineNumber++;
+
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+
+            List<String> tokens;
+            try {
+                tokens = tokenise(trimmed);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Error in manifest at line " + lineNumber + ": " + e.getMessage());
+            }
+
+            jobs.add(new Job(lineNumber, tokens.get(0), tokens.subList(1, tokens.size()).toArray(new String[tokens.size() - 1])));
+        }
+
+        return jobs;
+    }
+
+    /**
+     * Splits a line into whitespace separated tokens.  Text between matching single or double quotes is kept together
+     * as part of the same token, without the quotes.
+     *
+     * @param line The line to split
+     * @return The tokens in the line
+     */
+    public static List<String> tokenise(String line) {
+
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean inToken = false;
+        char quote = 0;
+
+        for (int i = 0; i < line.length(); i++) {
+
+            char c = line.charAt(i);
+
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+                else {
+                    token.append(c);
+                }
+            }
+            else if (c == '"' || c == '\'') {
+                quote = c;
+                inToken = true;
+            }
+            else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                    inToken = false;
+                }
+            }
+            else {
+                token.append(c);
+                inToken = true;
+            }
+        }
+
+        if (quote != 0) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+
+        if (inToken) {
+            tokens.add(token.toString());
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Runs all the jobs and waits for them to finish
+     *
+     * @param jobs The jobs to run
+     * @return A report for each job, in the same order as the jobs
+     * @throws InterruptedException If interrupted while waiting for the jobs to finish
+     */
+    public List<JobReport> run(List<Job> jobs) throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.nbThreads, Math.max(jobs.size(), 1)));
+
+        try {
+            List<Future<JobReport>> futures = new ArrayList<>();
+            for (Job job : jobs) {
+                futures.add(executor.submit(new JobTask(job)));
+            }
+
+            List<JobReport> reports = new ArrayList<>();
+            for (Future<JobReport> future : futures) {
+                try {
+                    reports.add(future.get());
+                } catch (ExecutionException e) {
+                    // JobTask records every failure in its report, so this should not happen
+                    throw new IllegalStateException("Batch job could not complete", e.getCause());
+                }
+            }
+
+            return reports;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates and runs the tool for a single job
+     */
+    private class JobTask implements Callable<JobReport> {
+
+        private final Job job;
+
+        private JobTask(Job job) {
+            this.job = job;
+        }
+
+        @Override
+        public JobReport call() {
+
+            final long startTime = System.currentTimeMillis();
+            final long start = System.nanoTime();
+
+            log.info("Starting job from line " + this.job.getLineNumber() + ": " + this.job);
+
+            Throwable error = null;
+            ToolMetrics metrics = null;
+            try {
+                RunnableToolFactory factory = factories.get(this.job.getTool().toLowerCase());
+                if (factory == null) {
+                    throw new IllegalArgumentException("Unknown tool: " + this.job.getTool() + ".  Expected one of: " +
+                            factories.keySet());
+                }
+
+                RunnableTool tool;
+                synchronized (PARSE_LOCK) {
+                    tool = factory.createTool(this.job.getArgs());
+                }
+
+                metrics = tool.getMetrics();
+                tool.run();
+
+                if (tool.failed()) {
+                    error = tool.getError();
+                }
+            } catch (Throwable t) {
+                // Includes errors thrown by the tool, such as running out of memory, so that the other jobs and their
+                // reports are unaffected
+                error = t;
+            }
+
+            final long duration = (System.nanoTime() - start) / 1000000L;
+
+            if (error == null) {
+                log.info("Job from line " + this.job.getLineNumber() + " completed in " + duration + "ms");
+            }
+            else {
+                log.error("Job from line " + this.job.getLineNumber() + " failed after " + duration + "ms: " + error.getMessage());
+            }
+
+            return new JobReport(this.job, startTime, duration, error, metrics);
+        }
+    }
+
+    /**
+     * Writes the reports to a tab separated file, with a header line
+     *
+     * @param reports The reports to write
+     * @param outputFile The file to write to
+     * @throws IOException If the file could not be written
+     */
+    public static void writeReport(List<JobReport> reports, File outputFile) throws IOException {
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+            writer.write(JobReport.header());
+            writer.newLine();
+            for (JobReport report : reports) {
+                writer.write(report.toString());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Writes the metrics for each job to a file as a JSON array, with one object per job
+     *
+     * @param reports The reports to write the metrics of
+     * @param outputFile The file to write to
+     * @throws IOException If the file could not be written
+     */
+    public static void writeMetrics(List<JobReport> reports, File outputFile) throws IOException {
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+            writer.write("[");
+            for (int i = 0; i < reports.size(); i++) {
+                JobReport report = reports.get(i);
+                writer.write(i == 0 ? "\n" : ",\n");
+                writer.write("  {\"line\": " + report.getJob().getLineNumber() + ", " +
+                        "\"tool\": \"" + ToolMetrics.escape(report.getJob().getTool()) + "\", " +
+                        "\"status\": \"" + report.getStatus() + "\", " +
+                        "\"duration_ms\": " + report.getDuration() + ", " +
+                        "\"metrics\": " + (report.getMetrics() == null ? "null" : report.getMetrics().toJson(2)) + "}");
+            }
+            writer.write(reports.isEmpty() ? "]" : "\n]");
+            writer.newLine();
+        }
+    }
+
+    /**
+     * Counts the reports for jobs that failed
+     *
+     * @param reports The reports to check
+     * @return The number of failed jobs
+     */
+    public static int countFailures(List<JobReport> reports) {
+
+        int failures = 0;
+        for (JobReport report : reports) {
+            if (report.getStatus() == Status.FAILED) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+
+    public static Options createOptions() {
+
+        Options options = new Options();
+
+        options.addOption(OptionBuilder.withArgName("int").withLongOpt(OPT_THREADS).hasArg()
+                .withDescription("Maximum number of jobs to run at once.  Default: number of available processors (" +
+                        DEFAULT_THREADS + ")").create("t"));
+
+        options.addOption(OptionBuilder.withArgName("file").withLongOpt(OPT_REPORT).hasArg()
+                .withDescription("Tab separated file to write the status and run time of each job to").create("r"));
+
+        options.addOption(OptionBuilder.withArgName("file").withLongOpt(OPT_METRICS).hasArg()
+                .withDescription("JSON file to write the time and memory used by each phase of each job to").create("m"));
+
+        options.addOption(OptionBuilder.withLongOpt(OPT_VERBOSE)
+                .withDescription("Whether to output extra information").create("v"));
+
+        options.addOption(CommandLineHelper.HELP_OPTION);
+
+        return options;
+    }
+
+    public static void main(String[] args) {
+
+        CommandLine commandLine = new CommandLineHelper().startApp(createOptions(), "spectre-batch [options] <manifest>",
+                "Runs a batch of jobs for the SPECTRE tools, several at a time, in a single process.\n" +
+                        "Each line of the manifest describes one job, as the name of a tool (e.g. netmake, netme, qnet, " +
+                        "superq or flatnj) followed by the arguments to give to it.  Blank lines and lines starting " +
+                        "with '#' are ignored.", args);
+
+        // If we didn't return a command line object then just return.  Probably the user requested help or
+        // input invalid args
+        if (commandLine == null) {
+            return;
+        }
+
+        try {
+            LogConfig.defaultConfig(commandLine.hasOption(OPT_VERBOSE));
+
+            if (commandLine.getArgs().length != 1) {
+                throw new ParseException("Expected a single manifest file.");
+            }
+
+            int nbThreads = commandLine.hasOption(OPT_THREADS) ? Integer.parseInt(commandLine.getOptionValue(OPT_THREADS)) : DEFAULT_THREADS;
+
+            List<Job> jobs = readManifest(new File(commandLine.getArgs()[0]));
+            BatchRunner runner = new BatchRunner(nbThreads);
+
+            log.info("Running " + jobs.size() + " jobs on up to " + nbThreads + " threads.  Available tools: " + runner.getToolNames());
+
+            long start = System.nanoTime();
+            List<JobReport> reports = runner.run(jobs);
+            long duration = (System.nanoTime() - start) / 1000000L;
+
+            for (JobReport report : reports) {
+                log.info(report.getStatus() + "\t" + report.getDuration() + "ms\tline " + report.getJob().getLineNumber() +
+                        ": " + report.getJob());
+            }
+
+            if (commandLine.hasOption(OPT_REPORT)) {
+                writeReport(reports, new File(commandLine.getOptionValue(OPT_REPORT)));
+            }
+
+            if (commandLine.hasOption(OPT_METRICS)) {
+                writeMetrics(reports, new File(commandLine.getOptionValue(OPT_METRICS)));
+            }
+
+            int failures = countFailures(reports);
+            log.info("Completed " + reports.size() + " jobs in " + duration + "ms, " + failures + " failed");
+
+            if (failures > 0) {
+                System.exit(1);
+            }
+
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            System.err.println(StringUtils.join(e.getStackTrace(), "\n"));
+            System.exit(1);
+        }
+    }
+}
@@ -16,8 +16,10 @@
 package uk.ac.uea.cmp.spectre.core.ui.cli;
 
 import org.apache.commons.cli.*;
+import uk.ac.uea.cmp.spectre.core.ui.gui.RunnableTool;
 import uk.ac.uea.cmp.spectre.core.util.ProjectProperties;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 
@@ -38,6 +40,10 @@ public class CommandLineHelper {
     public static final String OPT_VERSION = "version";
     public static final Option VERSION_OPTION = new Option("V", OPT_VERSION, false, "Print the current version.");
 
+    public static final String OPT_METRICS = "metrics";
+    public static final String DESC_METRICS = "If specified, writes the time and memory used by each phase of the run " +
+            "to this file in JSON format.";
+
 
     public static void printHelp(Options options, String cmdLineSyntax, String description) {
         new HelpFormatter().printHelp(
@@ -60,6 +66,25 @@ public class CommandLineHelper {
 
 
 
+    public static Option createMetricsOption() {
+        Option option = new Option("m", OPT_METRICS, true, DESC_METRICS);
+        option.setArgName("file");
+        return option;
+    }
+
+    /**
+     * Writes the metrics recorded by the tool to the file given by the metrics option, if the option was given
+     *
+     * @param commandLine The parsed command line
+     * @param tool The tool that was run
+     * @throws IOException If the metrics file could not be written
+     */
+    public static void writeMetrics(CommandLine commandLine, RunnableTool tool) throws IOException {
+        if (commandLine.hasOption(OPT_METRICS)) {
+            tool.getMetrics().writeJson(new File(commandLine.getOptionValue(OPT_METRICS)));
+        }
+    }
+
     public static Options createHelpOptions() {
 
         Options options = new Options();
@@ -0,0 +1,42 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ui.cli;
+
+import org.apache.commons.cli.ParseException;
+import uk.ac.uea.cmp.spectre.core.ui.gui.RunnableTool;
+import uk.ac.uea.cmp.spectre.core.util.Service;
+
+import java.io.IOException;
+
+/**
+ * Creates configured instances of a tool from command line arguments, so that the tool can be run by the
+ * {@link BatchRunner} without going through its main method.  Implementations are found using the service loader and
+ * are identified by the name of the tool's executable, e.g. "netmake".
+ */
+public interface RunnableToolFactory extends Service {
+
+    /**
+     * Parses the given arguments and creates a new instance of the tool configured from them.  The instance must not
+     * share any mutable state with instances created by other calls, as they may be run concurrently.  Unlike the tool's
+     * main method, this must not print help or exit the JVM if the arguments are invalid.
+     *
+     * @param args The command line arguments for the tool, not including the tool's name
+     * @return A new tool, ready to run
+     * @throws ParseException If the arguments could not be parsed
+     * @throws IOException If the arguments refer to input or output files that can't be used
+     */
+    RunnableTool createTool(String[] args) throws ParseException, IOException;
+}
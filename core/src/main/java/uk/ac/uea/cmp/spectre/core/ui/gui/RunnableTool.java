@@ -16,6 +16,7 @@
 package uk.ac.uea.cmp.spectre.core.ui.gui;
 
 import org.apache.commons.lang3.StringUtils;
+import uk.ac.uea.cmp.spectre.core.util.ToolMetrics;
 
 import java.io.IOException;
 
@@ -28,6 +29,9 @@ public abstract class RunnableTool implements Runnable {
     private StatusTracker tracker;
     private volatile boolean continue_run;
 
+    // Metrics
+    private final ToolMetrics metrics;
+
     protected RunnableTool() {
         this(null, null);
     }
@@ -39,6 +43,7 @@ public abstract class RunnableTool implements Runnable {
     protected RunnableTool(StatusTracker tracker, ThreadCompleteListener listener) {
         this.error = null;
         this.continue_run = true;
+        this.metrics = new ToolMetrics();
 
         setTracker(tracker);
         setListener(listener);
@@ -90,6 +95,15 @@ public abstract class RunnableTool implements Runnable {
         }
     }
 
+    // Metrics handling routines.
+
+    /**
+     * @return The time and memory used by each phase of this tool's run so far
+     */
+    public ToolMetrics getMetrics() {
+        return this.metrics;
+    }
+
     // Listener handling routines.
     public final void setListener(final ThreadCompleteListener listener) {
         this.listener = listener;
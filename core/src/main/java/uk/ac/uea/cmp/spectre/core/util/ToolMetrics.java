@@ -0,0 +1,421 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.util;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the resources used by each phase of a tool's run, such as reading the input, calculating distances, finding
+ * the circular ordering, computing weights by NNLS, drawing the network and writing the output.  Phases run one after
+ * another, so starting a phase finishes the one before.  A phase that is started more than once, e.g. drawing both a
+ * network and a tree, accumulates the resources used each time.
+ *
+ * Wall time is always recorded.  CPU time, allocated bytes and peak heap are read from the JVM's management beans, and
+ * are -1 if the JVM can't provide them.  They cover the whole JVM rather than just the thread running the tool, so that
+ * work done on fork join pools is counted.  This means that they also include anything else running in the JVM at the
+ * same time, such as other jobs in a batch.
+ *
+ * The peak heap is sampled at the start and end of a phase and just before each garbage collection during it.  The
+ * memory pools' own peak usage is left alone, as resetting it would disturb the metrics of any other tool running in the
+ * same JVM.
+ */
+public class ToolMetrics {
+
+    public static final String READ = "read";
+    public static final String DISTANCES = "distances";
+    public static final String ORDERING = "ordering";
+    public static final String NNLS = "nnls";
+    public static final String DRAWING = "drawing";
+    public static final String WRITE = "write";
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final OperatingSystemMXBean OS = ManagementFactory.getOperatingSystemMXBean();
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    /**
+     * Resources used by a single phase
+     */
+    public static class Phase {
+
+        private final String name;
+        private long wallTime;
+        private long cpuTime;
+        private long allocatedBytes;
+        private long peakHeapBytes;
+
+        public Phase(String name) {
+            this.name = name;
+            this.wallTime = 0;
+            this.cpuTime = 0;
+            this.allocatedBytes = 0;
+            this.peakHeapBytes = 0;
+        }
+
+        public Phase(Phase other) {
+            this.name = other.name;
+            this.wallTime = other.wallTime;
+            this.cpuTime = other.cpuTime;
+            this.allocatedBytes = other.allocatedBytes;
+            this.peakHeapBytes = other.peakHeapBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Elapsed time in nanoseconds
+         */
+        public long getWallTime() {
+            return wallTime;
+        }
+
+        /**
+         * @return CPU time used by the JVM in nanoseconds, or -1 if not available
+         */
+        public long getCpuTime() {
+            return cpuTime;
+        }
+
+        /**
+         * @return Bytes allocated on the heap, or -1 if not available
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * @return The most heap in use at once in bytes, as seen at the start and end of the phase and before each
+         * garbage collection during it, or -1 if not available
+         */
+        public long getPeakHeapBytes() {
+            return peakHeapBytes;
+        }
+
+        private void add(long wallTime, long cpuTime, long allocatedBytes, long peakHeapBytes) {
+            this.wallTime += wallTime;
+            this.cpuTime = cpuTime < 0 || this.cpuTime < 0 ? -1 : this.cpuTime + cpuTime;
+            this.allocatedBytes = allocatedBytes < 0 || this.allocatedBytes < 0 ? -1 : this.allocatedBytes + allocatedBytes;
+            this.peakHeapBytes = peakHeapBytes < 0 || this.peakHeapBytes < 0 ? -1 : Math.max(this.peakHeapBytes, peakHeapBytes);
+        }
+
+        private String toJson() {
+            return "{\"name\": \"" + escape(this.name) + "\", " +
+                    "\"wall_ns\": " + this.wallTime + ", " +
+                    "\"cpu_ns\": " + this.cpuTime + ", " +
+                    "\"allocated_bytes\": " + this.allocatedBytes + ", " +
+                    "\"peak_heap_bytes\": " + this.peakHeapBytes + "}";
+        }
+    }
+
+
+    private final Map<String, Phase> phases;
+
+    private String current;
+    private long startWallTime;
+    private long startCpuTime;
+    private Map<Long, Long> startAllocated;
+    private long peakHeap;
+    private final HeapSampler heapSampler;
+
+    public ToolMetrics() {
+        this.phases = new LinkedHashMap<>();
+        this.current = null;
+        this.heapSampler = new HeapSampler();
+    }
+
+    /**
+     * Records the heap in use just before each garbage collection while a phase is running
+     */
+    private class HeapSampler implements NotificationListener {
+
+        private final Set<String> heapPools;
+        private final List<NotificationEmitter> emitters;
+
+        private HeapSampler() {
+            this.heapPools = new HashSet<>();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    this.heapPools.add(pool.getName());
+                }
+            }
+            this.emitters = new ArrayList<>();
+        }
+
+        private void register() {
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (gc instanceof NotificationEmitter) {
+                    ((NotificationEmitter) gc).addNotificationListener(this, null, null);
+                    this.emitters.add((NotificationEmitter) gc);
+                }
+            }
+        }
+
+        private void unregister() {
+            for (NotificationEmitter emitter : this.emitters) {
+                try {
+                    emitter.removeNotificationListener(this);
+                } catch (ListenerNotFoundException e) {
+                    // Already gone, nothing to do
+                }
+            }
+            this.emitters.clear();
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+
+            if (!notification.getType().equals(
+                    com.sun.management.GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+
+            final com.sun.management.GarbageCollectionNotificationInfo info =
+                    com.sun.management.GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+
+            long used = 0;
+            for (Map.Entry<String, MemoryUsage> entry : info.getGcInfo().getMemoryUsageBeforeGc().entrySet()) {
+                if (this.heapPools.contains(entry.getKey())) {
+                    used += entry.getValue().getUsed();
+                }
+            }
+
+            sampleHeap(used);
+        }
+    }
+
+    private synchronized void sampleHeap(long used) {
+        if (this.current != null) {
+            this.peakHeap = Math.max(this.peakHeap, used);
+        }
+    }
+
+    /**
+     * Starts recording a phase, finishing the current phase if there is one
+     *
+     * @param name Name of the phase
+     */
+    public synchronized void start(String name) {
+
+        this.stop();
+
+        this.current = name;
+        this.peakHeap = heapUsed();
+        this.heapSampler.register();
+        this.startAllocated = allocatedBytes();
+        this.startCpuTime = cpuTime();
+        this.startWallTime = System.nanoTime();
+    }
+
+    /**
+     * Finishes the current phase, if there is one
+     */
+    public synchronized void stop() {
+
+        if (this.current == null) {
+            return;
+        }
+
+        final long wallTime = System.nanoTime() - this.startWallTime;
+        final long cpuTime = cpuTime();
+        final Map<Long, Long> allocated = allocatedBytes();
+
+        this.heapSampler.unregister();
+        final long peakHeap = Math.max(this.peakHeap, heapUsed());
+
+        long allocatedBytes = -1;
+        if (allocated != null && this.startAllocated != null) {
+            allocatedBytes = 0;
+            for (Map.Entry<Long, Long> entry : allocated.entrySet()) {
+                final Long start = this.startAllocated.get(entry.getKey());
+                allocatedBytes += entry.getValue() - (start == null ? 0 : start);
+            }
+        }
+
+        Phase phase = this.phases.get(this.current);
+        if (phase == null) {
+            phase = new Phase(this.current);
+            this.phases.put(this.current, phase);
+        }
+
+        phase.add(wallTime,
+                cpuTime < 0 || this.startCpuTime < 0 ? -1 : cpuTime - this.startCpuTime,
+                allocatedBytes,
+                peakHeap);
+
+        this.current = null;
+        this.startAllocated = null;
+    }
+
+    /**
+     * @return A copy of each phase recorded so far, in the order they were first started
+     */
+    public synchronized List<Phase> getPhases() {
+
+        List<Phase> copy = new ArrayList<>();
+        for (Phase phase : this.phases.values()) {
+            copy.add(new Phase(phase));
+        }
+        return copy;
+    }
+
+    /**
+     * @param name Name of the phase
+     * @return A copy of the named phase, or null if it hasn't been recorded
+     */
+    public synchronized Phase getPhase(String name) {
+        Phase phase = this.phases.get(name);
+        return phase == null ? null : new Phase(phase);
+    }
+
+    /**
+     * @return The sum of the times and allocations of all phases, and the highest peak heap
+     */
+    public synchronized Phase getTotal() {
+
+        Phase total = new Phase("total");
+        for (Phase phase : this.phases.values()) {
+            total.add(phase.wallTime, phase.cpuTime, phase.allocatedBytes, phase.peakHeapBytes);
+        }
+        return total;
+    }
+
+    /**
+     * Creates a JSON object containing each phase followed by the total
+     *
+     * @param indent Number of spaces to indent lines after the first by
+     * @return A JSON representation of these metrics
+     */
+    public synchronized String toJson(int indent) {
+
+        final String pad = StringUtils.repeat(' ', indent);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n").append(pad).append("  \"phases\": [");
+
+        boolean first = true;
+        for (Phase phase : this.phases.values()) {
+            sb.append(first ? "\n" : ",\n").append(pad).append("    ").append(phase.toJson());
+            first = false;
+        }
+
+        sb.append(first ? "],\n" : "\n" + pad + "  ],\n");
+        sb.append(pad).append("  \"total\": ").append(this.getTotal().toJson()).append("\n");
+        sb.append(pad).append("}");
+
+        return sb.toString();
+    }
+
+    public String toJson() {
+        return this.toJson(0);
+    }
+
+    /**
+     * Writes these metrics to a file in JSON format
+     *
+     * @param outputFile The file to write to
+     * @throws IOException If the file could not be written
+     */
+    public void writeJson(File outputFile) throws IOException {
+        FileUtils.writeStringToFile(outputFile, this.toJson() + "\n");
+    }
+
+    /**
+     * Escapes a string so that it can be placed between double quotes in JSON
+     *
+     * @param s The string to escape
+     * @return The escaped string
+     */
+    public static String escape(String s) {
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+
+    private static long cpuTime() {
+        return OS instanceof com.sun.management.OperatingSystemMXBean ?
+                ((com.sun.management.OperatingSystemMXBean) OS).getProcessCpuTime() :
+                -1;
+    }
+
+    /**
+     * Gets the bytes allocated so far by each live thread, keyed by thread id, or null if not available
+     */
+    private static Map<Long, Long> allocatedBytes() {
+
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+
+        final long[] ids = threads.getAllThreadIds();
+        final long[] bytes = threads.getThreadAllocatedBytes(ids);
+
+        Map<Long, Long> allocated = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0) {
+                allocated.put(ids[i], bytes[i]);
+            }
+        }
+        return allocated;
+    }
+
+    private static long heapUsed() {
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.distance;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.uea.cmp.spectre.core.ds.Identifier;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DenseDistanceMatrixTest {
+
+    private double[][] distances;
+
+    @Before
+    public void setup() {
+        this.distances = new double[][]{
+                {0, 3, 2, 5},
+                {3, 0, 6, 6},
+                {2, 6, 0, 3},
+                {5, 6, 3, 0}
+        };
+    }
+
+    @Test
+    public void testSameAsFlexible() {
+
+        DistanceMatrix flexible = new FlexibleDistanceMatrix(new IdentifierList(new String[]{"A", "B", "C", "D"}), this.distances);
+        DistanceMatrix dense = new DenseDistanceMatrix(new IdentifierList(new String[]{"A", "B", "C", "D"}), this.distances);
+
+        for (int i = 0; i < this.distances.length; i++) {
+            assertTrue(Arrays.equals(flexible.getMatrix()[i], dense.getMatrix()[i]));
+            for (int j = 0; j < this.distances.length; j++) {
+                assertEquals(flexible.getDistance(i + 1, j + 1), dense.getDistance(i + 1, j + 1), 0.0);
+                assertEquals(flexible.getDistanceByIndex(i, j), dense.getDistanceByIndex(i, j), 0.0);
+            }
+        }
+
+        assertEquals(flexible.getDistance("B", "D"), dense.getDistance("B", "D"), 0.0);
+        assertEquals(flexible.getMap(), dense.getMap());
+    }
+
+    @Test
+    public void testAddAndRemove() {
+
+        DistanceMatrix dense = new DenseDistanceMatrix(this.distances);
+
+        Identifier e = new Identifier("E", 5);
+        dense.setDistance(dense.getTaxa().getById(1), e, 7.0);
+
+        assertEquals(5, dense.size());
+        assertEquals(7.0, dense.getDistance(5, 1), 0.0);
+        assertEquals(0.0, dense.getDistance(5, 2), 0.0);
+
+        dense.removeTaxon(2);
+
+        assertEquals(4, dense.size());
+        assertEquals(2.0, dense.getDistance(1, 3), 0.0);
+        assertEquals(3.0, dense.getDistance(3, 4), 0.0);
+        assertEquals(7.0, dense.getDistance(1, 5), 0.0);
+
+        // Reuse storage freed by the removed taxon
+        dense.addIdentifier(new Identifier("F", 6));
+        assertEquals(0.0, dense.getDistance(6, 1), 0.0);
+        assertEquals(0.0, dense.getDistance(6, 5), 0.0);
+    }
+
+    @Test
+    public void testTaxaModifiedDirectly() {
+
+        DistanceMatrix dense = new DenseDistanceMatrix(this.distances);
+
+        dense.getTaxa().add(new Identifier("E", 5));
+        assertEquals(0.0, dense.getDistance(5, 4), 0.0);
+        assertEquals(5.0, dense.getDistance(1, 4), 0.0);
+
+        dense.getTaxa().remove(dense.getTaxa().getById(1));
+        assertEquals(6.0, dense.getDistanceByIndex(0, 1), 0.0);
+        assertEquals(3.0, dense.getDistance(3, 4), 0.0);
+    }
+
+    @Test
+    public void testIndexForLargeMatrices() {
+
+        // j * (j - 1) no longer fits in an int from here on
+        assertEquals(1073767311, DenseDistanceMatrix.index(0, 46342));
+        assertEquals(1073767311 + 5, DenseDistanceMatrix.index(46342, 5));
+
+        final int last = 65535;
+        assertEquals(DenseDistanceMatrix.nbEntries(last + 1) - 1, DenseDistanceMatrix.index(last - 1, last));
+    }
+
+    @Test
+    public void testRemoveFromLargerMatrix() {
+
+        // Matrices big enough to overflow the column offsets would need more than 8GB, so those offsets are covered by
+        // testIndexForLargeMatrices instead
+        final int n = 500;
+        final double[][] full = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                full[i][j] = i == j ? 0.0 : (Math.min(i, j) + 1) * 1000.0 + Math.max(i, j) + 1;
+            }
+        }
+
+        DistanceMatrix dense = new DenseDistanceMatrix(full);
+
+        dense.removeTaxon(1);
+        dense.removeTaxon(250);
+        dense.removeTaxon(n);
+
+        assertEquals(n - 3, dense.size());
+        for (int i = 0; i < dense.size(); i++) {
+            for (int j = i + 1; j < dense.size(); j++) {
+                final int id1 = dense.getTaxa().get(i).getId();
+                final int id2 = dense.getTaxa().get(j).getId();
+                assertEquals(full[id1 - 1][id2 - 1], dense.getDistanceByIndex(i, j), 0.0);
+            }
+        }
+    }
+}
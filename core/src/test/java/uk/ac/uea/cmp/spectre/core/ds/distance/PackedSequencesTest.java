@@ -0,0 +1,160 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.distance;
+
+import org.junit.Test;
+import uk.ac.uea.cmp.spectre.core.ds.Sequences;
+import uk.ac.uea.cmp.spectre.core.ds.SitePatterns;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PackedSequencesTest {
+
+    private Sequences randomAlignment(int n, int length, String alphabet, long seed) {
+
+        Random random = new Random(seed);
+        String[] labels = new String[n];
+        String[] seqs = new String[n];
+        for (int i = 0; i < n; i++) {
+            labels[i] = "t" + i;
+            StringBuilder sb = new StringBuilder();
+            for (int k = 0; k < length; k++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            seqs[i] = sb.toString();
+        }
+        return new Sequences(labels, seqs);
+    }
+
+    private void checkCounts(Sequences seqs, int expectedBits) {
+
+        PackedSequences packed = new PackedSequences(seqs);
+        assertEquals(expectedBits, packed.getBitsPerSite());
+
+        int[] counts = new int[2];
+        for (int i = 0; i < seqs.size(); i++) {
+            for (int j = 0; j < seqs.size(); j++) {
+                packed.countDifferences(i, j, counts);
+                assertEquals(HammingDistanceCalculator.hammingCount(seqs.getSeq(i), seqs.getSeq(j)), counts[0]);
+                assertEquals(K80Calculator.calcTransitionSites(seqs.getSeq(i), seqs.getSeq(j)), counts[1]);
+                assertEquals(counts[0], packed.mismatches(i, j));
+            }
+        }
+    }
+
+    @Test
+    public void testCounts() {
+
+        checkCounts(randomAlignment(10, 150, "ACGT", 1L), 2);
+        checkCounts(randomAlignment(10, 64, "ACGTacgtNU-?", 2L), 4);
+        checkCounts(randomAlignment(10, 63, "ACDEFGHIKLMNPQRSTVWY-", 3L), 5);
+        checkCounts(randomAlignment(3, 10, "A", 4L), 1);
+    }
+
+    @Test
+    public void testSameAsPairwise() {
+
+        Sequences seqs = randomAlignment(70, 200, "AAAAACGT", 5L);
+
+        for (DistanceCalculatorFactory model : DistanceCalculatorFactory.values()) {
+            DistanceMatrix dm = model.createDistanceMatrix(seqs);
+            assertEquals(seqs.size(), dm.size());
+            for (int i = 0; i < seqs.size(); i++) {
+                for (int j = 0; j < seqs.size(); j++) {
+                    double expected = i == j ? 0.0 : model.calculateDistance(seqs.getSeq(i), seqs.getSeq(j));
+                    assertEquals(expected, dm.getDistanceByIndex(i, j), 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCompressedCounts() {
+
+        // Few sequences over a skewed alphabet, so that patterns repeat with many different counts
+        Sequences seqs = randomAlignment(5, 3000, "AAAAAAAACGT-", 6L);
+        SitePatterns patterns = new SitePatterns(seqs);
+
+        int total = 0;
+        for (int count : patterns.getCounts()) {
+            total += count;
+        }
+        assertEquals(3000, total);
+        assertTrue(patterns.getNbPatterns() < 3000);
+        assertEquals(patterns.getNbPatterns(), new PackedSequences(patterns).getNbPatterns());
+
+        checkCounts(seqs, 3);
+
+        DistanceMatrix fromSeqs = new K80Calculator().generateDistances(seqs);
+        DistanceMatrix fromPatterns = new K80Calculator().generateDistances(patterns);
+        for (int i = 0; i < seqs.size(); i++) {
+            for (int j = 0; j < seqs.size(); j++) {
+                assertEquals(fromSeqs.getDistanceByIndex(i, j), fromPatterns.getDistanceByIndex(i, j), 0.0);
+            }
+        }
+        assertEquals(fromSeqs.getTaxa().get(2).getName(), fromPatterns.getTaxa().get(2).getName());
+    }
+
+    @Test
+    public void testResampledCounts() {
+
+        Sequences seqs = randomAlignment(6, 500, "AAAAACGT", 7L);
+        SitePatterns patterns = new SitePatterns(seqs);
+        SitePatterns replicate = patterns.resample(new Random(8L));
+
+        int total = 0;
+        for (int count : replicate.getCounts()) {
+            total += count;
+        }
+        assertEquals(500, total);
+        assertEquals(patterns.getNbPatterns(), replicate.getNbPatterns());
+        assertEquals(patterns.getLength(), replicate.getLength());
+        assertArrayEquals(replicate.getCounts(), patterns.resample(new Random(8L)).getCounts());
+
+        // Write out the resampled alignment column by column, and check it gives the same counts
+        char[][] resampled = new char[seqs.size()][500];
+        int k = 0;
+        for (int p = 0; p < replicate.getNbPatterns(); p++) {
+            for (int c = 0; c < replicate.getCount(p); c++, k++) {
+                for (int i = 0; i < seqs.size(); i++) {
+                    resampled[i][k] = replicate.getPatterns(i)[p];
+                }
+            }
+        }
+
+        PackedSequences fromPatterns = new PackedSequences(replicate);
+        PackedSequences fromAlignment = new PackedSequences(new SitePatterns(resampled));
+        int[] expected = new int[2];
+        int[] actual = new int[2];
+        for (int i = 0; i < seqs.size(); i++) {
+            for (int j = 0; j < seqs.size(); j++) {
+                fromAlignment.countDifferences(i, j, expected);
+                fromPatterns.countDifferences(i, j, actual);
+                assertArrayEquals(expected, actual);
+            }
+        }
+
+        // Resampling a replicate, which may have patterns that were not drawn, only draws patterns that are present
+        SitePatterns second = replicate.resample(new Random(9L));
+        for (int p = 0; p < second.getNbPatterns(); p++) {
+            assertTrue(replicate.getCount(p) > 0 || second.getCount(p) == 0);
+        }
+    }
+}
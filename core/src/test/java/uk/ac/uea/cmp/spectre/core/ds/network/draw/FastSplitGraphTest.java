@@ -0,0 +1,231 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.network.draw;
+
+import org.junit.Test;
+import uk.ac.uea.cmp.spectre.core.ds.Identifier;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.network.Edge;
+import uk.ac.uea.cmp.spectre.core.ds.network.Vertex;
+import uk.ac.uea.cmp.spectre.core.ds.network.VertexList;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quadruple.Quadruple;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quadruple.QuadrupleSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.*;
+import uk.ac.uea.cmp.spectre.core.ds.split.flat.PermutationSequence;
+import uk.ac.uea.cmp.spectre.core.ds.split.flat.PermutationSequenceFactory;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the index based engine draws exactly the same network as the object based methods in
+ * {@link PermutationSequenceDraw}
+ */
+public class FastSplitGraphTest {
+
+    @Test
+    public void smallSplitSystem() {
+
+        final int N = 5;
+        IdentifierList taxa = new IdentifierList(new int[]{1, 2, 3, 4, 5});
+
+        List<Split> splits = new ArrayList<>();
+        splits.add(new SpectreSplit(new SpectreSplitBlock(new int[]{1}), N, 1.0));
+        splits.add(new SpectreSplit(new SpectreSplitBlock(new int[]{2}), N, 1.0));
+        splits.add(new SpectreSplit(new SpectreSplitBlock(new int[]{3}), N, 1.0));
+        splits.add(new SpectreSplit(new SpectreSplitBlock(new int[]{4}), N, 1.0));
+        splits.add(new SpectreSplit(new SpectreSplitBlock(new int[]{5}), N, 1.0));
+        splits.add(new SpectreSplit(new SpectreSplitBlock(new int[]{1, 2}), N, 2.0));
+        splits.add(new SpectreSplit(new SpectreSplitBlock(new int[]{2, 3}), N, 0.5));
+        splits.add(new SpectreSplit(new SpectreSplitBlock(new int[]{4, 5}), N, 1.5));
+
+        this.assertSameNetwork(new SpectreSplitSystem(taxa, splits));
+    }
+
+    @Test
+    public void randomCircularSplitSystems() {
+
+        Random random = new Random(42);
+
+        for (int n : new int[]{6, 10, 16, 24}) {
+            for (int round = 0; round < 3; round++) {
+                this.assertSameNetwork(createCircularSplitSystem(n, 0.5, random));
+            }
+        }
+    }
+
+    @Test
+    public void fullCircularSplitSystem() {
+        this.assertSameNetwork(createCircularSplitSystem(12, 1.0, new Random(7)));
+    }
+
+    @Test
+    public void flatSplitSystems() {
+
+        Random random = new Random(3);
+
+        for (int n = 5; n <= 12; n++) {
+            for (int round = 0; round < 2; round++) {
+                // Some zero weight splits in the first round, all splits active in the second
+                PermutationSequence ps = new PermutationSequenceFactory().computePermutationSequence(
+                        createRandomQS(n, random));
+
+                double[] weights = new double[ps.getnSwaps()];
+                for (int i = 0; i < weights.length; i++) {
+                    weights[i] = round == 0 && random.nextInt(3) == 0 ? 0.0 : 0.1 + random.nextDouble();
+                }
+                double[] trivial = new double[n];
+                String[] names = new String[n];
+                for (int i = 0; i < n; i++) {
+                    trivial[i] = random.nextDouble();
+                    names[i] = "t" + i;
+                }
+                ps.setWeights(weights, trivial);
+                ps.setTaxaNames(names);
+
+                this.assertSameNetwork(createFlatSequence(ps), createFlatSequence(ps));
+            }
+        }
+    }
+
+    private static QuadrupleSystem createRandomQS(int n, Random random) {
+
+        QuadrupleSystem qs = new QuadrupleSystem(n);
+
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                for (int c = b + 1; c < n; c++) {
+                    for (int d = c + 1; d < n; d++) {
+                        double[] weights = new double[Quadruple.NB_SPLITS];
+                        for (int k = 0; k < weights.length; k++) {
+                            weights[k] = random.nextInt(4) == 0 ? 0.0 : random.nextDouble();
+                        }
+                        qs.add(a, b, c, d, weights);
+                    }
+                }
+            }
+        }
+
+        return qs;
+    }
+
+    /**
+     * Creates a permutation sequence for drawing in the same way as FlatNJ
+     */
+    private static PermutationSequenceDraw createFlatSequence(PermutationSequence ps) {
+        return new PermutationSequenceDraw(ps.getSequence(),
+                ps.getSwaps(),
+                ps.getWeights(),
+                ps.getActive(),
+                ps.getTrivial(),
+                ps.getTaxaNames());
+    }
+
+    /**
+     * Creates a random circular split system compatible with the ordering 1..n, which contains all the trivial splits
+     * and each of the other splits with the given probability
+     */
+    private static SplitSystem createCircularSplitSystem(int n, double density, Random random) {
+
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i + 1;
+        }
+
+        List<Split> splits = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            for (int j = i; j <= n; j++) {
+                // Arcs starting at 1 would repeat the complements of other arcs
+                if (j == i || (i > 1 && j - i + 1 < n - 1 && random.nextDouble() < density)) {
+                    int[] side = new int[j - i + 1];
+                    for (int k = 0; k < side.length; k++) {
+                        side[k] = i + k;
+                    }
+                    splits.add(new SpectreSplit(new SpectreSplitBlock(side), n, 0.1 + random.nextDouble()));
+                }
+            }
+        }
+
+        return new SpectreSplitSystem(new IdentifierList(ids), splits);
+    }
+
+    private void assertSameNetwork(SplitSystem ss) {
+        this.assertSameNetwork(new PermutationSequenceDraw(ss), new PermutationSequenceDraw(ss));
+    }
+
+    private void assertSameNetwork(PermutationSequenceDraw expectedSequence, PermutationSequenceDraw actualSequence) {
+
+        Vertex expected = expectedSequence.drawSplitSystemWithObjects(-1.0);
+        Vertex actual = actualSequence.drawSplitSystem(-1.0);
+
+        VertexList expectedVertices = expected.collectVertices();
+        VertexList actualVertices = actual.collectVertices();
+
+        assertEquals(expectedVertices.size(), actualVertices.size());
+
+        Map<Vertex, Integer> expectedPositions = positions(expectedVertices);
+        Map<Vertex, Integer> actualPositions = positions(actualVertices);
+
+        for (int i = 0; i < expectedVertices.size(); i++) {
+            Vertex e = expectedVertices.get(i);
+            Vertex a = actualVertices.get(i);
+
+            assertEquals(e.getX(), a.getX(), 0.0);
+            assertEquals(e.getY(), a.getY(), 0.0);
+            assertEquals(taxaIds(e), taxaIds(a));
+            assertEquals(e.getEdgeList().size(), a.getEdgeList().size());
+
+            for (int j = 0; j < e.getEdgeList().size(); j++) {
+                Edge ee = e.getEdgeList().get(j);
+                Edge ae = a.getEdgeList().get(j);
+
+                assertEquals(ee.getSplitIndex(), ae.getSplitIndex());
+                assertEquals(ee.getTimestp(), ae.getTimestp());
+                assertEquals(expectedPositions.get(ee.getTop()), actualPositions.get(ae.getTop()));
+                assertEquals(expectedPositions.get(ee.getBottom()), actualPositions.get(ae.getBottom()));
+            }
+        }
+
+        assertEquals(expectedSequence.getNclasses(), actualSequence.getNclasses());
+        assertArrayEquals(expectedSequence.getRepresentedby(), actualSequence.getRepresentedby());
+        assertArrayEquals(expectedSequence.getActiveTaxa(), actualSequence.getActiveTaxa());
+    }
+
+    /**
+     * Position of each vertex in the order in which the network was traversed
+     */
+    private static Map<Vertex, Integer> positions(VertexList vertices) {
+        Map<Vertex, Integer> positions = new IdentityHashMap<>();
+        for (int i = 0; i < vertices.size(); i++) {
+            positions.put(vertices.get(i), i);
+        }
+        return positions;
+    }
+
+    private static List<Integer> taxaIds(Vertex v) {
+        List<Integer> ids = new ArrayList<>();
+        for (Identifier i : v.getTaxa()) {
+            ids.add(i.getId());
+        }
+        return ids;
+    }
+}
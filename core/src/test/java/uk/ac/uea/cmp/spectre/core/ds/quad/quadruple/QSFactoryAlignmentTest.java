@@ -0,0 +1,111 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.quad.quadruple;
+
+import org.junit.Test;
+import uk.ac.uea.cmp.spectre.core.ds.Identifier;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.Sequences;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DenseDistanceMatrix;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class QSFactoryAlignmentTest {
+
+    @Test
+    public void testParallelMatchesPerQuadrupleEstimate() {
+
+        final int n = 12;
+        final int length = 200;
+        final Random random = new Random(42);
+
+        // Few distinct characters and some gaps, so that many columns share a pattern
+        final String[] names = new String[n];
+        final String[] seqs = new String[n];
+        for (int i = 0; i < n; i++) {
+            final StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                sb.append("AACGT-".charAt(random.nextInt(6)));
+            }
+            names[i] = "t" + i;
+            seqs[i] = sb.toString();
+        }
+
+        final Sequences alignment = new Sequences(names, seqs);
+        final char[][] chars = alignment.getSequencesAsCharArray();
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        final QuadrupleSystem qs;
+        try {
+            qs = new QSFactoryAlignment(alignment, null).computeQS(false, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(qs.getnQuadruples(), qs.getNbStoredQuadruples());
+
+        final SplitsEstimator estimator = new SplitsEstimator();
+        final int[] taxa = new int[4];
+
+        for (long i = 0; i < qs.getNbStoredQuadruples(); i++) {
+
+            qs.getQuadrupleTaxa(i, taxa);
+            assertEquals(i, qs.getQuadrupleIndex(taxa[0], taxa[1], taxa[2], taxa[3]));
+
+            final Quadruple q = qs.getQuadruple(i);
+            assertArrayEquals(taxa, q.getTaxa().toIntArray());
+
+            final double[] expected = estimator.estimate(
+                    new char[][]{chars[taxa[0]], chars[taxa[1]], chars[taxa[2]], chars[taxa[3]]});
+            assertArrayEquals(expected, q.getWeights(), 1e-12);
+        }
+    }
+
+    @Test
+    public void testCachedDistanceMatrixWeights() {
+
+        // Character distance matrix, keyed by character code, in which all distinct characters are at distance 1
+        final String alphabet = "ACGT";
+        final IdentifierList characters = new IdentifierList();
+        final double[][] distances = new double[alphabet.length()][alphabet.length()];
+        for (int i = 0; i < alphabet.length(); i++) {
+            characters.add(new Identifier(alphabet.substring(i, i + 1), alphabet.charAt(i)));
+            for (int j = 0; j < alphabet.length(); j++) {
+                distances[i][j] = i == j ? 0.0 : 1.0;
+            }
+        }
+
+        final SplitsEstimator cached = new SplitsEstimator(new DenseDistanceMatrix(characters, distances));
+        final SplitsEstimator unit = new SplitsEstimator();
+        final AlignmentFilter filter = new AlignmentFilter();
+        final Random random = new Random(7);
+
+        // Enough columns to see every combination of characters, and to look each one up many times
+        for (int round = 0; round < 20; round++) {
+            final char[][] chars = new char[4][100];
+            for (int i = 0; i < 4; i++) {
+                for (int j = 0; j < chars[i].length; j++) {
+                    chars[i][j] = alphabet.charAt(random.nextInt(alphabet.length()));
+                }
+            }
+            assertArrayEquals(unit.estimate(chars, filter), cached.estimate(chars, filter), 1e-12);
+        }
+    }
+}
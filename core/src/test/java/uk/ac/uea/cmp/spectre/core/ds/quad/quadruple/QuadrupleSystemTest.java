@@ -0,0 +1,72 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.quad.quadruple;
+
+import org.junit.Test;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetUtils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuadrupleSystemTest {
+
+    @Test
+    public void testLargeQuadrupleCounts() {
+
+        assertEquals(2573031125L, QuartetUtils.over4(500));
+        assertEquals(20708500L, QuartetUtils.over3(500));
+        assertTrue(QuadrupleSystem.calculateNbQuadruples(1000) > Integer.MAX_VALUE);
+        assertEquals(QuartetUtils.over4(1000) - 1, QuartetUtils.getRank(997, 998, 999, 1000));
+    }
+
+    @Test
+    public void testQuadruplesStoredInLexicographicOrder() {
+
+        final int n = 9;
+        final QuadrupleSystem qs = new QuadrupleSystem(n);
+
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                for (int c = b + 1; c < n; c++) {
+                    for (int d = c + 1; d < n; d++) {
+                        qs.add(a, b, c, d, new double[]{a, b, c, d, a + b, a + c, a + d});
+                    }
+                }
+            }
+        }
+
+        assertEquals(qs.getnQuadruples(), qs.getNbStoredQuadruples());
+
+        final Quadruple q = qs.getQuadrupleUnsorted(7, 2, 5, 3);
+        assertArrayEquals(new int[]{2, 3, 5, 7}, q.getTaxa().toIntArray());
+        assertEquals(5.0, q.getSplitWeightFor2Vs2(2, 3), 0.0);
+        assertEquals(7.0, q.getSplitWeightFor1Vs3(7), 0.0);
+
+        // Weights set on the returned quadruple are held by the system
+        q.setWeights(new double[]{1, 1, 1, 1, 1, 1, 1});
+        assertEquals(1.0, qs.get1Vs3Weight(7, 2, 3, 5), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHeapBudget() {
+
+        final IdentifierList taxa = new IdentifierList(20);
+        new QuadrupleSystem(taxa, taxa.size(), new boolean[taxa.size()],
+                QuadrupleSystem.calculateBytesNeeded(QuartetUtils.over4(20)) - 1);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.quad.quartet;
+
+import org.junit.Test;
+import uk.ac.uea.cmp.spectre.core.ds.quad.SpectreQuad;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QuartetWeightStoreTest {
+
+    @Test
+    public void testRankRoundTrip() {
+
+        final int n = 12;
+        final int[] taxa = new int[4];
+
+        long expected = 0;
+        for (int d = 4; d <= n; d++) {
+            for (int c = 3; c < d; c++) {
+                for (int b = 2; b < c; b++) {
+                    for (int a = 1; a < b; a++) {
+
+                        assertEquals(expected, QuartetUtils.getRank(a, b, c, d));
+                        assertEquals(expected, QuartetUtils.getRank(d, b, a, c));
+
+                        QuartetUtils.getTaxa(expected, taxa);
+                        assertArrayEquals(new int[]{a, b, c, d}, taxa);
+
+                        expected++;
+                    }
+                }
+            }
+        }
+
+        assertEquals(QuartetUtils.over4(n), expected);
+    }
+
+    @Test
+    public void testTopologyMatchesGroupKeys() {
+
+        final int[][] quartets = new int[][]{
+                {1, 2, 3, 4}, {3, 1, 2, 4}, {4, 1, 3, 2}, {2, 4, 3, 1}, {7, 5, 9, 6}, {5, 8, 6, 7}
+        };
+
+        for (int[] q : quartets) {
+            assertEquals((int) new SpectreQuad(q).getGroupKeys().getRight(),
+                    QuartetUtils.getTopology(q[0], q[1], q[2], q[3]));
+        }
+    }
+
+    @Test
+    public void testDenseAndSparseAgree() {
+
+        final int n = 9;
+        final QuartetWeightStore dense = new DenseQuartetWeightStore(n);
+        final QuartetWeightStore sparse = new SparseQuartetWeightStore();
+
+        final long nbQuads = QuartetUtils.over4(n);
+        for (long rank = 0; rank < nbQuads; rank += 3) {
+            final int topology = (int) (rank % 3);
+            dense.setWeight(rank, topology, rank);
+            sparse.setWeight(rank, topology, rank);
+            dense.incrementWeight(rank, (topology + 1) % 3, 0.5);
+            sparse.incrementWeight(rank, (topology + 1) % 3, 0.5);
+        }
+
+        assertEquals(dense.size(), sparse.size());
+
+        for (long rank = 0; rank < nbQuads; rank++) {
+            assertEquals(dense.contains(rank), sparse.contains(rank));
+            for (int t = 0; t < 3; t++) {
+                assertEquals(dense.contains(rank, t), sparse.contains(rank, t));
+                assertEquals(dense.getWeight(rank, t), sparse.getWeight(rank, t), 0.0);
+            }
+        }
+
+        // Cursors visit every quadruple present exactly once
+        final long[] denseRanks = ranks(dense);
+        final long[] sparseRanks = ranks(sparse);
+        Arrays.sort(sparseRanks);
+
+        assertEquals(dense.size(), denseRanks.length);
+        assertArrayEquals(denseRanks, sparseRanks);
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+
+        final QuartetWeightStore store = new SparseQuartetWeightStore();
+        store.setWeight(5, 1, 2.0);
+
+        final QuartetWeightStore copy = store.copy();
+        copy.setWeight(5, 1, 3.0);
+        copy.setWeight(6, 0, 1.0);
+
+        assertEquals(2.0, store.getWeight(5, 1), 0.0);
+        assertFalse(store.contains(6));
+        assertTrue(copy.contains(6, 0));
+        assertFalse(copy.contains(6, 2));
+    }
+
+    @Test
+    public void testGroupMapFromCanonical() {
+
+        final CanonicalWeightedQuartetMap canonical = new CanonicalWeightedQuartetMap(5);
+        canonical.incrementWeight(new SpectreQuad(1, 3, 2, 4), 1.5);
+        canonical.incrementWeight(1, 3, 4, 2, 0.5);
+
+        final WeightedQuartetGroupMap grouped = new WeightedQuartetGroupMap(canonical);
+
+        assertEquals(1, grouped.size());
+        assertTrue(grouped.get(new SpectreQuad(1, 2, 3, 4)).equals(new QuartetWeights(0.0, 2.0, 0.0)));
+        assertEquals(2.0, grouped.getWeight(2, 4, 1, 3), 0.0);
+        assertEquals(0.0, grouped.getWeight(1, 2, 3, 5), 0.0);
+    }
+
+    private static long[] ranks(QuartetWeightStore store) {
+
+        final long[] ranks = new long[(int) store.size()];
+
+        QuartetWeightStore.Cursor cursor = store.cursor();
+        int i = 0;
+        while (cursor.next()) {
+            ranks[i++] = cursor.getRank();
+        }
+
+        return ranks;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.split;
+
+import org.junit.Test;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BitSplitTest {
+
+    private List<Split> randomSplits(int nbTaxa, int nbSplits, long seed) {
+
+        Random random = new Random(seed);
+        List<Split> splits = new ArrayList<>();
+        while (splits.size() < nbSplits) {
+            List<Integer> aSide = new ArrayList<>();
+            for (int t = 1; t <= nbTaxa; t++) {
+                if (random.nextInt(4) == 0) {
+                    aSide.add(t);
+                }
+            }
+            if (!aSide.isEmpty() && aSide.size() < nbTaxa) {
+                splits.add(new SpectreSplit(new SpectreSplitBlock(aSide), nbTaxa, random.nextDouble()));
+            }
+        }
+        return splits;
+    }
+
+    @Test
+    public void testSameAsSpectreSplit() {
+
+        final int nbTaxa = 150;
+        List<Split> splits = randomSplits(nbTaxa, 40, 1L);
+
+        for (Split s1 : splits) {
+
+            BitSplit b1 = new BitSplit(s1);
+            assertEquals(s1, b1);
+            assertEquals(b1, s1);
+            assertEquals(s1.hashCode(), b1.hashCode());
+            assertEquals(s1.getNbTaxa(), b1.getNbTaxa());
+            assertEquals(s1.getASideFirst(), b1.getASideFirst());
+            assertEquals(s1.getASideLast(), b1.getASideLast());
+            assertArrayEquals(s1.makeCanonical().getASideAsIntArray(), b1.makeCanonical().getASideAsIntArray());
+
+            for (Split s2 : splits) {
+                BitSplit b2 = new BitSplit(s2);
+                assertEquals(s1.isCompatible(s2), b1.isCompatible(b2));
+                assertEquals(s1.getCompatible(s2), b1.getCompatible(b2));
+                assertEquals(s1.equals(s2), b1.equals(b2));
+            }
+
+            for (int nr = 0; nr < 7; nr++) {
+                assertEquals(s1.restrictionExists(3, 64, 65, 150, nr), b1.restrictionExists(3, 64, 65, 150, nr));
+            }
+        }
+    }
+
+    @Test
+    public void testMergeAndIncrement() {
+
+        BitSplit s = new BitSplit(new int[]{1, 2}, 70);
+        s.mergeASides(new BitSplit(new int[]{63, 64}, 70));
+
+        assertArrayEquals(new int[]{1, 2, 63, 64}, s.getASideAsIntArray());
+        assertEquals(70, s.getNbTaxa());
+        assertEquals(Split.SplitSide.B_SIDE, s.getSide(70));
+
+        s.incTaxId();
+        assertArrayEquals(new int[]{2, 3, 64, 65}, s.getASideAsIntArray());
+        assertEquals(71, s.getBSideAsIntArray()[s.getBSideSize() - 1]);
+    }
+
+    @Test
+    public void testBitSplitSystem() {
+
+        final int nbTaxa = 5;
+
+        List<Split> splits = new ArrayList<>();
+        splits.addAll(SplitUtils.createTrivialSplits(nbTaxa, 1.0));
+        splits.add(new SpectreSplit(new SpectreSplitBlock(new int[]{3, 4}), nbTaxa));
+        splits.add(new SpectreSplit(new SpectreSplitBlock(new int[]{1, 2}), nbTaxa, 0.4));
+
+        SpectreSplitSystem ss = new SpectreSplitSystem(nbTaxa, splits).makeBitSplits();
+
+        assertTrue(ss.get(5) instanceof BitSplit);
+        assertTrue(ss.contains(new SpectreSplit(new SpectreSplitBlock(new int[]{1, 2, 5}), nbTaxa)));
+        assertTrue(ss.isCompatible());
+        assertTrue(ss.isCircular());
+        assertEquals(splits.size(), ss.makeInducedOrdering().getNbSplits());
+
+        ss.add(new BitSplit(new int[]{1, 3}, nbTaxa));
+        assertFalse(ss.isCompatible());
+        assertFalse(ss.get(7).isCircular(new IdentifierList(nbTaxa)));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering;
+
+import org.junit.Test;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DenseDistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitWeights;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CircularNNLSTest {
+
+    private DistanceMatrix noisyCircle(int n, long seed) {
+
+        Random random = new Random(seed);
+        double[][] distances = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                distances[i][j] = distances[j][i] = 5.0 * Math.abs(Math.sin(Math.PI * (j - i) / n)) + random.nextDouble();
+            }
+        }
+        return new DenseDistanceMatrix(distances);
+    }
+
+    private void assertSame(SplitWeights expected, SplitWeights actual) {
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(expected.getAt(i, j), actual.getAt(i, j), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testWorkspaceReuse() {
+
+        DistanceMatrix small = noisyCircle(12, 1L);
+        DistanceMatrix large = noisyCircle(40, 2L);
+
+        CircularNNLS reused = new CircularNNLS();
+        SplitWeights large1 = reused.circularLeastSquares(large, large.getTaxa());
+        SplitWeights small1 = reused.circularLeastSquares(small, small.getTaxa());
+        SplitWeights large2 = reused.circularLeastSquares(large, large.getTaxa());
+
+        assertSame(new CircularNNLS().circularLeastSquares(small, small.getTaxa()), small1);
+        assertSame(large1, large2);
+
+        for (int i = 0; i < large1.size(); i++) {
+            for (int j = 0; j < large1.size(); j++) {
+                assertTrue(large1.getAt(i, j) >= 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testParallelIndependentOfThreads() {
+
+        DistanceMatrix dm = noisyCircle(140, 3L);
+        IdentifierList ordering = dm.getTaxa();
+
+        ForkJoinPool pool2 = new ForkJoinPool(2);
+        ForkJoinPool pool3 = new ForkJoinPool(3);
+        try {
+            SplitWeights weights2 = new CircularNNLS(pool2).circularLeastSquares(dm, ordering);
+            SplitWeights weights3 = new CircularNNLS(pool3).circularLeastSquares(dm, ordering);
+            assertSame(weights2, weights3);
+        } finally {
+            pool2.shutdown();
+            pool3.shutdown();
+        }
+    }
+}
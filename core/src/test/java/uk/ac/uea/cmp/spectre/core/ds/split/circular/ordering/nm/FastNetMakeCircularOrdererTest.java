@@ -0,0 +1,107 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm;
+
+import org.junit.Test;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.distance.FlexibleDistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.CircularOrdering;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CircularOrderingCreator;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting.EqualWeighting;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting.GreedyMEWeighting;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting.ParabolaWeighting;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting.TSPWeighting;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting.TreeWeighting;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FastNetMakeCircularOrdererTest {
+
+    private static final double[][] DISTANCES1 = new double[][]{
+            {0, 2, 3, 4, 4},
+            {2, 0, 3, 4, 4},
+            {3, 3, 0, 3, 3},
+            {4, 4, 3, 0, 2},
+            {4, 4, 3, 2, 0}
+    };
+
+    private DistanceMatrix randomMatrix(int n, long seed) {
+
+        Random random = new Random(seed);
+        double[][] distances = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                distances[i][j] = distances[j][i] = random.nextDouble();
+            }
+        }
+        return new FlexibleDistanceMatrix(distances);
+    }
+
+    private void compare(CircularOrderingCreator expectedCreator, CircularOrderingCreator actualCreator, DistanceMatrix dm) {
+
+        IdentifierList expected = expectedCreator.createCircularOrdering(dm);
+        IdentifierList actual = actualCreator.createCircularOrdering(dm);
+
+        assertEquals(dm.size(), actual.size());
+        assertTrue(expected + " != " + actual, new CircularOrdering(expected).equals(new CircularOrdering(actual)));
+        assertEquals(expectedCreator.getTreeSplits().size(), actualCreator.getTreeSplits().size());
+    }
+
+    @Test
+    public void testDist1() {
+
+        IdentifierList co = new FastNetMakeCircularOrderer(new TreeWeighting(0.5), null).createCircularOrdering(
+                new FlexibleDistanceMatrix(DISTANCES1));
+
+        assertTrue(new CircularOrdering(co).equals(new CircularOrdering(new String[]{"E", "D", "C", "A", "B"})));
+    }
+
+    @Test
+    public void testSameAsNetMakeRandom() {
+
+        for (int n = 3; n <= 30; n++) {
+            DistanceMatrix dm = randomMatrix(n, n);
+            compare(new NetMakeCircularOrderer(new TreeWeighting(0.5), null), new FastNetMakeCircularOrderer(new TreeWeighting(0.5), null), dm);
+            compare(new NetMakeCircularOrderer(new EqualWeighting(), null), new FastNetMakeCircularOrderer(new EqualWeighting(), null), dm);
+            compare(new NetMakeCircularOrderer(new ParabolaWeighting(), null), new FastNetMakeCircularOrderer(new ParabolaWeighting(), null), dm);
+            compare(new NetMakeCircularOrderer(new TreeWeighting(0.5), new TSPWeighting()), new FastNetMakeCircularOrderer(new TreeWeighting(0.5), new TSPWeighting()), dm);
+        }
+    }
+
+    @Test
+    public void testParallel() {
+
+        DistanceMatrix dm = randomMatrix(200, 42L);
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            compare(new FastNetMakeCircularOrderer(new TreeWeighting(0.5), null), new FastNetMakeCircularOrderer(new TreeWeighting(0.5), null, pool), dm);
+            compare(new NetMakeCircularOrderer(new TreeWeighting(0.5), new TSPWeighting()), new FastNetMakeCircularOrderer(new TreeWeighting(0.5), new TSPWeighting(), pool), dm);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGreedyMENotSupported() {
+        new FastNetMakeCircularOrderer(new GreedyMEWeighting(randomMatrix(5, 1L)), new TSPWeighting());
+    }
+}
@@ -20,12 +20,14 @@ import org.junit.Test;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.distance.FlexibleDistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.distance.RandomDistanceGenerator;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.CircularOrdering;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CircularOrderingCreator;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting.GreedyMEWeighting;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting.TSPWeighting;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting.TreeWeighting;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class NetMakeCircularOrdererTest {
@@ -123,8 +125,25 @@ public class NetMakeCircularOrdererTest {
         this.test(this.dist3, this.orderDist3);
     }
 
-    //@Test
+    @Test
     public void testGreedy1() {
         this.testGreedy(this.dist1, this.orderDist1);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGreedyFullPermutation() {
+
+        for (int n = 5; n <= 12; n++) {
+
+            DistanceMatrix dm = new RandomDistanceGenerator().generateDistances(n);
+
+            IdentifierList ordering = new NetMakeCircularOrderer(new GreedyMEWeighting(dm), new TSPWeighting())
+                    .createCircularOrdering(dm);
+
+            assertEquals(n, ordering.size());
+            for (int i = 0; i < n; i++) {
+                assertTrue(ordering.containsId(dm.getTaxa().get(i).getId()));
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import uk.ac.uea.cmp.spectre.core.ds.Identifier;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.distance.FlexibleDistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.split.SpectreSplit;
+import uk.ac.uea.cmp.spectre.core.ds.split.SpectreSplitBlock;
+import uk.ac.uea.cmp.spectre.core.ds.split.SpectreSplitSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitUtils;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CVMatrices;
+import uk.ac.uea.cmp.spectre.core.math.stats.Statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class GreedyMEEngineTest {
+
+    private static DistanceMatrix randomMatrix(int n, long seed) {
+
+        final Random random = new Random(seed);
+        final double[][] d = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                d[i][j] = 1.0 + random.nextDouble() * 9.0;
+                d[j][i] = d[i][j];
+            }
+        }
+        return new FlexibleDistanceMatrix(d);
+    }
+
+    private static SpectreSplit makeSplit(IdentifierList vertices, int nbTaxa) {
+        return new SpectreSplit(new SpectreSplitBlock(vertices.getIdsAsLinkedList()), nbTaxa);
+    }
+
+    /**
+     * Joins components step by step, checking at each step that the change in tree length worked out by the engine for
+     * every candidate matches the difference between the full tree lengths, and that the engine picks the best one
+     */
+    private void testAgainstFullTreeLength(DistanceMatrix dm) {
+
+        final int n = dm.size();
+        final GreedyMEWeighting gme = new GreedyMEWeighting(dm);
+        final GreedyMEEngine engine = new GreedyMEEngine(dm);
+        final CVMatrices c2v = new CVMatrices(dm);
+        final SplitSystem splits = new SpectreSplitSystem(dm.getTaxa(), SplitUtils.createTrivialSplits(dm.getTaxa(), 1.0));
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        int nextCluster = n + 1;
+
+        while (c2v.getNbActiveComponents() > 2) {
+
+            final List<Identifier> components = new ArrayList<>(c2v.getC2Vs().keySet());
+            final double[][] deltas = engine.calculateDeltas(splits, c2v);
+            final double length = Statistics.sumDoubles(gme.getEdgeWeights(splits));
+
+            double best = Double.POSITIVE_INFINITY;
+
+            for (int i = 0; i < components.size(); i++) {
+                for (int j = i + 1; j < components.size(); j++) {
+
+                    final IdentifierList vertices = new IdentifierList();
+                    vertices.addAll(c2v.getVertices(components.get(i)));
+                    vertices.addAll(c2v.getVertices(components.get(j)));
+
+                    splits.add(makeSplit(vertices, n));
+                    final double delta = Statistics.sumDoubles(gme.getEdgeWeights(splits)) - length;
+                    splits.removeLastSplit();
+
+                    assertEquals(delta, deltas[i][j - i - 1], 1e-8);
+
+                    best = Math.min(best, delta);
+                }
+            }
+
+            // Candidates can tie, e.g. any pair of the last three components gives the same tree, so only check that
+            // the chosen pair is one of the best
+            final Pair<Identifier, Identifier> cherry = gme.makeMECherry(splits, c2v, pool);
+            final Identifier bestI = cherry.getLeft();
+            final Identifier bestJ = cherry.getRight();
+            assertEquals(best, deltas[components.indexOf(bestI)][components.indexOf(bestJ) - components.indexOf(bestI) - 1], 1e-8);
+
+            // Join the chosen pair
+            final IdentifierList merged = new IdentifierList();
+            merged.addAll(c2v.getVertices(bestI));
+            merged.addAll(c2v.getVertices(bestJ));
+            c2v.getC2Vs().remove(bestI);
+            c2v.getC2Vs().remove(bestJ);
+            c2v.getC2Vs().put(new Identifier("C" + nextCluster, nextCluster), merged);
+            nextCluster++;
+
+            splits.add(makeSplit(merged, n));
+        }
+
+        pool.shutdown();
+    }
+
+    @Test
+    public void testOddTaxa() {
+        this.testAgainstFullTreeLength(randomMatrix(9, 1));
+    }
+
+    @Test
+    public void testEvenTaxa() {
+        this.testAgainstFullTreeLength(randomMatrix(10, 2));
+    }
+}
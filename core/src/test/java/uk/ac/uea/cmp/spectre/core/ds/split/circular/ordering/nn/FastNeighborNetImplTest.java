@@ -0,0 +1,102 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nn;
+
+import org.junit.Test;
+import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.distance.FlexibleDistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.CircularOrdering;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FastNeighborNetImplTest {
+
+    private static final double[][] DISTANCES1 = new double[][]{
+            {0, 3, 6, 6, 6},
+            {3, 0, 6, 6, 6},
+            {6, 6, 0, 3, 9},
+            {6, 6, 3, 0, 9},
+            {6, 6, 9, 9, 0}
+    };
+
+    private static final double[][] DISTANCES3 = new double[][]{
+            {0, 3, 2, 5, 7},
+            {3, 0, 6, 6, 6},
+            {2, 6, 0, 3, 8},
+            {5, 6, 3, 0, 9},
+            {7, 6, 8, 9, 0}
+    };
+
+    private static final double[][] DISTANCES4 = new double[][]{
+            {0, 2, 7, 7, 6, 6},
+            {2, 0, 7, 7, 6, 6},
+            {7, 7, 0, 2, 7, 7},
+            {7, 7, 2, 0, 7, 7},
+            {6, 6, 7, 7, 0, 2},
+            {6, 6, 7, 7, 2, 0}
+    };
+
+    private void compare(DistanceMatrix dm) {
+
+        IdentifierList expected = new NeighborNetImpl().createCircularOrdering(dm);
+        IdentifierList actual = new FastNeighborNetImpl().createCircularOrdering(dm);
+
+        assertEquals(dm.size(), actual.size());
+        assertTrue(expected + " != " + actual, new CircularOrdering(expected).equals(new CircularOrdering(actual)));
+    }
+
+    private DistanceMatrix randomMatrix(int n, long seed) {
+
+        Random random = new Random(seed);
+        double[][] distances = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                distances[i][j] = distances[j][i] = random.nextDouble();
+            }
+        }
+        return new FlexibleDistanceMatrix(distances);
+    }
+
+    @Test
+    public void testExecuteDist1() {
+
+        IdentifierList co = new FastNeighborNetImpl().createCircularOrdering(new FlexibleDistanceMatrix(DISTANCES1));
+
+        assertTrue(co.toString().equalsIgnoreCase("[A,C,D,E,B]"));
+    }
+
+    @Test
+    public void testSameAsNeighborNetImpl() {
+
+        compare(new FlexibleDistanceMatrix(DISTANCES1));
+        compare(new FlexibleDistanceMatrix(DISTANCES3));
+        compare(new FlexibleDistanceMatrix(DISTANCES4));
+    }
+
+    @Test
+    public void testSameAsNeighborNetImplRandom() {
+
+        for (int n = 3; n <= 40; n++) {
+            compare(randomMatrix(n, n));
+        }
+
+        compare(randomMatrix(150, 42L));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package uk.ac.uea.cmp.spectre.core.ds.split.flat;
+
+import org.junit.Test;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quadruple.Quadruple;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quadruple.QuadrupleSystem;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PermutationSequenceFactoryTest {
+
+    private static QuadrupleSystem createRandomQS(int n, long seed) {
+
+        final Random random = new Random(seed);
+        final QuadrupleSystem qs = new QuadrupleSystem(n);
+
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                for (int c = b + 1; c < n; c++) {
+                    for (int d = c + 1; d < n; d++) {
+                        final double[] weights = new double[Quadruple.NB_SPLITS];
+                        for (int k = 0; k < weights.length; k++) {
+                            weights[k] = random.nextInt(4) == 0 ? 0.0 : random.nextDouble();
+                        }
+                        qs.add(a, b, c, d, weights);
+                    }
+                }
+            }
+        }
+
+        return qs;
+    }
+
+    @Test
+    public void testInitialScoresMatchQuadrupleViews() {
+
+        final int n = 11;
+        final QuadrupleSystem qs = createRandomQS(n, 7);
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        final double[][][] scores;
+        try {
+            scores = new Scorer().initializeScores(qs, null, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        for (int i1 = 0; i1 < n; i1++) {
+            for (int i2 = i1 + 1; i2 < n; i2++) {
+                double score1 = 0.0;
+                double score2 = 0.0;
+                double distance = 0.0;
+                for (int j1 = 0; j1 < n; j1++) {
+                    for (int j2 = j1 + 1; j2 < n; j2++) {
+                        if (j1 != i1 && j1 != i2 && j2 != i1 && j2 != i2) {
+                            final Quadruple q = qs.getQuadrupleUnsorted(i1, i2, j1, j2);
+                            score1 += Math.min(Math.min(q.getSplitWeightFor1Vs3(i1), q.getSplitWeightFor1Vs3(i2)),
+                                    Math.min(q.getSplitWeightFor2Vs2(i1, j1), q.getSplitWeightFor2Vs2(i1, j2)));
+                            score2 += q.getSplitWeightFor2Vs2(i1, i2);
+                            distance += q.getSplitWeightFor2Vs2(i1, j1) + q.getSplitWeightFor2Vs2(i1, j2);
+                        }
+                    }
+                }
+                assertArrayEquals(new double[]{score1, score2, distance}, scores[i1][i2], 0.0);
+                assertArrayEquals(scores[i1][i2], scores[i2][i1], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testCandidatesMatchFullScan() {
+
+        final Random random = new Random(11);
+
+        for (int t = 0; t < 200; t++) {
+
+            // Few distinct values, so that there are plenty of ties
+            final int n = 5 + random.nextInt(10);
+            final double[][] primary = new double[n][n];
+            final double[][] secondary = new double[n][n];
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    primary[i][j] = 1.0 + random.nextInt(5) * 0.0005 + random.nextInt(3);
+                    secondary[i][j] = random.nextInt(4);
+                }
+            }
+
+            double min = Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    min = Math.min(min, primary[i][j]);
+                }
+            }
+
+            int bestA = -1;
+            int bestB = -1;
+            final NeighbourCandidates candidates = new NeighbourCandidates();
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    if (primary[i][j] - min <= 0.001 * min && (bestA == -1 || secondary[i][j] > secondary[bestA][bestB])) {
+                        bestA = i;
+                        bestB = j;
+                    }
+                    candidates.offer(i, j, primary[i][j], secondary[i][j]);
+                }
+            }
+
+            final Neighbours neighbours = candidates.best();
+            assertEquals(bestA, neighbours.getA());
+            assertEquals(bestB, neighbours.getB());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNegativeScore() {
+        new NeighbourCandidates().offer(0, 1, -1.0, 0.0);
+    }
+
+    @Test
+    public void testSameSequenceWithAnyPool() {
+
+        final int n = 15;
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        final PermutationSequence parallel;
+        final PermutationSequence sequential;
+        try {
+            parallel = new PermutationSequenceFactory(pool).computePermutationSequence(createRandomQS(n, 3));
+        } finally {
+            pool.shutdown();
+        }
+
+        final ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            sequential = new PermutationSequenceFactory(single).computePermutationSequence(createRandomQS(n, 3));
+        } finally {
+            single.shutdown();
+        }
+
+        assertEquals(n, parallel.getnTaxa());
+        assertArrayEquals(sequential.getSequence(), parallel.getSequence());
+        assertArrayEquals(sequential.getSwaps(), parallel.getSwaps());
+    }
+}
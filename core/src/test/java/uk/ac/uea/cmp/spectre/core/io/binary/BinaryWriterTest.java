@@ -0,0 +1,173 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.io.binary;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DenseDistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.distance.RandomDistanceGenerator;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.CanonicalWeightedQuartetMap;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetSystem;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetWeightStore;
+import uk.ac.uea.cmp.spectre.core.ds.split.SpectreSplitSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
+import uk.ac.uea.cmp.spectre.core.io.SpectreReaderFactory;
+import uk.ac.uea.cmp.spectre.core.io.SpectreWriterFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryWriterTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testDistanceMatrix() throws IOException {
+
+        File outputFile = new File(temp.newFolder("binary"), "rdm30.spb");
+
+        DistanceMatrix rdm = new RandomDistanceGenerator().generateDistances(30);
+
+        SpectreWriterFactory.create("spb").writeDistanceMatrix(outputFile, rdm);
+
+        DistanceMatrix read = SpectreReaderFactory.getInstance().create("spb").readDistanceMatrix(outputFile);
+
+        assertEquals(rdm.getTaxa(), read.getTaxa());
+        assertArrayEquals(rdm.getMatrix(), read.getMatrix());
+
+        try (MappedBinaryFile in = new MappedBinaryFile(outputFile)) {
+            DoubleBuffer distances = in.getDistances();
+            assertEquals(30 * 29 / 2, distances.remaining());
+            assertEquals(rdm.getDistanceByIndex(3, 7), distances.get(DenseDistanceMatrix.index(3, 7)), 0.0);
+        }
+    }
+
+    @Test
+    public void testSplitSystem() throws IOException {
+
+        File outputFile = new File(temp.newFolder("binary"), "splits.spb");
+
+        SplitSystem splits = new SpectreSplitSystem(new RandomDistanceGenerator().generateDistances(12));
+
+        new BinaryWriter().writeSplitSystem(outputFile, splits);
+
+        SplitSystem read = new BinaryReader().readSplitSystem(outputFile);
+
+        assertEquals(splits.getOrderedTaxa(), read.getOrderedTaxa());
+        assertEquals(splits.getNbSplits(), read.getNbSplits());
+        for (int i = 0; i < splits.getNbSplits(); i++) {
+            assertArrayEquals(splits.get(i).getASideAsIntArray(), read.get(i).getASideAsIntArray());
+            assertArrayEquals(splits.get(i).getBSideAsIntArray(), read.get(i).getBSideAsIntArray());
+            assertEquals(splits.get(i).getWeight(), read.get(i).getWeight(), 0.0);
+            assertEquals(splits.get(i).isActive(), read.get(i).isActive());
+        }
+    }
+
+    @Test
+    public void testWriterChosenByExtension() throws IOException {
+
+        File outputDir = temp.newFolder("binary");
+        File binaryFile = new File(outputDir, "splits.spb");
+        File nexusFile = new File(outputDir, "splits.nex");
+
+        SplitSystem splits = new SpectreSplitSystem(new RandomDistanceGenerator().generateDistances(8));
+
+        assertEquals(SpectreWriterFactory.BINARY, SpectreWriterFactory.fromFile(binaryFile));
+        assertEquals(SpectreWriterFactory.NEXUS, SpectreWriterFactory.fromFile(nexusFile));
+
+        SpectreWriterFactory.writeSplitSystem(binaryFile, splits);
+        SpectreWriterFactory.writeSplitSystem(nexusFile, splits);
+
+        assertEquals(splits.getNbSplits(), new BinaryReader().readSplitSystem(binaryFile).getNbSplits());
+        assertTrue(FileUtils.readFileToString(nexusFile, "UTF-8").startsWith("#NEXUS"));
+    }
+
+    @Test
+    public void testQuartets() throws IOException {
+
+        File outputFile = new File(temp.newFolder("binary"), "quartets.spb");
+
+        DistanceMatrix rdm = new RandomDistanceGenerator().generateDistances(9);
+        QuartetSystem quartets = new QuartetSystem(rdm.getTaxa(), 0.5, new CanonicalWeightedQuartetMap(rdm));
+        quartets.setSense(QuartetSystem.Sense.MIN);
+
+        new BinaryWriter().writeQuartets(outputFile, quartets);
+
+        QuartetSystem read = new BinaryReader().readQuartets(outputFile);
+
+        assertEquals(0.5, read.getWeight(), 0.0);
+        assertEquals(QuartetSystem.Sense.MIN, read.getSense());
+        assertEquals(quartets.getQuartets().size(), read.getQuartets().size());
+
+        QuartetWeightStore.Cursor cursor = quartets.getQuartets().getStore().cursor();
+        while (cursor.next()) {
+            for (int t = 0; t < 3; t++) {
+                assertEquals(cursor.getWeight(t), read.getQuartets().getStore().getWeight(cursor.getRank(), t), 0.0);
+            }
+        }
+
+        try (MappedBinaryFile in = new MappedBinaryFile(outputFile)) {
+            final LongBuffer ranks = in.getQuartetRanks();
+            final DoubleBuffer weights = in.getQuartetWeights();
+            assertEquals(quartets.getQuartets().size(), ranks.remaining());
+            assertEquals(ranks.remaining() * 3, weights.remaining());
+            for (int i = 0; i < ranks.remaining(); i++) {
+                for (int t = 0; t < 3; t++) {
+                    assertEquals(read.getQuartets().getStore().getWeight(ranks.get(i), t), weights.get(i * 3 + t), 0.0);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotBinary() throws IOException {
+
+        File textFile = temp.newFile("text.spb");
+        FileUtils.writeStringToFile(textFile, "#NEXUS\nBEGIN taxa;\nEND;\n", "UTF-8");
+
+        new BinaryReader().readDistanceMatrix(textFile);
+    }
+
+    @Test
+    public void testNewerVersionRejected() throws IOException {
+
+        File outputFile = new File(temp.newFolder("binary"), "future.spb");
+        new BinaryWriter().writeDistanceMatrix(outputFile, new RandomDistanceGenerator().generateDistances(4));
+
+        byte[] bytes = FileUtils.readFileToByteArray(outputFile);
+        bytes[8] = (byte) (BinaryFormat.VERSION + 1);
+        FileUtils.writeByteArrayToFile(outputFile, bytes);
+
+        try {
+            new BinaryReader().readDistanceMatrix(outputFile);
+        } catch (IOException ioe) {
+            assertTrue(ioe.getMessage().contains("version"));
+            return;
+        }
+
+        throw new AssertionError("Expected newer version to be rejected");
+    }
+}
@@ -16,7 +16,9 @@
 package uk.ac.uea.cmp.spectre.core.io.nexus;
 
 import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.network.Edge;
@@ -41,6 +43,9 @@ import static org.junit.Assert.*;
  */
 public class NexusReaderTest {
 
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
     @Test
     public void testNexusReader() throws IOException {
 
@@ -245,6 +250,91 @@ public class NexusReaderTest {
         assertTrue(nexus.getAlignments().size() == 43);
     }
 
+    @Test
+    public void testStreamedDistancesMatchFullParse() throws IOException {
+
+        for (String name : new String[]{"/bees.nex", "/triangular.nex", "/distmtx.nex"}) {
+
+            File testFile = FileUtils.toFile(NexusReaderTest.class.getResource(name));
+
+            DistanceMatrix full = new NexusReader().parse(testFile).getDistanceMatrix();
+            DistanceMatrix streamed = new NexusReader().parse(testFile, "distances").getDistanceMatrix();
+
+            assertEquals(full.size(), streamed.size());
+            assertEquals(full.getTaxa().size(), streamed.getTaxa().size());
+            for (int i = 0; i < full.size(); i++) {
+                assertEquals(full.getTaxa().get(i).getName(), streamed.getTaxa().get(i).getName());
+                assertEquals(full.getTaxa().get(i).getId(), streamed.getTaxa().get(i).getId());
+                assertArrayEquals(full.getMatrix()[i], streamed.getMatrix()[i], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testStreamedUpperTriangleWithoutDiagonal() throws IOException {
+
+        File testFile = temp.newFile("upper.nex");
+        FileUtils.writeStringToFile(testFile,
+                "#NEXUS\n" +
+                "BEGIN Taxa;\nDIMENSIONS ntax=4;\nTAXLABELS A B C D;\nEND;\n" +
+                "BEGIN Distances;\nDIMENSIONS ntax=4;\nFORMAT triangle=upper nodiagonal labels=right;\nMATRIX\n" +
+                "1.0 2.0 3.0 'A'\n4.0 5.0 B\n6.0 C [no distances on the last row]\nD\n;\nEND;\n");
+
+        DistanceMatrix dm = new NexusReader().readDistanceMatrix(testFile);
+
+        assertEquals(4, dm.size());
+        assertEquals(1.0, dm.getDistance("A", "B"), 0.0);
+        assertEquals(3.0, dm.getDistance("D", "A"), 0.0);
+        assertEquals(5.0, dm.getDistance("B", "D"), 0.0);
+        assertEquals(6.0, dm.getDistance("D", "C"), 0.0);
+    }
+
+    @Test
+    public void testStreamedUnlabelledWithoutTaxaBlock() throws IOException {
+
+        File testFile = temp.newFile("unlabelled.nex");
+        FileUtils.writeStringToFile(testFile,
+                "#NEXUS\n" +
+                "BEGIN Distances;\nDIMENSIONS ntax=3;\nFORMAT triangle=lower labels=no;\nMATRIX\n" +
+                "0\n1.0 0\n2.0 3.0 0\n;\nEND;\n");
+
+        DistanceMatrix dm = new NexusReader().readDistanceMatrix(testFile);
+
+        assertEquals(3, dm.size());
+        assertEquals("A", dm.getTaxa().get(0).getName());
+        assertEquals("C", dm.getTaxa().get(2).getName());
+        assertEquals(1.0, dm.getDistance("A", "B"), 0.0);
+        assertEquals(2.0, dm.getDistance("C", "A"), 0.0);
+        assertEquals(3.0, dm.getDistance("B", "C"), 0.0);
+    }
+
+    @Test
+    public void testUnrequestedBlocksAreSkipped() throws IOException {
+
+        File testFile = temp.newFile("skip.nex");
+        FileUtils.writeStringToFile(testFile,
+                "#NEXUS\n" +
+                "BEGIN Unknown;\nSOMETHING the=full [parser] 'cannot; read' \"end;\";\nEND;\n" +
+                "BEGIN Distances;\nDIMENSIONS ntax=2;\nFORMAT triangle=lower labels;\nMATRIX\nA 0\nB 1.5 0\n;\nEND;\n");
+
+        Nexus nexus = new NexusReader().parse(testFile, "distances");
+
+        assertEquals(1.5, nexus.getDistanceMatrix().getDistance("A", "B"), 0.0);
+        assertNull(nexus.getSplitSystem());
+    }
+
+    @Test
+    public void testStreamedSplits() throws IOException {
+
+        File testFile = FileUtils.toFile(NexusReaderTest.class.getResource("/bees-splits.nex"));
+
+        SplitSystem ss = new NexusReader().readSplitSystem(testFile);
+
+        assertTrue(ss.size() == 9);
+        assertTrue(ss.getOrderedTaxa().get(2).getId() == 6);
+        assertTrue(ss.get(7).getWeight() == 6.951241628977932E-4);
+    }
+
     // Can't do this one yet.
     //@Test
     public void testFunghi1() throws IOException {
@@ -15,12 +15,17 @@
 package uk.ac.uea.cmp.spectre.core.io.phylip;
 
 import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -32,6 +37,9 @@ import static org.junit.Assert.assertTrue;
  */
 public class PhylipReaderTest {
 
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
     @Test
     public void testPhylipReader() throws IOException {
 
@@ -51,4 +59,54 @@ public class PhylipReaderTest {
 
         assertTrue(distanceMatrix.size() == 25);
     }
+
+    @Test
+    public void testMultiLineValues() throws IOException {
+
+        File testFile = FileUtils.toFile(PhylipReaderTest.class.getResource("/multi-line.phy"));
+
+        DistanceMatrix distanceMatrix = new PhylipReader().readDistanceMatrix(testFile);
+
+        assertEquals(0.161542, distanceMatrix.getDistance("001.1", distanceMatrix.getTaxa().get(24).getName()), 0.0);
+        assertEquals(0.051385, distanceMatrix.getDistance("001.1", "001.2"), 0.0);
+        assertEquals("001.2", distanceMatrix.getTaxa().get(1).getName());
+    }
+
+    @Test
+    public void testParallelMatchesSequential() throws IOException {
+
+        File testFile = FileUtils.toFile(PhylipReaderTest.class.getResource("/multi-line.phy"));
+
+        DistanceMatrix parallel = new PhylipReader().readDistanceMatrix(testFile, new ForkJoinPool(4));
+        DistanceMatrix sequential = new PhylipReader().readDistanceMatrix(testFile, new ForkJoinPool(1));
+
+        assertEquals(sequential.getTaxa(), parallel.getTaxa());
+        assertArrayEquals(sequential.getMatrix(), parallel.getMatrix());
+    }
+
+    @Test
+    public void testNumberFormats() throws IOException {
+
+        File testFile = temp.newFile("formats.phy");
+        FileUtils.writeStringToFile(testFile, "3\r\n" +
+                "a 0 1e-3 -2.5\r\n" +
+                "b\t1e-3 0 0.1234567890123456789\r\n" +
+                "c -2.5 0.1234567890123456789 +.5E+1\r\n", "UTF-8");
+
+        DistanceMatrix distanceMatrix = new PhylipReader().readDistanceMatrix(testFile);
+
+        assertEquals(3, distanceMatrix.size());
+        assertEquals(0.001, distanceMatrix.getDistance("a", "b"), 0.0);
+        assertEquals(-2.5, distanceMatrix.getDistance("a", "c"), 0.0);
+        assertEquals(Double.parseDouble("0.1234567890123456789"), distanceMatrix.getDistance("b", "c"), 0.0);
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingDistances() throws IOException {
+
+        File testFile = temp.newFile("short.phy");
+        FileUtils.writeStringToFile(testFile, "3\na 0 1 2\nb 1 0\nc 2 3 0\n", "UTF-8");
+
+        new PhylipReader().readDistanceMatrix(testFile);
+    }
 }
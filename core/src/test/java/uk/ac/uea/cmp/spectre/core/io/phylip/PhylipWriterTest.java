@@ -26,6 +26,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -53,4 +54,25 @@ public class PhylipWriterTest {
         assertTrue(lines.size() == 11);
         assertTrue(lines.get(1).split(" ").length == 11);
     }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+
+        File outputFile = new File(temp.newFolder("roundTrip"), "rdm50.phy");
+
+        DistanceMatrix rdm = new RandomDistanceGenerator().generateDistances(50);
+
+        new PhylipWriter().writeDistanceMatrix(outputFile, rdm);
+
+        DistanceMatrix read = new PhylipReader().readDistanceMatrix(outputFile);
+
+        assertEquals(rdm.size(), read.size());
+        for (int i = 0; i < rdm.size(); i++) {
+            for (int j = 0; j < rdm.size(); j++) {
+                String ni = rdm.getTaxa().get(i).getName();
+                String nj = rdm.getTaxa().get(j).getName();
+                assertEquals(rdm.getDistance(ni, nj), read.getDistance(ni, nj), 0.0);
+            }
+        }
+    }
 }
@@ -0,0 +1,183 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.ui.cli;
+
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.uea.cmp.spectre.core.ui.gui.RunnableTool;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchRunnerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    /**
+     * Tool that succeeds unless its first argument is "fail", or "error" to throw an error from run
+     */
+    private static class TestTool extends RunnableTool {
+
+        private final String[] args;
+
+        private TestTool(String[] args) {
+            this.args = args;
+        }
+
+        @Override
+        public void run() {
+            if (this.args.length > 0 && this.args[0].equals("fail")) {
+                this.setError(new IOException("Failed on purpose"));
+            }
+            else if (this.args.length > 0 && this.args[0].equals("error")) {
+                throw new Error("Error on purpose");
+            }
+        }
+    }
+
+    private static class TestToolFactory implements RunnableToolFactory {
+
+        @Override
+        public String getName() {
+            return "test";
+        }
+
+        @Override
+        public RunnableTool createTool(String[] args) throws ParseException, IOException {
+            if (args.length == 0) {
+                throw new ParseException("No input file specified.");
+            }
+            return new TestTool(args);
+        }
+    }
+
+    @Test
+    public void testTokenise() {
+
+        assertEquals(Arrays.asList("netmake", "-o", "out/a", "a.fa"), BatchRunner.tokenise("netmake  -o out/a\ta.fa "));
+        assertEquals(Arrays.asList("netmake", "my samples/a.fa", "it's"), BatchRunner.tokenise("netmake \"my samples/a.fa\" \"it's\""));
+        assertEquals(Arrays.asList("a", "", "bc"), BatchRunner.tokenise("a '' b'c'"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTokeniseUnterminated() {
+        BatchRunner.tokenise("netmake \"a.fa");
+    }
+
+    @Test
+    public void testReadManifest() throws IOException {
+
+        File manifest = temp.newFile("manifest.txt");
+        FileUtils.writeLines(manifest, Arrays.asList(
+                "# tool args",
+                "",
+                "netmake -o out/a a.fa",
+                "   ",
+                "  qnet 'q 1.nex'"));
+
+        List<BatchRunner.Job> jobs = BatchRunner.readManifest(manifest);
+
+        assertEquals(2, jobs.size());
+        assertEquals(3, jobs.get(0).getLineNumber());
+        assertEquals("netmake", jobs.get(0).getTool());
+        assertArrayEquals(new String[]{"-o", "out/a", "a.fa"}, jobs.get(0).getArgs());
+        assertEquals(5, jobs.get(1).getLineNumber());
+        assertEquals("qnet", jobs.get(1).getTool());
+        assertArrayEquals(new String[]{"q 1.nex"}, jobs.get(1).getArgs());
+    }
+
+    @Test
+    public void testRun() throws InterruptedException, IOException {
+
+        List<RunnableToolFactory> factories = new ArrayList<>();
+        factories.add(new TestToolFactory());
+
+        List<BatchRunner.Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            jobs.add(new BatchRunner.Job(i + 1, "test", new String[]{"input" + i}));
+        }
+        jobs.add(new BatchRunner.Job(11, "TEST", new String[]{"fail"}));
+        jobs.add(new BatchRunner.Job(12, "test", new String[]{}));
+        jobs.add(new BatchRunner.Job(13, "unknown", new String[]{"input"}));
+
+        List<BatchRunner.JobReport> reports = new BatchRunner(factories, 3).run(jobs);
+
+        assertEquals(jobs.size(), reports.size());
+        for (int i = 0; i < reports.size(); i++) {
+            assertTrue(reports.get(i).getJob() == jobs.get(i));
+            assertTrue(reports.get(i).getDuration() >= 0);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(BatchRunner.Status.SUCCEEDED, reports.get(i).getStatus());
+        }
+
+        assertEquals(3, BatchRunner.countFailures(reports));
+        assertEquals("Failed on purpose", reports.get(10).getError().getMessage());
+        assertTrue(reports.get(11).getError() instanceof ParseException);
+        assertTrue(reports.get(12).getError() instanceof IllegalArgumentException);
+        assertTrue(reports.get(10).getMetrics() != null);
+        assertTrue(reports.get(11).getMetrics() == null);
+
+        File reportFile = temp.newFile("report.tsv");
+        BatchRunner.writeReport(reports, reportFile);
+
+        List<String> lines = FileUtils.readLines(reportFile);
+        assertEquals(jobs.size() + 1, lines.size());
+        assertEquals(BatchRunner.JobReport.header(), lines.get(0));
+        assertTrue(lines.get(11).startsWith("11\tTEST\tFAILED\t"));
+        assertTrue(lines.get(11).endsWith("\tfail\tFailed on purpose"));
+
+        File metricsFile = temp.newFile("metrics.json");
+        BatchRunner.writeMetrics(reports, metricsFile);
+
+        String metrics = FileUtils.readFileToString(metricsFile);
+        assertTrue(metrics.startsWith("[\n  {\"line\": 1, \"tool\": \"test\", \"status\": \"SUCCEEDED\", "));
+        assertTrue(metrics.contains("{\"line\": 13, \"tool\": \"unknown\", \"status\": \"FAILED\", "));
+        assertTrue(metrics.endsWith("\"metrics\": null}\n]\n"));
+    }
+
+    @Test
+    public void testRunWithError() throws InterruptedException {
+
+        List<RunnableToolFactory> factories = new ArrayList<>();
+        factories.add(new TestToolFactory());
+
+        List<BatchRunner.Job> jobs = new ArrayList<>();
+        jobs.add(new BatchRunner.Job(1, "test", new String[]{"input"}));
+        jobs.add(new BatchRunner.Job(2, "test", new String[]{"error"}));
+        jobs.add(new BatchRunner.Job(3, "test", new String[]{"input"}));
+
+        List<BatchRunner.JobReport> reports = new BatchRunner(factories, 2).run(jobs);
+
+        assertEquals(jobs.size(), reports.size());
+        assertEquals(BatchRunner.Status.SUCCEEDED, reports.get(0).getStatus());
+        assertEquals(BatchRunner.Status.FAILED, reports.get(1).getStatus());
+        assertEquals("Error on purpose", reports.get(1).getError().getMessage());
+        assertEquals(BatchRunner.Status.SUCCEEDED, reports.get(2).getStatus());
+    }
+}
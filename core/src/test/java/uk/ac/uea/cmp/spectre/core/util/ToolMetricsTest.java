@@ -0,0 +1,92 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.core.util;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ToolMetricsTest {
+
+    private static double[] allocate(int size) {
+        double[] data = new double[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = Math.sqrt(i);
+        }
+        return data;
+    }
+
+    @Test
+    public void testPhases() throws InterruptedException {
+
+        ToolMetrics metrics = new ToolMetrics();
+
+        metrics.start(ToolMetrics.READ);
+        Thread.sleep(5);
+        metrics.start(ToolMetrics.NNLS);
+        double[] data = allocate(1 << 20);
+        metrics.start(ToolMetrics.DRAWING);
+        metrics.start(ToolMetrics.NNLS);
+        metrics.stop();
+
+        // Stopping again does nothing
+        metrics.stop();
+
+        List<ToolMetrics.Phase> phases = metrics.getPhases();
+
+        assertEquals(3, phases.size());
+        assertEquals(ToolMetrics.READ, phases.get(0).getName());
+        assertEquals(ToolMetrics.NNLS, phases.get(1).getName());
+        assertEquals(ToolMetrics.DRAWING, phases.get(2).getName());
+
+        assertTrue(metrics.getPhase(ToolMetrics.READ).getWallTime() >= 5000000L);
+        assertNull(metrics.getPhase(ToolMetrics.WRITE));
+
+        ToolMetrics.Phase nnls = metrics.getPhase(ToolMetrics.NNLS);
+        assertTrue(nnls.getAllocatedBytes() == -1 || nnls.getAllocatedBytes() >= data.length * 8L);
+        assertTrue(nnls.getPeakHeapBytes() == -1 || nnls.getPeakHeapBytes() >= data.length * 8L);
+
+        ToolMetrics.Phase total = metrics.getTotal();
+        long wallTime = 0;
+        for (ToolMetrics.Phase phase : phases) {
+            wallTime += phase.getWallTime();
+        }
+        assertEquals(wallTime, total.getWallTime());
+    }
+
+    @Test
+    public void testJson() {
+
+        ToolMetrics metrics = new ToolMetrics();
+        assertEquals("{\n  \"phases\": [],\n  \"total\": {\"name\": \"total\", \"wall_ns\": 0, \"cpu_ns\": 0, " +
+                "\"allocated_bytes\": 0, \"peak_heap_bytes\": 0}\n}", metrics.toJson());
+
+        metrics.start("a \"quoted\" phase");
+        metrics.start(ToolMetrics.WRITE);
+        metrics.stop();
+
+        String json = metrics.toJson();
+        assertNotNull(json);
+        assertTrue(json.contains("{\"name\": \"a \\\"quoted\\\" phase\", \"wall_ns\": "));
+        assertTrue(json.contains("{\"name\": \"" + ToolMetrics.WRITE + "\", \"wall_ns\": "));
+        assertTrue(json.contains("\"total\": {\"name\": \"total\""));
+    }
+}
@@ -25,9 +25,9 @@ import uk.ac.uea.cmp.spectre.core.ds.Identifier;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
 import uk.ac.uea.cmp.spectre.core.ds.Locations;
 import uk.ac.uea.cmp.spectre.core.ds.Sequences;
+import uk.ac.uea.cmp.spectre.core.ds.distance.DenseDistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceCalculatorFactory;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
-import uk.ac.uea.cmp.spectre.core.ds.distance.FlexibleDistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.network.Network;
 import uk.ac.uea.cmp.spectre.core.ds.network.draw.PermutationSequenceDraw;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quadruple.*;
@@ -35,11 +35,13 @@ import uk.ac.uea.cmp.spectre.core.ds.split.SpectreSplitSystem;
 import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
 import uk.ac.uea.cmp.spectre.core.ds.split.flat.PermutationSequence;
 import uk.ac.uea.cmp.spectre.core.ds.split.flat.PermutationSequenceFactory;
+import uk.ac.uea.cmp.spectre.core.io.SpectreWriterFactory;
 import uk.ac.uea.cmp.spectre.core.io.fasta.FastaReader;
 import uk.ac.uea.cmp.spectre.core.io.nexus.Nexus;
 import uk.ac.uea.cmp.spectre.core.io.nexus.NexusWriter;
 import uk.ac.uea.cmp.spectre.core.ui.gui.RunnableTool;
 import uk.ac.uea.cmp.spectre.core.ui.gui.StatusTrackerWithView;
+import uk.ac.uea.cmp.spectre.core.util.ToolMetrics;
 
 import java.io.File;
 import java.io.IOException;
@@ -58,6 +60,8 @@ public class FlatNJ extends RunnableTool {
 
     private static Logger log = LoggerFactory.getLogger(FlatNJ.class);
 
+    public static final String PHASE_QUADRUPLES = "quadruples";
+
     private FlatNJOptions options;
 
     public FlatNJ(FlatNJOptions options) {
@@ -100,17 +104,14 @@ public class FlatNJ extends RunnableTool {
 
 
 
-            // Get a shortcut to runtime object for checking memory usage
-            Runtime rt = Runtime.getRuntime();
-
             // Start timing
             StopWatch stopWatch = new StopWatch();
             stopWatch.start();
 
             log.info("Starting job");
-            log.debug("FREE MEM - at start: " + rt.freeMemory());
 
             notifyUser("Loading input data from: " + inFile);
+            this.getMetrics().start(ToolMetrics.READ);
 
             this.continueRun();
 
@@ -197,11 +198,10 @@ public class FlatNJ extends RunnableTool {
                 }
             }
 
-            rt.gc();
-            log.debug("FREE MEM - after loading input: " + rt.freeMemory());
-
             this.continueRun();
 
+            this.getMetrics().start(PHASE_QUADRUPLES);
+
             // Compute the Quadruple system from alternate information if we didn't just load it from disk
             if (qs == null) {
 
@@ -252,26 +252,19 @@ public class FlatNJ extends RunnableTool {
             qs.subtractMin();   //Subtract minimal weights. They will be added back when the network is computed.
             log.info("Computed " + qs.getnQuadruples() + " quadruples");
 
-            rt.gc();
-            log.debug("FREE MEM - after creating quadruples: " + rt.freeMemory());
-
             this.continueRun();
 
             notifyUser("Computing ordering");
+            this.getMetrics().start(ToolMetrics.ORDERING);
             PermutationSequence ps = new PermutationSequenceFactory().computePermutationSequence(qs);
 
-            rt.gc();
-            log.debug("FREE MEM - after computing ordering: " + rt.freeMemory());
-
             this.continueRun();
 
             // Updates Permutation Sequence permutationSequence
             notifyUser("Weighting flat split system");
+            this.getMetrics().start(ToolMetrics.NNLS);
             new WeightCalculatorImpl(ps, qs).fitWeights(options.getOptimiser());
 
-            rt.gc();
-            log.debug("FREE MEM - after weighting: " + rt.freeMemory());
-
             this.continueRun();
 
             log.info("Filtering splits below threshold: " + options.getThreshold());
@@ -298,6 +291,7 @@ public class FlatNJ extends RunnableTool {
             this.continueRun();
 
             notifyUser("Computing network");
+            this.getMetrics().start(ToolMetrics.DRAWING);
             PermutationSequenceDraw psDraw = new PermutationSequenceDraw(ps.getSequence(),
                     ps.getSwaps(),
                     ps.getWeights(),
@@ -306,17 +300,25 @@ public class FlatNJ extends RunnableTool {
                     ps.getTaxaNames());
             Network network = psDraw.createOptimisedNetwork();
 
-            NexusWriter writer = new NexusWriter();
-            writer.appendHeader();
-            writer.appendLine();
-            writer.append(taxa);
-            writer.appendLine();
-            writer.append(fss);
-            writer.appendLine();
-            writer.append(network.getPrimaryVertex(), ps.getnTaxa(), taxa);
-            writer.write(outFile);
-
-            log.info("Saving complete nexus file to: " + outFile.getAbsolutePath());
+            this.getMetrics().start(ToolMetrics.WRITE);
+            if (SpectreWriterFactory.fromFile(outFile) == SpectreWriterFactory.BINARY) {
+                // The binary format has no network section, so only the splits can be saved
+                SpectreWriterFactory.BINARY.create().writeSplitSystem(outFile, fss);
+                log.info("Saving split system to: " + outFile.getAbsolutePath());
+            }
+            else {
+                NexusWriter writer = new NexusWriter();
+                writer.appendHeader();
+                writer.appendLine();
+                writer.append(taxa);
+                writer.appendLine();
+                writer.append(fss);
+                writer.appendLine();
+                writer.append(network.getPrimaryVertex(), ps.getnTaxa(), taxa);
+                writer.write(outFile);
+
+                log.info("Saving complete nexus file to: " + outFile.getAbsolutePath());
+            }
             this.trackerFinished(true);
 
             // Print run time on screen
@@ -328,6 +330,7 @@ public class FlatNJ extends RunnableTool {
             this.setError(e);
             this.trackerFinished(false);
         } finally {
+            this.getMetrics().stop();
             this.notifyListener();
         }
     }
@@ -340,7 +343,7 @@ public class FlatNJ extends RunnableTool {
 
         Map<String,String> distinctSeqs = new TreeMap<>();
         Set<Integer> skipSet = new HashSet<>();
-        DistanceMatrix distinctDm = new FlexibleDistanceMatrix(dm);
+        DistanceMatrix distinctDm = new DenseDistanceMatrix(dm);
         for(int i = 0; i < dm.size(); i++) {
 
             Identifier ii = dm.getTaxa().getByName(seqs.getTaxaLabels()[i]);
@@ -20,7 +20,9 @@ import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
 import org.apache.commons.lang3.StringUtils;
+import org.kohsuke.MetaInfServices;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.earlham.metaopt.Objective;
@@ -29,11 +31,15 @@ import uk.ac.earlham.metaopt.OptimiserException;
 import uk.ac.earlham.metaopt.OptimiserFactory;
 import uk.ac.earlham.metaopt.external.JOptimizer;
 import uk.ac.uea.cmp.spectre.core.ui.cli.CommandLineHelper;
+import uk.ac.uea.cmp.spectre.core.ui.cli.RunnableToolFactory;
+import uk.ac.uea.cmp.spectre.core.ui.gui.RunnableTool;
 import uk.ac.uea.cmp.spectre.core.util.LogConfig;
 
 import java.io.File;
+import java.io.IOException;
 
-public class FlatNJCLI {
+@MetaInfServices(RunnableToolFactory.class)
+public class FlatNJCLI implements RunnableToolFactory {
 
     private static Logger log = LoggerFactory.getLogger(FlatNJCLI.class);
 
@@ -81,6 +87,8 @@ public class FlatNJCLI {
             FlatNJ flatNJ = new FlatNJ(opts);
             flatNJ.run();
 
+            CommandLineHelper.writeMetrics(commandLine, flatNJ);
+
             if (flatNJ.failed()) {
                 log.error(flatNJ.getErrorMessage());
             }
@@ -120,11 +128,23 @@ public class FlatNJCLI {
         options.addOption(OptionBuilder.withLongOpt(OPT_VERBOSE)
                 .withDescription(FlatNJOptions.DESC_VERBOSE).create("v"));
 
+        options.addOption(CommandLineHelper.createMetricsOption());
+
         options.addOption(CommandLineHelper.HELP_OPTION);
 
         return options;
     }
 
+    @Override
+    public String getName() {
+        return BIN_NAME;
+    }
+
+    @Override
+    public RunnableTool createTool(String[] args) throws ParseException, IOException {
+        return new FlatNJ(processArgs(new PosixParser().parse(createOptions(), args)));
+    }
+
     private static FlatNJOptions processArgs(CommandLine commandLine) throws ParseException {
 
         if (commandLine.getArgs().length == 0) {
@@ -21,32 +21,51 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
 import uk.ac.uea.cmp.spectre.core.ds.Sequences;
+import uk.ac.uea.cmp.spectre.core.ds.SitePatterns;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceCalculatorFactory;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.network.Network;
 import uk.ac.uea.cmp.spectre.core.ds.network.draw.PermutationSequenceDraw;
+import uk.ac.uea.cmp.spectre.core.ds.split.BitSplit;
 import uk.ac.uea.cmp.spectre.core.ds.split.SpectreSplitSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.Split;
 import uk.ac.uea.cmp.spectre.core.ds.split.SplitBlock;
 import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitWeights;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CircularNNLS;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CircularOrderingAlgorithms;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CircularOrderingCreator;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.FastNetMakeCircularOrderer;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.NetMakeCircularOrderer;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting.Weighting;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting.Weightings;
-import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nn.NeighborNetImpl;
+import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nn.FastNeighborNetImpl;
 import uk.ac.uea.cmp.spectre.core.io.SpectreReader;
 import uk.ac.uea.cmp.spectre.core.io.SpectreReaderFactory;
 import uk.ac.uea.cmp.spectre.core.io.nexus.Nexus;
 import uk.ac.uea.cmp.spectre.core.io.nexus.NexusReader;
 import uk.ac.uea.cmp.spectre.core.ui.gui.RunnableTool;
 import uk.ac.uea.cmp.spectre.core.ui.gui.StatusTracker;
+import uk.ac.uea.cmp.spectre.core.util.ToolMetrics;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Performs the NeighborNet algorithm to retrieve a split system and a circular
  * order.
  *
+ * When the input is an alignment, the support for each split can also be estimated by bootstrapping.  Each replicate
+ * resamples the columns of the alignment by reweighting its {@link SitePatterns}, then calculates distances, a circular
+ * ordering and circular least squares split weights.  Replicates run on a shared fork join pool, all in one process.
+ *
  * @author Sarah Bastkowski
  *         See Sarah Bastkowski, 2010:
  *         <I>Algorithmen zum Finden von Bäumen in Neighbor Net Netzwerken</I>
@@ -55,6 +74,8 @@ public class NetMake extends RunnableTool {
 
     private static Logger log = LoggerFactory.getLogger(NetMake.class);
 
+    public static final String PHASE_BOOTSTRAP = "bootstrap";
+
     private NetMakeOptions options;
 
     public NetMake() {
@@ -82,12 +103,14 @@ public class NetMake extends RunnableTool {
     public NetMakeResult execute(DistanceMatrix distanceMatrix, CircularOrderingCreator circularOrderingCreator) {
 
         log.info("Calculating circular ordering:");
+        this.getMetrics().start(ToolMetrics.ORDERING);
         IdentifierList permutation = circularOrderingCreator.createCircularOrdering(distanceMatrix);
 
         log.info("... By ID  : " + permutation.toString(IdentifierList.IdentifierFormat.BY_ID));
         log.info("... By Name: " + permutation.toString(IdentifierList.IdentifierFormat.BY_NAME));
 
         log.info("Creating splits network");
+        this.getMetrics().start(ToolMetrics.NNLS);
 
         SplitSystem networkSS = new SpectreSplitSystem(distanceMatrix, permutation, SpectreSplitSystem.LeastSquaresCalculator.CIRCULAR).makeCanonical();
 
@@ -95,6 +118,7 @@ public class NetMake extends RunnableTool {
         if (this.options.isDraw()) {
 
             log.info("Drawing network");
+            this.getMetrics().start(ToolMetrics.DRAWING);
             network = new PermutationSequenceDraw(networkSS.makeInducedOrdering()).createOptimisedNetwork();
         }
 
@@ -104,6 +128,7 @@ public class NetMake extends RunnableTool {
         if (circularOrderingCreator.createsTreeSplits() && this.getOptions().getOutputTree() != null) {
 
             log.info("Creating splits tree");
+            this.getMetrics().start(ToolMetrics.NNLS);
 
             SplitSystem treeSplits = circularOrderingCreator.getTreeSplits();
 
@@ -114,11 +139,16 @@ public class NetMake extends RunnableTool {
 
             log.info("Drawing tree");
             if (this.options.isDraw()) {
+                this.getMetrics().start(ToolMetrics.DRAWING);
                 tree = new PermutationSequenceDraw(treeSS.makeInducedOrdering()).createOptimisedNetwork();
             }
         }
 
-        return new NetMakeResult(distanceMatrix, treeSS, tree, networkSS, network);
+        this.getMetrics().stop();
+
+        NetMakeResult result = new NetMakeResult(distanceMatrix, treeSS, tree, networkSS, network);
+        result.setMetrics(this.getMetrics());
+        return result;
     }
 
 
@@ -140,6 +170,145 @@ public class NetMake extends RunnableTool {
     }
 
 
+    /**
+     * Creates the circular ordering algorithm set in the options
+     *
+     * @param distanceMatrix The distance matrix the ordering will be made from, which the NetMake weightings are
+     *                       based on
+     * @param pool           The pool to use, where the algorithm supports one
+     * @return The circular ordering algorithm
+     */
+    protected CircularOrderingCreator createCircularOrderingCreator(DistanceMatrix distanceMatrix, ForkJoinPool pool) {
+
+        CircularOrderingAlgorithms coa = CircularOrderingAlgorithms.valueOf(this.options.getCoAlg().toUpperCase());
+
+        if (coa == CircularOrderingAlgorithms.NETMAKE) {
+
+            // Create weighting objects
+            Weighting weighting1 = Weightings.createWeighting(this.options.getWeighting1(), distanceMatrix, this.options.getTreeParam(), true);
+            Weighting weighting2 = (this.options.getWeighting2() != null && !this.options.getWeighting2().equalsIgnoreCase("none")) ?
+                    Weightings.createWeighting(this.options.getWeighting2(), distanceMatrix, this.options.getTreeParam(), false) :
+                    null;
+
+            // GreedyME needs the identifier based tables, other modes can use the faster array based implementation
+            return NetMakeCircularOrderer.getRunMode(weighting1, weighting2) == NetMakeCircularOrderer.RunMode.HYBRID_GREEDYME ?
+                    new NetMakeCircularOrderer(weighting1, weighting2) :
+                    new FastNetMakeCircularOrderer(weighting1, weighting2, pool);
+        }
+        else if (coa == CircularOrderingAlgorithms.NEIGHBORNET) {
+
+            return new FastNeighborNetImpl();
+        }
+
+        return null;
+    }
+
+    /**
+     * Estimates the support for splits by bootstrapping.  For each replicate the columns of the alignment are
+     * resampled with replacement, and a distance matrix, circular ordering and circular least squares split weights
+     * are calculated as for the full alignment.  Replicate r resamples with a random number generator seeded with
+     * seed + r, so the result does not depend on how replicates are scheduled.
+     *
+     * @param patterns     The site patterns of the alignment
+     * @param ordering     The circular ordering of the split system to return
+     * @param nbReplicates The number of replicates
+     * @param seed         Seed for resampling the columns
+     * @param pool         The pool to run the replicates on
+     * @return Every split with a positive weight in any replicate, weighted by the proportion of replicates in which
+     * it has a positive weight
+     */
+    public SplitSystem bootstrap(SitePatterns patterns, IdentifierList ordering, int nbReplicates, long seed, ForkJoinPool pool) {
+
+        if (nbReplicates <= 0) {
+            throw new IllegalArgumentException("Number of bootstrap replicates must be positive");
+        }
+
+        DistanceCalculatorFactory dcf = DistanceCalculatorFactory.valueOf(this.options.getDc().toUpperCase().trim());
+
+        List<List<Split>> replicateSplits = new ArrayList<>(Collections.<List<Split>>nCopies(nbReplicates, null));
+        pool.invoke(new ReplicateTask(patterns, dcf, seed, replicateSplits, 0, nbReplicates, pool));
+
+        // Count the splits in replicate order, so splits are listed in the same order on every run
+        Map<Split, Integer> counts = new LinkedHashMap<>();
+        for (List<Split> splits : replicateSplits) {
+            for (Split split : splits) {
+                Integer count = counts.get(split);
+                counts.put(split, count == null ? 1 : count + 1);
+            }
+        }
+
+        List<Split> supported = new ArrayList<>(counts.size());
+        for (Map.Entry<Split, Integer> entry : counts.entrySet()) {
+            Split split = entry.getKey();
+            split.setWeight(entry.getValue() / (double) nbReplicates);
+            supported.add(split);
+        }
+
+        return new SpectreSplitSystem(new IdentifierList(ordering), supported).makeCanonical();
+    }
+
+    /**
+     * Runs a range of bootstrap replicates, splitting the range in half until only one replicate is left
+     */
+    private class ReplicateTask extends RecursiveAction {
+
+        private final SitePatterns patterns;
+        private final DistanceCalculatorFactory dcf;
+        private final long seed;
+        private final List<List<Split>> replicateSplits;
+        private final int start;
+        private final int end;
+        private final ForkJoinPool pool;
+
+        private ReplicateTask(SitePatterns patterns, DistanceCalculatorFactory dcf, long seed,
+                              List<List<Split>> replicateSplits, int start, int end, ForkJoinPool pool) {
+            this.patterns = patterns;
+            this.dcf = dcf;
+            this.seed = seed;
+            this.replicateSplits = replicateSplits;
+            this.start = start;
+            this.end = end;
+            this.pool = pool;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (this.end - this.start > 1) {
+                final int mid = (this.start + this.end) >>> 1;
+                invokeAll(new ReplicateTask(this.patterns, this.dcf, this.seed, this.replicateSplits, this.start, mid, this.pool),
+                        new ReplicateTask(this.patterns, this.dcf, this.seed, this.replicateSplits, mid, this.end, this.pool));
+                return;
+            }
+
+            if (this.end == this.start) {
+                return;
+            }
+
+            final SitePatterns replicate = this.patterns.resample(new Random(this.seed + this.start));
+            final DistanceMatrix distanceMatrix = this.dcf.createDistanceMatrix(replicate, this.pool);
+            final IdentifierList permutation = createCircularOrderingCreator(distanceMatrix, this.pool).createCircularOrdering(distanceMatrix);
+            final SplitWeights weights = new CircularNNLS(this.pool).circularLeastSquares(distanceMatrix, permutation);
+
+            // Splits with a positive weight separate a run of taxa in the circular ordering from the rest
+            final int n = permutation.size();
+            final List<Split> splits = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    if (weights.getAt(j, i) > 0.0) {
+                        final int[] aSide = new int[j - i];
+                        for (int k = i + 1; k < j + 1; k++) {
+                            aSide[k - i - 1] = permutation.get(k).getId();
+                        }
+                        splits.add(new BitSplit(aSide, n));
+                    }
+                }
+            }
+
+            this.replicateSplits.set(this.start, splits);
+        }
+    }
+
     private void notifyUser(String message) {
         log.info(message);
         this.trackerInitUnknownRuntime(message);
@@ -155,6 +324,7 @@ public class NetMake extends RunnableTool {
             stopWatch.start();
 
             notifyUser("Loading distance matrix from: " + this.options.getInput().getAbsolutePath());
+            this.getMetrics().start(ToolMetrics.READ);
 
             // Load distanceMatrix from input file based on file type
             // Get a handle on the spectre factory
@@ -185,11 +355,14 @@ public class NetMake extends RunnableTool {
                 distanceMatrix = spectreReader.readDistanceMatrix(this.options.getInput());
             }
 
+            SitePatterns patterns = null;
             if (distanceMatrix == null && seqs != null) {
                 log.info("Loaded MSA containing " + seqs.size() + " sequences of length " + seqs.getSeq(0).length());
 
+                this.getMetrics().start(ToolMetrics.DISTANCES);
                 DistanceCalculatorFactory dcf = DistanceCalculatorFactory.valueOf(this.options.getDc().toUpperCase().trim());
-                distanceMatrix = dcf.createDistanceMatrix(seqs);
+                patterns = new SitePatterns(seqs);
+                distanceMatrix = dcf.createDistanceMatrix(patterns, ForkJoinPool.commonPool());
                 log.info("Distance matrix calculated from MSA using " + dcf.name());
             }
             else if (distanceMatrix == null) {
@@ -198,40 +371,41 @@ public class NetMake extends RunnableTool {
 
             log.info("Distance matrix contains " + distanceMatrix.size() + " taxa.");
 
+            if (this.options.getBootstrapReplicates() > 0 && patterns == null) {
+                throw new IOException("Bootstrapping needs a multiple sequence alignment as input");
+            }
+
             // Set circular ordering algorithm
+            this.getMetrics().start(ToolMetrics.ORDERING);
             CircularOrderingAlgorithms coa = CircularOrderingAlgorithms.valueOf(this.options.getCoAlg().toUpperCase());
-            CircularOrderingCreator coc = null;
-
             log.info("Circular ordering algorithm: " + coa.toString());
 
             if (coa == CircularOrderingAlgorithms.NETMAKE) {
-
-                // Create weighting objects
-                Weighting weighting1 = Weightings.createWeighting(this.options.getWeighting1(), distanceMatrix, this.options.getTreeParam(), true);
-                Weighting weighting2 = (this.options.getWeighting2() != null && !this.options.getWeighting2().equalsIgnoreCase("none")) ?
-                        Weightings.createWeighting(this.options.getWeighting2(), distanceMatrix, this.options.getTreeParam(), false) :
-                        null;
-
                 log.info("Weightings configured.");
-                log.info("          - Weighting 1: " + weighting1.toString());
-                log.info("          - Weighting 2: " + (weighting2 == null ? "null" : weighting2.toString()));
-                log.info("Running netmake circular ordering algorithm in mode: " + NetMakeCircularOrderer.getRunMode(weighting1, weighting2).toString());
-
-                coc = new NetMakeCircularOrderer(weighting1, weighting2);
+                log.info("          - Weighting 1: " + this.options.getWeighting1());
+                log.info("          - Weighting 2: " + (this.options.getWeighting2() == null ? "null" : this.options.getWeighting2()));
             }
-            else if (coa == CircularOrderingAlgorithms.NEIGHBORNET) {
 
-                coc = new NeighborNetImpl();
-            }
+            CircularOrderingCreator coc = this.createCircularOrderingCreator(distanceMatrix, ForkJoinPool.commonPool());
 
             notifyUser("Executing netmake");
 
             NetMakeResult result = this.execute(distanceMatrix, coc);
 
+            if (this.options.getBootstrapReplicates() > 0) {
+
+                notifyUser("Running " + this.options.getBootstrapReplicates() + " bootstrap replicates with seed " + this.options.getSeed());
+                this.getMetrics().start(PHASE_BOOTSTRAP);
+
+                result.setBootstrapSS(this.bootstrap(patterns, result.getNetworkSS().getOrderedTaxa(),
+                        this.options.getBootstrapReplicates(), this.options.getSeed(), ForkJoinPool.commonPool()));
+            }
+
             notifyUser("Saving results to disk");
+            this.getMetrics().start(ToolMetrics.WRITE);
 
             // Save results.
-            result.save(this.options.getOutputNetwork(), this.options.getOutputTree());
+            result.save(this.options.getOutputNetwork(), this.options.getOutputTree(), this.options.getOutputBootstrap());
 
             this.trackerFinished(true);
 
@@ -243,6 +417,7 @@ public class NetMake extends RunnableTool {
             this.setError(e);
             this.trackerFinished(false);
         } finally {
+            this.getMetrics().stop();
             this.notifyListener();
         }
     }
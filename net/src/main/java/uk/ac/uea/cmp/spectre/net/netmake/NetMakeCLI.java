@@ -18,13 +18,18 @@ package uk.ac.uea.cmp.spectre.net.netmake;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.kohsuke.MetaInfServices;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceCalculatorFactory;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CircularOrderingAlgorithms;
 import uk.ac.uea.cmp.spectre.core.ui.cli.CommandLineHelper;
+import uk.ac.uea.cmp.spectre.core.ui.cli.RunnableToolFactory;
+import uk.ac.uea.cmp.spectre.core.ui.gui.RunnableTool;
 import uk.ac.uea.cmp.spectre.core.util.LogConfig;
 
 import java.io.File;
@@ -36,7 +41,8 @@ import java.io.IOException;
  *         See S. Bastkowski, 2010:
  *         <I>Algorithmen zum Finden von Bäumen in Neighbor Net Netzwerken</I>
  */
-public class NetMakeCLI {
+@MetaInfServices(RunnableToolFactory.class)
+public class NetMakeCLI implements RunnableToolFactory {
 
     private static Logger log = LoggerFactory.getLogger(NetMakeCLI.class);
 
@@ -47,6 +53,8 @@ public class NetMakeCLI {
     public static final String OPT_CO_ALG = "alt_mode";
     public static final String OPT_DIST_CALC = "dist_calc";
     public static final String OPT_DRAW_NETWORK = "draw";
+    public static final String OPT_BOOTSTRAP = "bootstrap";
+    public static final String OPT_SEED = "seed";
     public static final String OPT_HELP = "help";
 
 
@@ -74,12 +82,95 @@ public class NetMakeCLI {
         options.addOption(OptionBuilder.withArgName("dist_calc").withLongOpt(OPT_DIST_CALC).hasArg()
                 .withDescription(NetMakeOptions.DESC_DIST_CALC).create("dc"));
 
+        options.addOption(OptionBuilder.withArgName("int").withLongOpt(OPT_BOOTSTRAP).hasArg()
+                .withDescription(NetMakeOptions.DESC_BOOTSTRAP).create("b"));
+
+        options.addOption(OptionBuilder.withArgName("long").withLongOpt(OPT_SEED).hasArg()
+                .withDescription(NetMakeOptions.DESC_SEED).create("s"));
+
+        options.addOption(CommandLineHelper.createMetricsOption());
+
         options.addOption(CommandLineHelper.HELP_OPTION);
 
         return options;
     }
 
 
+    @Override
+    public String getName() {
+        return "netmake";
+    }
+
+    @Override
+    public RunnableTool createTool(String[] args) throws ParseException, IOException {
+        return createNetMake(new PosixParser().parse(createOptions(), args));
+    }
+
+    /**
+     * Creates a NetMake instance configured from the parsed command line
+     *
+     * @param commandLine The parsed command line
+     * @return A new NetMake instance
+     * @throws IOException If no single input file was given, or the output directory could not be created
+     */
+    public static NetMake createNetMake(CommandLine commandLine) throws IOException {
+
+        if (commandLine.getArgs().length == 0) {
+            throw new IOException("No input file specified.");
+        }
+        else if (commandLine.getArgs().length > 1) {
+            throw new IOException("Only expected a single input file.");
+        }
+
+        String prefix = "netmake";
+        File outputDir = new File(".");
+        if (commandLine.hasOption(OPT_OUTPUT_PREFIX)) {
+            File op = new File(commandLine.getOptionValue(OPT_OUTPUT_PREFIX));
+            if (op.getParentFile() != null) {
+                outputDir = op.getParentFile();
+            }
+            prefix = op.getName();
+        }
+
+        // Ensure output directory exists
+        if (!outputDir.exists()) {
+            log.info("Creating output directory: " + outputDir.getAbsolutePath());
+            FileUtils.forceMkdir(outputDir);
+        }
+
+        File input = new File(commandLine.getArgs()[0]);
+        File outputNetwork = new File(outputDir, prefix + ".network.nex");
+        File outputTree = new File(outputDir, prefix + ".tree.nex");
+        File outputBootstrap = new File(outputDir, prefix + ".bootstrap.nex");
+        double treeParam = commandLine.hasOption(OPT_TREE_PARAM) ? Double.parseDouble(commandLine.getOptionValue(OPT_TREE_PARAM)) : NetMakeOptions.DEFAULT_TREE_WEIGHT;
+        String weightings1 = commandLine.hasOption(OPT_WEIGHTINGS_1) ? commandLine.getOptionValue(OPT_WEIGHTINGS_1) : "TSP";
+        String weightings2 = commandLine.hasOption(OPT_WEIGHTINGS_2) ? commandLine.getOptionValue(OPT_WEIGHTINGS_2) : null;
+        String coAlg = commandLine.hasOption(OPT_CO_ALG) ? CircularOrderingAlgorithms.NETMAKE.toString() : CircularOrderingAlgorithms.NEIGHBORNET.toString();
+        String dc = commandLine.hasOption(OPT_DIST_CALC) ? commandLine.getOptionValue(OPT_DIST_CALC) : DistanceCalculatorFactory.JUKES_CANTOR.name();
+        boolean draw = commandLine.hasOption(OPT_DRAW_NETWORK);
+        int bootstrap = commandLine.hasOption(OPT_BOOTSTRAP) ? Integer.parseInt(commandLine.getOptionValue(OPT_BOOTSTRAP)) : NetMakeOptions.DEFAULT_BOOTSTRAP_REPLICATES;
+
+        // Create the configured NetMake object to process
+        NetMakeOptions netMakeOptions = new NetMakeOptions();
+        netMakeOptions.setInput(input);
+        netMakeOptions.setOutputNetwork(outputNetwork);
+        netMakeOptions.setOutputTree(outputTree);
+        netMakeOptions.setTreeParam(treeParam);
+        netMakeOptions.setWeighting1(weightings1);
+        netMakeOptions.setWeighting2(weightings2);
+        netMakeOptions.setCoAlg(coAlg);
+        netMakeOptions.setDc(dc);
+        netMakeOptions.setDraw(draw);
+        netMakeOptions.setBootstrapReplicates(bootstrap);
+        netMakeOptions.setOutputBootstrap(outputBootstrap);
+        if (commandLine.hasOption(OPT_SEED)) {
+            netMakeOptions.setSeed(Long.parseLong(commandLine.getOptionValue(OPT_SEED)));
+        }
+
+        return new NetMake(netMakeOptions);
+    }
+
+
     public static void main(String[] args) {
 
         CommandLine commandLine = new CommandLineHelper().startApp(createOptions(), "netmake [options] <distance_matrix_file>",
@@ -101,53 +192,11 @@ public class NetMakeCLI {
 
             log.info("NetMake: Parsing arguments");
 
-            if (commandLine.getArgs().length == 0) {
-                throw new IOException("No input file specified.");
-            }
-            else if (commandLine.getArgs().length > 1) {
-                throw new IOException("Only expected a single input file.");
-            }
-
-            String prefix = "netmake";
-            File outputDir = new File(".");
-            if (commandLine.hasOption(OPT_OUTPUT_PREFIX)) {
-                File op = new File(commandLine.getOptionValue(OPT_OUTPUT_PREFIX));
-                if (op.getParentFile() != null) {
-                    outputDir = op.getParentFile();
-                }
-                prefix = op.getName();
-            }
-
-            // Ensure output directory exists
-            if (!outputDir.exists()) {
-                log.info("Creating output directory: " + outputDir.getAbsolutePath());
-                FileUtils.forceMkdir(outputDir);
-            }
-
-            File input = new File(commandLine.getArgs()[0]);
-            File outputNetwork = new File(outputDir, prefix + ".network.nex");
-            File outputTree = new File(outputDir, prefix + ".tree.nex");
-            double treeParam = commandLine.hasOption(OPT_TREE_PARAM) ? Double.parseDouble(commandLine.getOptionValue(OPT_TREE_PARAM)) : NetMakeOptions.DEFAULT_TREE_WEIGHT;
-            String weightings1 = commandLine.hasOption(OPT_WEIGHTINGS_1) ? commandLine.getOptionValue(OPT_WEIGHTINGS_1) : "TSP";
-            String weightings2 = commandLine.hasOption(OPT_WEIGHTINGS_2) ? commandLine.getOptionValue(OPT_WEIGHTINGS_2) : null;
-            String coAlg = commandLine.hasOption(OPT_CO_ALG) ? CircularOrderingAlgorithms.NETMAKE.toString() : CircularOrderingAlgorithms.NEIGHBORNET.toString();
-            String dc = commandLine.hasOption(OPT_DIST_CALC) ? commandLine.getOptionValue(OPT_DIST_CALC) : DistanceCalculatorFactory.JUKES_CANTOR.name();
-            boolean draw = commandLine.hasOption(OPT_DRAW_NETWORK);
-
-            // Create the configured NetMake object to process
-            NetMakeOptions netMakeOptions = new NetMakeOptions();
-            netMakeOptions.setInput(input);
-            netMakeOptions.setOutputNetwork(outputNetwork);
-            netMakeOptions.setOutputTree(outputTree);
-            netMakeOptions.setTreeParam(treeParam);
-            netMakeOptions.setWeighting1(weightings1);
-            netMakeOptions.setWeighting2(weightings2);
-            netMakeOptions.setCoAlg(coAlg);
-            netMakeOptions.setDc(dc);
-            netMakeOptions.setDraw(draw);
-
             // Run NetMake
-            new NetMake(netMakeOptions).run();
+            NetMake netMake = createNetMake(commandLine);
+            netMake.run();
+
+            CommandLineHelper.writeMetrics(commandLine, netMake);
 
         } catch (Exception e) {
             System.err.println(e.getMessage());
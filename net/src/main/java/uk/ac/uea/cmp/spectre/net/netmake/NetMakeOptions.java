@@ -20,11 +20,13 @@ import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CircularOrderingAlg
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting.Weightings;
 
 import java.io.File;
+import java.util.Random;
 
 public class NetMakeOptions {
 
     // Defaults
     public static final double DEFAULT_TREE_WEIGHT = 0.5;
+    public static final int DEFAULT_BOOTSTRAP_REPLICATES = 0;
 
 
     // Options descriptions
@@ -47,6 +49,10 @@ public class NetMakeOptions {
 
     public static final String DESC_WEIGHTINGS_1 = "For NETMAKE circular ordering algorithm, select 1st weighting type: " + Weightings.toListString() + ".  Required if circular algorithm is NETMAKE.  Default: TSP";
 
+    public static final String DESC_BOOTSTRAP = "If running from MSAs, the number of bootstrap replicates to run.  Columns of the alignment are resampled for each replicate, and the proportion of replicates containing each split is written to the bootstrap output file.  Default: " + DEFAULT_BOOTSTRAP_REPLICATES + " (no bootstrapping)";
+
+    public static final String DESC_SEED = "The seed for resampling columns when bootstrapping.  Default: random";
+
     public static final String DESC_WEIGHTINGS_2 = "For NETMAKE circular ordering algorithm, select 2nd weighting type: " + Weightings.toListString() + ". Default: NONE";
 
 
@@ -59,6 +65,9 @@ public class NetMakeOptions {
     private String coAlg;
     private String dc;
     private boolean draw;
+    private int bootstrapReplicates;
+    private long seed;
+    private File outputBootstrap;
 
 
     public NetMakeOptions() {
@@ -83,6 +92,9 @@ public class NetMakeOptions {
         this.coAlg = coAlg;
         this.dc = dc;
         this.draw = draw;
+        this.bootstrapReplicates = DEFAULT_BOOTSTRAP_REPLICATES;
+        this.seed = new Random().nextLong();
+        this.outputBootstrap = null;
     }
 
     public File getInput() {
@@ -156,4 +168,28 @@ public class NetMakeOptions {
     public void setDraw(boolean draw) {
         this.draw = draw;
     }
+
+    public int getBootstrapReplicates() {
+        return bootstrapReplicates;
+    }
+
+    public void setBootstrapReplicates(int bootstrapReplicates) {
+        this.bootstrapReplicates = bootstrapReplicates;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public File getOutputBootstrap() {
+        return outputBootstrap;
+    }
+
+    public void setOutputBootstrap(File outputBootstrap) {
+        this.outputBootstrap = outputBootstrap;
+    }
 }
@@ -18,8 +18,9 @@ package uk.ac.uea.cmp.spectre.net.netmake;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.network.Network;
 import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
+import uk.ac.uea.cmp.spectre.core.io.SpectreWriterFactory;
 import uk.ac.uea.cmp.spectre.core.io.nexus.Nexus;
-import uk.ac.uea.cmp.spectre.core.io.nexus.NexusWriter;
+import uk.ac.uea.cmp.spectre.core.util.ToolMetrics;
 
 import java.io.File;
 import java.io.IOException;
@@ -32,6 +33,8 @@ public class NetMakeResult {
     private DistanceMatrix dm;
     private Network network;
     private Network tree;
+    private SplitSystem bootstrapSS;
+    private ToolMetrics metrics;
 
     public NetMakeResult(DistanceMatrix dm, SplitSystem treeSS, Network tree, SplitSystem networkSS, Network network) {
         this.dm = dm;
@@ -57,22 +60,56 @@ public class NetMakeResult {
         return tree;
     }
 
+    /**
+     * @return Every split found in a bootstrap replicate, weighted by the proportion of replicates it was found in, or
+     * null if there was no bootstrapping
+     */
+    public SplitSystem getBootstrapSS() {
+        return bootstrapSS;
+    }
+
+    public void setBootstrapSS(SplitSystem bootstrapSS) {
+        this.bootstrapSS = bootstrapSS;
+    }
+
+    /**
+     * @return The time and memory used by each phase of the run that produced this result, or null if not recorded
+     */
+    public ToolMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(ToolMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public void save(File outputNetwork, File outputTree) throws IOException {
+        this.save(outputNetwork, outputTree, null);
+    }
+
+    public void save(File outputNetwork, File outputTree, File outputBootstrap) throws IOException {
 
         Nexus nexus = new Nexus();
         nexus.setTaxa(this.dm.getTaxa());
         nexus.setDistanceMatrix(this.dm);
         nexus.setSplitSystem(this.networkSS);
         nexus.setNetwork(this.network);
-        new NexusWriter().writeNexusData(outputNetwork, nexus);
+        SpectreWriterFactory.writeNexusData(outputNetwork, nexus);
 
         if (this.treeSS != null && outputTree != null) {
             Nexus nextree = new Nexus();
-            nexus.setTaxa(this.dm.getTaxa());
-            nexus.setDistanceMatrix(this.dm);
-            nexus.setSplitSystem(this.treeSS);
-            nexus.setNetwork(this.tree);
-            new NexusWriter().writeNexusData(outputTree, nextree);
+            nextree.setTaxa(this.dm.getTaxa());
+            nextree.setDistanceMatrix(this.dm);
+            nextree.setSplitSystem(this.treeSS);
+            nextree.setNetwork(this.tree);
+            SpectreWriterFactory.writeNexusData(outputTree, nextree);
+        }
+
+        if (this.bootstrapSS != null && outputBootstrap != null) {
+            Nexus nexboot = new Nexus();
+            nexboot.setTaxa(this.dm.getTaxa());
+            nexboot.setSplitSystem(this.bootstrapSS);
+            SpectreWriterFactory.writeNexusData(outputBootstrap, nexboot);
         }
     }
 }
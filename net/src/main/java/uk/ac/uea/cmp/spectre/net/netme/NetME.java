@@ -27,6 +27,7 @@ import uk.ac.uea.cmp.spectre.core.io.nexus.Nexus;
 import uk.ac.uea.cmp.spectre.core.io.nexus.NexusReader;
 import uk.ac.uea.cmp.spectre.core.ui.gui.RunnableTool;
 import uk.ac.uea.cmp.spectre.core.ui.gui.StatusTracker;
+import uk.ac.uea.cmp.spectre.core.util.ToolMetrics;
 
 /**
  * Constructs a minimum evolution tree from the specified network with its
@@ -39,6 +40,7 @@ public class NetME extends RunnableTool {
 
     private final static Logger log = LoggerFactory.getLogger(NetME.class);
 
+    public static final String PHASE_MINIMUM_EVOLUTION = "minimum_evolution";
 
     private NetMEOptions options;
 
@@ -64,7 +66,13 @@ public class NetME extends RunnableTool {
     }
 
     public NetMEResult execute(DistanceMatrix distanceMatrix, IdentifierList circularOrdering) {
-        return new MinimumEvolutionCalculator().calcMinEvoTree(distanceMatrix, circularOrdering);
+
+        this.getMetrics().start(PHASE_MINIMUM_EVOLUTION);
+        NetMEResult result = new MinimumEvolutionCalculator().calcMinEvoTree(distanceMatrix, circularOrdering);
+        this.getMetrics().stop();
+
+        result.setMetrics(this.getMetrics());
+        return result;
     }
 
     private void notifyUser(String message) {
@@ -81,6 +89,7 @@ public class NetME extends RunnableTool {
             stopWatch.start();
 
             this.notifyUser("Parsing nexus file: " + this.options.getInputFile().getAbsolutePath());
+            this.getMetrics().start(ToolMetrics.READ);
 
             // Parse input nexus file
             Nexus nexus = new NexusReader().parse(this.options.getInputFile());
@@ -119,10 +128,12 @@ public class NetME extends RunnableTool {
             if (this.options.isDraw()) {
 
                 log.info("Drawing network");
+                this.getMetrics().start(ToolMetrics.DRAWING);
                 netMeResult.setDrawing(new PermutationSequenceDraw(netMeResult.getMeTree().makeInducedOrdering()).createOptimisedNetwork());
             }
 
             this.notifyUser("Saving results to: " + this.options.getOutputDir().getAbsolutePath());
+            this.getMetrics().start(ToolMetrics.WRITE);
 
             // Save result to disk
             netMeResult.save(
@@ -142,6 +153,7 @@ public class NetME extends RunnableTool {
             this.setError(e);
             this.trackerFinished(false);
         } finally {
+            this.getMetrics().stop();
             this.notifyListener();
         }
     }
@@ -18,10 +18,15 @@ package uk.ac.uea.cmp.spectre.net.netme;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
 import org.apache.commons.lang3.StringUtils;
+import org.kohsuke.MetaInfServices;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.uea.cmp.spectre.core.ui.cli.CommandLineHelper;
+import uk.ac.uea.cmp.spectre.core.ui.cli.RunnableToolFactory;
+import uk.ac.uea.cmp.spectre.core.ui.gui.RunnableTool;
 import uk.ac.uea.cmp.spectre.core.util.LogConfig;
 import uk.ac.uea.cmp.spectre.core.util.Time;
 
@@ -35,7 +40,8 @@ import java.io.IOException;
  * Time: 15:38
  * To change this template use File | Settings | File Templates.
  */
-public class NetMECLI {
+@MetaInfServices(RunnableToolFactory.class)
+public class NetMECLI implements RunnableToolFactory {
 
     private static Logger log = LoggerFactory.getLogger(NetMECLI.class);
 
@@ -51,12 +57,65 @@ public class NetMECLI {
         options.addOption(OptionBuilder.withArgName("string").withLongOpt(OPT_OUTPUT_OLS)
                 .withDescription(NetMEOptions.DESC_OUTPUT_OLS).create("l"));
 
+        options.addOption(CommandLineHelper.createMetricsOption());
+
         options.addOption(CommandLineHelper.HELP_OPTION);
 
         return options;
     }
 
 
+    @Override
+    public String getName() {
+        return "netme";
+    }
+
+    @Override
+    public RunnableTool createTool(String[] args) throws ParseException, IOException {
+        return createNetME(new PosixParser().parse(createOptions(), args));
+    }
+
+    /**
+     * Creates a NetME instance configured from the parsed command line
+     *
+     * @param commandLine The parsed command line
+     * @return A new NetME instance
+     * @throws IOException If no single input file was given
+     */
+    public static NetME createNetME(CommandLine commandLine) throws IOException {
+
+        NetMEOptions options = new NetMEOptions();
+
+        if (commandLine.getArgs().length == 0) {
+            throw new IOException("No input files specified.");
+        }
+        else if (commandLine.getArgs().length > 1) {
+            throw new IOException("Expected no more than a single input file as input.");
+        }
+
+        // Requires input file containing distance matrices
+        options.setInputFile(new File(commandLine.getArgs()[0]));
+        options.setOls(commandLine.hasOption(OPT_OUTPUT_OLS));
+
+        if (commandLine.hasOption(OPT_OUTPUT_PREFIX)) {
+            File op = new File(commandLine.getOptionValue(OPT_OUTPUT_PREFIX));
+            if (op.getParentFile() != null) {
+                options.setOutputDir(op.getParentFile());
+            }
+            else {
+                options.setOutputDir(new File("."));
+            }
+            options.setPrefix(commandLine.getOptionValue(OPT_OUTPUT_PREFIX));
+        }
+        else {
+            options.setOutputDir(new File("."));
+            options.setPrefix("netme-" + Time.createTimestamp());
+        }
+
+        return new NetME(options);
+    }
+
+
     public static void main(String[] args) {
 
         CommandLine commandLine = new CommandLineHelper().startApp(createOptions(), "netme [options] <nexus_file>",
@@ -76,35 +135,10 @@ public class NetMECLI {
             // Configure logging
             LogConfig.defaultConfig();
 
-            NetMEOptions options = new NetMEOptions();
-
-            if (commandLine.getArgs().length == 0) {
-                throw new IOException("No input files specified.");
-            }
-            else if (commandLine.getArgs().length > 1) {
-                throw new IOException("Expected no more than a single input file as input.");
-            }
-
-            // Requires input file containing distance matrices
-            options.setInputFile(new File(commandLine.getArgs()[0]));
-            options.setOls(commandLine.hasOption(OPT_OUTPUT_OLS));
-
-            if (commandLine.hasOption(OPT_OUTPUT_PREFIX)) {
-                File op = new File(commandLine.getOptionValue(OPT_OUTPUT_PREFIX));
-                if (op.getParentFile() != null) {
-                    options.setOutputDir(op.getParentFile());
-                }
-                else {
-                    options.setOutputDir(new File("."));
-                }
-                options.setPrefix(commandLine.getOptionValue(OPT_OUTPUT_PREFIX));
-            }
-            else {
-                options.setOutputDir(new File("."));
-                options.setPrefix("netme-" + Time.createTimestamp());
-            }
+            NetME netME = createNetME(commandLine);
+            netME.run();
 
-            new NetME(options).run();
+            CommandLineHelper.writeMetrics(commandLine, netME);
 
         } catch (Exception e) {
             System.err.println(e.getMessage());
@@ -19,8 +19,9 @@ import org.apache.commons.io.FileUtils;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.network.Network;
 import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
+import uk.ac.uea.cmp.spectre.core.io.SpectreWriterFactory;
 import uk.ac.uea.cmp.spectre.core.io.nexus.Nexus;
-import uk.ac.uea.cmp.spectre.core.io.nexus.NexusWriter;
+import uk.ac.uea.cmp.spectre.core.util.ToolMetrics;
 
 import java.io.File;
 import java.io.IOException;
@@ -39,6 +40,7 @@ public class NetMEResult {
     private SplitSystem meTree;
     private String stats;
     private Network drawing;
+    private ToolMetrics metrics;
 
     public NetMEResult(DistanceMatrix dm, SplitSystem originalMETree, SplitSystem meTree, String stats) {
         this.dm = dm;
@@ -46,6 +48,7 @@ public class NetMEResult {
         this.meTree = meTree;
         this.stats = stats;
         this.drawing = null;
+        this.metrics = null;
     }
 
     public DistanceMatrix getDm() {
@@ -72,6 +75,17 @@ public class NetMEResult {
         return originalMETree;
     }
 
+    /**
+     * @return The time and memory used by each phase of the run that produced this result, or null if not recorded
+     */
+    public ToolMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(ToolMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public void save(File minEvoFile, File origMinEvoFile, File statFile, boolean saveOLS) throws IOException {
 
         Nexus nexus = new Nexus();
@@ -79,14 +93,14 @@ public class NetMEResult {
         nexus.setDistanceMatrix(this.dm);
         nexus.setSplitSystem(this.meTree);
         nexus.setNetwork(this.drawing);
-        new NexusWriter().writeNexusData(minEvoFile, nexus);
+        SpectreWriterFactory.writeNexusData(minEvoFile, nexus);
 
         if (saveOLS) {
             Nexus nexus2 = new Nexus();
             nexus2.setTaxa(this.dm.getTaxa());
             nexus2.setDistanceMatrix(this.dm);
             nexus2.setSplitSystem(this.originalMETree);
-            new NexusWriter().writeNexusData(origMinEvoFile, nexus2);
+            SpectreWriterFactory.writeNexusData(origMinEvoFile, nexus2);
         }
 
         FileUtils.writeStringToFile(statFile, stats, "UTF-8");
@@ -24,8 +24,11 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
+import uk.ac.uea.cmp.spectre.core.ds.Sequences;
+import uk.ac.uea.cmp.spectre.core.ds.SitePatterns;
 import uk.ac.uea.cmp.spectre.core.ds.distance.DistanceMatrix;
 import uk.ac.uea.cmp.spectre.core.ds.distance.FlexibleDistanceMatrix;
+import uk.ac.uea.cmp.spectre.core.ds.split.Split;
 import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.CircularOrderingCreator;
 import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.NetMakeCircularOrderer;
@@ -35,7 +38,10 @@ import uk.ac.uea.cmp.spectre.core.ds.split.circular.ordering.nm.weighting.TSPWei
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 
@@ -172,4 +178,65 @@ public class NetMakeTest {
         assertTrue(!netlines.isEmpty());
         //assertTrue(!treelines.isEmpty());
     }
+
+    private SitePatterns randomAlignment(int n, int length, long seed) {
+
+        // Mutate a few sites of a common ancestor, so that distances stay well away from saturation
+        Random random = new Random(seed);
+        char[] ancestor = new char[length];
+        for (int k = 0; k < length; k++) {
+            ancestor[k] = "ACGT".charAt(random.nextInt(4));
+        }
+
+        String[] labels = new String[n];
+        String[] seqs = new String[n];
+        for (int i = 0; i < n; i++) {
+            labels[i] = "t" + i;
+            StringBuilder sb = new StringBuilder();
+            for (int k = 0; k < length; k++) {
+                sb.append(random.nextInt(10) == 0 ? "ACGT".charAt(random.nextInt(4)) : ancestor[k]);
+            }
+            seqs[i] = sb.toString();
+        }
+        return new SitePatterns(new Sequences(labels, seqs));
+    }
+
+    @Test
+    public void testBootstrap() {
+
+        SitePatterns patterns = randomAlignment(12, 300, 3L);
+        NetMake nm = new NetMake(new NetMakeOptions());
+        IdentifierList ordering = new IdentifierList(patterns.getTaxaLabels());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        SplitSystem parallel;
+        try {
+            parallel = nm.bootstrap(patterns, ordering, 20, 42L, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        SplitSystem sequential;
+        try {
+            sequential = nm.bootstrap(patterns, ordering, 20, 42L, single);
+        } finally {
+            single.shutdown();
+        }
+
+        assertTrue(parallel.getNbSplits() > 0);
+        assertEquals(sequential.getNbSplits(), parallel.getNbSplits());
+
+        for (int i = 0; i < parallel.getNbSplits(); i++) {
+            Split split = parallel.get(i);
+            assertEquals(sequential.get(i), split);
+            assertEquals(sequential.get(i).getWeight(), split.getWeight(), 0.0);
+            assertTrue(split.getWeight() > 0.0 && split.getWeight() <= 1.0);
+
+            // Trivial splits separate a single taxon, and are found in every replicate
+            if (split.isTrivial()) {
+                assertEquals(1.0, split.getWeight(), 0.0);
+            }
+        }
+    }
 }
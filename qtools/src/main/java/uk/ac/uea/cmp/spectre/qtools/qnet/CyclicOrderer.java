@@ -72,8 +72,8 @@ public class CyclicOrderer {
         List<Integer> X = this.initXPrime(taxa);
 
 
-        // Convert grouped quartets to canonical quartets
-        CanonicalWeightedQuartetMap canonicalWeightedQuartets = new CanonicalWeightedQuartetMap(theQuartetWeights);
+        // View the grouped quartets as canonical quartets.  Both are held the same way, so there's no need to copy them.
+        CanonicalWeightedQuartetMap canonicalWeightedQuartets = new CanonicalWeightedQuartetMap(theQuartetWeights.getStore());
 
         log.debug("Initialising QNet Holders");
 
@@ -0,0 +1,180 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.qtools.qnet;
+
+import org.apache.commons.lang3.tuple.Pair;
+import uk.ac.uea.cmp.spectre.core.math.matrix.SymmetricMatrix;
+import uk.ac.uea.cmp.spectre.qtools.qnet.holders.PHolder;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds EtE, the matrix whose entry for a pair of splits is the number of quartets spanning both, from the P values in
+ * a {@link PHolder}.  The packed lower triangle of the matrix is split into blocks of rows holding roughly equal numbers
+ * of entries, and the blocks are filled in on a fork join pool.
+ */
+public class EtEBuilder {
+
+    /* Below this number of splits, or if the pool only has one thread, everything runs on the calling thread */
+    private static final int PARALLEL_THRESHOLD = 256;
+
+    /* Approximate number of matrix entries in each block of rows handed to the pool */
+    private static final long BLOCK_ENTRIES = 1 << 16;
+
+    private final ForkJoinPool pool;
+
+    public EtEBuilder() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public EtEBuilder(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Builds EtE
+     *
+     * @param N Number of taxa
+     * @param splitIndices The splits, each given by the 1-based pair (p, q) of taxa positions in the circular ordering
+     * @param pHolder The P values of the quartet system over the circular ordering
+     * @return EtE
+     */
+    public SymmetricMatrix build(final int N, List<Pair<Integer, Integer>> splitIndices, PHolder pHolder) {
+
+        final int maxSplits = splitIndices.size();
+
+        // Unbox the split indices once, rather than for every entry
+        final int[] ps = new int[maxSplits];
+        final int[] qs = new int[maxSplits];
+        for (int i = 0; i < maxSplits; i++) {
+            ps[i] = splitIndices.get(i).getLeft();
+            qs[i] = splitIndices.get(i).getRight();
+        }
+
+        final SymmetricMatrix EtE = new SymmetricMatrix(maxSplits);
+        final RowTask task = new RowTask(N, ps, qs, pHolder, EtE, 0, maxSplits);
+
+        if (maxSplits < PARALLEL_THRESHOLD || this.pool.getParallelism() < 2) {
+            task.computeRows();
+        } else {
+            this.pool.invoke(task);
+        }
+
+        return EtE;
+    }
+
+    /**
+     * Number of quartets spanning both splits (p1, q1) and (p2, q2)
+     */
+    static int calculate(final int N, final int p1, final int q1, final int p2, final int q2, final PHolder pHolder) {
+
+        int p, pP, q, qP;
+
+        // now, see which pair (pn, qn) is (p, q) and which is (pP, qP)
+        if (p1 > p2 || (p1 == p2 && q1 >= q2)) {
+
+            // p1 is pP; q1 is qP
+            p = p2;
+            pP = p1;
+            q = q2;
+            qP = q1;
+        } else {
+
+            // p2 is pP, q2 is qP
+            p = p1;
+            pP = p2;
+            q = q1;
+            qP = q2;
+        }
+
+        if (qP <= q) {
+            return pHolder.getP(pP, qP - 1, q, N + p - 1);
+        } else if (pP < q && q < qP) {
+            return pHolder.getP(pP, q - 1, qP, N + p - 1) + pHolder.getP(p, pP - 1, q, qP - 1);
+        } else if (q <= pP) {
+            return pHolder.getP(p, q - 1, pP, qP - 1);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Fills in a range of rows of the lower triangle of EtE, splitting the range where it holds half the entries until
+     * it is no bigger than a block
+     */
+    private static class RowTask extends RecursiveAction {
+
+        private final int N;
+        private final int[] ps;
+        private final int[] qs;
+        private final PHolder pHolder;
+        private final SymmetricMatrix EtE;
+        private final int lo;
+        private final int hi;
+
+        private RowTask(int N, int[] ps, int[] qs, PHolder pHolder, SymmetricMatrix EtE, int lo, int hi) {
+            this.N = N;
+            this.ps = ps;
+            this.qs = qs;
+            this.pHolder = pHolder;
+            this.EtE = EtE;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        /**
+         * Number of entries on and below the diagonal in rows before i
+         */
+        private static long entriesBefore(int i) {
+            return (long) i * (i + 1) / 2;
+        }
+
+        @Override
+        protected void compute() {
+
+            final long entries = entriesBefore(this.hi) - entriesBefore(this.lo);
+
+            if (entries > BLOCK_ENTRIES && this.hi - this.lo > 1) {
+
+                // Find the row that splits the entries in half
+                final long half = (entriesBefore(this.hi) + entriesBefore(this.lo)) / 2;
+                int mid = (int) Math.sqrt(2.0 * half);
+                mid = Math.max(this.lo + 1, Math.min(this.hi - 1, mid));
+
+                invokeAll(new RowTask(this.N, this.ps, this.qs, this.pHolder, this.EtE, this.lo, mid),
+                        new RowTask(this.N, this.ps, this.qs, this.pHolder, this.EtE, mid, this.hi));
+                return;
+            }
+
+            this.computeRows();
+        }
+
+        private void computeRows() {
+
+            for (int i = this.lo; i < this.hi; i++) {
+
+                final int p1 = this.ps[i];
+                final int q1 = this.qs[i];
+
+                for (int j = 0; j <= i; j++) {
+                    this.EtE.setElementAt(i, j, calculate(this.N, p1, q1, this.ps[j], this.qs[j], this.pHolder));
+                }
+            }
+        }
+    }
+}
@@ -24,9 +24,10 @@ import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.GroupedQuartetSystem;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.load.QWeightLoader;
 import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
-import uk.ac.uea.cmp.spectre.core.io.nexus.NexusWriter;
+import uk.ac.uea.cmp.spectre.core.io.SpectreWriterFactory;
 import uk.ac.uea.cmp.spectre.core.ui.gui.RunnableTool;
 import uk.ac.uea.cmp.spectre.core.ui.gui.StatusTracker;
+import uk.ac.uea.cmp.spectre.core.util.ToolMetrics;
 
 import java.io.File;
 import java.io.IOException;
@@ -41,6 +42,8 @@ public class QNet extends RunnableTool {
 
     private static Logger log = LoggerFactory.getLogger(QNet.class);
 
+    public static final String PHASE_NORMALISE = "normalise";
+
     private QNetOptions options;
 
     /**
@@ -79,6 +82,7 @@ public class QNet extends RunnableTool {
             throws IOException, QNetException, OptimiserException {
 
         notifyUser("Loading quartet system from: " + input.getName());
+        this.getMetrics().start(ToolMetrics.READ);
 
         GroupedQuartetSystem quartetSystem = new GroupedQuartetSystem(new QWeightLoader().load(input));
 
@@ -101,11 +105,13 @@ public class QNet extends RunnableTool {
             throws OptimiserException, QNetException {
 
         notifyUser("Normalising quartets" + (logNormalise ? " (using log)" : ""));
+        this.getMetrics().start(PHASE_NORMALISE);
 
         // Normalise the values in the network
         groupedQuartetSystem.normaliseQuartets(logNormalise);
 
         notifyUser("Computing circular ordering");
+        this.getMetrics().start(ToolMetrics.ORDERING);
 
         // Order the taxa
         IdentifierList circularOrdering = new CyclicOrderer().computeCircularOrdering(
@@ -113,11 +119,16 @@ public class QNet extends RunnableTool {
                 groupedQuartetSystem.getQuartets());
 
         notifyUser("Computing split weights");
+        this.getMetrics().start(ToolMetrics.NNLS);
 
         // Compute the weights
         ComputedWeights solution = new WeightsComputer().computeWeights(groupedQuartetSystem, circularOrdering, tolerance, optimiser);
 
-        return new QNetResult(circularOrdering, solution, groupedQuartetSystem);
+        this.getMetrics().stop();
+
+        QNetResult result = new QNetResult(circularOrdering, solution, groupedQuartetSystem);
+        result.setMetrics(this.getMetrics());
+        return result;
     }
 
 
@@ -148,9 +159,6 @@ public class QNet extends RunnableTool {
             // Check we have something sensible to work with
             validateOptions();
 
-            // Get a shortcut to runtime object for checking memory usage
-            Runtime rt = Runtime.getRuntime();
-
             // Start timing
             StopWatch stopWatch = new StopWatch();
             stopWatch.start();
@@ -162,10 +170,11 @@ public class QNet extends RunnableTool {
 
             notifyUser("QNet algorithm completed.  Saving results...");
 
-            // Output results in nexus file in standard mode
+            // Output results in standard mode, as nexus unless the output file's extension selects another format
+            this.getMetrics().start(ToolMetrics.WRITE);
             SplitSystem ss = result.createSplitSystem(null, QNetResult.SplitLimiter.STANDARD);
 
-            new NexusWriter().writeSplitSystem(this.options.getOutput(), ss);
+            SpectreWriterFactory.writeSplitSystem(this.options.getOutput(), ss);
 
 
             this.trackerFinished(true);
@@ -180,6 +189,7 @@ public class QNet extends RunnableTool {
             this.setError(e);
             this.trackerFinished(false);
         } finally {
+            this.getMetrics().stop();
             this.notifyListener();
         }
     }
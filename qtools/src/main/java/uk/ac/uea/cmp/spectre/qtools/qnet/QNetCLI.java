@@ -19,21 +19,26 @@ import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.kohsuke.MetaInfServices;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.earlham.metaopt.Objective;
 import uk.ac.earlham.metaopt.Optimiser;
+import uk.ac.earlham.metaopt.OptimiserException;
 import uk.ac.earlham.metaopt.OptimiserFactory;
-import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
-import uk.ac.uea.cmp.spectre.core.io.nexus.NexusWriter;
 import uk.ac.uea.cmp.spectre.core.ui.cli.CommandLineHelper;
+import uk.ac.uea.cmp.spectre.core.ui.cli.RunnableToolFactory;
+import uk.ac.uea.cmp.spectre.core.ui.gui.RunnableTool;
 import uk.ac.uea.cmp.spectre.core.util.LogConfig;
 
 import java.io.File;
 import java.io.IOException;
 
 
-public class QNetCLI {
+@MetaInfServices(RunnableToolFactory.class)
+public class QNetCLI implements RunnableToolFactory {
 
     private static Logger logger = LoggerFactory.getLogger(QNetCLI.class);
 
@@ -47,6 +52,7 @@ public class QNetCLI {
         // create Options object
         Options options = new Options();
         options.addOption(CommandLineHelper.HELP_OPTION);
+        options.addOption(CommandLineHelper.createMetricsOption());
 
         options.addOption(OptionBuilder.withArgName("file").withLongOpt(OPT_OUTPUT).isRequired().hasArg()
                 .withDescription(QNetOptions.DESC_OUTPUT).create("o"));
@@ -63,6 +69,53 @@ public class QNetCLI {
     }
 
 
+    @Override
+    public String getName() {
+        return "qnet";
+    }
+
+    @Override
+    public RunnableTool createTool(String[] args) throws ParseException, IOException {
+        return createQNet(new PosixParser().parse(createOptions(), args));
+    }
+
+    /**
+     * Creates a QNet instance configured from the parsed command line
+     *
+     * @param commandLine The parsed command line
+     * @return A new QNet instance
+     * @throws ParseException If the requested optimiser could not be created
+     * @throws IOException If no single input file was given
+     */
+    public static QNet createQNet(CommandLine commandLine) throws ParseException, IOException {
+
+        if (commandLine.getArgs().length == 0) {
+            throw new IOException("No input file specified.");
+        }
+        else if (commandLine.getArgs().length > 1) {
+            throw new IOException("Only expected a single input file.");
+        }
+
+        // Required arguments
+        File input = new File(commandLine.getArgs()[0]);
+        File output = new File(commandLine.getOptionValue(OPT_OUTPUT));
+
+        // Options
+        boolean log = commandLine.hasOption(OPT_LOG);
+        double tolerance = commandLine.hasOption(OPT_TOLERANCE) ? Double.parseDouble(commandLine.getOptionValue(OPT_TOLERANCE)) : -1.0;
+        Optimiser optimiser;
+        try {
+            optimiser = commandLine.hasOption(OPT_OPTIMISER) ?
+                    OptimiserFactory.getInstance().createOptimiserInstance(commandLine.getOptionValue(OPT_OPTIMISER), Objective.ObjectiveType.QUADRATIC) :
+                    null;
+        } catch (OptimiserException oe) {
+            throw new ParseException("Error occurred configuring optimiser: " + oe.getMessage());
+        }
+
+        return new QNet(new QNetOptions(input, output, optimiser, log, tolerance), null);
+    }
+
+
     public static void main(String[] args) {
 
         // Parse command line args
@@ -80,33 +133,15 @@ public class QNetCLI {
             // Configure logging
             LogConfig.defaultConfig();
 
-            if (commandLine.getArgs().length == 0) {
-                throw new IOException("No input file specified.");
-            }
-            else if (commandLine.getArgs().length > 1) {
-                throw new IOException("Only expected a single input file.");
-            }
-
-
-            // Required arguments
-            File input = new File(commandLine.getArgs()[0]);
-            File output = new File(commandLine.getOptionValue(OPT_OUTPUT));
-
-            // Options
-            boolean log = commandLine.hasOption(OPT_LOG);
-            double tolerance = commandLine.hasOption(OPT_TOLERANCE) ? Double.parseDouble(commandLine.getOptionValue(OPT_TOLERANCE)) : -1.0;
-            Optimiser optimiser = commandLine.hasOption(OPT_OPTIMISER) ?
-                    OptimiserFactory.getInstance().createOptimiserInstance(commandLine.getOptionValue(OPT_OPTIMISER), Objective.ObjectiveType.QUADRATIC) :
-                    null;
-
             // Run QNet
-            QNetResult result = new QNet().execute(input, log, tolerance, optimiser);
+            QNet qnet = createQNet(commandLine);
+            qnet.run();
 
-            // Create a split system in standard mode
-            SplitSystem ss = result.createSplitSystem(null, QNetResult.SplitLimiter.STANDARD);
+            CommandLineHelper.writeMetrics(commandLine, qnet);
 
-            // Write the split system out in nexus format
-            new NexusWriter().writeSplitSystem(output, ss);
+            if (qnet.failed()) {
+                System.exit(1);
+            }
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
             System.exit(1);
@@ -19,6 +19,7 @@ import org.apache.commons.lang3.tuple.Pair;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.GroupedQuartetSystem;
 import uk.ac.uea.cmp.spectre.core.ds.split.*;
+import uk.ac.uea.cmp.spectre.core.util.ToolMetrics;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -28,11 +29,13 @@ public class QNetResult {
     private IdentifierList circularOrdering;
     private ComputedWeights computedWeights;
     private GroupedQuartetSystem quartetSystem;
+    private ToolMetrics metrics;
 
     public QNetResult(IdentifierList circularOrdering, ComputedWeights computedWeights, GroupedQuartetSystem quartetSystem) {
         this.circularOrdering = circularOrdering;
         this.computedWeights = computedWeights;
         this.quartetSystem = quartetSystem;
+        this.metrics = null;
     }
 
     public IdentifierList getCircularOrdering() {
@@ -47,6 +50,17 @@ public class QNetResult {
         return quartetSystem;
     }
 
+    /**
+     * @return The time and memory used by each phase of the run that produced this result, or null if not recorded
+     */
+    public ToolMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(ToolMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public SplitSystem createSplitSystem(double[] limit, SplitLimiter mode) {
 
         // Setup shortcuts
@@ -23,7 +23,6 @@ import org.slf4j.LoggerFactory;
 import uk.ac.earlham.metaopt.Optimiser;
 import uk.ac.earlham.metaopt.OptimiserException;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
-import uk.ac.uea.cmp.spectre.core.ds.quad.SpectreQuad;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.GroupedQuartetSystem;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.WeightedQuartetGroupMap;
 import uk.ac.uea.cmp.spectre.core.ds.split.SplitUtils;
@@ -33,11 +32,24 @@ import uk.ac.uea.cmp.spectre.qtools.qnet.solvers.ExternalNNLSSolver;
 import uk.ac.uea.cmp.spectre.qtools.qnet.solvers.InternalNNLSSolver;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class WeightsComputer {
 
     private static Logger log = LoggerFactory.getLogger(WeightsComputer.class);
 
+    private final ForkJoinPool pool;
+
+    public WeightsComputer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool The pool to build EtE on
+     */
+    public WeightsComputer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
 
     /**
      * Calculate the split weights for such splits as are relevant.  That is, we first go through all relevant splits
@@ -101,7 +113,7 @@ public class WeightsComputer {
             }
 
             log.info("Using QNet's internal method to solve NNLS problem.  Tolerance set to: " + tolerance);
-            solution = new InternalNNLSSolver().optimise(N, Etf, EtE, tolerance);
+            solution = new InternalNNLSSolver(true).optimise(N, Etf, EtE, tolerance);
         }
 
         stopWatchOptimise.stop();
@@ -142,121 +154,107 @@ public class WeightsComputer {
     }
 
     private SymmetricMatrix initEtE(final int N, List<Pair<Integer, Integer>> splitIndices, PHolder pHolder) {
+        return new EtEBuilder(this.pool).build(N, splitIndices, pHolder);
+    }
 
-        final int maxSplits = splitIndices.size();
-
-        SymmetricMatrix EtE = new SymmetricMatrix(maxSplits);
-
-        for (int i = 0; i < maxSplits; i++) {
-
-            for (int j = 0; j < i + 1; j++) {
+    /**
+     * Index of the pair of taxa i &lt; j (1-based) within a slice of gw
+     */
+    private static int pairIndex(final int i, final int j) {
+        return (j - 1) * (j - 2) / 2 + i - 1;
+    }
 
-                Pair<Integer, Integer> siI = splitIndices.get(i);
-                Pair<Integer, Integer> siJ = splitIndices.get(j);
+    /**
+     * Fills in the slice of gw for the interval of length l starting after p, i.e. the summed quartet weights
+     * gw[p][p + l][i][j] for every pair (i, j) lying outside the interval.
+     *
+     * @param gwPL   The slice to fill
+     * @param gwPL1  The slice for (p, l - 1), or null if l == 2
+     * @param gwP1L1 The slice for (p + 1, l - 1), or null if l == 2
+     * @param gwP1L2 The slice for (p + 1, l - 2), or null if l &lt; 4
+     */
+    private static void populateGwSlice(final int N, final int l, final int p, final int[] c,
+                                        final WeightedQuartetGroupMap theQuartetWeights,
+                                        final double[] gwPL, final double[] gwPL1, final double[] gwP1L1,
+                                        final double[] gwP1L2) {
 
-                //TODO Check this is right to 0-base these indices
-                int p1 = siI.getLeft();
-                int q1 = siI.getRight();
-                int p2 = siJ.getLeft();
-                int q2 = siJ.getRight();
+        final int cA = c[p];
+        final int cB = c[p + l - 1];
 
-                /*
-                 * // what happens here if the end-problematic // cases are
-                 * simply translated? // that is... everything beginning with a
-                 * 1 // must cease to begin with a 1 // and become its upper
-                 * equivalent
-                 *
-                 * if (p1 == 1) {
-                 *
-                 * p1 = q1 + 1; q1 = N;
-                 *
-                 * }
-                 *
-                 * if (p2 == 1) {
-                 *
-                 * p2 = q2 + 1; q2 = N;
-                 *
-                 * }
-                 */
+        // here, for i < j, (i, j) not in [p + 1 ... p + l]
+        // this means... loop, i: i from 1 to p, i from p + l + 1 to N
+        // and in that, loop j: j from i + 1 to p, loop j from max (i + 1, p + 1 + l) to N
 
-                int p, pP, q, qP;
+        for (int i = 1; i < N + 1; i++) {
 
-                // now, see which pair (pn, qn) is (p, q) and which is (pP, qP)
+            if (i == p + 1) {
+                i = p + l;
+                continue;
+            }
 
-                if (p1 > p2) {
+            for (int j = i + 1; j < N + 1; j++) {
 
-                    // p1 is pP; q1 is qP
+                if (j == p + 1) {
+                    j = p + l;
+                    continue;
+                }
 
-                    p = p2;
-                    pP = p1;
-                    q = q2;
-                    qP = q1;
-                } else if (p2 > p1) {
+                final int k = pairIndex(i, j);
 
-                    // p2 is pP, q2 is qP
+                final double aW = theQuartetWeights.getWeight(cA, cB, c[i - 1], c[j - 1]);
 
-                    p = p1;
-                    pP = p2;
-                    q = q1;
-                    qP = q2;
+                if (l == 2) {
+                    gwPL[k] = aW;
+                } else if (l == 3) {
+                    gwPL[k] = aW + gwPL1[k] + gwP1L1[k];
                 } else {
-
-                    if (q1 > q2) {
-
-                        // p1 is pP, q1 is qP
-
-                        p = p2;
-                        pP = p1;
-                        q = q2;
-                        qP = q1;
-                    } else if (q2 > q1) {
-
-                        // p2 is pP, q2 is qP
-
-                        p = p1;
-                        pP = p2;
-                        q = q1;
-                        qP = q2;
-                    } else {
-
-                        // identical - it shouldn't matter then
-
-                        p = p2;
-                        pP = p1;
-                        q = q2;
-                        qP = q1;
-                    }
+                    gwPL[k] = aW + gwPL1[k] + gwP1L1[k] - gwP1L2[k];
                 }
+            }
+        }
+    }
 
-                // calculate
-                int value = 0;
-
-                if (qP <= q) {
-
-                    value = pHolder.getP(pP, qP - 1, q, N + p - 1);
-                } else if (pP < q && q < qP) {
-
-                    value = pHolder.getP(pP, q - 1, qP, N + p - 1) + pHolder.getP(p, pP - 1, q, qP - 1);
-                } else if (q <= pP) {
+    /**
+     * Computes Etf.  Entry a of Etf is the sum of gw[p][q][i][j] over all pairs (i, j) outside of split a = (p, q], where
+     * gw satisfies a recurrence over the length of the interval (p, q].  Rather than holding all of gw, which needs
+     * O(N^4) memory, we work through the lengths in order keeping only the slices for the current length and the two
+     * before it, i.e. O(N^3) memory, and sum up the entries of Etf for each length as soon as its slices are complete.
+     */
+    private double[] initEtf(List<Pair<Integer, Integer>> splitIndices, GroupedQuartetSystem quartetSystem, IdentifierList circularOrdering) {
 
-                    value = pHolder.getP(p, q - 1, pP, qP - 1);
-                }
+        final int N = quartetSystem.getTaxa().size();
+        final int maxSplits = SplitUtils.calcMaxSplits(N);
 
-                EtE.setElementAt(i, j, value);
-            }
+        if (splitIndices.size() != maxSplits) {
+            throw new IllegalArgumentException("Size of split indices and quartet system's taxa are different");
         }
 
-        return EtE;
-    }
+        WeightedQuartetGroupMap theQuartetWeights = quartetSystem.getQuartets();
+        int[] c = circularOrdering.getNumbers();
 
-    private double[][][][] populateGw(GroupedQuartetSystem quartetSystem, IdentifierList circularOrdering) {
+        // Group the splits by length
+        final int[] nbSplitsOfLength = new int[N + 1];
+        for (Pair<Integer, Integer> split : splitIndices) {
+            nbSplitsOfLength[split.getRight() - split.getLeft()]++;
+        }
+        final int[][] splitsOfLength = new int[N + 1][];
+        for (int l = 0; l <= N; l++) {
+            splitsOfLength[l] = new int[nbSplitsOfLength[l]];
+            nbSplitsOfLength[l] = 0;
+        }
+        for (int a = 0; a < maxSplits; a++) {
+            final int l = splitIndices.get(a).getRight() - splitIndices.get(a).getLeft();
+            splitsOfLength[l][nbSplitsOfLength[l]++] = a;
+        }
 
-        WeightedQuartetGroupMap theQuartetWeights = quartetSystem.getQuartets();
-        final int N = circularOrdering.size();
+        final int nbPairs = N * (N - 1) / 2;
 
-        double gw[][][][] = new double[N][N][N][N];
+        // Slices of gw for the current length, and the previous two lengths.  Each is indexed by p - 1, then by pair.
+        double[][] gwL = new double[N][];
+        double[][] gwL1 = new double[N][];
+        double[][] gwL2 = new double[N][];
 
-        int[] c = circularOrdering.getNumbers();
+        double[] Etf = new double[maxSplits];
 
         for (int l = 2; l < N - 1; l++) {
 
@@ -265,176 +263,48 @@ public class WeightsComputer {
 
             for (int p = 1; p < N - l + 1; p++) {
 
-                // here, for i < j, (i, j) not in [p + 1 ... p + l]
-                // this means... loop, i: i from 1 to p, i from p + l + 1 to N
-                // and in that, loop j: j from i + 1 to p, loop j from max (i + 1, p + 1 + l) to N
-
-                for (int i = 1; i < p + 1; i++) {
-
-                    for (int j = i + 1; j < p + 1; j++) {
-
-                        if (l == 2) {
-
-                            int cA = c[p];
-                            int cB = c[p + 1];
-                            int cC = c[i - 1];
-                            int cD = c[j - 1];
-
-                            double aW = theQuartetWeights.getWeight(new SpectreQuad(cA, cB, cC, cD));
-
-                            gw[p - 1][p + 1][i - 1][j - 1] = aW;
-                        } else if (l == 3) {
-
-                            int cA = c[p];
-                            int cB = c[p + 2];
-                            int cC = c[i - 1];
-                            int cD = c[j - 1];
+                if (gwL[p - 1] == null) {
+                    gwL[p - 1] = new double[nbPairs];
+                }
 
-                            double aW = theQuartetWeights.getWeight(new SpectreQuad(cA, cB, cC, cD));
+                populateGwSlice(N, l, p, c, theQuartetWeights, gwL[p - 1],
+                        l > 2 ? gwL1[p - 1] : null,
+                        l > 2 ? gwL1[p] : null,
+                        l > 3 ? gwL2[p] : null);
+            }
 
-                            gw[p - 1][p + 2][i - 1][j - 1] = aW
-                                    + gw[p - 1][p + 1][i - 1][j - 1] + gw[p][p + 2][i - 1][j - 1];
-                        } else {
+            for (int a : splitsOfLength[l]) {
 
-                            int cA = c[p];
-                            int cB = c[p + l - 1];
-                            int cC = c[i - 1];
-                            int cD = c[j - 1];
+                final int p = splitIndices.get(a).getLeft();
+                final int q = splitIndices.get(a).getRight();
+                final double[] gwPQ = gwL[p - 1];
 
-                            double aW = theQuartetWeights.getWeight(new SpectreQuad(cA, cB, cC, cD));
+                double sum = 0.0;
 
-                            gw[p - 1][p + l - 1][i - 1][j - 1] = aW
-                                    + gw[p - 1][p + l - 2][i - 1][j - 1] + gw[p][p + l - 1][i - 1][j - 1]
-                                    - gw[p][p + l - 2][i - 1][j - 1];
-                        }
+                for (int i = 1; i <= p; i++) {
+                    for (int j = i + 1; j <= p; j++) {
+                        sum += gwPQ[pairIndex(i, j)];
                     }
 
-                    for (int j = p + 1 + l; j < N + 1; j++) {
-
-                        if (l == 2) {
-
-                            int cA = c[p];
-                            int cB = c[p + 1];
-                            int cC = c[i - 1];
-                            int cD = c[j - 1];
-
-                            double aW = theQuartetWeights.getWeight(new SpectreQuad(cA, cB, cC, cD));
-
-                            gw[p - 1][p + 1][i - 1][j - 1] = aW;
-                        } else if (l == 3) {
-
-                            int cA = c[p];
-                            int cB = c[p + 2];
-                            int cC = c[i - 1];
-                            int cD = c[j - 1];
-
-                            double aW = theQuartetWeights.getWeight(new SpectreQuad(cA, cB, cC, cD));
-
-                            gw[p - 1][p + 2][i - 1][j - 1] = aW
-                                    + gw[p - 1][p + 1][i - 1][j - 1] + gw[p][p + 2][i - 1][j - 1];
-                        } else {
-
-                            int cA = c[p];
-                            int cB = c[p + l - 1];
-                            int cC = c[i - 1];
-                            int cD = c[j - 1];
-
-                            double aW = theQuartetWeights.getWeight(new SpectreQuad(cA, cB, cC, cD));
-
-                            gw[p - 1][p + l - 1][i - 1][j - 1] = aW
-                                    + gw[p - 1][p + l - 2][i - 1][j - 1] + gw[p][p + l - 1][i - 1][j - 1]
-                                    - gw[p][p + l - 2][i - 1][j - 1];
-                        }
+                    for (int j = q + 1; j <= N; j++) {
+                        sum += gwPQ[pairIndex(i, j)];
                     }
                 }
 
-                for (int i = p + l + 1; i < N + 1; i++) {
-
-                    for (int j = i + 1; j < N + 1; j++) {
-
-                        if (l == 2) {
-
-                            int cA = c[p];
-                            int cB = c[p + 1];
-                            int cC = c[i - 1];
-                            int cD = c[j - 1];
-
-                            double aW = theQuartetWeights.getWeight(new SpectreQuad(cA, cB, cC, cD));
-
-                            gw[p - 1][p + 1][i - 1][j - 1] = aW;
-
-                        } else if (l == 3) {
-
-                            int cA = c[p];
-                            int cB = c[p + 2];
-                            int cC = c[i - 1];
-                            int cD = c[j - 1];
-
-                            double aW = theQuartetWeights.getWeight(new SpectreQuad(cA, cB, cC, cD));
-
-                            gw[p - 1][p + 2][i - 1][j - 1] = aW
-                                    + gw[p - 1][p + 1][i - 1][j - 1] + gw[p][p + 2][i - 1][j - 1];
-
-                        } else {
-
-                            int cA = c[p];
-                            int cB = c[p + l - 1];
-                            int cC = c[i - 1];
-                            int cD = c[j - 1];
-
-                            double aW = theQuartetWeights.getWeight(new SpectreQuad(cA, cB, cC, cD));
-
-                            gw[p - 1][p + l - 1][i - 1][j - 1] = aW
-                                    + gw[p - 1][p + l - 2][i - 1][j - 1] + gw[p][p + l - 1][i - 1][j - 1]
-                                    - gw[p][p + l - 2][i - 1][j - 1];
-
-                        }
+                for (int i = q + 1; i <= N; i++) {
+                    for (int j = i + 1; j <= N; j++) {
+                        sum += gwPQ[pairIndex(i, j)];
                     }
                 }
-            }
-        }
-
-        return gw;
-    }
-
-
-    private double[] initEtf(List<Pair<Integer, Integer>> splitIndices, GroupedQuartetSystem quartetSystem, IdentifierList circularOrdering) {
-
-        final int N = quartetSystem.getTaxa().size();
-        final int maxSplits = SplitUtils.calcMaxSplits(N);
-
-        if (splitIndices.size() != maxSplits) {
-            throw new IllegalArgumentException("Size of split indices and quartet system's taxa are different");
-        }
-
-        double[][][][] gw = this.populateGw(quartetSystem, circularOrdering);
-
-        double[] Etf = new double[maxSplits];
-
-        for (int a = 0; a < maxSplits; a++) {
-
-            final int p = splitIndices.get(a).getLeft();
-            final int q = splitIndices.get(a).getRight();
-
-            double sum = 0.0;
-
-            for (int i = 1; i <= p; i++) {
-                for (int j = i + 1; j <= p; j++) {
-                    sum += gw[p - 1][q - 1][i - 1][j - 1];
-                }
 
-                for (int j = q + 1; j <= N; j++) {
-                    sum += gw[p - 1][q - 1][i - 1][j - 1];
-                }
-            }
-
-            for (int i = q + 1; i <= N; i++) {
-                for (int j = i + 1; j <= N; j++) {
-                    sum += gw[p - 1][q - 1][i - 1][j - 1];
-                }
+                Etf[a] = sum;
             }
 
-            Etf[a] = sum;
+            // Move on a length, reusing the oldest slices for the next one
+            double[][] oldest = gwL2;
+            gwL2 = gwL1;
+            gwL1 = gwL;
+            gwL = oldest;
         }
 
         return Etf;
@@ -17,8 +17,6 @@ package uk.ac.uea.cmp.spectre.qtools.qnet.holders;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
-import uk.ac.uea.cmp.spectre.core.ds.quad.Quad;
-import uk.ac.uea.cmp.spectre.core.ds.quad.SpectreQuad;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.CanonicalWeightedQuartetMap;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetUtils;
 import uk.ac.uea.cmp.spectre.qtools.qnet.QNetException;
@@ -71,12 +69,8 @@ public class NSHolder extends AbstractBasicHolder {
                                     // what is and what isn't a quartet
                                     if (QuartetUtils.areDistinct(yA, yB, yC, yD)) {
 
-                                        Quad q = new SpectreQuad(yA, yB, yC, yD);
-
                                         count++;
-                                        weight += theQuartetWeights.containsKey(q) ?
-                                                theQuartetWeights.get(q) :
-                                                0.0;
+                                        weight += theQuartetWeights.getWeight(yA, yB, yC, yD);
                                     } else {
                                         throw new QNetException("Not sure if we are supposed to be here! :s");
                                     }
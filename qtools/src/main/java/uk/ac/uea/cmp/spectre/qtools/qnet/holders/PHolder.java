@@ -16,23 +16,38 @@
 package uk.ac.uea.cmp.spectre.qtools.qnet.holders;
 
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
-import uk.ac.uea.cmp.spectre.core.ds.quad.Quad;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.GroupedQuartetSystem;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetUtils;
-import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetWeights;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetWeightStore;
 
 import java.util.Arrays;
-import java.util.Map;
 
 /**
  * PHolder class
  */
 public class PHolder {
 
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
     /**
-     * The heart of the data structure
+     * Fields held for each quadruple.  The first of p/q (a, b, c, d) is the inner join, the second, p/q (b, c, d, n + a),
+     * is the outer join.  Both are defined for a, b, c, d.
      */
-    private PHContent[] data;
+    private static final int OUTER_P = 0;
+    private static final int INNER_P = 1;
+    private static final int OUTER_Q = 2;
+    private static final int INNER_Q = 3;
+    private static final int R = 4;
+    private static final int NB_FIELDS = 5;
+
+    /**
+     * The heart of the data structure.  Each field is held in its own primitive array, indexed by the rank of the
+     * quadruple and split into chunks, so that more than 2^31 quadruples can be held.  Keeping the fields apart means
+     * that a run of lookups of one field, such as P when building EtE, reads through memory holding only that field.
+     */
+    private int[][][] data;
 
     /**
      * this is N
@@ -69,14 +84,18 @@ public class PHolder {
         }*/
 
         // load r values
-        for (Map.Entry<Quad, QuartetWeights> entry : quartetSystem.getQuartets().entrySet()) {
+        final int[] taxa = new int[4];
+        QuartetWeightStore.Cursor cursor = quartetSystem.getQuartets().getStore().cursor();
+        while (cursor.next()) {
+
+            QuartetUtils.getTaxa(cursor.getRank(), taxa);
 
             this.setR(
-                    entry.getKey().getA(),
-                    entry.getKey().getB(),
-                    entry.getKey().getC(),
-                    entry.getKey().getD(),
-                    //entry.getValue().getA().intValue() == 1);
+                    taxa[0],
+                    taxa[1],
+                    taxa[2],
+                    taxa[3],
+                    //cursor.getWeight(0) == 1.0);
                     true);
         }
 
@@ -303,19 +322,45 @@ public class PHolder {
      */
     public void ensureCapacity(int N) {
 
-        data = new PHContent[QuartetUtils.over4(N)];
+        final long nbQuadruples = QuartetUtils.over4(N);
+        final int nbChunks = (int) ((nbQuadruples + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+
+        data = new int[NB_FIELDS][nbChunks][];
+
+        for (int field = 0; field < NB_FIELDS; field++) {
+            for (int i = 0; i < nbChunks; i++) {
+                data[field][i] = new int[(int) Math.min(CHUNK_SIZE, nbQuadruples - ((long) i << CHUNK_BITS))];
+            }
+        }
+
         nbTaxa = N;
     }
 
     public void initialize() {
 
-        int N = data.length;
+        for (int[][] field : data) {
+            for (int[] chunk : field) {
+                Arrays.fill(chunk, 0);
+            }
+        }
+    }
+
+    /**
+     * Gets the rank of the quadruple holding the values for a, b, c, d.  If d is beyond the last taxon then this is the
+     * quadruple of d - n, a, b, c, which holds the outer join.
+     */
+    private long rank(int a, int b, int c, int d) {
+        return d > nbTaxa ?
+                QuartetUtils.sumOvers(d - nbTaxa - 1, a - 1, b - 1, c - 1) :
+                QuartetUtils.sumOvers(a - 1, b - 1, c - 1, d - 1);
+    }
 
-        for (int n = 0; n < N; n++) {
+    private int get(long rank, int field) {
+        return data[field][(int) (rank >>> CHUNK_BITS)][(int) (rank & CHUNK_MASK)];
+    }
 
-            PHContent d = new PHContent(0, 0);
-            data[n] = d;
-        }
+    private void set(long rank, int field, int value) {
+        data[field][(int) (rank >>> CHUNK_BITS)][(int) (rank & CHUNK_MASK)] = value;
     }
 
     public int getP(int a, int b, int c, int d) {
@@ -327,28 +372,16 @@ public class PHolder {
             return 0;
         }
 
-        if (d > nbTaxa) {
-
-            // if requesting something after the last (remembering we have one-upmanship
-
-            // we work with out of d - n, a, b, c
-
-            return data[QuartetUtils.sumOvers(d - nbTaxa - 1, a - 1, b - 1, c - 1)].getOuterP();
-        } else {
-
-            // we work with in of a, b, c, d
-
-            return data[QuartetUtils.sumOvers(a - 1, b - 1, c - 1, d - 1)].getInnerP();
-        }
+        // if requesting something after the last (remembering we have one-upmanship
+        // we work with out of d - n, a, b, c, otherwise we work with in of a, b, c, d
+        return get(rank(a, b, c, d), d > nbTaxa ? OUTER_P : INNER_P);
     }
 
     public int getQ(int a, int b, int c, int d) {
 
         // we assume size-order and one-upmanship
         // we check for d > N
-        return d > nbTaxa ?
-                data[QuartetUtils.sumOvers(d - nbTaxa - 1, a - 1, b - 1, c - 1)].getOuterQ() :
-                data[QuartetUtils.sumOvers(a - 1, b - 1, c - 1, d - 1)].getInnerQ();
+        return get(rank(a, b, c, d), d > nbTaxa ? OUTER_Q : INNER_Q);
     }
 
     public boolean getR(int a, int b, int c, int d, IdentifierList cT) {
@@ -385,9 +418,7 @@ public class PHolder {
         // we assume size-order and one-upmanship
         // we check for d > N
 
-        return d > nbTaxa ?
-                data[QuartetUtils.sumOvers(d - nbTaxa - 1, a - 1, b - 1, c - 1)].getR() :
-                data[QuartetUtils.sumOvers(a - 1, b - 1, c - 1, d - 1)].getR();
+        return get(rank(a, b, c, d), R) != 0;
     }
 
 
@@ -395,123 +426,24 @@ public class PHolder {
 
         // we assume size-order and one-upmanship
         // we check for d > N
-        if (d > nbTaxa) {
-
-            // if requesting something after the last (remembering we have one-upmanship
-            // we work with out of d - n, a, b, c
-            data[QuartetUtils.sumOvers(d - nbTaxa - 1, a - 1, b - 1, c - 1)].setOuterP(newW);
-        } else {
-            // we work with in of a, b, c, d
-            data[QuartetUtils.sumOvers(a - 1, b - 1, c - 1, d - 1)].setInnerP(newW);
-        }
+        // if requesting something after the last (remembering we have one-upmanship
+        // we work with out of d - n, a, b, c, otherwise we work with in of a, b, c, d
+        set(rank(a, b, c, d), d > nbTaxa ? OUTER_P : INNER_P, newW);
     }
 
     public void setQ(int a, int b, int c, int d, int newW) {
 
         // we assume size-order and one-upmanship
         // we check for d > N
-
-        if (d > nbTaxa) {
-
-            // if requesting something after the last (remembering we have one-upmanship
-            // we work with out of d - n, a, b, c
-            data[QuartetUtils.sumOvers(d - nbTaxa - 1, a - 1, b - 1, c - 1)].setOuterQ(newW);
-        } else {
-
-            // we work with in of a, b, c, d
-            data[QuartetUtils.sumOvers(a - 1, b - 1, c - 1, d - 1)].setInnerQ(newW);
-        }
+        // if requesting something after the last (remembering we have one-upmanship
+        // we work with out of d - n, a, b, c, otherwise we work with in of a, b, c, d
+        set(rank(a, b, c, d), d > nbTaxa ? OUTER_Q : INNER_Q, newW);
     }
 
     public void setR(int a, int b, int c, int d, boolean newW) {
 
         // we assume size-order and one-upmanship
         // we check for d > N
-
-        if (d > nbTaxa) {
-
-            // if requesting something after the last (remembering we have one-upmanship
-            // we work with out of d - n, a, b, c
-            data[QuartetUtils.sumOvers(d - nbTaxa - 1, a - 1, b - 1, c - 1)].setR(newW);
-        } else {
-
-            // we work with in of a, b, c, d
-            data[QuartetUtils.sumOvers(a - 1, b - 1, c - 1, d - 1)].setR(newW);
-        }
-    }
-
-
-    /**
-     * Small helper - the first is p/q (a, b, c, d) - i.e. inner join the second is p/q (b, c, d, n + a) - i.e. outer join
-     * it is still defined for a, b, c, d
-     */
-    static class PHContent {
-
-        int outerP, innerP;
-        int outerQ, innerQ;
-        boolean R;
-
-        public PHContent(int out, int in) {
-
-            this.outerP = out;
-            this.innerP = in;
-
-            innerQ = 0;
-            outerQ = 0;
-            R = false;
-        }
-
-        public boolean getR() {
-
-            return R;
-        }
-
-        public void setR(boolean r) {
-
-            this.R = r;
-        }
-
-        public int getOuterQ() {
-
-            return outerQ;
-        }
-
-        public void setOuterQ(int outerQ) {
-
-            this.outerQ = outerQ;
-        }
-
-        public int getInnerQ() {
-
-            return innerQ;
-        }
-
-        public void setInnerQ(int innerQ) {
-
-            this.innerQ = innerQ;
-        }
-
-        public int getOuterP() {
-
-            return outerP;
-        }
-
-        public void setOuterP(int outerP) {
-
-            this.outerP = outerP;
-        }
-
-        public int getInnerP() {
-
-            return innerP;
-        }
-
-        public void setInnerP(int innerP) {
-
-            this.innerP = innerP;
-        }
+        set(rank(a, b, c, d), R, newW ? 1 : 0);
     }
-
-
 }
-
@@ -15,8 +15,6 @@
 package uk.ac.uea.cmp.spectre.qtools.qnet.holders;
 
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
-import uk.ac.uea.cmp.spectre.core.ds.quad.Quad;
-import uk.ac.uea.cmp.spectre.core.ds.quad.SpectreQuad;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.CanonicalWeightedQuartetMap;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetUtils;
 import uk.ac.uea.cmp.spectre.qtools.qnet.QNetException;
@@ -96,12 +94,8 @@ public class THolder {
                                         // what is and what isn't a quartet
                                         if (QuartetUtils.areDistinct(yA1, yA2, yB, yC)) {
 
-                                            Quad q = new SpectreQuad(yA1, yB, yA2, yC);
-
                                             count++;
-                                            weight += theQuartetWeights.containsKey(q) ?
-                                                    theQuartetWeights.get(q) :
-                                                    0.0;
+                                            weight += theQuartetWeights.getWeight(yA1, yB, yA2, yC);
                                         } else {
                                             throw new QNetException("Not sure if we are supposed to be here! :s");
                                         }
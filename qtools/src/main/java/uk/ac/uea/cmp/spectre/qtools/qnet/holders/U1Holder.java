@@ -18,8 +18,6 @@ package uk.ac.uea.cmp.spectre.qtools.qnet.holders;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
-import uk.ac.uea.cmp.spectre.core.ds.quad.Quad;
-import uk.ac.uea.cmp.spectre.core.ds.quad.SpectreQuad;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.CanonicalWeightedQuartetMap;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetUtils;
 import uk.ac.uea.cmp.spectre.qtools.qnet.QNetException;
@@ -60,18 +58,11 @@ public class U1Holder extends AbstractBasicHolder {
                         // what is and what isn't a quartet
                         if (QuartetUtils.areDistinct(yA1, yA2, yB1, yB2)) {
 
-                            Quad q1 = new SpectreQuad(yA1, yB2, yA2, yB1);
-                            Quad q2 = new SpectreQuad(yA2, yB1, yA1, yB2);
-
                             count++;
-                            weight += theQuartetWeights.containsKey(q1) ?
-                                    theQuartetWeights.get(q1) :
-                                    0.0;
+                            weight += theQuartetWeights.getWeight(yA1, yB2, yA2, yB1);
 
                             count++;
-                            weight += theQuartetWeights.containsKey(q2) ?
-                                    theQuartetWeights.get(q2) :
-                                    0.0;
+                            weight += theQuartetWeights.getWeight(yA2, yB1, yA1, yB2);
                         } else {
                             throw new QNetException("Not sure if we are supposed to be here! :s");
                         }
@@ -16,29 +16,24 @@
 package uk.ac.uea.cmp.spectre.qtools.qnet.holders;
 
 import uk.ac.uea.cmp.spectre.core.ds.IdentifierList;
-import uk.ac.uea.cmp.spectre.core.ds.quad.SpectreQuad;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.CanonicalWeightedQuartetMap;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.DenseQuartetWeightStore;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetUtils;
-import uk.ac.uea.cmp.spectre.core.math.tuple.Triplet;
 import uk.ac.uea.cmp.spectre.qtools.qnet.QNetException;
 
 import java.util.List;
 
 public class WHolder {
 
-    private Triplet<Integer>[] counts;
-    private Triplet<Double>[] weights;
+    /**
+     * Summed weights of the three topologies of each quadruple of paths, addressed by the rank of the quadruple, so that
+     * more than 2^31 quadruples can be held
+     */
+    private final DenseQuartetWeightStore weights;
 
     public WHolder(List<IdentifierList> paths, int N, CanonicalWeightedQuartetMap quartetMap) throws QNetException {
 
-        this.counts = new Triplet[QuartetUtils.over4(N)];
-        this.weights = new Triplet[QuartetUtils.over4(N)];
-
-        for (int n = 0; n < QuartetUtils.over4(N); n++) {
-
-            this.counts[n] = new Triplet<>(0, 0, 0);
-            this.weights[n] = new Triplet<>(0.0, 0.0, 0.0);
-        }
+        this.weights = new DenseQuartetWeightStore(N);
 
         // now, we store everything properly
 
@@ -68,18 +63,11 @@ public class WHolder {
 
                         if (A == B || A == C || A == D || B == C || B == D || C == D) {
 
-                            // if on the same path, no quartets meet the conditions
-
-                            int index = QuartetUtils.sumOvers(i - 1, j - 1, k - 1, l - 1);
-                            counts[index] = new Triplet<>(0, 0, 0);
-                            weights[index] = new Triplet<>(0.0, 0.0, 0.0);
+                            // if on the same path, no quartets meet the conditions, so leave the weights at 0
                         } else {
 
-                            int count1 = 0;
                             double weight1 = 0.0;
-                            int count2 = 0;
                             double weight2 = 0.0;
-                            int count3 = 0;
                             double weight3 = 0.0;
 
                             // we now have four non-same lists
@@ -98,35 +86,20 @@ public class WHolder {
                                             int yC = C.get(xC).getId();
                                             int yD = D.get(xD).getId();
 
-                                            SpectreQuad q1 = new SpectreQuad(yA, yB, yC, yD);
-                                            SpectreQuad q2 = new SpectreQuad(yA, yC, yB, yD);
-                                            SpectreQuad q3 = new SpectreQuad(yA, yD, yB, yC);
-
-
-                                            count1++;
-                                            weight1 += quartetMap.containsKey(q1) ?
-                                                    quartetMap.get(q1) :
-                                                    0.0;
-
-                                            count2++;
-                                            weight2 += quartetMap.containsKey(q2) ?
-                                                    quartetMap.get(q2) :
-                                                    0.0;
-
-                                            count3++;
-                                            weight3 += quartetMap.containsKey(q3) ?
-                                                    quartetMap.get(q3) :
-                                                    0.0;
+                                            weight1 += quartetMap.getWeight(yA, yB, yC, yD);
+                                            weight2 += quartetMap.getWeight(yA, yC, yB, yD);
+                                            weight3 += quartetMap.getWeight(yA, yD, yB, yC);
 
                                         }
                                     }
                                 }
                             }
 
-                            int index = QuartetUtils.sumOvers(i - 1, j - 1, k - 1, l - 1);
+                            final long rank = QuartetUtils.sumOvers(i - 1, j - 1, k - 1, l - 1);
 
-                            counts[index] = new Triplet<>(count1, count2, count3);
-                            weights[index] = new Triplet<>(weight1, weight2, weight3);
+                            weights.setWeight(rank, 0, weight1);
+                            weights.setWeight(rank, 1, weight2);
+                            weights.setWeight(rank, 2, weight3);
                         }
                     }
                 }
@@ -135,185 +108,30 @@ public class WHolder {
     }
 
 
+    /**
+     * Gets the summed weight of the quartet ij|kl of paths
+     *
+     * @param i Path index i
+     * @param j Path index j
+     * @param k Path index k
+     * @param l Path index l
+     * @return The weight of ij|kl
+     */
     public double getW(int i, int j, int k, int l) {
-
-        /**
-         *
-         * Create size-ordered quadruple x, y, u, v from i, j, k, l
-         *
-         */
-        int position = 0;
-
-        if ((i > k && j > k && i > l && j > l)
-                || (i < k && j < k && i < l && j < l)) {
-
-            // both largest to the left or to the right
-
-            position = 1;
-        } else if (((i > k && i > l && ((j > l && j < k) || (j < l && j > k)))
-                || (j > k && j > l && ((i > l && i < k) || (i < l && i > k))))
-                || (l > j && l > i && ((k > i && k < j) || (k < i && k > j)))
-                || (k > j && k > i && ((l > i && l < j) || (l < i && l > j)))) {
-
-            // largest and third to the left or to the right
-
-            position = 2;
-        } else if ((i > k && i > l && (j < l && j < k))
-                || (j > k && j > l && (i < l && i < k))
-                || (l > j && l > i && (k < i && k < j))
-                || (k > j && k > i && (l < i && l < j))) {
-
-            // largest and smallest to the left or to the right
-
-            position = 3;
-        }
-
-        int x = i;
-        int y = j;
-        int u = k;
-        int v = l;
-        int m;
-
-        if (y > x) {
-
-            m = x;
-            x = y;
-            y = m;
-
-        }
-
-        if (u > x) {
-
-            m = x;
-            x = u;
-            u = m;
-
-        }
-
-        if (v > x) {
-
-            m = x;
-            x = v;
-            v = m;
-
-        }
-
-        if (u > y) {
-
-            m = y;
-            y = u;
-            u = m;
-
-        }
-
-        if (v > y) {
-
-            m = y;
-            y = v;
-            v = m;
-
-        }
-
-        if (v > u) {
-
-            m = u;
-            u = v;
-            v = m;
-        }
-
-        return weights[QuartetUtils.sumOvers(v - 1, u - 1, y - 1, x - 1)].get(position);
+        return weights.getWeight(QuartetUtils.getRank(i, j, k, l), QuartetUtils.getTopology(i, j, k, l));
     }
 
+    /**
+     * Sets the summed weight of the quartet ij|kl of paths
+     *
+     * @param i    Path index i
+     * @param j    Path index j
+     * @param k    Path index k
+     * @param l    Path index l
+     * @param newW The new weight of ij|kl
+     */
     public void setW(int i, int j, int k, int l, double newW) {
-
-        /**
-         *
-         * Create size-ordered quadruple x, y, u, v from i, j, k, l
-         *
-         */
-        int position = 0;
-
-        if ((i > k && j > k && i > l && j > l)
-                || (i < k && j < k && i < l && j < l)) {
-
-            // both largest to the left or to the right
-
-            position = 1;
-
-        } else if (((i > k && i > l && ((j > l && j < k) || (j < l && j > k)))
-                || (j > k && j > l && ((i > l && i < k) || (i < l && i > k))))
-                || (l > j && l > i && ((k > i && k < j) || (k < i && k > j)))
-                || (k > j && k > i && ((l > i && l < j) || (l < i && l > j)))) {
-
-            // largest and third to the left or to the right
-
-            position = 2;
-
-        } else if ((i > k && i > l && (j < l && j < k))
-                || (j > k && j > l && (i < l && i < k))
-                || (l > j && l > i && (k < i && k < j))
-                || (k > j && k > i && (l < i && l < j))) {
-
-            // largest and smallest to the left or to the right
-
-            position = 3;
-
-        }
-
-        int x = i;
-        int y = j;
-        int u = k;
-        int v = l;
-        int m;
-
-        if (y > x) {
-
-            m = x;
-            x = y;
-            y = m;
-        }
-
-        if (u > x) {
-
-            m = x;
-            x = u;
-            u = m;
-        }
-
-        if (v > x) {
-
-            m = x;
-            x = v;
-            v = m;
-        }
-
-        if (u > y) {
-
-            m = y;
-            y = u;
-            u = m;
-        }
-
-        if (v > y) {
-
-            m = y;
-            y = v;
-            v = m;
-        }
-
-        if (v > u) {
-
-            m = u;
-            u = v;
-            v = m;
-        }
-
-        Triplet t = weights[QuartetUtils.sumOvers(v - 1, u - 1, y - 1, x - 1)];
-
-        t.set(position, newW);
-
-        weights[QuartetUtils.sumOvers(v - 1, u - 1, y - 1, x - 1)] = t;
-
+        weights.setWeight(QuartetUtils.getRank(i, j, k, l), QuartetUtils.getTopology(i, j, k, l), newW);
     }
 
 }
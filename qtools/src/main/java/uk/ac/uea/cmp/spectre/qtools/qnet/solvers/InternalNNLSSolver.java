@@ -22,14 +22,58 @@ import uk.ac.uea.cmp.spectre.core.math.matrix.SymmetricMatrix;
 import uk.ac.uea.cmp.spectre.core.math.matrix.UpperTriangularMatrix;
 import uk.ac.uea.cmp.spectre.qtools.qnet.QNetException;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class InternalNNLSSolver {
 
     private static Logger log = LoggerFactory.getLogger(InternalNNLSSolver.class);
 
+    /* Below this number of splits, or if the pool only has one thread, the gradient is computed on the calling thread */
+    private static final int PARALLEL_THRESHOLD = 1024;
+
+    /* Number of rows of the gradient in each block of work handed to the pool */
+    private static final int BLOCK_SIZE = 256;
+
+    private final boolean incremental;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a solver which rebuilds and refactorises the least squares subproblem from scratch every time the passive
+     * set changes
+     */
+    public InternalNNLSSolver() {
+        this(false);
+    }
+
+    /**
+     * @param incremental If true, the solver keeps a Cholesky factorisation of the least squares subproblem, which is
+     *                    updated as variables are added to or dropped from the passive set, rather than rebuilding the
+     *                    subproblem and its QR factorisation on every change.  The gradient is then computed on the
+     *                    common fork join pool.
+     */
+    public InternalNNLSSolver(boolean incremental) {
+        this(incremental, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param incremental If true, keep and update a factorisation of the least squares subproblem, see
+     *                    {@link #InternalNNLSSolver(boolean)}
+     * @param pool The pool to compute the gradient on in incremental mode
+     */
+    public InternalNNLSSolver(boolean incremental, ForkJoinPool pool) {
+        this.incremental = incremental;
+        this.pool = pool;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
     /**
      * We wish to solve the NNLS problem Ex -f for x
      *
@@ -42,6 +86,10 @@ public class InternalNNLSSolver {
      */
     public double[] optimise(final int N, double[] Etf, SymmetricMatrix EtE, final double tolerance) throws QNetException {
 
+        if (this.incremental) {
+            return this.optimiseIncremental(N, Etf, EtE, tolerance);
+        }
+
         final int MAX_ITERATIONS = N * N;
 
         int iterations = 0;
@@ -299,6 +347,211 @@ public class InternalNNLSSolver {
     }
 
 
+    /**
+     * Solves the same NNLS problem as {@link #optimise(int, double[], SymmetricMatrix, double)}, taking the same steps,
+     * but without rebuilding the least squares subproblem from scratch after each change to the passive set.  The
+     * passive set is held as a list of indices, in the order they were added, along with a flag and position for each
+     * variable, and a Cholesky factorisation of the subproblem is updated as each variable is added or dropped.  Adding
+     * a variable appends a row to the factor, and dropping one removes its row and applies a rank-one update to the
+     * rows after it, so each change costs time quadratic in the size of the passive set rather than cubic.
+     *
+     * The gradient only depends on the variables which are not zero, and its rows are computed in parallel.
+     *
+     * @param N Number of Taxa
+     * @param Etf Array of doubles
+     * @param EtE Symettric matrix
+     * @param tolerance Tolerance to within which we require a result
+     * @return Solution - optimised variables
+     * @throws QNetException Thrown if there were issues solving this problem
+     */
+    protected double[] optimiseIncremental(final int N, double[] Etf, SymmetricMatrix EtE, final double tolerance) throws QNetException {
+
+        final int MAX_ITERATIONS = N * N;
+
+        int iterations = 0;
+
+        final int maxSplits = SplitUtils.calcMaxSplits(N);
+
+        // step 1: initially, all variables are classed as zero variables
+        PassiveSet P = new PassiveSet(EtE, maxSplits);
+        double[] x = new double[maxSplits];
+        double[] w = new double[maxSplits];
+        double[] z = new double[maxSplits];
+
+        // In optimise every hypothesis shares the same, live, passive set, so a hypothesis is only ever rejected if
+        // the same variable has been chosen before.  That is all we keep track of here.
+        boolean[] tried = new boolean[maxSplits];
+
+        boolean calculateW = true;
+
+        while (true) {
+
+            if (iterations > MAX_ITERATIONS) {
+
+                throw new QNetException(MAX_ITERATIONS + " iterations have been performed to no avail. Please increase the tolerance or use a different solver.");
+            }
+
+            iterations++;
+
+            // step 2: compute w
+            if (calculateW) {
+                this.computeGradient(Etf, EtE, x, w);
+            } else {
+                calculateW = true;
+            }
+
+            // step 3: check for stopping conditions if so, break
+            if (P.size() == maxSplits || P.zeroAllLEQTolerance(w, tolerance)) {
+                break;
+            }
+
+            // step 4, 5: find index t, skipping any that have been tried already
+            int t = -1;
+            while (true) {
+
+                t = P.zeroIndexOfMax(w);
+
+                if (t == -1 || !tried[t]) {
+                    break;
+                }
+
+                w[t] = 0.0;
+            }
+
+            // stop if there is no good choice
+            if (t == -1 || w[t] <= tolerance) {
+                break;
+            }
+
+            tried[t] = true;
+            P.add(t);
+
+            boolean from5 = true;
+
+            while (true) {
+
+                // step 6: solve the least squares subproblem over the passive set
+                P.solve(Etf, z);
+
+                // finite-precision test, only first time around this loop
+                if (from5) {
+
+                    if (z[t] <= tolerance) {
+                        w[t] = 0;
+                        calculateW = false;
+                        P.remove(t);
+                        break;
+                    }
+                }
+
+                // step 7: check for stopping conditions if so, break
+                if (P.allGTTolerance(z, tolerance)) {
+
+                    System.arraycopy(z, 0, x, 0, maxSplits);
+                    break;
+                }
+
+                // step 8:
+                int q = P.indexOfMin(x, z, tolerance);
+
+                // step 9:
+                double alpha = x[q] / (x[q] - z[q]);
+
+                // step 10:
+                for (int i = 0; i < maxSplits; i++) {
+                    x[i] = x[i] + alpha * (z[i] - x[i]);
+                }
+
+                // step 11:
+                P.transferZeroWeights(x, tolerance);
+
+                from5 = false;
+            }
+        }
+
+        return x;
+    }
+
+    /**
+     * Computes w = Etf - EtE.x, only summing over the variables which are not zero
+     */
+    private void computeGradient(final double[] Etf, final SymmetricMatrix EtE, final double[] x, final double[] w) {
+
+        int nbNonZero = 0;
+        for (int j = 0; j < x.length; j++) {
+            if (x[j] != 0.0) {
+                nbNonZero++;
+            }
+        }
+
+        final int[] nonZero = new int[nbNonZero];
+        nbNonZero = 0;
+        for (int j = 0; j < x.length; j++) {
+            if (x[j] != 0.0) {
+                nonZero[nbNonZero++] = j;
+            }
+        }
+
+        final GradientTask task = new GradientTask(Etf, EtE, x, w, nonZero, 0, w.length);
+
+        if (w.length < PARALLEL_THRESHOLD || this.pool.getParallelism() < 2) {
+            task.computeRows();
+        } else {
+            this.pool.invoke(task);
+        }
+    }
+
+    /**
+     * Computes a range of rows of the gradient, splitting the range in half until it is no bigger than a block
+     */
+    private static class GradientTask extends RecursiveAction {
+
+        private final double[] Etf;
+        private final SymmetricMatrix EtE;
+        private final double[] x;
+        private final double[] w;
+        private final int[] nonZero;
+        private final int lo;
+        private final int hi;
+
+        private GradientTask(double[] Etf, SymmetricMatrix EtE, double[] x, double[] w, int[] nonZero, int lo, int hi) {
+            this.Etf = Etf;
+            this.EtE = EtE;
+            this.x = x;
+            this.w = w;
+            this.nonZero = nonZero;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (this.hi - this.lo > BLOCK_SIZE) {
+                final int mid = (this.lo + this.hi) >>> 1;
+                invokeAll(new GradientTask(this.Etf, this.EtE, this.x, this.w, this.nonZero, this.lo, mid),
+                        new GradientTask(this.Etf, this.EtE, this.x, this.w, this.nonZero, mid, this.hi));
+                return;
+            }
+
+            this.computeRows();
+        }
+
+        private void computeRows() {
+
+            for (int i = this.lo; i < this.hi; i++) {
+
+                double jsum = 0;
+
+                for (int j : this.nonZero) {
+                    jsum += this.EtE.getElementAt(i, j) * this.x[j];
+                }
+
+                this.w[i] = this.Etf[i] - jsum;
+            }
+        }
+    }
+
     protected double[][] initQ(final int nbSplits, double[][] EtEp) {
 
         double Q[][] = new double[nbSplits][nbSplits];
@@ -394,6 +647,311 @@ public class InternalNNLSSolver {
     }
 
 
+    /**
+     * The passive set for {@link #optimiseIncremental(int, double[], SymmetricMatrix, double)}, along with a Cholesky
+     * factorisation, L.Lt, of the least squares subproblem EtEp.  Row k of L is held in an array of length k + 1, and
+     * corresponds to the k-th variable in the passive set.
+     *
+     * If the subproblem becomes singular the factorisation is dropped, and rebuilt from scratch the next time the
+     * subproblem is solved.  If it is still singular then the subproblem is solved by QR decomposition, as in
+     * {@link #optimise(int, double[], SymmetricMatrix, double)}.
+     */
+    protected class PassiveSet {
+
+        private final SymmetricMatrix EtE;
+
+        // Variables in the passive set, in the order they were added
+        private final int[] order;
+        private int size;
+
+        // Flag and position in order for each variable
+        private final boolean[] passive;
+        private final int[] position;
+
+        private final double[][] L;
+        private boolean factorised;
+
+        public PassiveSet(SymmetricMatrix EtE, int maxSplits) {
+            this.EtE = EtE;
+            this.order = new int[maxSplits];
+            this.size = 0;
+            this.passive = new boolean[maxSplits];
+            this.position = new int[maxSplits];
+            this.L = new double[maxSplits][];
+            this.factorised = true;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean contains(int i) {
+            return passive[i];
+        }
+
+        public void add(int j) {
+
+            this.order[this.size] = j;
+            this.position[j] = this.size;
+            this.passive[j] = true;
+            this.size++;
+
+            if (this.factorised) {
+                this.factorised = this.appendRow(this.size - 1);
+            }
+        }
+
+        public void remove(int j) {
+
+            final int r = this.position[j];
+
+            if (this.factorised) {
+                this.deleteRow(r);
+            }
+
+            for (int k = r + 1; k < this.size; k++) {
+                this.order[k - 1] = this.order[k];
+                this.position[this.order[k - 1]] = k - 1;
+            }
+
+            this.passive[j] = false;
+            this.size--;
+        }
+
+        /**
+         * Computes row k of L from the rows before it
+         *
+         * @return False if the subproblem is not positive definite
+         */
+        private boolean appendRow(int k) {
+
+            final int j = this.order[k];
+            final double[] row = new double[k + 1];
+
+            // Forward substitution for the off diagonal part of the row
+            double sum = this.EtE.getElementAt(j, j);
+            for (int c = 0; c < k; c++) {
+                final double[] rowC = this.L[c];
+                double s = this.EtE.getElementAt(j, this.order[c]);
+                for (int m = 0; m < c; m++) {
+                    s -= row[m] * rowC[m];
+                }
+                row[c] = s / rowC[c];
+                sum -= row[c] * row[c];
+            }
+
+            if (!(sum > 0.0)) {
+                return false;
+            }
+
+            row[k] = Math.sqrt(sum);
+            this.L[k] = row;
+            return true;
+        }
+
+        /**
+         * Removes row and column r from L.  The rows after r lose their entry in column r, which is folded back into
+         * the rows by a rank-one update.
+         */
+        private void deleteRow(int r) {
+
+            final int n = this.size;
+
+            // The column being removed, below the diagonal
+            final double[] v = new double[n];
+            for (int i = r + 1; i < n; i++) {
+                v[i] = this.L[i][r];
+            }
+
+            // Shift the rows up, dropping column r
+            for (int i = r + 1; i < n; i++) {
+                final double[] old = this.L[i];
+                final double[] row = new double[i];
+                System.arraycopy(old, 0, row, 0, r);
+                System.arraycopy(old, r + 1, row, r, i - r);
+                this.L[i - 1] = row;
+                v[i - 1] = v[i];
+            }
+            this.L[n - 1] = null;
+
+            // Rank-one update of the trailing block with v
+            for (int k = r; k < n - 1; k++) {
+
+                final double a = this.L[k][k];
+                final double rr = Math.hypot(a, v[k]);
+                final double c = rr / a;
+                final double s = v[k] / a;
+                this.L[k][k] = rr;
+
+                for (int i = k + 1; i < n - 1; i++) {
+                    this.L[i][k] = (this.L[i][k] + s * v[i]) / c;
+                    v[i] = c * v[i] - s * this.L[i][k];
+                }
+            }
+        }
+
+        /**
+         * Solves the least squares subproblem EtEp.zp = Etfp
+         *
+         * @param Etf Array of doubles
+         * @param z Receives the solution for the variables in the passive set, and zero for the rest
+         */
+        public void solve(double[] Etf, double[] z) {
+
+            Arrays.fill(z, 0.0);
+
+            if (!this.factorised) {
+                this.factorised = true;
+                for (int k = 0; k < this.size && this.factorised; k++) {
+                    this.factorised = this.appendRow(k);
+                }
+            }
+
+            if (!this.factorised) {
+                log.warn("Subproblem is underdetermined, results may not be unique!");
+                this.solveByQR(Etf, z);
+                return;
+            }
+
+            final int n = this.size;
+            final double[] y = new double[n];
+
+            // L.y = Etfp
+            for (int i = 0; i < n; i++) {
+                final double[] row = this.L[i];
+                double s = Etf[this.order[i]];
+                for (int m = 0; m < i; m++) {
+                    s -= row[m] * y[m];
+                }
+                y[i] = s / row[i];
+            }
+
+            // Lt.zp = y
+            for (int i = n - 1; i >= 0; i--) {
+                double s = y[i];
+                for (int m = i + 1; m < n; m++) {
+                    s -= this.L[m][i] * y[m];
+                }
+                y[i] = s / this.L[i][i];
+            }
+
+            for (int i = 0; i < n; i++) {
+                z[this.order[i]] = y[i];
+            }
+        }
+
+        private void solveByQR(double[] Etf, double[] z) {
+
+            final int n = this.size;
+
+            double[][] EtEp = new double[n][n];
+            double[] Etfp = new double[n];
+
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    EtEp[i][j] = this.EtE.getElementAt(this.order[i], this.order[j]);
+                }
+                Etfp[i] = Etf[this.order[i]];
+            }
+
+            double[][] Q = initQ(n, EtEp);
+            UpperTriangularMatrix R = initR(n, EtEp, Q);
+
+            double[] QtEtfp = new double[n];
+            for (int i = 0; i < n; i++) {
+                double jSum = 0.0;
+                for (int j = 0; j < n; j++) {
+                    jSum += Q[j][i] * Etfp[j];
+                }
+                QtEtfp[i] = jSum;
+            }
+
+            for (int i = n - 1; i >= 0; i--) {
+                double jSum = 0.0;
+                for (int j = i + 1; j < n; j++) {
+                    jSum += R.getElementAt(i, j) * z[this.order[j]];
+                }
+                z[this.order[i]] = (QtEtfp[i] - jSum) / R.getElementAt(i, i);
+            }
+        }
+
+        /**
+         * @return True if all variables not in the passive set have weights less than or equal to the tolerance
+         */
+        public boolean zeroAllLEQTolerance(double[] w, double tolerance) {
+
+            for (int i = 0; i < w.length; i++) {
+                if (!this.passive[i] && w[i] > tolerance) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * @return The variable not in the passive set with the largest positive weight, or -1 if there is none
+         */
+        public int zeroIndexOfMax(double[] w) {
+
+            double max = 0.0;
+            int index = -1;
+
+            for (int i = 0; i < w.length; i++) {
+                if (!this.passive[i] && w[i] > max) {
+                    index = i;
+                    max = w[i];
+                }
+            }
+
+            return index;
+        }
+
+        public boolean allGTTolerance(double[] z, double tolerance) {
+
+            for (int k = 0; k < this.size; k++) {
+                if (z[this.order[k]] <= tolerance) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        public int indexOfMin(double[] x, double[] z, double tolerance) {
+
+            double min = Double.POSITIVE_INFINITY;
+            int q = -1;
+
+            for (int k = 0; k < this.size; k++) {
+
+                final int i = this.order[k];
+
+                if (z[i] <= tolerance && x[i] / (x[i] - z[i]) < min) {
+                    q = i;
+                    min = x[i] / (x[i] - z[i]);
+                }
+            }
+
+            return q;
+        }
+
+        /**
+         * Drops all variables in the passive set whose weight is less than or equal to the tolerance
+         */
+        public void transferZeroWeights(double[] x, double tolerance) {
+
+            for (int k = this.size - 1; k >= 0; k--) {
+
+                final int i = this.order[k];
+
+                if (x[i] <= tolerance) {
+                    this.remove(i);
+                }
+            }
+        }
+    }
+
     protected static class PList extends LinkedList<Integer> {
 
         private final double tolerance;
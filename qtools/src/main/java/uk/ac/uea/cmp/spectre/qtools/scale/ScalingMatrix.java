@@ -15,9 +15,10 @@
 
 package uk.ac.uea.cmp.spectre.qtools.scale;
 
-import uk.ac.uea.cmp.spectre.core.ds.quad.SpectreQuad;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.GroupedQuartetSystem;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetSystemList;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetUtils;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetWeightStore;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.QuartetWeights;
 import uk.ac.uea.cmp.spectre.core.math.Equality;
 
@@ -146,6 +147,63 @@ public class ScalingMatrix {
     }
 
 
+    /**
+     * Reads the weights of a quadruple into an array
+     *
+     * @param store   The quartet weights
+     * @param rank    The rank of the quadruple
+     * @param weights Array to receive the three weights
+     * @return True if the quadruple was present, false otherwise
+     */
+    private static boolean getWeights(QuartetWeightStore store, long rank, double[] weights) {
+
+        if (!store.contains(rank)) {
+            return false;
+        }
+
+        for (int t = 0; t < 3; t++) {
+            weights[t] = store.getWeight(rank, t);
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the weights of the quadruple u1, u2, u3, u4 into an array, in the order of the topologies u1u2|u3u4,
+     * u1u3|u2u4 and u1u4|u2u3.  This gives the same result as {@link QuartetWeights#permute(int, int, int, int)}
+     * without creating any objects.
+     *
+     * @param store   The quartet weights
+     * @param u1      Taxon index u1
+     * @param u2      Taxon index u2
+     * @param u3      Taxon index u3
+     * @param u4      Taxon index u4
+     * @param weights Array to receive the three weights
+     * @return True if the quadruple was present, false otherwise
+     */
+    private static boolean getPermutedWeights(QuartetWeightStore store, int u1, int u2, int u3, int u4, double[] weights) {
+
+        final long rank = QuartetUtils.getRank(u1, u2, u3, u4);
+
+        if (!store.contains(rank)) {
+            return false;
+        }
+
+        weights[0] = store.getWeight(rank, QuartetUtils.getTopology(u1, u2, u3, u4));
+        weights[1] = store.getWeight(rank, QuartetUtils.getTopology(u1, u3, u2, u4));
+        weights[2] = store.getWeight(rank, QuartetUtils.getTopology(u1, u4, u2, u3));
+
+        return true;
+    }
+
+    private static double scalarProduct(double[] w1, double[] w2) {
+        return (w1[0] * w2[0]) + (w1[1] * w2[1]) + (w1[2] * w2[2]);
+    }
+
+    private static double squaredLength(double[] w) {
+        return Math.pow(w[0], 2.0) + Math.pow(w[1], 2.0) + Math.pow(w[2], 2.0);
+    }
+
     /**
      * Computes the contribution of tree number j to the diagonal element at position (i,i)
      *
@@ -173,7 +231,10 @@ public class ScalingMatrix {
         //auxiliary variables used to store the weights of the
         //quartets associated with the current line and, if
         //it exists, in tree i
-        QuartetWeights wvi, wvj;
+        final QuartetWeightStore qwi = qni.getQuartets().getStore();
+        final QuartetWeightStore qwj = qnj.getQuartets().getStore();
+        final double[] wvi = new double[3];
+        final double[] wvj = new double[3];
 
         //Now loop over the taxa so that we get all
         //4-subsets lexicographically ordered
@@ -182,19 +243,15 @@ public class ScalingMatrix {
                 for (int t3 = t2 + 1; t3 < (ntaxaj - 1); t3++) {
                     for (int t4 = t3 + 1; t4 < ntaxaj; t4++) {
 
-                        wvj = qnj.getQuartets().get(new SpectreQuad((t1 + 1), (t2 + 1), (t3 + 1), (t4 + 1)).createSortedCopy());
+                        final boolean foundj = getWeights(qwj, QuartetUtils.getIndex(t4 + 1, t3 + 1, t2 + 1, t1 + 1), wvj);
 
-                        if (transind[t1] >= 0 && transind[t2] >= 0 && transind[t3] >= 0 && transind[t4] >= 0) {
-                            wvi = qni.getQuartets().get(new SpectreQuad((transind[t1] + 1), (transind[t2] + 1), (transind[t3] + 1), (transind[t4] + 1)).createSortedCopy());
-                        } else {
-                            wvi = null;
-                        }
-                        if (wvi != null && wvj != null) {
+                        final boolean foundi = transind[t1] >= 0 && transind[t2] >= 0 && transind[t3] >= 0 && transind[t4] >= 0 &&
+                                getPermutedWeights(qwi, (transind[t1] + 1), (transind[t2] + 1), (transind[t3] + 1), (transind[t4] + 1), wvi);
 
-                            QuartetWeights wviPermuted = wvi.permute((transind[t1] + 1), (transind[t2] + 1), (transind[t3] + 1), (transind[t4] + 1));
+                        if (foundi && foundj) {
 
-                            if (wviPermuted.scalarProduct(wvj) != 0.0) {
-                                part += wviPermuted.squaredLength();
+                            if (scalarProduct(wvi, wvj) != 0.0) {
+                                part += squaredLength(wvi);
                             }
                         }
                     }
@@ -256,7 +313,10 @@ public class ScalingMatrix {
         //auxiliary variables used to store the weights of the
         //quartets associated with the current line and, if
         //it exists, in tree i
-        QuartetWeights wvi, wvj;
+        final QuartetWeightStore qwi = qni.getQuartets().getStore();
+        final QuartetWeightStore qwj = qnj.getQuartets().getStore();
+        final double[] wvi = new double[3];
+        final double[] wvj = new double[3];
 
         // Now loop over the taxa so that we get all 4-subsets lexicographically ordered
         for (int t1 = 0; t1 < (ntaxaj - 3); t1++) {
@@ -264,20 +324,13 @@ public class ScalingMatrix {
                 for (int t3 = t2 + 1; t3 < (ntaxaj - 1); t3++) {
                     for (int t4 = t3 + 1; t4 < ntaxaj; t4++) {
 
-                        wvj = qnj.getQuartets().get(new SpectreQuad((t1 + 1), (t2 + 1), (t3 + 1), (t4 + 1)).createSortedCopy());
+                        final boolean foundj = getWeights(qwj, QuartetUtils.getIndex(t4 + 1, t3 + 1, t2 + 1, t1 + 1), wvj);
 
-                        if (transind[t1] >= 0 && transind[t2] >= 0 && transind[t3] >= 0 && transind[t4] >= 0) {
-
-                            //need to sort indices after translation, best in
-                            //constructor of Key
-                            wvi = qni.getQuartets().get(new SpectreQuad((transind[t1] + 1), (transind[t2] + 1), (transind[t3] + 1), (transind[t4] + 1)).createSortedCopy());
-                        } else {
-                            wvi = null;
-                        }
+                        final boolean foundi = transind[t1] >= 0 && transind[t2] >= 0 && transind[t3] >= 0 && transind[t4] >= 0 &&
+                                getPermutedWeights(qwi, (transind[t1] + 1), (transind[t2] + 1), (transind[t3] + 1), (transind[t4] + 1), wvi);
 
-                        if (wvi != null && wvj != null) {
-                            QuartetWeights wviPermuted = wvi.permute((transind[t1] + 1), (transind[t2] + 1), (transind[t3] + 1), (transind[t4] + 1));
-                            coeff += wviPermuted.scalarProduct(wvj);
+                        if (foundi && foundj) {
+                            coeff += scalarProduct(wvi, wvj);
                         }
                     }
                 }
@@ -311,7 +364,10 @@ public class ScalingMatrix {
         //auxiliary variables used to store the weights of the
         //quartets associated with the current line and, if
         //it exists, in tree i
-        QuartetWeights wvi, wvj;
+        final QuartetWeightStore qwi = qni.getQuartets().getStore();
+        final QuartetWeightStore qwj = qnj.getQuartets().getStore();
+        final double[] wvi = new double[3];
+        final double[] wvj = new double[3];
 
         // Now loop over the taxa so that we get all 4-subsets lexicographically ordered
         for (int t1 = 0; t1 < (ntaxaj - 3); t1++) {
@@ -319,32 +375,26 @@ public class ScalingMatrix {
                 for (int t3 = t2 + 1; t3 < (ntaxaj - 1); t3++) {
                     for (int t4 = t3 + 1; t4 < ntaxaj; t4++) {
 
-                        wvj = qnj.getQuartets().get(new SpectreQuad((t1 + 1), (t2 + 1), (t3 + 1), (t4 + 1)).createSortedCopy());
-
-                        if (transind[t1] >= 0 && transind[t2] >= 0 && transind[t3] >= 0 && transind[t4] >= 0) {
+                        final boolean foundj = getWeights(qwj, QuartetUtils.getIndex(t4 + 1, t3 + 1, t2 + 1, t1 + 1), wvj);
 
-                            //need to sort indices after translation, best in
-                            //constructor of Key
-                            wvi = qni.getQuartets().get(new SpectreQuad((transind[t1] + 1), (transind[t2] + 1), (transind[t3] + 1), (transind[t4] + 1)).createSortedCopy());
-                        } else {
-                            wvi = null;
-                        }
+                        final boolean foundi = transind[t1] >= 0 && transind[t2] >= 0 && transind[t3] >= 0 && transind[t4] >= 0 &&
+                                getWeights(qwi, QuartetUtils.getRank((transind[t1] + 1), (transind[t2] + 1), (transind[t3] + 1), (transind[t4] + 1)), wvi);
 
-                        if (wvi != null && wvj != null) {
+                        if (foundi && foundj) {
 
                             //check first weight in triplet
-                            if (wvi.getA() == 0.0) {
-                                if (wvj.getA() > 0.0) {
+                            if (wvi[0] == 0.0) {
+                                if (wvj[0] > 0.0) {
                                     this.perfectMatch = false;
                                 }
                             } else {
-                                if (wvj.getA() == 0.0) {
+                                if (wvj[0] == 0.0) {
                                     this.perfectMatch = false;
                                 } else {
                                     if (coeff < 0.0) {
-                                        coeff = wvi.getA() / wvj.getA();
+                                        coeff = wvi[0] / wvj[0];
                                     } else {
-                                        if (!Equality.approxEquals(coeff, wvi.getA() / wvj.getA(), LOCAL_TOLERANCE)) {
+                                        if (!Equality.approxEquals(coeff, wvi[0] / wvj[0], LOCAL_TOLERANCE)) {
                                             this.perfectMatch = false;
                                         }
                                     }
@@ -352,18 +402,18 @@ public class ScalingMatrix {
                             }
 
                             //check second weight in triplet
-                            if (wvi.getB() == 0.0) {
-                                if (wvj.getB() > 0.0) {
+                            if (wvi[1] == 0.0) {
+                                if (wvj[1] > 0.0) {
                                     this.perfectMatch = false;
                                 }
                             } else {
-                                if (wvj.getB() == 0.0) {
+                                if (wvj[1] == 0.0) {
                                     this.perfectMatch = false;
                                 } else {
                                     if (coeff < 0.0) {
-                                        coeff = wvi.getB() / wvj.getB();
+                                        coeff = wvi[1] / wvj[1];
                                     } else {
-                                        if (!Equality.approxEquals(coeff, wvi.getB() / wvj.getB(), LOCAL_TOLERANCE)) {
+                                        if (!Equality.approxEquals(coeff, wvi[1] / wvj[1], LOCAL_TOLERANCE)) {
                                             this.perfectMatch = false;
                                         }
                                     }
@@ -371,18 +421,18 @@ public class ScalingMatrix {
                             }
 
                             //check third weight in triplet
-                            if (wvi.getC() == 0.0) {
-                                if (wvj.getC() > 0.0) {
+                            if (wvi[2] == 0.0) {
+                                if (wvj[2] > 0.0) {
                                     this.perfectMatch = false;
                                 }
                             } else {
-                                if (wvj.getC() == 0.0) {
+                                if (wvj[2] == 0.0) {
                                     this.perfectMatch = false;
                                 } else {
                                     if (coeff < 0.0) {
-                                        coeff = wvi.getC() / wvj.getC();
+                                        coeff = wvi[2] / wvj[2];
                                     } else {
-                                        if (!Equality.approxEquals(coeff, wvi.getC() / wvj.getC(), LOCAL_TOLERANCE)) {
+                                        if (!Equality.approxEquals(coeff, wvi[2] / wvj[2], LOCAL_TOLERANCE)) {
                                             this.perfectMatch = false;
                                         }
                                     }
@@ -19,9 +19,9 @@ import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.lang3.StringUtils;
+import uk.ac.uea.cmp.spectre.core.io.SpectreWriterFactory;
 import uk.ac.uea.cmp.spectre.core.io.nexus.Nexus;
 import uk.ac.uea.cmp.spectre.core.io.nexus.NexusReader;
-import uk.ac.uea.cmp.spectre.core.io.nexus.NexusWriter;
 import uk.ac.uea.cmp.spectre.tools.SpectreTool;
 
 import java.io.File;
@@ -92,7 +92,7 @@ public class SFilter extends SpectreTool {
         raw.getSplitSystem().filterByRelativeWeight(minThreshold);
 
         // Save
-        new NexusWriter().writeNexusData(outputFile, raw);
+        SpectreWriterFactory.writeNexusData(outputFile, raw);
     }
 
 
@@ -23,9 +23,10 @@ import uk.ac.earlham.metaopt.OptimiserException;
 import uk.ac.earlham.metaopt.Problem;
 import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.GroupedQuartetSystem;
 import uk.ac.uea.cmp.spectre.core.ds.split.SplitSystem;
-import uk.ac.uea.cmp.spectre.core.io.nexus.NexusWriter;
+import uk.ac.uea.cmp.spectre.core.io.SpectreWriterFactory;
 import uk.ac.uea.cmp.spectre.core.ui.gui.RunnableTool;
 import uk.ac.uea.cmp.spectre.core.ui.gui.StatusTrackerWithView;
+import uk.ac.uea.cmp.spectre.core.util.ToolMetrics;
 import uk.ac.uea.cmp.spectre.qtools.qmaker.QMaker;
 import uk.ac.uea.cmp.spectre.qtools.qnet.QNet;
 import uk.ac.uea.cmp.spectre.qtools.qnet.QNetResult;
@@ -36,6 +37,11 @@ import java.io.IOException;
 public class SuperQ extends RunnableTool {
 
     private static Logger log = LoggerFactory.getLogger(SuperQ.class);
+
+    public static final String PHASE_QMAKER = "qmaker";
+    public static final String PHASE_QNET = "qnet";
+    public static final String PHASE_SECONDARY = "secondary";
+
     private SuperQOptions options;
 
     public SuperQ(SuperQOptions options) {
@@ -71,18 +77,16 @@ public class SuperQ extends RunnableTool {
             log.info("Recognised these options:\n\n" +
                     this.options.toString());
 
-            // Get a shortcut to runtime object for checking memory usage
-            Runtime rt = Runtime.getRuntime();
-
             // Start timing
             StopWatch stopWatch = new StopWatch();
             stopWatch.start();
 
             log.info("Starting job");
-            log.debug("FREE MEM - at start: " + rt.freeMemory());
 
             this.continueRun();
 
+            this.getMetrics().start(PHASE_QMAKER);
+
             notifyUser("Converting input trees into a combined quartet system.  " +
                     (this.options.getScalingSolver() != null ? "(Scaling input (optimiser: " + this.options.getScalingSolver().getIdentifier() + ")" : ""));
 
@@ -90,9 +94,6 @@ public class SuperQ extends RunnableTool {
                     this.options.getInputFiles(),
                     this.options.getScalingSolver());
 
-            rt.gc();
-            log.debug("FREE MEM - after running QMaker: " + rt.freeMemory());
-
             this.continueRun();
 
             String primarySolverName = this.options.getPrimarySolver() == null ?
@@ -100,11 +101,9 @@ public class SuperQ extends RunnableTool {
                     this.options.getPrimarySolver().getIdentifier();
 
             notifyUser("Running QNet (optimiser: " + primarySolverName + ")");
+            this.getMetrics().start(PHASE_QNET);
             QNetResult qnetResult = new QNet().execute(combinedQuartetSystem, false, -1.0, this.options.getPrimarySolver());
 
-            rt.gc();
-            log.debug("FREE MEM - after running Q-Net: " + rt.freeMemory());
-
             this.continueRun();
 
             double[] solution = qnetResult.getComputedWeights().getSolution();
@@ -113,6 +112,8 @@ public class SuperQ extends RunnableTool {
                 log.info("Secondary optimisation - Not requested");
             } else {
 
+                this.getMetrics().start(PHASE_SECONDARY);
+
                 Optimiser secondarySolver = this.options.getSecondarySolver();
                 notifyUser("Secondary optimisation (optimiser: " + secondarySolver.getIdentifier() + "; objective: " +
                         this.options.getSecondaryProblem().getName() + ")");
@@ -139,9 +140,6 @@ public class SuperQ extends RunnableTool {
 
             SplitSystem ss = qnetResult.createSplitSystem(null, QNetResult.SplitLimiter.STANDARD).makeCanonical();
 
-            rt.gc();
-            log.debug("FREE MEM - after computing weights: " + rt.freeMemory());
-
             // Filter split system if required
             if (this.options.getFilter() != null) {
 
@@ -150,6 +148,7 @@ public class SuperQ extends RunnableTool {
             }
 
             // Save split system
+            this.getMetrics().start(ToolMetrics.WRITE);
             File outputFile = this.options.getOutputFile();
             File outputDir = this.options.getOutputFile().getParentFile();
 
@@ -159,15 +158,7 @@ public class SuperQ extends RunnableTool {
             }
 
             notifyUser("Saving to file: " + outputFile.getAbsolutePath());
-            NexusWriter nw = new NexusWriter();
-            // Construct file content
-            nw.appendHeader()
-                    .appendLine()
-                    .append(ss.getOrderedTaxa().sortById())
-                    .appendLine()
-                    .append(ss);
-
-            nw.write(outputFile);
+            SpectreWriterFactory.writeSplitSystem(outputFile, ss);
 
             this.trackerFinished(true);
 
@@ -180,6 +171,7 @@ public class SuperQ extends RunnableTool {
             this.setError(e);
             this.trackerFinished(false);
         } finally {
+            this.getMetrics().stop();
             this.notifyListener();
         }
     }
@@ -19,19 +19,25 @@ import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
 import org.apache.commons.lang3.StringUtils;
+import org.kohsuke.MetaInfServices;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.earlham.metaopt.Objective;
 import uk.ac.earlham.metaopt.OptimiserException;
 import uk.ac.earlham.metaopt.OptimiserFactory;
 import uk.ac.uea.cmp.spectre.core.ui.cli.CommandLineHelper;
+import uk.ac.uea.cmp.spectre.core.ui.cli.RunnableToolFactory;
+import uk.ac.uea.cmp.spectre.core.ui.gui.RunnableTool;
 import uk.ac.uea.cmp.spectre.core.util.LogConfig;
 import uk.ac.uea.cmp.spectre.qtools.superq.problems.SecondaryProblemFactory;
 
 import java.io.File;
+import java.io.IOException;
 
-public class SuperQCLI {
+@MetaInfServices(RunnableToolFactory.class)
+public class SuperQCLI implements RunnableToolFactory {
 
     private static Logger log = LoggerFactory.getLogger(SuperQCLI.class);
 
@@ -67,6 +73,8 @@ public class SuperQCLI {
             LogConfig.defaultConfig(sqOpts.isVerbose());
             SuperQ superQ = new SuperQ(sqOpts);
             superQ.run();
+
+            CommandLineHelper.writeMetrics(commandLine, superQ);
             if (superQ.failed()) {
                 log.error(superQ.getErrorMessage());
             }
@@ -85,6 +93,7 @@ public class SuperQCLI {
 
         Options options = new Options();
         options.addOption(CommandLineHelper.HELP_OPTION);
+        options.addOption(CommandLineHelper.createMetricsOption());
         options.addOption(OptionBuilder.withArgName("file").withLongOpt(OPT_OUTPUT).isRequired(true).hasArg(true)
                 .withDescription(SuperQOptions.DESC_OUTPUT).create("o"));
         options.addOption(OptionBuilder.withArgName("solver").withLongOpt(OPT_PRIMARY_SOLVER).isRequired(false).hasArg(true)
@@ -102,6 +111,16 @@ public class SuperQCLI {
         return options;
     }
 
+    @Override
+    public String getName() {
+        return BIN_NAME;
+    }
+
+    @Override
+    public RunnableTool createTool(String[] args) throws ParseException, IOException {
+        return new SuperQ(processArgs(new PosixParser().parse(createOptions(), args)));
+    }
+
     private static SuperQOptions processArgs(CommandLine commandLine) throws ParseException {
 
         SuperQOptions sqOpts = null;
@@ -0,0 +1,130 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.qtools.qnet;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import uk.ac.uea.cmp.spectre.core.ds.quad.quartet.GroupedQuartetSystem;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitUtils;
+import uk.ac.uea.cmp.spectre.core.ds.tree.newick.NewickTree;
+import uk.ac.uea.cmp.spectre.core.math.matrix.SymmetricMatrix;
+import uk.ac.uea.cmp.spectre.qtools.qnet.holders.PHolder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class EtEBuilderTest {
+
+    /**
+     * Creates a newick string for a tree over taxa from to to - 1, splitting the taxa unevenly so the tree is not
+     * balanced
+     */
+    private static String tree(int from, int to) {
+
+        if (to - from == 1) {
+            return "t" + from + ":1";
+        }
+
+        final int mid = from + Math.max(1, (to - from) / 3);
+        return "(" + tree(from, mid) + "," + tree(mid, to) + "):1";
+    }
+
+    /**
+     * Lower triangle of EtE for the tree in {@link #testSameAsOriginal()}, as built by the original single threaded
+     * initEtE in WeightsComputer
+     */
+    private static final int[][] ORIGINAL_ETE = new int[][]{
+            {10},
+            {6, 18},
+            {3, 9, 18},
+            {1, 3, 6, 10},
+            {0, 6, 3, 1, 10},
+            {0, 3, 9, 3, 6, 18},
+            {0, 1, 3, 6, 3, 9, 18},
+            {0, 0, 0, 0, 1, 3, 6, 10},
+            {1, 0, 3, 1, 0, 6, 3, 1, 10},
+            {3, 1, 1, 3, 0, 3, 9, 3, 6, 18},
+            {6, 3, 1, 0, 0, 1, 3, 6, 3, 9, 18},
+            {1, 3, 0, 1, 1, 0, 3, 1, 0, 6, 3, 10},
+            {3, 9, 3, 0, 3, 1, 1, 3, 0, 3, 9, 6, 18},
+            {1, 3, 6, 0, 1, 3, 0, 1, 1, 0, 3, 0, 6, 10}
+    };
+
+    @Test
+    public void testSameAsOriginal() throws IOException {
+
+        final int N = 7;
+
+        GroupedQuartetSystem quartetSystem = new GroupedQuartetSystem(
+                new NewickTree("((t0:1,(t1:1,t2:1):1):1,((t3:1,t4:1):1,(t5:1,t6:1):1):1);"));
+
+        List<Pair<Integer, Integer>> splitIndices = SplitUtils.createSplitIndices(N);
+        PHolder pHolder = new PHolder(quartetSystem, quartetSystem.getTaxa());
+
+        SymmetricMatrix actual = new EtEBuilder().build(N, splitIndices, pHolder);
+
+        assertEquals(ORIGINAL_ETE.length, actual.getSize());
+
+        for (int i = 0; i < ORIGINAL_ETE.length; i++) {
+            for (int j = 0; j <= i; j++) {
+                assertEquals(ORIGINAL_ETE[i][j], actual.getElementAt(i, j), 0.0);
+                assertEquals(ORIGINAL_ETE[i][j], actual.getElementAt(j, i), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testParallelSameAsSequential() throws IOException {
+
+        final int N = 30;
+
+        GroupedQuartetSystem quartetSystem = new GroupedQuartetSystem(new NewickTree("(" + tree(0, 15) + "," + tree(15, N) + ");"));
+
+        List<Pair<Integer, Integer>> splitIndices = SplitUtils.createSplitIndices(N);
+        PHolder pHolder = new PHolder(quartetSystem, quartetSystem.getTaxa());
+
+        ForkJoinPool sequential = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(4);
+
+        SymmetricMatrix expected;
+        SymmetricMatrix actual;
+        try {
+            expected = new EtEBuilder(sequential).build(N, splitIndices, pHolder);
+            actual = new EtEBuilder(parallel).build(N, splitIndices, pHolder);
+        } finally {
+            sequential.shutdown();
+            parallel.shutdown();
+        }
+
+        final int maxSplits = splitIndices.size();
+        assertEquals(maxSplits, actual.getSize());
+
+        for (int i = 0; i < maxSplits; i++) {
+            for (int j = 0; j < maxSplits; j++) {
+
+                Pair<Integer, Integer> si = splitIndices.get(i);
+                Pair<Integer, Integer> sj = splitIndices.get(j);
+
+                assertEquals(expected.getElementAt(i, j), actual.getElementAt(i, j), 0.0);
+                assertEquals(EtEBuilder.calculate(N, si.getLeft(), si.getRight(), sj.getLeft(), sj.getRight(), pHolder),
+                        actual.getElementAt(i, j), 0.0);
+            }
+        }
+    }
+}
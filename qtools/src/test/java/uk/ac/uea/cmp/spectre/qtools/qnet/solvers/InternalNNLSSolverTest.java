@@ -0,0 +1,127 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2017  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.qtools.qnet.solvers;
+
+import org.junit.Test;
+import uk.ac.uea.cmp.spectre.core.ds.split.SplitUtils;
+import uk.ac.uea.cmp.spectre.core.math.matrix.SymmetricMatrix;
+import uk.ac.uea.cmp.spectre.qtools.qnet.QNetException;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InternalNNLSSolverTest {
+
+    /**
+     * Random NNLS problem over the splits for N taxa, with a sparse non-negative solution plus some noise
+     */
+    private static class Problem {
+
+        private final double[] Etf;
+        private final SymmetricMatrix EtE;
+
+        private Problem(int N, long seed) {
+
+            final Random random = new Random(seed);
+            final int maxSplits = SplitUtils.calcMaxSplits(N);
+            final int rows = maxSplits + 10;
+
+            final double[] x = new double[maxSplits];
+            for (int c = 0; c < maxSplits; c++) {
+                x[c] = random.nextDouble() < 0.4 ? random.nextDouble() : 0.0;
+            }
+
+            // Sparse rows of E, with the products accumulated one row at a time
+            final double[][] products = new double[maxSplits][maxSplits];
+            this.Etf = new double[maxSplits];
+
+            final int[] columns = new int[maxSplits];
+            final double[] values = new double[maxSplits];
+
+            for (int r = 0; r < rows; r++) {
+
+                int nbColumns = 0;
+                double f = (random.nextDouble() - 0.5) * 0.2;
+                for (int c = 0; c < maxSplits; c++) {
+                    if (random.nextDouble() < 0.3) {
+                        columns[nbColumns] = c;
+                        values[nbColumns] = random.nextDouble();
+                        f += values[nbColumns] * x[c];
+                        nbColumns++;
+                    }
+                }
+
+                for (int a = 0; a < nbColumns; a++) {
+                    this.Etf[columns[a]] += values[a] * f;
+                    for (int b = 0; b <= a; b++) {
+                        products[columns[a]][columns[b]] += values[a] * values[b];
+                    }
+                }
+            }
+
+            this.EtE = new SymmetricMatrix(maxSplits);
+            for (int i = 0; i < maxSplits; i++) {
+                for (int j = 0; j <= i; j++) {
+                    this.EtE.setElementAt(i, j, products[i][j]);
+                }
+            }
+        }
+    }
+
+    private static void assertClose(double[] expected, double[] actual) {
+
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i], 1e-8);
+        }
+    }
+
+    @Test
+    public void testIncrementalSameAsOriginal() throws QNetException {
+
+        for (int N = 5; N <= 14; N++) {
+
+            final Problem problem = new Problem(N, N);
+
+            final double[] expected = new InternalNNLSSolver().optimise(N, problem.Etf, problem.EtE, 1e-10);
+            final double[] actual = new InternalNNLSSolver(true).optimise(N, problem.Etf, problem.EtE, 1e-10);
+
+            assertClose(expected, actual);
+        }
+    }
+
+    @Test
+    public void testIncrementalParallel() throws QNetException {
+
+        final int N = 47;
+        final Problem problem = new Problem(N, 42L);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        final double[] expected = new InternalNNLSSolver(true, ForkJoinPool.commonPool()).optimise(N, problem.Etf, problem.EtE, 1e-10);
+        final double[] actual = new InternalNNLSSolver(true, pool).optimise(N, problem.Etf, problem.EtE, 1e-10);
+
+        pool.shutdown();
+
+        assertClose(expected, actual);
+
+        for (double v : actual) {
+            assertTrue(v >= 0.0);
+        }
+    }
+}
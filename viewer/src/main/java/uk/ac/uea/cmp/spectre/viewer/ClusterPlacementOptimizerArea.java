@@ -108,21 +108,24 @@ class ClusterPlacementOptimizerArea extends ClusterPlacementOptimizer {
     }
 
     private double[][] computeGrid(Window window, int step) {
+        final Line[] lines = window.lines.values().toArray(new Line[window.lines.size()]);
+        SpatialIndex lineIndex = new SpatialIndex(4 * step);
+        for (int i = 0; i < lines.length; i++) {
+            lineIndex.add(i, lines[i].p1.getX(), lines[i].p1.getY(), lines[i].p2.getX(), lines[i].p2.getY());
+        }
+
         double[][] rays = new double[window.getWidth() / step]
                 [window.getHeight() / step];
         for (int i = 0; i < rays.length; i++) {
             for (int j = 0; j < rays[i].length; j++) {
-                ViewerPoint p = new ViewerPoint(i * step, j * step);
-                rays[i][j] = p.distanceToBoundary(window.getBounds());
-                Iterator<Line> lineIt = window.lines.values().iterator();
-                while (lineIt.hasNext()) {
-                    Line line = lineIt.next();
-                    ViewerPoint closest = line.closestPoint(p);
-                    double dist = p.distanceTo(closest);
-                    if (dist < rays[i][j]) {
-                        rays[i][j] = dist;
-                    }
-                }
+                final ViewerPoint p = new ViewerPoint(i * step, j * step);
+                rays[i][j] = lineIndex.nearestDistance(p.getX(), p.getY(), -1,
+                        new SpatialIndex.Distance() {
+                            @Override
+                            public double distance(int id) {
+                                return p.distanceTo(lines[id].closestPoint(p));
+                            }
+                        }, p.distanceToBoundary(window.getBounds()));
             }
         }
         return rays;
@@ -27,12 +27,19 @@ public class ClusterPlacementOptimizerBox extends ClusterPlacementOptimizer {
     int bufferX = 20;
     List<Rectangle> takenZones = new LinkedList();
 
+    private ViewerPoint[] points;
+    private ViewerLabel[] placedLabels;
+    private SpatialIndex pointIndex;
+    private SpatialIndex labelIndex;
+
     @Override
     public void placeClusterLabels(Set<Cluster> clusters,
                                    Map<Integer, ViewerLabel> labels,
                                    Window window) {
         this.window = window;
 
+        indexDrawing(window);
+
         Iterator<Cluster> clusterIt = clusters.iterator();
         while (clusterIt.hasNext()) {
             Cluster cluster = clusterIt.next();
@@ -138,12 +145,37 @@ public class ClusterPlacementOptimizerBox extends ClusterPlacementOptimizer {
         }
     }
 
+    /**
+     * Indexes the points and labels of the drawing, which stay put while the cluster labels are placed, so that
+     * {@link #findX(Window, double, Cluster, double)} only looks at those level with the cluster
+     */
+    private void indexDrawing(Window window) {
+        points = window.points.values().toArray(new ViewerPoint[window.points.size()]);
+        placedLabels = window.labels.values().toArray(new ViewerLabel[window.labels.size()]);
+
+        int cellSize = 1;
+        for (ViewerLabel l : placedLabels) {
+            cellSize = Math.max(cellSize, Math.max(l.label.getWidth(), l.label.getHeight()));
+        }
+
+        pointIndex = new SpatialIndex(cellSize);
+        for (int i = 0; i < points.length; i++) {
+            pointIndex.add(i, points[i].getX(), points[i].getY(), points[i].getX(), points[i].getY());
+        }
+
+        labelIndex = new SpatialIndex(cellSize);
+        for (int i = 0; i < placedLabels.length; i++) {
+            ViewerLabel l = placedLabels[i];
+            labelIndex.add(i, l.getX(), l.getY(), l.getX() + l.label.getWidth(), l.getY() - l.label.getHeight());
+        }
+    }
+
     private double findX(Window window, double y, Cluster cluster, double x) {
-        Iterator<ViewerPoint> pointIt = window.points.values().iterator();
         Double x1 = null;
         Double x2 = null;
-        while (pointIt.hasNext()) {
-            ViewerPoint p = pointIt.next();
+        for (int i : pointIndex.query(Double.NEGATIVE_INFINITY, y,
+                Double.POSITIVE_INFINITY, y + cluster.getHeight())) {
+            ViewerPoint p = points[i];
             double pY = p.getY();
             double pX = p.getX();
             if (pY >= y && pY <= y + cluster.getHeight()) {
@@ -155,9 +187,9 @@ public class ClusterPlacementOptimizerBox extends ClusterPlacementOptimizer {
                 }
             }
         }
-        Iterator<ViewerLabel> labelIt = window.labels.values().iterator();
-        while (labelIt.hasNext()) {
-            ViewerLabel l = labelIt.next();
+        for (int i : labelIndex.query(Double.NEGATIVE_INFINITY, y,
+                Double.POSITIVE_INFINITY, y + cluster.getHeight())) {
+            ViewerLabel l = placedLabels[i];
             if (!l.sideLeader) {
                 double y1 = l.getY();
                 double y2 = l.getY() - l.label.getHeight();
@@ -47,19 +47,21 @@ public class LabelPlacementOptimizer4Points implements LabelPlacementOptimizer {
 
         int n = labelSet.size();
 
-        estimateNeighborhoods(labelSet);
-
         ViewerLabel[] labels = new ViewerLabel[n];
         Box[] candidatePositions = new Box[pn * n];
 
         computeInitialPositions(n, labelSet, labels, candidatePositions);
 
+        double cellSize = estimateCellSize(labels);
+
+        estimateNeighborhoods(labels, cellSize);
+
         setQuarters(labelSet, midX, midY);
 
-        scorePositions(candidatePositions, labels, lineSet);
+        scorePositions(candidatePositions, labels, lineSet, cellSize);
 
-        boolean[][] intersectionGraph = makeIntersectionGraph(n,
-                candidatePositions);
+        IntersectionGraph intersectionGraph = makeIntersectionGraph(n,
+                candidatePositions, cellSize);
 
         Map<Integer, Box> fixedPositions = findTrivialPositions(n,
                 labels,
@@ -79,9 +81,9 @@ public class LabelPlacementOptimizer4Points implements LabelPlacementOptimizer {
 
     }
 
-    private boolean hasPointInside(Box box, ViewerLabel[] labels) {
-        for (ViewerLabel label : labels) {
-            ViewerPoint p = label.p;
+    private boolean hasPointInside(Box box, ViewerLabel[] labels, SpatialIndex pointIndex) {
+        for (int i : pointIndex.query(box.x1, box.y1, box.x2, box.y2)) {
+            ViewerPoint p = labels[i].p;
             if (((p.getX() - p.width / 2 - box.x1) * (p.getX() - p.width / 2 - box.x2) <= 0 ||
                     (p.getX() + p.width / 2 - box.x1) * (p.getX() + p.width / 2 - box.x2) <= 0)
                     &&
@@ -93,11 +95,10 @@ public class LabelPlacementOptimizer4Points implements LabelPlacementOptimizer {
         return false;
     }
 
-    private int intersectsWithLine(Box box, Collection<Line> lineSet) {
+    private int intersectsWithLine(Box box, Line[] lines, SpatialIndex lineIndex) {
         double nLines = 0;
-        Iterator<Line> lineIt = lineSet.iterator();
-        while (lineIt.hasNext()) {
-            Line l = lineIt.next();
+        for (int i : lineIndex.query(box.x1, box.y1, box.x2, box.y2)) {
+            Line l = lines[i];
 
             ViewerPoint p1 = ViewerLabel.intersectionPoint(l.p1.getX(), l.p1.getY(), l.p2.getX(), l.p2.getY(),
                     box.x2, box.y2, box.x2, box.y1);
@@ -188,37 +189,56 @@ public class LabelPlacementOptimizer4Points implements LabelPlacementOptimizer {
 
     private void scorePositions(Box[] candidatePositions,
                                 ViewerLabel[] labels,
-                                Collection<Line> lineSet) {
+                                Collection<Line> lineSet,
+                                double cellSize) {
+        SpatialIndex pointIndex = new SpatialIndex(cellSize);
+        for (int i = 0; i < labels.length; i++) {
+            ViewerPoint p = labels[i].p;
+            pointIndex.add(i, p.getX() - p.width / 2, p.getY() - p.height / 2,
+                    p.getX() + p.width / 2, p.getY() + p.height / 2);
+        }
+
+        Line[] lines = lineSet.toArray(new Line[lineSet.size()]);
+        SpatialIndex lineIndex = new SpatialIndex(cellSize);
+        for (int i = 0; i < lines.length; i++) {
+            lineIndex.add(i, lines[i].p1.getX(), lines[i].p1.getY(), lines[i].p2.getX(), lines[i].p2.getY());
+        }
+
         for (int i = 0; i < labels.length; i++) {
             ViewerPoint p = labels[i].p;
             for (int k = 0; k < preferedQuarters[p.quarterNo].length; k++) {
                 Box position = candidatePositions[i * pn + preferedQuarters[p.quarterNo][k]];
                 position.positionScore = k;
-                if (hasPointInside(position, labels)) {
+                if (hasPointInside(position, labels, pointIndex)) {
                     position.pointScore += 100;
                 }
-                int intersectingLines = intersectsWithLine(position, lineSet);
+                int intersectingLines = intersectsWithLine(position, lines, lineIndex);
                 position.intersectionScore += 10 * intersectingLines;
             }
-            scoreDistancesToOtherPoints(candidatePositions, i, labels);
+            scoreDistancesToOtherPoints(candidatePositions, i, labels, pointIndex);
         }
     }
 
-    private boolean[][] makeIntersectionGraph(int n, Box[] candidatePositions) {
-        boolean[][] intersectionGraph = new boolean[pn * n][pn * n];
+    private IntersectionGraph makeIntersectionGraph(int n, Box[] candidatePositions, double cellSize) {
+        SpatialIndex boxIndex = new SpatialIndex(cellSize);
+        for (int i = 0; i < pn * n; i++) {
+            Box pos = candidatePositions[i];
+            boxIndex.add(i, pos.x1, pos.y1, pos.x2, pos.y2);
+        }
+
+        IntersectionGraph intersectionGraph = new IntersectionGraph(pn * n);
         for (int i = 0; i < n; i++) {
             for (int k = 0; k < pn; k++) {
                 Box posI = candidatePositions[pn * i + k];
-                for (int j = i + 1; j < n; j++) {
-                    for (int l = 0; l < pn; l++) {
-                        Box posJ = candidatePositions[pn * j + l];
+                for (int m : boxIndex.query(posI.x1, posI.y1, posI.x2, posI.y2)) {
+                    if (m / pn > i) {
+                        Box posJ = candidatePositions[m];
                         if (((posI.x1 - posJ.x1) * (posI.x1 - posJ.x2) < 0 ||
                                 (posI.x2 - posJ.x1) * (posI.x2 - posJ.x2) < 0)
                                 &&
                                 ((posI.y1 - posJ.y1) * (posI.y1 - posJ.y2) < 0 ||
                                         (posI.y2 - posJ.y1) * (posI.y2 - posJ.y2) < 0)) {
-                            intersectionGraph[pn * i + k][pn * j + l] = true;
-                            intersectionGraph[pn * j + l][pn * i + k] = true;
+                            intersectionGraph.addEdge(pn * i + k, m);
                         }
                     }
                 }
@@ -227,21 +247,9 @@ public class LabelPlacementOptimizer4Points implements LabelPlacementOptimizer {
         return intersectionGraph;
     }
 
-    private static int size(boolean[] array) {
-        int size = 0;
-        for (int i = 0; i < array.length; i++) {
-            if (array[i] == true) {
-                size++;
-            }
-        }
-        //size = (size < array.length - size) ? size : array.length - size;
-
-        return size;
-    }
-
     private Map<Integer, Box> findTrivialPositions(int n,
                                                    ViewerLabel[] labels,
-                                                   boolean[][] intersectionGraph,
+                                                   IntersectionGraph intersectionGraph,
                                                    int[][] preferedQuarters,
                                                    Box[] candidatePositions) {
         Map<Integer, Box> fixedPositions = new HashMap();
@@ -251,7 +259,7 @@ public class LabelPlacementOptimizer4Points implements LabelPlacementOptimizer {
             Double minScore = null;
             Integer bestPosition = null;
             for (int j = 0; j < pn; j++) {
-                if (size(intersectionGraph[i * pn + preferedQuarters[p.quarterNo][j]]) == 0) {
+                if (intersectionGraph.degree(i * pn + preferedQuarters[p.quarterNo][j]) == 0) {
                     int index = i * pn + preferedQuarters[p.quarterNo][j];
                     double score = candidatePositions[index].getScore();
                     if (minScore == null || minScore > score) {
@@ -262,11 +270,8 @@ public class LabelPlacementOptimizer4Points implements LabelPlacementOptimizer {
             }
             if (bestPosition != null) {
                 fixedPositions.put(i, candidatePositions[bestPosition]);
-                for (int k = 0; k < intersectionGraph.length; k++) {
-                    for (int m = 0; m < pn; m++) {
-                        intersectionGraph[pn * i + m][k] = false;
-                        intersectionGraph[k][pn * i + m] = false;
-                    }
+                for (int m = 0; m < pn; m++) {
+                    intersectionGraph.isolate(pn * i + m);
                 }
             }
 
@@ -274,21 +279,14 @@ public class LabelPlacementOptimizer4Points implements LabelPlacementOptimizer {
         return fixedPositions;
     }
 
-    private void resolveRemainingPositions(int n, Map<Integer, Box> fixedPositions, Box[] candidatePositions, boolean[][] intersectionGraph, ViewerLabel[] labels) {
+    private void resolveRemainingPositions(int n, Map<Integer, Box> fixedPositions, Box[] candidatePositions, IntersectionGraph intersectionGraph, ViewerLabel[] labels) {
         for (int i = 0; i < n; i++) {
             if (!fixedPositions.containsKey(i)) {
                 for (int j = 0; j < pn; j++) {
                     Box posI = candidatePositions[i * pn + j];
-                    for (int k = 0; k < n; k++) {
-                        if (k != i) {
-                            for (int l = 0; l < pn; l++) {
-                                Box posJ = candidatePositions[k * pn + l];
-                                if (intersectionGraph[i * pn + j][k * pn + l] == true) {
-                                    int overlap = computeOverlap(posI, posJ);
-                                    posI.overlapScore += overlap;
-                                }
-                            }
-                        }
+                    for (int m : intersectionGraph.neighbours(i * pn + j)) {
+                        int overlap = computeOverlap(posI, candidatePositions[m]);
+                        posI.overlapScore += overlap;
                     }
                 }
 
@@ -304,12 +302,7 @@ public class LabelPlacementOptimizer4Points implements LabelPlacementOptimizer {
                         fixedPositions.put(i, candidatePositions[i * pn + j]);
                         for (int k = 0; k < pn; k++) {
                             if (k != j) {
-                                for (int l = 0; l < intersectionGraph.length; l++) {
-                                    if (l != i * pn + j) {
-                                        intersectionGraph[i * pn + k][l] = false;
-                                        intersectionGraph[l][i * pn + k] = false;
-                                    }
-                                }
+                                intersectionGraph.isolate(i * pn + k);
                             }
                         }
                         break;
@@ -397,43 +390,67 @@ public class LabelPlacementOptimizer4Points implements LabelPlacementOptimizer {
         return currentSystemScore;
     }
 
-    private void estimateNeighborhoods(Collection<ViewerLabel> labelSet) {
-        Iterator<ViewerLabel> labelIt = labelSet.iterator();
-        List<ViewerLabel> labelsToCheck = new LinkedList();
-        while (labelIt.hasNext()) {
-            ViewerLabel l = labelIt.next();
-            ViewerPoint p = l.p;
+    private double estimateCellSize(ViewerLabel[] labels) {
+        int size = 1;
+        for (ViewerLabel l : labels) {
+            size = Math.max(size, Math.max(l.label.getWidth(), l.label.getHeight()));
+            size = Math.max(size, Math.max(l.p.width, l.p.height));
+        }
+        return size;
+    }
+
+    private void estimateNeighborhoods(ViewerLabel[] labels, double cellSize) {
+        SpatialIndex pointIndex = new SpatialIndex(cellSize);
+        int maxReach = 0;
+        for (int i = 0; i < labels.length; i++) {
+            ViewerPoint p = labels[i].p;
             p.neighborhood = new HashSet();
-            for (int i = 0; i < labelsToCheck.size(); i++) {
-                ViewerLabel l2 = labelsToCheck.get(i);
-                ViewerPoint p2 = l2.p;
-                int x = p.width / 2 + p2.width / 2 + 2 * defaultOffsetX + l.label.getWidth() + l2.label.getWidth();
-                double distanceThreshold = Math.sqrt(x * x + x * x);
-                if (p.distanceTo(p2) <= distanceThreshold) {
-                    p.neighborhood.add(p2.l);
-                    p2.neighborhood.add(p.l);
+            pointIndex.add(i, p.getX(), p.getY(), p.getX(), p.getY());
+            maxReach = Math.max(maxReach, reach(labels[i]));
+        }
+        for (int i = 0; i < labels.length; i++) {
+            ViewerLabel l = labels[i];
+            ViewerPoint p = l.p;
+            double searchRadius = Math.sqrt(2.0) * (reach(l) + maxReach) + 1;
+            for (int j : pointIndex.query(p.getX() - searchRadius, p.getY() - searchRadius,
+                    p.getX() + searchRadius, p.getY() + searchRadius)) {
+                if (j > i) {
+                    ViewerLabel l2 = labels[j];
+                    ViewerPoint p2 = l2.p;
+                    int x = reach(l) + reach(l2);
+                    double distanceThreshold = Math.sqrt(x * x + x * x);
+                    if (p.distanceTo(p2) <= distanceThreshold) {
+                        p.neighborhood.add(p2.l);
+                        p2.neighborhood.add(p.l);
+                    }
                 }
             }
-            labelsToCheck.add(l);
         }
     }
 
+    /**
+     * Furthest a label can extend from the centre of its point in either direction
+     */
+    private int reach(ViewerLabel l) {
+        return l.p.width / 2 + defaultOffsetX + l.label.getWidth();
+    }
+
     private void scoreDistancesToOtherPoints(Box[] candidatePositions,
                                              int labelId,
-                                             ViewerLabel[] labels) {
+                                             final ViewerLabel[] labels,
+                                             SpatialIndex pointIndex) {
         if (labels.length > 1) {
             double[] distances = new double[pn];
             List<Integer> sorted = new LinkedList();
             for (int i = 0; i < pn; i++) {
-                Double min = null;
-                for (int j = 0; j < labels.length; j++) {
-                    if (j != labelId) {
-                        double dist = labels[j].p.distanceTo(candidatePositions[i].middlePoint());
-                        if (min == null || min > dist) {
-                            min = dist;
-                        }
-                    }
-                }
+                final ViewerPoint middle = candidatePositions[labelId * pn + i].middlePoint();
+                double min = pointIndex.nearestDistance(middle.getX(), middle.getY(), labelId,
+                        new SpatialIndex.Distance() {
+                            @Override
+                            public double distance(int id) {
+                                return labels[id].p.distanceTo(middle);
+                            }
+                        }, Double.POSITIVE_INFINITY);
                 distances[i] = min;
                 boolean added = false;
                 for (int j = 0; j < sorted.size(); j++) {
@@ -453,6 +470,40 @@ public class LabelPlacementOptimizer4Points implements LabelPlacementOptimizer {
         }
     }
 
+    /**
+     * Sparse graph over the candidate positions, linking each position to the positions of other labels it overlaps
+     */
+    protected static class IntersectionGraph {
+        private final List<Set<Integer>> neighbours;
+
+        public IntersectionGraph(int size) {
+            neighbours = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                neighbours.add(new HashSet<Integer>());
+            }
+        }
+
+        public void addEdge(int a, int b) {
+            neighbours.get(a).add(b);
+            neighbours.get(b).add(a);
+        }
+
+        public int degree(int a) {
+            return neighbours.get(a).size();
+        }
+
+        public Set<Integer> neighbours(int a) {
+            return neighbours.get(a);
+        }
+
+        public void isolate(int a) {
+            for (int b : neighbours.get(a)) {
+                neighbours.get(b).remove(a);
+            }
+            neighbours.get(a).clear();
+        }
+    }
+
     protected static class Box {
         double x1;
         double y1;
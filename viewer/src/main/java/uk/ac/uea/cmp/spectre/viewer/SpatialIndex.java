@@ -0,0 +1,184 @@
+/*
+ * Suite of PhylogEnetiC Tools for Reticulate Evolution (SPECTRE)
+ * Copyright (C) 2014  UEA School of Computing Sciences
+ *
+ * This program is free software: you can redistribute it and/or modify it under the term of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.uea.cmp.spectre.viewer;
+
+import java.util.*;
+
+/**
+ * Uniform grid over the bounding boxes of drawing elements, used by the label and cluster placement optimisers to find
+ * the elements near a region without scanning the whole drawing.  Elements are referred to by an integer id, which is
+ * usually their position in an array held by the caller, and queries return the ids in ascending order so that callers
+ * see candidates in the same order as a full scan would.
+ */
+class SpatialIndex {
+
+    private final double cellSize;
+
+    private final Map<Long, List<Integer>> cells = new HashMap<>();
+
+    private double[] bounds = new double[64];
+    private int[] stamps = new int[16];
+    private int stamp = 0;
+
+    private double minX = Double.POSITIVE_INFINITY;
+    private double minY = Double.POSITIVE_INFINITY;
+    private double maxX = Double.NEGATIVE_INFINITY;
+    private double maxY = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Distance from a query location to an element of the index
+     */
+    interface Distance {
+
+        /**
+         * @param id Id of the element
+         * @return The distance to the element, which must not be less than the distance to its bounding box
+         */
+        double distance(int id);
+    }
+
+    /**
+     * @param cellSize Width and height of the grid cells.  Works best at around the size of a typical element.
+     */
+    SpatialIndex(double cellSize) {
+        if (!(cellSize > 0.0)) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Adds an element to the index.  The corners of the bounding box may be given in any order.
+     */
+    void add(int id, double x1, double y1, double x2, double y2) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Element ids must not be negative: " + id);
+        }
+
+        final double left = Math.min(x1, x2);
+        final double right = Math.max(x1, x2);
+        final double bottom = Math.min(y1, y2);
+        final double top = Math.max(y1, y2);
+
+        if (4 * id + 4 > bounds.length) {
+            bounds = Arrays.copyOf(bounds, Math.max(2 * bounds.length, 4 * id + 4));
+        }
+        if (id >= stamps.length) {
+            stamps = Arrays.copyOf(stamps, Math.max(2 * stamps.length, id + 1));
+        }
+        bounds[4 * id] = left;
+        bounds[4 * id + 1] = bottom;
+        bounds[4 * id + 2] = right;
+        bounds[4 * id + 3] = top;
+
+        minX = Math.min(minX, left);
+        minY = Math.min(minY, bottom);
+        maxX = Math.max(maxX, right);
+        maxY = Math.max(maxY, top);
+
+        for (long cx = cell(left); cx <= cell(right); cx++) {
+            for (long cy = cell(bottom); cy <= cell(top); cy++) {
+                Long key = key(cx, cy);
+                List<Integer> ids = cells.get(key);
+                if (ids == null) {
+                    ids = new ArrayList<>(4);
+                    cells.put(key, ids);
+                }
+                ids.add(id);
+            }
+        }
+    }
+
+    /**
+     * Finds the elements whose bounding boxes touch the given region, edges included.  The corners of the region may
+     * be given in any order and may be infinite.
+     *
+     * @return Ids of the elements found, in ascending order
+     */
+    List<Integer> query(double x1, double y1, double x2, double y2) {
+        final double left = Math.max(Math.min(x1, x2), minX);
+        final double right = Math.min(Math.max(x1, x2), maxX);
+        final double bottom = Math.max(Math.min(y1, y2), minY);
+        final double top = Math.min(Math.max(y1, y2), maxY);
+
+        List<Integer> found = new ArrayList<>();
+        if (left > right || bottom > top) {
+            return found;
+        }
+
+        stamp++;
+        for (long cx = cell(left); cx <= cell(right); cx++) {
+            for (long cy = cell(bottom); cy <= cell(top); cy++) {
+                List<Integer> ids = cells.get(key(cx, cy));
+                if (ids != null) {
+                    for (int i = 0; i < ids.size(); i++) {
+                        int id = ids.get(i);
+                        if (stamps[id] != stamp
+                                && bounds[4 * id] <= right && bounds[4 * id + 2] >= left
+                                && bounds[4 * id + 1] <= top && bounds[4 * id + 3] >= bottom) {
+                            stamps[id] = stamp;
+                            found.add(id);
+                        }
+                    }
+                }
+            }
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    /**
+     * Finds the distance from a location to the nearest element, searching outwards from the location in squares of
+     * doubling size until nothing outside the square can be closer than what has been found.
+     *
+     * @param x        X coordinate of the location
+     * @param y        Y coordinate of the location
+     * @param exclude  Id of an element to leave out, or -1 to consider every element
+     * @param distance Distance from the location to each element
+     * @param limit    Distances at or above this are of no interest
+     * @return The smallest distance to an element, or limit if no element is closer
+     */
+    double nearestDistance(double x, double y, int exclude, Distance distance, double limit) {
+        double nearest = limit;
+        double radius = cellSize;
+        while (true) {
+            List<Integer> found = query(x - radius, y - radius, x + radius, y + radius);
+            for (int i = 0; i < found.size(); i++) {
+                int id = found.get(i);
+                if (id != exclude) {
+                    double d = distance.distance(id);
+                    if (d < nearest) {
+                        nearest = d;
+                    }
+                }
+            }
+            if (nearest <= radius
+                    || (x - radius <= minX && x + radius >= maxX && y - radius <= minY && y + radius >= maxY)) {
+                return nearest;
+            }
+            radius *= 2;
+        }
+    }
+
+    private long cell(double coordinate) {
+        return (long) Math.floor(coordinate / cellSize);
+    }
+
+    private static Long key(long cx, long cy) {
+        return (cx << 32) ^ (cy & 0xffffffffL);
+    }
+}
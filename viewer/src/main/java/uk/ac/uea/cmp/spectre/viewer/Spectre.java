@@ -1249,7 +1249,7 @@ public class Spectre extends javax.swing.JFrame implements DropTargetListener {
 
             Graphics2D g2d = new PdfGraphics2D(cb, drawing.getWidth(), drawing.getHeight(), mapper, false, false, (float) 1.0);
 
-            drawing.paint(g2d);
+            drawing.export(g2d);
             g2d.dispose();
 
             d.close();
@@ -1274,7 +1274,7 @@ public class Spectre extends javax.swing.JFrame implements DropTargetListener {
             SVGGraphics2D svgGenerator = new SVGGraphics2D(document);
 
             // Ask the test to render into the SVG Graphics2D implementation.
-            drawing.paint(svgGenerator);
+            drawing.export(svgGenerator);
 
             // Finally, stream out SVG to the standard output using
             // UTF-8 encoding.
@@ -1294,7 +1294,7 @@ public class Spectre extends javax.swing.JFrame implements DropTargetListener {
             EPSDocumentGraphics2D epsDocument = new EPSDocumentGraphics2D(false);
             epsDocument.setGraphicContext(new org.apache.xmlgraphics.java2d.GraphicContext());
             epsDocument.setupDocument(out, drawing.getWidth(), drawing.getHeight()); //400pt x 200pt
-            drawing.paint(epsDocument);
+            drawing.export(epsDocument);
         }
         catch (IOException ex) {
             errorMessage("Error writing EPS to file.", ex);
@@ -1306,7 +1306,7 @@ public class Spectre extends javax.swing.JFrame implements DropTargetListener {
         // Create image
         BufferedImage bImage = new BufferedImage(drawing.getWidth(), drawing.getHeight(), BufferedImage.TYPE_INT_RGB);
         Graphics2D g2d = bImage.createGraphics();
-        drawing.paint(g2d);
+        drawing.export(g2d);
 
         // Save image to disk
         String ext = FilenameUtils.getExtension(image_file.getName());
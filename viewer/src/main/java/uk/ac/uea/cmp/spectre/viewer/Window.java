@@ -31,6 +31,7 @@ import java.awt.event.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
 import java.util.*;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -353,38 +354,99 @@ public class Window extends JPanel implements KeyListener, ComponentListener {
     ClusterFinder cf = new ClusterFinderSplits();
     ClusterPlacementOptimizer cpo = new ClusterPlacementOptimizerBox();
 
+    /* Edges shorter than this many pixels are skipped on screen when the network has more than EDGE_DETAIL_LIMIT edges */
+    private static final double MIN_EDGE_LENGTH = 1.0;
+    private static final int EDGE_DETAIL_LIMIT = 10000;
+
+    /* Labels are skipped on screen when together they would cover more than this fraction of the visible area */
+    private static final double LABEL_COVERAGE_LIMIT = 1.0;
+
+    /* Pixels around the visible area within which primitives are still drawn, to allow for stroke widths and outlines */
+    private static final int CULL_MARGIN = 10;
+
+    private static final BasicStroke DEFAULT_STROKE = new BasicStroke();
+
+    private final Map<Float, BasicStroke> strokes = new HashMap<>();
+
+    /* Edges as last drawn on screen, kept for as long as the window size doesn't change */
+    private BufferedImage networkImage = null;
+
+    /* Whether the layout has changed since the edges were drawn, other than by panning */
+    private boolean networkImageStale = true;
+
+    /* Whether the view is being panned, in which case the edges already drawn only need to be moved */
+    private boolean panning = false;
+
+    /* The transform the edges were drawn with, used to find how far they have moved when panning */
+    private AffineTransform networkImageTransform = null;
+
     @Override
     public void paint(Graphics graphics) {
+        render(graphics, true);
+    }
+
+    /**
+     * Draws the whole network, without the culling, caching and level of detail used on screen, so that exported
+     * vector and image files contain every primitive
+     * @param graphics Graphics to draw on
+     */
+    public void export(Graphics graphics) {
+        render(graphics, false);
+    }
+
+    private void render(Graphics graphics, boolean onScreen) {
         super.paint(graphics);
 
         setBackground(Color.white);
 
         Graphics2D g = (Graphics2D)graphics;
 
+        Rectangle visible = null;
+        if (onScreen) {
+            visible = g.getClipBounds();
+            if (visible == null) {
+                visible = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            visible.grow(CULL_MARGIN, CULL_MARGIN);
+        }
+
         // Draw lines
         if (lines != null) {
-            for (Line l : lines.values()) {
-                g.setStroke(new BasicStroke(l.getWidth()));
-                g.setColor(l.fg);
-                g.drawLine(l.p1.getXint(), l.p1.getYint(), l.p2.getXint(), l.p2.getYint());
+            if (onScreen) {
+                drawNetworkImage(g);
+            } else {
+                drawLines(g, null, false);
             }
         }
 
+        boolean showLabels = config.showLabels() && labels != null && labels.size() > 0
+                && (visible == null || !labelsTooDense(visible));
+
         // Draw leaders
-        if (labels != null && labels.size() > 0 && config.showLabels() && config.leadersVisible()) {
+        if (showLabels && config.leadersVisible()) {
             g.setStroke(config.getLeaderStroke().getStroke());
 
             for (ViewerLabel l : labels.values()) {
                 if (l.leader) {
+                    Rectangle extent = new Rectangle(l.p.getXint(), l.p.getYint(), 0, 0);
+                    extent.add(l.getlX(), l.getlY());
+                    ViewerPoint bentPoint = null;
+                    if (config.getLeaderType() != Leader.LeaderType.STRAIGHT) {
+                        bentPoint = l.computeBendingPoint(config.getLeaderType() == Leader.LeaderType.BENDED);
+                        extent.add(bentPoint.getXint(), bentPoint.getYint());
+                    }
+                    if (visible != null && !visible.intersects(extent)) {
+                        continue;
+                    }
+
                     if (l.p.isSelected()) {
                         g.setColor(Color.red);
                     } else {
                         g.setColor(this.config.getLeaderColor());
                     }
-                    if (config.getLeaderType() == Leader.LeaderType.STRAIGHT) {
+                    if (bentPoint == null) {
                         g.drawLine(l.p.getXint(), l.p.getYint(), l.getlX(), l.getlY());
                     } else {
-                        ViewerPoint bentPoint = l.computeBendingPoint(config.getLeaderType() == Leader.LeaderType.BENDED);
                         int[] x = new int[]{l.p.getXint(), bentPoint.getXint(), l.getlX()};
                         int[] y = new int[]{l.p.getYint(), bentPoint.getYint(), l.getlY()};
                         g.drawPolyline(x, y, 3);
@@ -393,23 +455,27 @@ public class Window extends JPanel implements KeyListener, ComponentListener {
             }
         }
 
-        g.setStroke(new BasicStroke());
+        g.setStroke(DEFAULT_STROKE);
 
         // Draw all viewer points
         if (points != null && points.size() > 0) {
             for (ViewerPoint p : points.values()) {
-                p.draw(g, selectionColor);
+                if (visible == null || visible.intersects(pointBounds(p))) {
+                    p.draw(g, selectionColor);
+                }
             }
         }
 
         // Draw labels
-        if (labels != null && labels.size() > 0 && config.showLabels()) {
+        if (showLabels) {
             for (ViewerLabel l : labels.values()) {
-                l.draw(g, selectionColor, config.colorLabels());
+                if (visible == null || visible.intersects(labelBounds(l))) {
+                    l.draw(g, selectionColor, config.colorLabels());
+                }
             }
         }
 
-        g.setStroke(new BasicStroke());
+        g.setStroke(DEFAULT_STROKE);
 
         // Draw the range indicator in the top left
         if (config.showRange()) {
@@ -463,6 +529,147 @@ public class Window extends JPanel implements KeyListener, ComponentListener {
 
     }
 
+    /**
+     * Draws the edges from an offscreen image.  The image is only allocated again when the size or scale of the window
+     * changes.  It is redrawn in place when the layout changes, and when panning it is moved so that only the strips
+     * uncovered by the move need drawing.
+     */
+    private void drawNetworkImage(Graphics2D g) {
+        if (getWidth() <= 0 || getHeight() <= 0) {
+            return;
+        }
+
+        // Draw the image at the device resolution so that it stays sharp on scaled displays
+        double scaleX = g.getTransform().getScaleX();
+        double scaleY = g.getTransform().getScaleY();
+        int imageWidth = (int) Math.ceil(getWidth() * scaleX);
+        int imageHeight = (int) Math.ceil(getHeight() * scaleY);
+
+        if (networkImage == null || networkImage.getWidth() != imageWidth || networkImage.getHeight() != imageHeight) {
+            networkImage = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB);
+            networkImageStale = true;
+        }
+
+        AffineTransform transform = getCurrentTransform();
+
+        if (networkImageStale) {
+            drawNetworkImageArea(g, new Rectangle(0, 0, imageWidth, imageHeight), scaleX, scaleY);
+        } else if (!transform.equals(networkImageTransform)) {
+
+            // Only panning has happened since the image was drawn, so the transform has only been translated
+            int dx = (int) Math.round((transform.getTranslateX() - networkImageTransform.getTranslateX()) * scaleX);
+            int dy = (int) Math.round((transform.getTranslateY() - networkImageTransform.getTranslateY()) * scaleY);
+
+            if (Math.abs(dx) >= imageWidth || Math.abs(dy) >= imageHeight) {
+                drawNetworkImageArea(g, new Rectangle(0, 0, imageWidth, imageHeight), scaleX, scaleY);
+            } else {
+                Graphics2D ig = networkImage.createGraphics();
+                ig.copyArea(0, 0, imageWidth, imageHeight, dx, dy);
+                ig.dispose();
+
+                if (dx != 0) {
+                    drawNetworkImageArea(g, new Rectangle(dx > 0 ? 0 : imageWidth + dx, 0, Math.abs(dx), imageHeight),
+                            scaleX, scaleY);
+                }
+                if (dy != 0) {
+                    drawNetworkImageArea(g, new Rectangle(0, dy > 0 ? 0 : imageHeight + dy, imageWidth, Math.abs(dy)),
+                            scaleX, scaleY);
+                }
+            }
+        }
+
+        networkImageTransform = transform;
+        networkImageStale = false;
+
+        g.drawImage(networkImage, 0, 0, getWidth(), getHeight(), null);
+    }
+
+    /**
+     * Clears an area of the offscreen image and draws the edges crossing it
+     *
+     * @param area The area to redraw, in image pixels
+     */
+    private void drawNetworkImageArea(Graphics2D g, Rectangle area, double scaleX, double scaleY) {
+        Graphics2D ig = networkImage.createGraphics();
+        ig.setComposite(AlphaComposite.Clear);
+        ig.fill(area);
+        ig.setComposite(AlphaComposite.SrcOver);
+        ig.setRenderingHints(g.getRenderingHints());
+        ig.clip(area);
+        ig.scale(scaleX, scaleY);
+
+        int x = (int) Math.floor(area.x / scaleX);
+        int y = (int) Math.floor(area.y / scaleY);
+        Rectangle bounds = new Rectangle(x, y,
+                (int) Math.ceil((area.x + area.width) / scaleX) - x,
+                (int) Math.ceil((area.y + area.height) / scaleY) - y);
+        bounds.grow(CULL_MARGIN, CULL_MARGIN);
+        drawLines(ig, bounds, lines.size() > EDGE_DETAIL_LIMIT);
+        ig.dispose();
+    }
+
+    /**
+     * @param bounds Only lines crossing this area are drawn, or all lines if null
+     * @param skipShort Whether to leave out lines shorter than {@link #MIN_EDGE_LENGTH}
+     */
+    private void drawLines(Graphics2D g, Rectangle bounds, boolean skipShort) {
+        for (Line l : lines.values()) {
+            int x1 = l.p1.getXint();
+            int y1 = l.p1.getYint();
+            int x2 = l.p2.getXint();
+            int y2 = l.p2.getYint();
+            if (bounds != null && !bounds.intersectsLine(x1, y1, x2, y2)) {
+                continue;
+            }
+            if (skipShort && Math.hypot(x2 - x1, y2 - y1) < MIN_EDGE_LENGTH) {
+                continue;
+            }
+            g.setStroke(getStroke(l.getWidth()));
+            g.setColor(l.fg);
+            g.drawLine(x1, y1, x2, y2);
+        }
+    }
+
+    private BasicStroke getStroke(float width) {
+        BasicStroke stroke = strokes.get(width);
+        if (stroke == null) {
+            stroke = new BasicStroke(width);
+            strokes.put(width, stroke);
+        }
+        return stroke;
+    }
+
+    /**
+     * @return The area covered by the point's shape, including the selection outline.  The point's location is the
+     * centre of the shape; getCentreX() and getCentreY() give the top left corner that the shape is drawn from.
+     */
+    private static Rectangle pointBounds(ViewerPoint p) {
+        return new Rectangle(p.getXint() - p.width / 2 - 1, p.getYint() - p.height / 2 - 1, p.width + 3, p.height + 3);
+    }
+
+    private static Rectangle labelBounds(ViewerLabel l) {
+        return new Rectangle(l.getXint(), l.getYint() - l.label.getHeight(), l.label.getWidth(), l.label.getHeight());
+    }
+
+    /**
+     * @return True if the labels within the visible area would cover more of it than {@link #LABEL_COVERAGE_LIMIT},
+     * in which case they are too crowded to read at this zoom level
+     */
+    private boolean labelsTooDense(Rectangle visible) {
+        double limit = LABEL_COVERAGE_LIMIT * visible.getWidth() * visible.getHeight();
+        double area = 0;
+        for (ViewerLabel l : labels.values()) {
+            Rectangle bounds = labelBounds(l);
+            if (visible.intersects(bounds)) {
+                area += bounds.getWidth() * bounds.getHeight();
+                if (area > limit) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public void drawNetwork(final ViewerConfig config, Network network, boolean optimiseLayout) {
         this.network = network;
         this.config = config;
@@ -478,6 +685,10 @@ public class Window extends JPanel implements KeyListener, ComponentListener {
 
     private void computeIntegerCoordinates() {
 
+        if (!panning) {
+            networkImageStale = true;
+        }
+
         if (vertices != null) {
             // Recalculate dimensions of the network
             this.dimensions = NetworkExtents.determineRange(this.points.values(), this.vertices);
@@ -505,6 +716,7 @@ public class Window extends JPanel implements KeyListener, ComponentListener {
 
 
     public void setGraph() {
+        networkImageStale = true;
         clusters.clear();
         points.clear();
         lines.clear();
@@ -944,7 +1156,7 @@ public class Window extends JPanel implements KeyListener, ComponentListener {
         Point2D adjNewPoint = getCurrentTransform().transform(this.offset, null);
         adjNewPoint.setLocation(adjNewPoint.getX() + deltaX, adjNewPoint.getY() + deltaY);
         this.offset = getTranslatedPoint(adjNewPoint.getX(), adjNewPoint.getY());
-        repaintOnResize();
+        repaintWhilePanning();
     }
 
     void pan(java.awt.Point endPoint) {
@@ -959,7 +1171,19 @@ public class Window extends JPanel implements KeyListener, ComponentListener {
         this.startPoint.setLocation((int)endPoint.getX(), (int)endPoint.getY());
         this.offset.setLocation(this.offset.getX() + newX, this.offset.getY() + newY);
 
-        repaintOnResize();
+        repaintWhilePanning();
+    }
+
+    /**
+     * Recomputes the screen coordinates after the view has only been moved, which keeps the edges already drawn
+     */
+    private void repaintWhilePanning() {
+        panning = true;
+        try {
+            repaintOnResize();
+        } finally {
+            panning = false;
+        }
     }
 
     public void zoom(double amount) {